@@ -0,0 +1,915 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.type.Type;
+
+/**
+ * KDTree to access values at RealLocalizable positions, that is stored in
+ * flat primitive arrays.
+ * <p>
+ * In contrast to {@link KDTree}, there are no node objects. The tree is a
+ * complete, left-balanced binary tree stored in heap order: the root is node
+ * 0, and the children of node {@code i} are nodes {@code 2i+1} and
+ * {@code 2i+2}. The coordinates of all nodes are stored in a single
+ * {@code double[]}, the coordinates of node {@code i} are at indices
+ * {@code i*n} to {@code i*n+n-1}. A node at depth {@code k} divides the space
+ * along dimension {@code k % n}. The values are stored in a list in the same
+ * order.
+ * <p>
+ * Compared to {@link KDTree} this reduces the memory consumption severalfold,
+ * and the searches ({@link net.imglib2.neighborsearch.NearestNeighborSearchOnFlatKDTree},
+ * {@link net.imglib2.neighborsearch.KNearestNeighborSearchOnFlatKDTree},
+ * {@link net.imglib2.neighborsearch.RadiusNeighborSearchOnFlatKDTree}) read
+ * coordinates from contiguous memory instead of chasing pointers.
+ * <p>
+ * The tree can be constructed directly from primitive coordinate arrays, see
+ * {@link #FlatKDTree(double[][], List)} and
+ * {@link #FlatKDTree(int, double[], List)}. The construction is parallelized,
+ * if the constructor is called with a multi-threaded {@link TaskExecutor}, for
+ * example within {@link Parallelization#runMultiThreaded(Runnable)}.
+ * <p>
+ * The number of points is limited to {@code 2^30}, and the number of points
+ * times the number of dimensions must fit into an array.
+ *
+ * @param <T>
+ *            type of values stored in the tree.
+ */
+public class FlatKDTree< T > implements EuclideanSpace, IterableRealInterval< T >
+{
+	/**
+	 * the number of dimensions.
+	 */
+	final protected int n;
+
+	/**
+	 * the number of nodes in the tree.
+	 */
+	final protected int size;
+
+	/**
+	 * coordinates of the nodes, in tree order. The coordinates of node i are
+	 * stored at indices i * n, ..., i * n + n - 1.
+	 */
+	final protected double[] positions;
+
+	/**
+	 * values of the nodes, in tree order.
+	 */
+	final protected List< T > values;
+
+	/**
+	 * the index of the point, from which node i was created, in the list (or
+	 * array) of points given to the constructor.
+	 */
+	final protected int[] inputIndices;
+
+	/**
+	 * minimum of each dimension.
+	 */
+	final protected double[] min;
+
+	/**
+	 * maximum of each dimension.
+	 */
+	final protected double[] max;
+
+	/**
+	 * Construct a FlatKDTree from the elements in the given list.
+	 *
+	 * <p>
+	 * Note that the constructor can be called with the same list for both
+	 * {@code values == positions} if {@code T extends RealLocalizable}.
+	 * </p>
+	 *
+	 * @param values
+	 *            a list of values
+	 * @param positions
+	 *            a list of positions corresponding to the values
+	 */
+	public < L extends RealLocalizable > FlatKDTree( final List< T > values, final List< L > positions )
+	{
+		this( positions.get( 0 ).numDimensions(), flatten( positions ), values );
+	}
+
+	/**
+	 * Construct a FlatKDTree from the elements of the given
+	 * {@link IterableRealInterval}.
+	 * <p>
+	 * The tree doesn't keep references to the interval. If the values are
+	 * {@link Type}s, the tree stores copies of them. Otherwise, the tree
+	 * stores the objects returned by the cursor.
+	 *
+	 * @param interval
+	 *            elements in the tree are obtained by iterating this
+	 */
+	public FlatKDTree( final IterableRealInterval< T > interval )
+	{
+		this( interval.numDimensions(), flatten( interval ), copyValues( interval ) );
+	}
+
+	/**
+	 * Construct a FlatKDTree from the coordinates of the points.
+	 *
+	 * @param positions
+	 *            coordinates of the points, {@code positions[i]} are the
+	 *            coordinates of point i. The array is not modified.
+	 * @param values
+	 *            values corresponding to the points.
+	 */
+	public FlatKDTree( final double[][] positions, final List< T > values )
+	{
+		this( positions[ 0 ].length, flatten( positions ), values );
+	}
+
+	/**
+	 * Construct a FlatKDTree from the flat coordinates of the points.
+	 *
+	 * @param n
+	 *            number of dimensions.
+	 * @param positions
+	 *            coordinates of the points, the coordinates of point i are
+	 *            stored at indices i * n, ..., i * n + n - 1. The array is not
+	 *            modified.
+	 * @param values
+	 *            values corresponding to the points.
+	 */
+	public FlatKDTree( final int n, final double[] positions, final List< T > values )
+	{
+		if ( n < 1 )
+			throw new IllegalArgumentException( "FlatKDTree: number of dimensions must be positive." );
+		if ( positions.length % n != 0 )
+			throw new IllegalArgumentException( "FlatKDTree: length of the coordinate array must be a multiple of the number of dimensions." );
+		final int size = positions.length / n;
+		if ( size > MAX_SIZE )
+			throw new IllegalArgumentException( "FlatKDTree: too many points." );
+		if ( values.size() != size )
+			throw new IllegalArgumentException( "FlatKDTree: number of values and number of positions differ." );
+
+		this.n = n;
+		this.size = size;
+		this.min = new double[ n ];
+		this.max = new double[ n ];
+		computeMinMax( positions, n, min, max );
+		this.inputIndices = buildTree( positions, n );
+		this.positions = new double[ positions.length ];
+		for ( int node = 0; node < size; ++node )
+			System.arraycopy( positions, inputIndices[ node ] * n, this.positions, node * n, n );
+		this.values = ( values instanceof IndexList ) ? uncheckedCast( new InputIndexList() ) : permute( values );
+	}
+
+	/**
+	 * Construct a FlatKDTree, whose values are the indices of the points,
+	 * that is {@code tree.getValue( node ) == tree.getInputIndex( node )}. The
+	 * values don't use additional memory.
+	 *
+	 * @param positions
+	 *            coordinates of the points, {@code positions[i]} are the
+	 *            coordinates of point i. The array is not modified.
+	 */
+	public static FlatKDTree< Integer > withIndexValues( final double[][] positions )
+	{
+		return new FlatKDTree<>( positions, new IndexList( positions.length ) );
+	}
+
+	/**
+	 * Construct a FlatKDTree, whose values are the indices of the points,
+	 * that is {@code tree.getValue( node ) == tree.getInputIndex( node )}. The
+	 * values don't use additional memory.
+	 *
+	 * @param n
+	 *            number of dimensions.
+	 * @param positions
+	 *            coordinates of the points, the coordinates of point i are
+	 *            stored at indices i * n, ..., i * n + n - 1. The array is not
+	 *            modified.
+	 */
+	public static FlatKDTree< Integer > withIndexValues( final int n, final double[] positions )
+	{
+		return new FlatKDTree<>( n, positions, new IndexList( positions.length / n ) );
+	}
+
+	private List< T > permute( final List< T > values )
+	{
+		final List< T > input = ( values instanceof java.util.RandomAccess ) ? values : new ArrayList<>( values );
+		final List< T > treeValues = new ArrayList<>( size );
+		for ( int node = 0; node < size; ++node )
+			treeValues.add( input.get( inputIndices[ node ] ) );
+		return treeValues;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static < T > T uncheckedCast( final Object o )
+	{
+		return ( T ) o;
+	}
+
+	/**
+	 * The list 0, 1, ..., size - 1.
+	 */
+	private static class IndexList extends AbstractList< Integer > implements java.util.RandomAccess
+	{
+		private final int size;
+
+		IndexList( final int size )
+		{
+			this.size = size;
+		}
+
+		@Override
+		public Integer get( final int index )
+		{
+			return index;
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+	}
+
+	/**
+	 * The list of {@link #inputIndices}, in tree order.
+	 */
+	private class InputIndexList extends AbstractList< Integer > implements java.util.RandomAccess
+	{
+		@Override
+		public Integer get( final int node )
+		{
+			return inputIndices[ node ];
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+	}
+
+	/**
+	 * Maximum number of points in a tree. It guarantees, that the indices of
+	 * the child nodes {@code 2i+1} and {@code 2i+2} don't overflow.
+	 */
+	static final int MAX_SIZE = 1 << 30;
+
+	private static < L extends RealLocalizable > double[] flatten( final List< L > positions )
+	{
+		final int n = positions.get( 0 ).numDimensions();
+		final double[] points = new double[ checkedLength( positions.size(), n ) ];
+		final double[] position = new double[ n ];
+		int i = 0;
+		for ( final L p : positions )
+		{
+			if ( p.numDimensions() != n )
+				throw new IllegalArgumentException( "FlatKDTree: all positions must have the same number of dimensions." );
+			p.localize( position );
+			System.arraycopy( position, 0, points, i, n );
+			i += n;
+		}
+		return points;
+	}
+
+	private static double[] flatten( final double[][] positions )
+	{
+		final int n = positions[ 0 ].length;
+		final double[] points = new double[ checkedLength( positions.length, n ) ];
+		for ( int i = 0; i < positions.length; ++i )
+		{
+			if ( positions[ i ].length != n )
+				throw new IllegalArgumentException( "FlatKDTree: all positions must have the same number of dimensions." );
+			System.arraycopy( positions[ i ], 0, points, i * n, n );
+		}
+		return points;
+	}
+
+	private static double[] flatten( final IterableRealInterval< ? > interval )
+	{
+		final int n = interval.numDimensions();
+		final double[] points = new double[ checkedLength( interval.size(), n ) ];
+		final double[] position = new double[ n ];
+		final RealCursor< ? > cursor = interval.localizingCursor();
+		int i = 0;
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.localize( position );
+			System.arraycopy( position, 0, points, i, n );
+			i += n;
+		}
+		return points;
+	}
+
+	private static int checkedLength( final long size, final int n )
+	{
+		final long length = size * n;
+		if ( size > MAX_SIZE || length > Integer.MAX_VALUE - 8 )
+			throw new IllegalArgumentException( "FlatKDTree: too many points." );
+		return ( int ) length;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static < T > List< T > copyValues( final IterableRealInterval< T > interval )
+	{
+		final List< T > values = new ArrayList<>( ( int ) interval.size() );
+		for ( final T value : interval )
+			values.add( value instanceof Type ? ( T ) ( ( Type< ? > ) value ).copy() : value );
+		return values;
+	}
+
+	private static void computeMinMax( final double[] points, final int n, final double[] min, final double[] max )
+	{
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = Double.MAX_VALUE;
+			max[ d ] = -Double.MAX_VALUE;
+		}
+		for ( int i = 0; i < points.length; i += n )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				final double x = points[ i + d ];
+				if ( x < min[ d ] )
+					min[ d ] = x;
+				if ( x > max[ d ] )
+					max[ d ] = x;
+			}
+		}
+	}
+
+	/**
+	 * Computes the tree order of the given points.
+	 *
+	 * @return array that contains for every node of the tree the index of the
+	 *         corresponding point.
+	 */
+	private static int[] buildTree( final double[] points, final int n )
+	{
+		final int size = points.length / n;
+		final int[] indices = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			indices[ i ] = i;
+		final int[] tree = new int[ size ];
+
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		if ( taskExecutor.getParallelism() <= 1 || size < PARALLEL_THRESHOLD )
+		{
+			buildSubtree( points, n, indices, tree, 0, 0, size, 0 );
+			return tree;
+		}
+
+		// partition the top levels, until there are enough subtrees
+		final int numTasks = taskExecutor.suggestNumberOfTasks();
+		List< Subtree > subtrees = Collections.singletonList( new Subtree( 0, 0, size, 0 ) );
+		while ( subtrees.size() < numTasks && !subtrees.isEmpty() && subtrees.get( 0 ).size() >= PARALLEL_THRESHOLD )
+		{
+			taskExecutor.forEach( subtrees, subtree -> subtree.partition( points, n, indices, tree ) );
+			final List< Subtree > children = new ArrayList<>();
+			for ( final Subtree subtree : subtrees )
+				subtree.addChildren( n, children );
+			subtrees = children;
+		}
+
+		// construct the subtrees
+		taskExecutor.forEach( subtrees, subtree -> buildSubtree( points, n, indices, tree, subtree.node, subtree.from, subtree.to, subtree.d ) );
+		return tree;
+	}
+
+	/**
+	 * Minimum number of points, for which the construction of the tree is
+	 * parallelized.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+	/**
+	 * The subtree rooted at {@code node}, that is constructed from the points
+	 * {@code indices[from]} to {@code indices[to - 1]}, and split along
+	 * dimension {@code d}.
+	 */
+	private static final class Subtree
+	{
+		final int node;
+
+		final int from;
+
+		final int to;
+
+		final int d;
+
+		Subtree( final int node, final int from, final int to, final int d )
+		{
+			this.node = node;
+			this.from = from;
+			this.to = to;
+			this.d = d;
+		}
+
+		int size()
+		{
+			return to - from;
+		}
+
+		int splitIndex()
+		{
+			return from + leftSubtreeSize( to - from );
+		}
+
+		void partition( final double[] points, final int n, final int[] indices, final int[] tree )
+		{
+			final int k = splitIndex();
+			kthElement( points, n, d, indices, from, to - 1, k );
+			tree[ node ] = indices[ k ];
+		}
+
+		void addChildren( final int n, final List< Subtree > children )
+		{
+			final int k = splitIndex();
+			final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+			if ( k > from )
+				children.add( new Subtree( leftChild( node ), from, k, dChild ) );
+			if ( to > k + 1 )
+				children.add( new Subtree( rightChild( node ), k + 1, to, dChild ) );
+		}
+	}
+
+	/**
+	 * Construct the subtree rooted at the given node from the points
+	 * {@code indices[from]} to {@code indices[to - 1]}. The points are
+	 * partitioned at the element with respect to coordinates in dimension d,
+	 * such that the left subtree becomes complete and left-balanced. This
+	 * element becomes the node, the left and right partitions are processed
+	 * recursively.
+	 */
+	private static void buildSubtree( final double[] points, final int n, final int[] indices, final int[] tree, final int node, final int from, final int to, final int d )
+	{
+		final int m = to - from;
+		if ( m == 0 )
+			return;
+		final int k = from + leftSubtreeSize( m );
+		kthElement( points, n, d, indices, from, to - 1, k );
+		tree[ node ] = indices[ k ];
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+		buildSubtree( points, n, indices, tree, leftChild( node ), from, k, dChild );
+		buildSubtree( points, n, indices, tree, rightChild( node ), k + 1, to, dChild );
+	}
+
+	/**
+	 * Returns the number of nodes in the left subtree of a complete,
+	 * left-balanced binary tree with m nodes.
+	 */
+	static int leftSubtreeSize( final int m )
+	{
+		if ( m <= 1 )
+			return 0;
+		final int h = 31 - Integer.numberOfLeadingZeros( m ); // depth of the last level
+		final int nodesInLastLevel = m - ( ( 1 << h ) - 1 );
+		final int halfLastLevel = 1 << ( h - 1 );
+		return halfLastLevel - 1 + Math.min( nodesInLastLevel, halfLastLevel );
+	}
+
+	/**
+	 * Partially sort {@code indices[i]} to {@code indices[j]} (inclusive) by
+	 * the coordinate d of the referenced points, such that the k-th element is
+	 * at its final position, smaller elements are left of it and larger
+	 * elements are right of it. Elements equal to the pivot are gathered in
+	 * the middle, so that repeated coordinates don't degrade to quadratic
+	 * time.
+	 */
+	private static void kthElement( final double[] points, final int n, final int d, final int[] indices, int i, int j, final int k )
+	{
+		while ( j > i )
+		{
+			// median of three pivot
+			final int m = ( i + j ) >>> 1;
+			if ( key( points, n, d, indices, m ) < key( points, n, d, indices, i ) )
+				swap( indices, m, i );
+			if ( key( points, n, d, indices, j ) < key( points, n, d, indices, i ) )
+				swap( indices, j, i );
+			if ( key( points, n, d, indices, m ) < key( points, n, d, indices, j ) )
+				swap( indices, m, j );
+			final double pivot = key( points, n, d, indices, j );
+
+			// three way partition: [i, lt) < pivot, [lt, gt] == pivot, (gt, j] > pivot
+			int lt = i;
+			int gt = j;
+			int l = i;
+			while ( l <= gt )
+			{
+				final double v = key( points, n, d, indices, l );
+				if ( v < pivot )
+					swap( indices, l++, lt++ );
+				else if ( v > pivot )
+					swap( indices, l, gt-- );
+				else
+					++l;
+			}
+
+			if ( k < lt )
+				j = lt - 1;
+			else if ( k > gt )
+				i = gt + 1;
+			else
+				return;
+		}
+	}
+
+	private static double key( final double[] points, final int n, final int d, final int[] indices, final int i )
+	{
+		return points[ indices[ i ] * n + d ];
+	}
+
+	private static void swap( final int[] indices, final int i, final int j )
+	{
+		final int tmp = indices[ i ];
+		indices[ i ] = indices[ j ];
+		indices[ j ] = tmp;
+	}
+
+	/**
+	 * Get the index of the left child of a node. The child exists only if the
+	 * index is smaller than {@link #size()}.
+	 */
+	public static int leftChild( final int node )
+	{
+		return 2 * node + 1;
+	}
+
+	/**
+	 * Get the index of the right child of a node. The child exists only if the
+	 * index is smaller than {@link #size()}.
+	 */
+	public static int rightChild( final int node )
+	{
+		return 2 * node + 2;
+	}
+
+	/**
+	 * Get the index of the parent of a node.
+	 */
+	public static int parent( final int node )
+	{
+		return ( node - 1 ) / 2;
+	}
+
+	/**
+	 * Get the dimension along which a node divides the space.
+	 */
+	public int getSplitDimension( final int node )
+	{
+		return ( 31 - Integer.numberOfLeadingZeros( node + 1 ) ) % n;
+	}
+
+	/**
+	 * Get the coordinates of all nodes in tree order. The coordinates of node
+	 * i are stored at indices i * n, ..., i * n + n - 1.
+	 * <p>
+	 * The array is not copied, it must not be modified.
+	 */
+	public double[] getPositions()
+	{
+		return positions;
+	}
+
+	/**
+	 * Get the coordinate of a node in dimension d.
+	 */
+	public double getDoublePosition( final int node, final int d )
+	{
+		return positions[ node * n + d ];
+	}
+
+	/**
+	 * Get the value of a node.
+	 */
+	public T getValue( final int node )
+	{
+		return values.get( node );
+	}
+
+	/**
+	 * Get the index of the point, from which the node was created, in the
+	 * list (or iteration order) of points given to the constructor.
+	 */
+	public int getInputIndex( final int node )
+	{
+		return inputIndices[ node ];
+	}
+
+	/**
+	 * Compute the squared distance from p to a node.
+	 */
+	public double squDistance( final int node, final double[] p )
+	{
+		double sum = 0;
+		final int offset = node * n;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = positions[ offset + d ] - p[ d ];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	/**
+	 * Get a {@link Node} that provides position and value of a node.
+	 */
+	public Node getNode( final int node )
+	{
+		return new Node( node );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public double realMin( final int d )
+	{
+		return min[ d ];
+	}
+
+	@Override
+	public void realMin( final double[] m )
+	{
+		for ( int d = 0; d < n; ++d )
+			m[ d ] = min[ d ];
+	}
+
+	@Override
+	public void realMin( final RealPositionable m )
+	{
+		m.setPosition( min );
+	}
+
+	@Override
+	public double realMax( final int d )
+	{
+		return max[ d ];
+	}
+
+	@Override
+	public void realMax( final double[] m )
+	{
+		for ( int d = 0; d < n; ++d )
+			m[ d ] = max[ d ];
+	}
+
+	@Override
+	public void realMax( final RealPositionable m )
+	{
+		m.setPosition( max );
+	}
+
+	@Override
+	public long size()
+	{
+		return size;
+	}
+
+	@Override
+	public Object iterationOrder()
+	{
+		return this; // iteration order is only compatible with ourselves
+	}
+
+	/**
+	 * Provides the position and the value of a node of the tree.
+	 */
+	public final class Node implements RealLocalizable, Sampler< T >
+	{
+		private final int index;
+
+		private Node( final int index )
+		{
+			this.index = index;
+		}
+
+		/**
+		 * Get the index of the node in the tree.
+		 */
+		public int getIndex()
+		{
+			return index;
+		}
+
+		@Override
+		public int numDimensions()
+		{
+			return n;
+		}
+
+		@Override
+		public void localize( final float[] position )
+		{
+			final int offset = index * n;
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = ( float ) positions[ offset + d ];
+		}
+
+		@Override
+		public void localize( final double[] position )
+		{
+			System.arraycopy( positions, index * n, position, 0, n );
+		}
+
+		@Override
+		public float getFloatPosition( final int d )
+		{
+			return ( float ) positions[ index * n + d ];
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return positions[ index * n + d ];
+		}
+
+		@Override
+		public T get()
+		{
+			return values.get( index );
+		}
+
+		@Override
+		public Node copy()
+		{
+			return this;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "node " + index + " | " + get();
+		}
+	}
+
+	/**
+	 * Iterates the nodes of the tree in tree order.
+	 */
+	public final class FlatKDTreeCursor implements RealCursor< T >
+	{
+		private int index;
+
+		public FlatKDTreeCursor()
+		{
+			reset();
+		}
+
+		private FlatKDTreeCursor( final FlatKDTreeCursor c )
+		{
+			this.index = c.index;
+		}
+
+		@Override
+		public void localize( final float[] position )
+		{
+			final int offset = index * n;
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = ( float ) positions[ offset + d ];
+		}
+
+		@Override
+		public void localize( final double[] position )
+		{
+			System.arraycopy( positions, index * n, position, 0, n );
+		}
+
+		@Override
+		public float getFloatPosition( final int d )
+		{
+			return ( float ) positions[ index * n + d ];
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return positions[ index * n + d ];
+		}
+
+		@Override
+		public int numDimensions()
+		{
+			return n;
+		}
+
+		@Override
+		public T get()
+		{
+			return values.get( index );
+		}
+
+		@Override
+		public FlatKDTreeCursor copy()
+		{
+			return new FlatKDTreeCursor( this );
+		}
+
+		@Override
+		public void jumpFwd( final long steps )
+		{
+			index += steps;
+		}
+
+		@Override
+		public void fwd()
+		{
+			++index;
+		}
+
+		@Override
+		public void reset()
+		{
+			index = -1;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return index < size - 1;
+		}
+
+		@Override
+		public T next()
+		{
+			fwd();
+			return get();
+		}
+
+		@Override
+		public void remove()
+		{
+			// NB: no action.
+		}
+
+		@Override
+		public FlatKDTreeCursor copyCursor()
+		{
+			return copy();
+		}
+	}
+
+	@Override
+	public FlatKDTreeCursor iterator()
+	{
+		return new FlatKDTreeCursor();
+	}
+
+	@Override
+	public FlatKDTreeCursor cursor()
+	{
+		return new FlatKDTreeCursor();
+	}
+
+	@Override
+	public FlatKDTreeCursor localizingCursor()
+	{
+		return new FlatKDTreeCursor();
+	}
+
+	@Override
+	public T firstElement()
+	{
+		return iterator().next();
+	}
+}
@@ -34,6 +34,12 @@
 
 package net.imglib2;
 
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import net.imglib2.stream.CursorSpliterator;
+
 /**
  * <p>
  * <em>f</em>:R<sup><em>n</em></sup>&isin;[0,<em>s</em>]&rarr;T
@@ -123,4 +129,43 @@ public interface IterableRealInterval< T > extends RealInterval, Iterable< T >
 	 * @return the iteration order of this {@link IterableRealInterval}.
 	 */
 	public Object iterationOrder();
+
+	/**
+	 * Returns a {@link Spliterator} over the elements of this
+	 * {@link IterableRealInterval}. The {@link Spliterator} is based on a
+	 * {@link RealCursor} and splits by copying the cursor and moving it
+	 * forward with {@link RealCursor#jumpFwd(long)}. Containers override this
+	 * method to split at their natural boundaries.
+	 */
+	@Override
+	public default Spliterator< T > spliterator()
+	{
+		return new CursorSpliterator<>( cursor(), size() );
+	}
+
+	/**
+	 * Returns a sequential {@link Stream} over the elements of this
+	 * {@link IterableRealInterval}.
+	 * <p>
+	 * Note that the elements of the stream might be reused proxy objects, as
+	 * returned by {@link RealCursor#get()}. Elements that need to be kept must
+	 * be copied.
+	 */
+	public default Stream< T > stream()
+	{
+		return StreamSupport.stream( spliterator(), false );
+	}
+
+	/**
+	 * Returns a parallel {@link Stream} over the elements of this
+	 * {@link IterableRealInterval}.
+	 * <p>
+	 * Note that the elements of the stream might be reused proxy objects, as
+	 * returned by {@link RealCursor#get()}. Elements that need to be kept must
+	 * be copied.
+	 */
+	public default Stream< T > parallelStream()
+	{
+		return StreamSupport.stream( spliterator(), true );
+	}
 }
@@ -0,0 +1,573 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A spatial index, that supports inserting and removing points, to access
+ * values at RealLocalizable positions.
+ * <p>
+ * The index is a forest of {@link FlatKDTree}s with sizes growing in powers
+ * of two (a logarithmic method): New points are collected in a small buffer,
+ * that is searched exhaustively. When the buffer is full, it is merged with
+ * the trees of the smallest sizes into a new tree. Every point is therefore
+ * rebuilt into a new tree only {@code O(log(size))} times, and a search
+ * visits {@code O(log(size))} trees. Removed points are marked as deleted
+ * and skipped by searches, they are dropped when their tree is merged. When
+ * more than half of the stored points are deleted, all trees are merged.
+ * <p>
+ * Points are identified by the id returned by {@link #insert}. Use
+ * {@link net.imglib2.neighborsearch.NearestNeighborSearchOnKDForest},
+ * {@link net.imglib2.neighborsearch.KNearestNeighborSearchOnKDForest} and
+ * {@link net.imglib2.neighborsearch.RadiusNeighborSearchOnKDForest} to
+ * search. Search results are valid until the forest is modified.
+ * <p>
+ * KDForest is not thread-safe. Concurrent searches are fine, as long as the
+ * forest is not modified.
+ *
+ * @param <T>
+ *            type of values stored in the forest.
+ */
+public class KDForest< T > implements EuclideanSpace
+{
+	/**
+	 * Number of points in the buffer, before it is merged into a tree.
+	 */
+	private static final int BUFFER_CAPACITY = 64;
+
+	/**
+	 * the number of dimensions.
+	 */
+	private final int n;
+
+	/**
+	 * coordinates of the points in the buffer.
+	 */
+	private final double[] bufferPositions;
+
+	/**
+	 * ids of the points in the buffer.
+	 */
+	private final int[] bufferIds;
+
+	/**
+	 * values of the points in the buffer.
+	 */
+	private final Object[] bufferValues;
+
+	private int bufferSize;
+
+	/**
+	 * Level i is either null, or contains a tree of at most BUFFER_CAPACITY *
+	 * 2^i points.
+	 */
+	private final List< Level > levels = new ArrayList<>();
+
+	/**
+	 * The ids of the removed points.
+	 */
+	private final BitSet removed = new BitSet();
+
+	private int nextId;
+
+	/**
+	 * number of points, excluding removed points.
+	 */
+	private int size;
+
+	/**
+	 * number of removed points, that are still stored in the buffer or trees.
+	 */
+	private int numStoredRemoved;
+
+	public KDForest( final int n )
+	{
+		this.n = n;
+		this.bufferPositions = new double[ BUFFER_CAPACITY * n ];
+		this.bufferIds = new int[ BUFFER_CAPACITY ];
+		this.bufferValues = new Object[ BUFFER_CAPACITY ];
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * Get the number of points in the forest.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Insert a point.
+	 *
+	 * @return the id of the point, which is needed to {@link #remove} it.
+	 */
+	public int insert( final RealLocalizable position, final T value )
+	{
+		final double[] p = new double[ n ];
+		position.localize( p );
+		return insert( p, value );
+	}
+
+	/**
+	 * Insert a point.
+	 *
+	 * @return the id of the point, which is needed to {@link #remove} it.
+	 */
+	public int insert( final double[] position, final T value )
+	{
+		if ( nextId == Integer.MAX_VALUE )
+			throw new IllegalStateException( "KDForest: no more ids available." );
+		if ( bufferSize == BUFFER_CAPACITY )
+			mergeBuffer();
+		final int id = nextId++;
+		System.arraycopy( position, 0, bufferPositions, bufferSize * n, n );
+		bufferIds[ bufferSize ] = id;
+		bufferValues[ bufferSize ] = value;
+		++bufferSize;
+		++size;
+		return id;
+	}
+
+	/**
+	 * Remove a point.
+	 *
+	 * @param id
+	 *            the id returned by {@link #insert}.
+	 * @return false if there is no point with this id.
+	 */
+	public boolean remove( final int id )
+	{
+		if ( id < 0 || id >= nextId || removed.get( id ) )
+			return false;
+		removed.set( id );
+		--size;
+		++numStoredRemoved;
+		if ( numStoredRemoved > size && numStoredRemoved > BUFFER_CAPACITY )
+			mergeAll();
+		return true;
+	}
+
+	/**
+	 * Returns true if the forest contains a point with this id.
+	 */
+	public boolean contains( final int id )
+	{
+		return id >= 0 && id < nextId && !removed.get( id );
+	}
+
+	/**
+	 * Returns true if the point with the given id has been removed. Points
+	 * with removed ids may still be stored, and must be skipped by searches.
+	 */
+	private boolean isRemoved( final int id )
+	{
+		return removed.get( id );
+	}
+
+	/**
+	 * Merge the buffer and the smallest trees into a new tree.
+	 */
+	private void mergeBuffer()
+	{
+		final Points points = new Points();
+		points.addBuffer();
+		int level = 0;
+		while ( level < levels.size() && levels.get( level ) != null )
+		{
+			points.addLevel( levels.get( level ) );
+			levels.set( level, null );
+			++level;
+		}
+		setLevel( level, points.toLevel() );
+		bufferSize = 0;
+	}
+
+	/**
+	 * Merge the buffer and all trees into a single tree, dropping all removed
+	 * points.
+	 */
+	private void mergeAll()
+	{
+		final Points points = new Points();
+		points.addBuffer();
+		for ( final Level level : levels )
+			if ( level != null )
+				points.addLevel( level );
+		levels.clear();
+		bufferSize = 0;
+		numStoredRemoved = 0;
+		if ( points.size == 0 )
+			return;
+		int level = 0;
+		while ( ( long ) BUFFER_CAPACITY << level < points.size )
+			++level;
+		setLevel( level, points.toLevel() );
+	}
+
+	private void setLevel( final int level, final Level tree )
+	{
+		while ( levels.size() <= level )
+			levels.add( null );
+		levels.set( level, tree );
+	}
+
+	/**
+	 * Collects the points, that are not removed, from buffer and trees.
+	 */
+	private final class Points
+	{
+		double[] positions = new double[ 16 * n ];
+
+		int[] ids = new int[ 16 ];
+
+		Object[] values = new Object[ 16 ];
+
+		int size = 0;
+
+		void add( final double[] source, final int offset, final int id, final Object value )
+		{
+			if ( isRemoved( id ) )
+			{
+				--numStoredRemoved;
+				return;
+			}
+			if ( size == ids.length )
+			{
+				positions = Arrays.copyOf( positions, 2 * size * n );
+				ids = Arrays.copyOf( ids, 2 * size );
+				values = Arrays.copyOf( values, 2 * size );
+			}
+			System.arraycopy( source, offset, positions, size * n, n );
+			ids[ size ] = id;
+			values[ size ] = value;
+			++size;
+		}
+
+		void addBuffer()
+		{
+			for ( int i = 0; i < bufferSize; ++i )
+				add( bufferPositions, i * n, bufferIds[ i ], bufferValues[ i ] );
+			Arrays.fill( bufferValues, null );
+		}
+
+		void addLevel( final Level level )
+		{
+			for ( int node = 0; node < level.size; ++node )
+				add( level.positions, node * n, level.ids[ node ], level.values[ node ] );
+		}
+
+		Level toLevel()
+		{
+			return size == 0 ? null : new Level( Arrays.copyOf( positions, size * n ), ids, values, size );
+		}
+	}
+
+	/**
+	 * A tree of the forest, with ids and values in tree order.
+	 */
+	private final class Level
+	{
+		final int size;
+
+		final double[] positions;
+
+		final int[] ids;
+
+		final Object[] values;
+
+		Level( final double[] points, final int[] inputIds, final Object[] inputValues, final int size )
+		{
+			final FlatKDTree< Integer > tree = FlatKDTree.withIndexValues( n, points );
+			this.size = size;
+			this.positions = tree.getPositions();
+			this.ids = new int[ size ];
+			this.values = new Object[ size ];
+			for ( int node = 0; node < size; ++node )
+			{
+				final int i = tree.getInputIndex( node );
+				ids[ node ] = inputIds[ i ];
+				values[ node ] = inputValues[ i ];
+			}
+		}
+	}
+
+	// -- searches --
+
+	/**
+	 * Search the k nearest neighbors of a reference coordinate. The results
+	 * are references to points, see {@link #getPoint(long)}.
+	 *
+	 * @param reference
+	 *            the reference coordinate.
+	 * @param k
+	 *            number of neighbors.
+	 * @param points
+	 *            output, references to the points, ordered by distance.
+	 * @param squDistances
+	 *            output, the squared distances to the points.
+	 * @return the number of neighbors found, which is less than k if the
+	 *         forest contains less than k points.
+	 */
+	public int searchNearest( final double[] reference, final int k, final long[] points, final double[] squDistances )
+	{
+		Arrays.fill( points, 0, k, -1 );
+		Arrays.fill( squDistances, 0, k, Double.MAX_VALUE );
+		for ( int i = 0; i < bufferSize; ++i )
+			if ( !isRemoved( bufferIds[ i ] ) )
+				insertNearest( squDistance( bufferPositions, i * n, reference ), reference( -1, i ), k, points, squDistances );
+		for ( int l = 0; l < levels.size(); ++l )
+		{
+			final Level level = levels.get( l );
+			if ( level != null )
+				searchNearest( level, l, 0, 0, reference, k, points, squDistances );
+		}
+		int found = 0;
+		while ( found < k && points[ found ] >= 0 )
+			++found;
+		return found;
+	}
+
+	private void searchNearest( final Level level, final int l, final int node, final int d, final double[] reference, final int k, final long[] points, final double[] squDistances )
+	{
+		final int offset = node * n;
+		if ( !isRemoved( level.ids[ node ] ) )
+			insertNearest( squDistance( level.positions, offset, reference ), reference( l, node ), k, points, squDistances );
+
+		final double axisDiff = reference[ d ] - level.positions[ offset + d ];
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+		final int left = FlatKDTree.leftChild( node );
+		final int nearChild = axisDiff < 0 ? left : left + 1;
+		final int awayChild = axisDiff < 0 ? left + 1 : left;
+		if ( nearChild < level.size )
+			searchNearest( level, l, nearChild, dChild, reference, k, points, squDistances );
+		if ( axisDiff * axisDiff <= squDistances[ k - 1 ] && awayChild < level.size )
+			searchNearest( level, l, awayChild, dChild, reference, k, points, squDistances );
+	}
+
+	private static void insertNearest( final double squDistance, final long point, final int k, final long[] points, final double[] squDistances )
+	{
+		if ( squDistance < squDistances[ k - 1 ] )
+		{
+			int i = k - 1;
+			for ( int j = i - 1; i > 0 && squDistance < squDistances[ j ]; --i, --j )
+			{
+				squDistances[ i ] = squDistances[ j ];
+				points[ i ] = points[ j ];
+			}
+			squDistances[ i ] = squDistance;
+			points[ i ] = point;
+		}
+	}
+
+	/**
+	 * Receives the points found by
+	 * {@link KDForest#searchRadius(double[], double, PointConsumer)}.
+	 */
+	public interface PointConsumer
+	{
+		/**
+		 * @param point
+		 *            reference to the point, see {@link KDForest#getPoint(long)}
+		 * @param squDistance
+		 *            squared distance of the point to the reference coordinate
+		 */
+		void accept( long point, double squDistance );
+	}
+
+	/**
+	 * Search all points within a radius about a reference coordinate. A point
+	 * is considered within radius if its distance to the reference is smaller
+	 * or equal the radius.
+	 */
+	public void searchRadius( final double[] reference, final double radius, final PointConsumer action )
+	{
+		final double squRadius = radius * radius;
+		for ( int i = 0; i < bufferSize; ++i )
+		{
+			if ( isRemoved( bufferIds[ i ] ) )
+				continue;
+			final double squDistance = squDistance( bufferPositions, i * n, reference );
+			if ( squDistance <= squRadius )
+				action.accept( reference( -1, i ), squDistance );
+		}
+		for ( int l = 0; l < levels.size(); ++l )
+		{
+			final Level level = levels.get( l );
+			if ( level != null )
+				searchRadius( level, l, 0, 0, reference, squRadius, action );
+		}
+	}
+
+	private void searchRadius( final Level level, final int l, final int node, final int d, final double[] reference, final double squRadius, final PointConsumer action )
+	{
+		final int offset = node * n;
+		if ( !isRemoved( level.ids[ node ] ) )
+		{
+			final double squDistance = squDistance( level.positions, offset, reference );
+			if ( squDistance <= squRadius )
+				action.accept( reference( l, node ), squDistance );
+		}
+
+		final double axisDiff = reference[ d ] - level.positions[ offset + d ];
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+		final int left = FlatKDTree.leftChild( node );
+		final int nearChild = axisDiff < 0 ? left : left + 1;
+		final int awayChild = axisDiff < 0 ? left + 1 : left;
+		if ( nearChild < level.size )
+			searchRadius( level, l, nearChild, dChild, reference, squRadius, action );
+		if ( axisDiff * axisDiff <= squRadius && awayChild < level.size )
+			searchRadius( level, l, awayChild, dChild, reference, squRadius, action );
+	}
+
+	private double squDistance( final double[] positions, final int offset, final double[] reference )
+	{
+		double sum = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = positions[ offset + d ] - reference[ d ];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	/**
+	 * Encodes the location of a point in buffer (level -1) or trees.
+	 */
+	private static long reference( final int level, final int index )
+	{
+		return ( ( long ) ( level + 1 ) << 32 ) | index;
+	}
+
+	/**
+	 * Get a point found by a search.
+	 *
+	 * @param point
+	 *            reference to the point, as returned by the searches. It is
+	 *            valid until the forest is modified.
+	 */
+	public Point getPoint( final long point )
+	{
+		final int level = ( int ) ( point >>> 32 ) - 1;
+		final int index = ( int ) point;
+		if ( level < 0 )
+			return new Point( bufferPositions, index, bufferIds[ index ], bufferValues[ index ] );
+		final Level tree = levels.get( level );
+		return new Point( tree.positions, index, tree.ids[ index ], tree.values[ index ] );
+	}
+
+	/**
+	 * Provides the position, value and id of a point in the forest.
+	 */
+	public final class Point implements RealLocalizable, Sampler< T >
+	{
+		private final double[] positions;
+
+		private final int offset;
+
+		private final int id;
+
+		private final T value;
+
+		@SuppressWarnings( "unchecked" )
+		private Point( final double[] positions, final int index, final int id, final Object value )
+		{
+			this.positions = positions;
+			this.offset = index * n;
+			this.id = id;
+			this.value = ( T ) value;
+		}
+
+		/**
+		 * Get the id of the point, as returned by {@link KDForest#insert}.
+		 */
+		public int getId()
+		{
+			return id;
+		}
+
+		@Override
+		public int numDimensions()
+		{
+			return n;
+		}
+
+		@Override
+		public void localize( final float[] position )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = ( float ) positions[ offset + d ];
+		}
+
+		@Override
+		public void localize( final double[] position )
+		{
+			System.arraycopy( positions, offset, position, 0, n );
+		}
+
+		@Override
+		public float getFloatPosition( final int d )
+		{
+			return ( float ) positions[ offset + d ];
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return positions[ offset + d ];
+		}
+
+		@Override
+		public T get()
+		{
+			return value;
+		}
+
+		@Override
+		public Point copy()
+		{
+			return this;
+		}
+	}
+}
@@ -37,13 +37,24 @@ package net.imglib2;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
 import net.imglib2.util.KthElement;
 
 /**
  * KDTree to access values at RealLocalizable positions.
+ * <p>
+ * The construction of the tree is parallelized, if the constructor is called
+ * with a multi-threaded {@link TaskExecutor}, for example within
+ * {@link Parallelization#runMultiThreaded(Runnable)}. This requires the
+ * positions to be given as a {@link java.util.RandomAccess} list, or as an
+ * {@link IterableRealInterval}. The resulting tree is the same as for
+ * single-threaded construction.
  *
  * @param <T>
  *            type of values stored in the tree.
@@ -220,7 +231,10 @@ public class KDTree< T > implements EuclideanSpace, IterableRealInterval< T >
 		if ( values == positions )
 		{
 			if ( positions instanceof java.util.RandomAccess )
-				root = makeNode( positions, 0, positions.size() - 1, 0 );
+				root = makeTree( positions.size(),
+						( i, j, k, d ) -> KthElement.kthElement( i, j, k, positions, new DimComparator< L >( d ) ),
+						( i, j, d ) -> makeNode( positions, i, j, d ),
+						( k, d, left, right ) -> new ValueNode< T >( uncheckedCast( positions.get( k ) ), positions.get( k ), d, left, right ) );
 			else
 				root = makeNode( positions.listIterator(), positions.listIterator( positions.size() ), 0 );
 		}
@@ -231,7 +245,10 @@ public class KDTree< T > implements EuclideanSpace, IterableRealInterval< T >
 				permutation[ k ] = k;
 
 			if ( positions instanceof java.util.RandomAccess )
-				root = makeNode( positions, 0, positions.size() - 1, 0, values, permutation );
+				root = makeTree( positions.size(),
+						( i, j, k, d ) -> KthElement.kthElement( i, j, k, positions, permutation, new DimComparator< L >( d ) ),
+						( i, j, d ) -> makeNode( positions, i, j, d, values, permutation ),
+						( k, d, left, right ) -> new ValueNode< T >( values.get( permutation[ k ] ), positions.get( k ), d, left, right ) );
 			else
 				root = makeNode( positions.listIterator(), positions.listIterator( positions.size() ), 0, values, permutation );
 		}
@@ -259,7 +276,10 @@ public class KDTree< T > implements EuclideanSpace, IterableRealInterval< T >
 			cursor.next();
 			values.add( cursor.copyCursor() );
 		}
-		root = makeSamplerNode( values, 0, values.size() - 1, 0 );
+		root = makeTree( values.size(),
+				( i, j, k, d ) -> KthElement.kthElement( i, j, k, values, new DimComparator< RealCursor< T > >( d ) ),
+				( i, j, d ) -> makeSamplerNode( values, i, j, d ),
+				( k, d, left, right ) -> new SamplerNode< T >( values.get( k ), values.get( k ), d, left, right ) );
 	}
 
 	/**
@@ -295,6 +315,112 @@ public class KDTree< T > implements EuclideanSpace, IterableRealInterval< T >
 		}
 	}
 
+	/**
+	 * Minimum number of elements, for which the construction of the tree is
+	 * parallelized.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+	/**
+	 * Construct the tree from a list of {@code size} elements. If the current
+	 * {@link TaskExecutor} is multi-threaded, the top levels of the tree are
+	 * partitioned level by level, with all sublists of a level processed in
+	 * parallel. The subtrees below are constructed in parallel, and finally
+	 * the top nodes are created. Otherwise, {@code subtree} is used to
+	 * construct the whole tree.
+	 *
+	 * @param size
+	 *            number of elements
+	 * @param partition
+	 *            partially sorts a sublist with respect to a dimension, as
+	 *            {@link KthElement#kthElement(int, int, int, List, Comparator)}
+	 * @param subtree
+	 *            constructs the subtree of a sublist, as
+	 *            {@link #makeNode(List, int, int, int)}
+	 * @param node
+	 *            creates the node for element k of a partitioned sublist
+	 * @return the root node
+	 */
+	private < N extends KDTreeNode< T > > N makeTree( final int size, final Partitioner partition, final SubtreeFactory< N > subtree, final NodeFactory< N > node )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final int numTasks = taskExecutor.suggestNumberOfTasks();
+		if ( taskExecutor.getParallelism() <= 1 || size < PARALLEL_THRESHOLD )
+			return subtree.create( 0, size - 1, 0 );
+
+		// partition the top levels, until there are enough subtrees
+		List< int[] > sublists = new ArrayList<>();
+		sublists.add( new int[] { 0, size - 1, 0 } );
+		int levels = 0;
+		while ( sublists.size() < numTasks && !sublists.isEmpty() && sublists.get( 0 )[ 1 ] - sublists.get( 0 )[ 0 ] >= PARALLEL_THRESHOLD )
+		{
+			taskExecutor.forEach( sublists, ijd -> partition.kthElement( ijd[ 0 ], ijd[ 1 ], median( ijd[ 0 ], ijd[ 1 ] ), ijd[ 2 ] ) );
+			final List< int[] > children = new ArrayList<>();
+			for ( final int[] ijd : sublists )
+			{
+				final int k = median( ijd[ 0 ], ijd[ 1 ] );
+				final int dChild = ( ijd[ 2 ] + 1 == n ) ? 0 : ijd[ 2 ] + 1;
+				if ( k - 1 > ijd[ 0 ] )
+					children.add( new int[] { ijd[ 0 ], k - 1, dChild } );
+				if ( ijd[ 1 ] > k + 1 )
+					children.add( new int[] { k + 1, ijd[ 1 ], dChild } );
+			}
+			sublists = children;
+			++levels;
+		}
+
+		// construct the subtrees
+		final List< N > subtrees = taskExecutor.forEachApply( sublists, ijd -> subtree.create( ijd[ 0 ], ijd[ 1 ], ijd[ 2 ] ) );
+		final Map< Integer, N > subtreeByStart = new HashMap<>();
+		for ( int s = 0; s < sublists.size(); ++s )
+			subtreeByStart.put( sublists.get( s )[ 0 ], subtrees.get( s ) );
+
+		return makeTopNodes( 0, size - 1, 0, levels, subtreeByStart, subtree, node );
+	}
+
+	/**
+	 * Create the nodes of the top levels, that have been partitioned by
+	 * {@link #makeTree}.
+	 */
+	private < N extends KDTreeNode< T > > N makeTopNodes( final int i, final int j, final int d, final int levels, final Map< Integer, N > subtreeByStart, final SubtreeFactory< N > subtree, final NodeFactory< N > node )
+	{
+		if ( j <= i )
+			return subtree.create( i, j, d );
+		if ( levels == 0 )
+			return subtreeByStart.get( i );
+		final int k = median( i, j );
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+		final N left = makeTopNodes( i, k - 1, dChild, levels - 1, subtreeByStart, subtree, node );
+		final N right = makeTopNodes( k + 1, j, dChild, levels - 1, subtreeByStart, subtree, node );
+		return node.create( k, d, left, right );
+	}
+
+	private static int median( final int i, final int j )
+	{
+		return i + ( j - i ) / 2;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static < T > T uncheckedCast( final Object o )
+	{
+		return ( T ) o;
+	}
+
+	private interface Partitioner
+	{
+		void kthElement( int i, int j, int k, int d );
+	}
+
+	private interface SubtreeFactory< N >
+	{
+		N create( int i, int j, int d );
+	}
+
+	private interface NodeFactory< N >
+	{
+		N create( int k, int d, N left, N right );
+	}
+
 	/**
 	 * Construct the tree by recursively adding nodes. The sublist of positions
 	 * between indices i and j (inclusive) is split at the median element with
@@ -0,0 +1,437 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * A {@link FlatKDTree} with {@link RealType} values, stored in a file that is
+ * memory-mapped. The tree is queried directly from the mapped file, without
+ * reading it into the Java heap, so that large trees can be opened
+ * instantly, and the operating system shares the pages between processes.
+ * <p>
+ * A tree is saved by {@link #write(FlatKDTree, File)} and opened by
+ * {@link #open(File, RealType)}. The file has the same layout as the
+ * {@link FlatKDTree}: a header (magic number, version, number of dimensions,
+ * number of nodes, bounding box), followed by the coordinates of all nodes,
+ * the input indices of all nodes, and the values of all nodes as
+ * {@code double}, all in tree order and little-endian byte order.
+ * <p>
+ * Use {@link net.imglib2.neighborsearch.NearestNeighborSearchOnMappedKDTree},
+ * {@link net.imglib2.neighborsearch.KNearestNeighborSearchOnMappedKDTree} and
+ * {@link net.imglib2.neighborsearch.RadiusNeighborSearchOnMappedKDTree} to
+ * search.
+ *
+ * @param <T>
+ *            type of values stored in the tree.
+ */
+public class MappedKDTree< T extends RealType< T > > implements EuclideanSpace, RealInterval
+{
+	private static final long MAGIC = 0x4B54444B42494C47L; // "GLIBKDTK"
+
+	private static final int VERSION = 1;
+
+	private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/**
+	 * Every mapped segment holds at most 2^30 bytes.
+	 */
+	private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+	private final int n;
+
+	private final int size;
+
+	private final double[] min;
+
+	private final double[] max;
+
+	private final T type;
+
+	/**
+	 * Node i is in segment {@code i >>> shift}.
+	 */
+	private final int shift;
+
+	private final int mask;
+
+	private final DoubleBuffer[] positions;
+
+	private final IntBuffer[] inputIndices;
+
+	private final DoubleBuffer[] values;
+
+	private MappedKDTree( final int n, final int size, final double[] min, final double[] max, final T type, final int shift, final DoubleBuffer[] positions, final IntBuffer[] inputIndices, final DoubleBuffer[] values )
+	{
+		this.n = n;
+		this.size = size;
+		this.min = min;
+		this.max = max;
+		this.type = type;
+		this.shift = shift;
+		this.mask = ( 1 << shift ) - 1;
+		this.positions = positions;
+		this.inputIndices = inputIndices;
+		this.values = values;
+	}
+
+	/**
+	 * Write a tree to a file that can be opened by
+	 * {@link #open(File, RealType)}. Values are stored as {@code double}.
+	 */
+	public static < T extends RealType< T > > void write( final FlatKDTree< T > tree, final File file ) throws IOException
+	{
+		final int n = tree.numDimensions();
+		final int size = ( int ) tree.size();
+		try (final RandomAccessFile raf = new RandomAccessFile( file, "rw" ))
+		{
+			raf.setLength( 0 );
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocate( 1 << 16 ).order( BYTE_ORDER );
+			buffer.putLong( MAGIC ).putInt( VERSION ).putInt( n ).putLong( size );
+			for ( int d = 0; d < n; ++d )
+				buffer.putDouble( tree.realMin( d ) );
+			for ( int d = 0; d < n; ++d )
+				buffer.putDouble( tree.realMax( d ) );
+			final double[] coordinates = tree.getPositions();
+			for ( int i = 0; i < size * n; ++i )
+				putDouble( channel, buffer, coordinates[ i ] );
+			for ( int i = 0; i < size; ++i )
+			{
+				if ( buffer.remaining() < 4 )
+					flush( channel, buffer );
+				buffer.putInt( tree.getInputIndex( i ) );
+			}
+			if ( size % 2 != 0 )
+				buffer.putInt( 0 ); // align values to 8 bytes
+			for ( int i = 0; i < size; ++i )
+				putDouble( channel, buffer, tree.getValue( i ).getRealDouble() );
+			flush( channel, buffer );
+		}
+	}
+
+	private static void putDouble( final FileChannel channel, final ByteBuffer buffer, final double value ) throws IOException
+	{
+		if ( buffer.remaining() < 8 )
+			flush( channel, buffer );
+		buffer.putDouble( value );
+	}
+
+	private static void flush( final FileChannel channel, final ByteBuffer buffer ) throws IOException
+	{
+		buffer.flip();
+		while ( buffer.hasRemaining() )
+			channel.write( buffer );
+		buffer.clear();
+	}
+
+	/**
+	 * Open a tree written by {@link #write(FlatKDTree, File)}. The file is
+	 * mapped read-only. It stays mapped until the tree is garbage collected.
+	 *
+	 * @param file
+	 *            the file.
+	 * @param type
+	 *            an instance of the value type. The values are converted
+	 *            from {@code double} by {@link RealType#setReal(double)}.
+	 */
+	public static < T extends RealType< T > > MappedKDTree< T > open( final File file, final T type ) throws IOException
+	{
+		try (final RandomAccessFile raf = new RandomAccessFile( file, "r" ))
+		{
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer header = ByteBuffer.allocate( 24 ).order( BYTE_ORDER );
+			readFully( channel, header, 0 );
+			if ( header.getLong() != MAGIC )
+				throw new IOException( "MappedKDTree: " + file + " is not a kd-tree file." );
+			if ( header.getInt() != VERSION )
+				throw new IOException( "MappedKDTree: unsupported file version." );
+			final int n = header.getInt();
+			final long sizeLong = header.getLong();
+			if ( n < 1 || sizeLong < 0 || sizeLong > FlatKDTree.MAX_SIZE )
+				throw new IOException( "MappedKDTree: corrupt header." );
+			final int size = ( int ) sizeLong;
+
+			final ByteBuffer bounds = ByteBuffer.allocate( 16 * n ).order( BYTE_ORDER );
+			readFully( channel, bounds, 24 );
+			final double[] min = new double[ n ];
+			final double[] max = new double[ n ];
+			for ( int d = 0; d < n; ++d )
+				min[ d ] = bounds.getDouble();
+			for ( int d = 0; d < n; ++d )
+				max[ d ] = bounds.getDouble();
+
+			final long positionsOffset = 24 + 16L * n;
+			final long indicesOffset = positionsOffset + 8L * n * size;
+			final long valuesOffset = indicesOffset + 4L * ( size + size % 2 );
+			if ( channel.size() < valuesOffset + 8L * size )
+				throw new IOException( "MappedKDTree: file is truncated." );
+
+			int shift = 30;
+			while ( ( 8L * n << shift ) > MAX_SEGMENT_BYTES )
+				--shift;
+			final int numSegments = Math.max( 1, ( int ) ( ( ( long ) size + ( 1L << shift ) - 1 ) >> shift ) );
+			final DoubleBuffer[] positions = new DoubleBuffer[ numSegments ];
+			final IntBuffer[] inputIndices = new IntBuffer[ numSegments ];
+			final DoubleBuffer[] values = new DoubleBuffer[ numSegments ];
+			for ( int s = 0; s < numSegments; ++s )
+			{
+				final long first = ( long ) s << shift;
+				final long count = Math.min( size - first, 1L << shift );
+				positions[ s ] = map( channel, positionsOffset + 8L * n * first, 8L * n * count ).asDoubleBuffer();
+				inputIndices[ s ] = map( channel, indicesOffset + 4L * first, 4L * count ).asIntBuffer();
+				values[ s ] = map( channel, valuesOffset + 8L * first, 8L * count ).asDoubleBuffer();
+			}
+			return new MappedKDTree<>( n, size, min, max, type.createVariable(), shift, positions, inputIndices, values );
+		}
+	}
+
+	private static void readFully( final FileChannel channel, final ByteBuffer buffer, final long position ) throws IOException
+	{
+		long p = position;
+		while ( buffer.hasRemaining() )
+		{
+			final int read = channel.read( buffer, p );
+			if ( read < 0 )
+				throw new IOException( "MappedKDTree: file is truncated." );
+			p += read;
+		}
+		buffer.flip();
+	}
+
+	private static ByteBuffer map( final FileChannel channel, final long position, final long length ) throws IOException
+	{
+		return channel.map( FileChannel.MapMode.READ_ONLY, position, length ).order( BYTE_ORDER );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * Get the number of nodes.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get a new variable of the value type.
+	 */
+	public T createVariable()
+	{
+		return type.createVariable();
+	}
+
+	/**
+	 * Get the dimension along which node {@code node} splits the space.
+	 */
+	public int getSplitDimension( final int node )
+	{
+		return ( 31 - Integer.numberOfLeadingZeros( node + 1 ) ) % n;
+	}
+
+	/**
+	 * Get coordinate {@code d} of node {@code node}.
+	 */
+	public double getDoublePosition( final int node, final int d )
+	{
+		return positions[ node >>> shift ].get( ( node & mask ) * n + d );
+	}
+
+	/**
+	 * Get the index of node {@code node} in the list (or array) of points the
+	 * tree was originally constructed from.
+	 */
+	public int getInputIndex( final int node )
+	{
+		return inputIndices[ node >>> shift ].get( node & mask );
+	}
+
+	/**
+	 * Get the value of node {@code node}.
+	 */
+	public double getRealDouble( final int node )
+	{
+		return values[ node >>> shift ].get( node & mask );
+	}
+
+	/**
+	 * Compute the squared distance of node {@code node} to {@code p}.
+	 */
+	public double squDistance( final int node, final double[] p )
+	{
+		final DoubleBuffer segment = positions[ node >>> shift ];
+		final int offset = ( node & mask ) * n;
+		double sum = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = segment.get( offset + d ) - p[ d ];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	/**
+	 * Get the node with index {@code node}.
+	 */
+	public Node getNode( final int node )
+	{
+		return new Node( node );
+	}
+
+	@Override
+	public double realMin( final int d )
+	{
+		return min[ d ];
+	}
+
+	@Override
+	public void realMin( final double[] m )
+	{
+		System.arraycopy( min, 0, m, 0, n );
+	}
+
+	@Override
+	public void realMin( final RealPositionable m )
+	{
+		m.setPosition( min );
+	}
+
+	@Override
+	public double realMax( final int d )
+	{
+		return max[ d ];
+	}
+
+	@Override
+	public void realMax( final double[] m )
+	{
+		System.arraycopy( max, 0, m, 0, n );
+	}
+
+	@Override
+	public void realMax( final RealPositionable m )
+	{
+		m.setPosition( max );
+	}
+
+	/**
+	 * Provides the position and the value of a node of the tree.
+	 */
+	public final class Node implements RealLocalizable, Sampler< T >
+	{
+		private final int index;
+
+		private final T value;
+
+		private Node( final int index )
+		{
+			this.index = index;
+			this.value = type.createVariable();
+		}
+
+		/**
+		 * Get the index of the node in the tree.
+		 */
+		public int getIndex()
+		{
+			return index;
+		}
+
+		@Override
+		public int numDimensions()
+		{
+			return n;
+		}
+
+		@Override
+		public void localize( final float[] position )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = ( float ) MappedKDTree.this.getDoublePosition( index, d );
+		}
+
+		@Override
+		public void localize( final double[] position )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = MappedKDTree.this.getDoublePosition( index, d );
+		}
+
+		@Override
+		public float getFloatPosition( final int d )
+		{
+			return ( float ) MappedKDTree.this.getDoublePosition( index, d );
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return MappedKDTree.this.getDoublePosition( index, d );
+		}
+
+		@Override
+		public T get()
+		{
+			value.setReal( getRealDouble( index ) );
+			return value;
+		}
+
+		@Override
+		public Node copy()
+		{
+			return new Node( index );
+		}
+
+		@Override
+		public String toString()
+		{
+			return "node " + index + " | " + get();
+		}
+	}
+}
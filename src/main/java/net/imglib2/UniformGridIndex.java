@@ -0,0 +1,574 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A spatial index to access values at RealLocalizable positions, that sorts
+ * the points into the cells of a uniform grid.
+ * <p>
+ * For fixed-radius searches on roughly uniform point densities, this is
+ * faster than a kd-tree: a radius search only has to check the points in the
+ * few cells overlapping the search sphere. The cell size should be about the
+ * search radius. Nearest neighbor searches check the cells in rings of
+ * increasing distance around the reference, and work well if the typical
+ * nearest neighbor distance is not much larger than the cell size.
+ * <p>
+ * The cells are hashed into a table with about twice as many buckets as
+ * there are points, so empty regions of space don't use memory. The points
+ * are stored in primitive arrays, sorted by bucket.
+ * <p>
+ * Use {@link net.imglib2.neighborsearch.RadiusNeighborSearchOnUniformGrid}
+ * and {@link net.imglib2.neighborsearch.NearestNeighborSearchOnUniformGrid}
+ * to search.
+ *
+ * @param <T>
+ *            type of values stored in the index.
+ */
+public class UniformGridIndex< T > implements EuclideanSpace
+{
+	/**
+	 * the number of dimensions.
+	 */
+	private final int n;
+
+	/**
+	 * the number of points.
+	 */
+	private final int size;
+
+	/**
+	 * edge length of the cells.
+	 */
+	private final double cellSize;
+
+	/**
+	 * the origin of the grid, the minimum of the positions.
+	 */
+	private final double[] origin;
+
+	/**
+	 * the number of cells in each dimension.
+	 */
+	private final long[] gridSize;
+
+	/**
+	 * {@code bucketMask + 1} is the number of buckets, a power of two.
+	 */
+	private final int bucketMask;
+
+	/**
+	 * the points in bucket b are {@code bucketStart[b]} to
+	 * {@code bucketStart[b+1] - 1}.
+	 */
+	private final int[] bucketStart;
+
+	/**
+	 * coordinates of the points, sorted by bucket.
+	 */
+	private final double[] positions;
+
+	/**
+	 * values of the points, sorted by bucket.
+	 */
+	private final List< T > values;
+
+	/**
+	 * indices of the points in the input, sorted by bucket.
+	 */
+	private final int[] inputIndices;
+
+	/**
+	 * Construct a UniformGridIndex from the elements in the given list.
+	 *
+	 * @param values
+	 *            a list of values
+	 * @param positions
+	 *            a list of positions corresponding to the values
+	 * @param cellSize
+	 *            edge length of the grid cells, should be about the radius of
+	 *            the searches.
+	 */
+	public < L extends RealLocalizable > UniformGridIndex( final List< T > values, final List< L > positions, final double cellSize )
+	{
+		this( positions.get( 0 ).numDimensions(), flatten( positions ), values, cellSize );
+	}
+
+	/**
+	 * Construct a UniformGridIndex from the flat coordinates of the points.
+	 *
+	 * @param n
+	 *            number of dimensions.
+	 * @param positions
+	 *            coordinates of the points, the coordinates of point i are
+	 *            stored at indices i * n, ..., i * n + n - 1. The array is not
+	 *            modified.
+	 * @param values
+	 *            values corresponding to the points.
+	 * @param cellSize
+	 *            edge length of the grid cells, should be about the radius of
+	 *            the searches.
+	 */
+	public UniformGridIndex( final int n, final double[] positions, final List< T > values, final double cellSize )
+	{
+		if ( n < 1 )
+			throw new IllegalArgumentException( "UniformGridIndex: number of dimensions must be positive." );
+		if ( !( cellSize > 0 ) )
+			throw new IllegalArgumentException( "UniformGridIndex: cell size must be positive." );
+		if ( positions.length % n != 0 || values.size() != positions.length / n )
+			throw new IllegalArgumentException( "UniformGridIndex: number of values and number of positions differ." );
+		this.n = n;
+		this.size = positions.length / n;
+		this.cellSize = cellSize;
+		this.origin = new double[ n ];
+		this.gridSize = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for ( int i = d; i < positions.length; i += n )
+			{
+				min = Math.min( min, positions[ i ] );
+				max = Math.max( max, positions[ i ] );
+			}
+			origin[ d ] = size == 0 ? 0 : min;
+			gridSize[ d ] = size == 0 ? 1 : ( long ) Math.floor( ( max - min ) / cellSize ) + 1;
+		}
+
+		int numBuckets = 1;
+		while ( numBuckets < 2 * size && numBuckets < 1 << 30 )
+			numBuckets <<= 1;
+		this.bucketMask = numBuckets - 1;
+
+		// counting sort of the points by bucket
+		final int[] buckets = new int[ size ];
+		final long[] cell = new long[ n ];
+		this.bucketStart = new int[ numBuckets + 1 ];
+		for ( int i = 0; i < size; ++i )
+		{
+			for ( int d = 0; d < n; ++d )
+				cell[ d ] = cellCoordinate( positions[ i * n + d ], d );
+			buckets[ i ] = bucket( cell );
+			++bucketStart[ buckets[ i ] + 1 ];
+		}
+		for ( int b = 0; b < numBuckets; ++b )
+			bucketStart[ b + 1 ] += bucketStart[ b ];
+		final int[] next = new int[ numBuckets ];
+		System.arraycopy( bucketStart, 0, next, 0, numBuckets );
+		this.positions = new double[ positions.length ];
+		this.inputIndices = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+		{
+			final int j = next[ buckets[ i ] ]++;
+			System.arraycopy( positions, i * n, this.positions, j * n, n );
+			inputIndices[ j ] = i;
+		}
+		final List< T > input = ( values instanceof java.util.RandomAccess ) ? values : new ArrayList<>( values );
+		this.values = new ArrayList<>( size );
+		for ( int j = 0; j < size; ++j )
+			this.values.add( input.get( inputIndices[ j ] ) );
+	}
+
+	private static < L extends RealLocalizable > double[] flatten( final List< L > positions )
+	{
+		final int n = positions.get( 0 ).numDimensions();
+		final double[] points = new double[ positions.size() * n ];
+		final double[] position = new double[ n ];
+		int i = 0;
+		for ( final L p : positions )
+		{
+			p.localize( position );
+			System.arraycopy( position, 0, points, i, n );
+			i += n;
+		}
+		return points;
+	}
+
+	private long cellCoordinate( final double x, final int d )
+	{
+		return ( long ) Math.floor( ( x - origin[ d ] ) / cellSize );
+	}
+
+	private int bucket( final long[] cell )
+	{
+		long h = 0;
+		for ( int d = 0; d < n; ++d )
+			h = h * 0x9E3779B97F4A7C15L + cell[ d ];
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		h ^= h >>> 32;
+		return ( int ) h & bucketMask;
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * Get the number of points.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get the edge length of the grid cells.
+	 */
+	public double getCellSize()
+	{
+		return cellSize;
+	}
+
+	/**
+	 * Receives the points found by
+	 * {@link UniformGridIndex#searchRadius(double[], double, PointConsumer)}.
+	 */
+	public interface PointConsumer
+	{
+		/**
+		 * @param point
+		 *            index of the point, see {@link UniformGridIndex#getPoint(int)}
+		 * @param squDistance
+		 *            squared distance of the point to the reference coordinate
+		 */
+		void accept( int point, double squDistance );
+	}
+
+	/**
+	 * Search all points within a radius about a reference coordinate, in
+	 * arbitrary order. A point is considered within radius if its distance
+	 * to the reference is smaller or equal the radius.
+	 */
+	public void searchRadius( final double[] reference, final double radius, final PointConsumer action )
+	{
+		final double squRadius = radius * radius;
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = Math.max( 0, cellCoordinate( reference[ d ] - radius, d ) );
+			max[ d ] = Math.min( gridSize[ d ] - 1, cellCoordinate( reference[ d ] + radius, d ) );
+			if ( min[ d ] > max[ d ] )
+				return;
+		}
+		final long[] cell = min.clone();
+		while ( true )
+		{
+			final int b = bucket( cell );
+			for ( int i = bucketStart[ b ]; i < bucketStart[ b + 1 ]; ++i )
+			{
+				if ( !isInCell( i, cell ) )
+					continue;
+				final double squDistance = squDistance( i, reference );
+				if ( squDistance <= squRadius )
+					action.accept( i, squDistance );
+			}
+			if ( !nextCell( cell, min, max ) )
+				return;
+		}
+	}
+
+	/**
+	 * Search the nearest neighbor of a reference coordinate. The cells are
+	 * searched in rings of increasing (maximum norm) distance around the
+	 * cell of the reference, starting with the first ring that overlaps the
+	 * grid, until no closer points can be found. If the cells of the next
+	 * ring, together with the cells visited so far, outnumber the points, all
+	 * points are checked instead. So a search never does more work than an
+	 * exhaustive search, even if the reference lies in a large empty region.
+	 *
+	 * @param squDistance
+	 *            output, {@code squDistance[0]} is set to the squared distance
+	 *            of the nearest neighbor.
+	 * @return index of the nearest neighbor (see {@link #getPoint(int)}), or
+	 *         -1 if the index is empty.
+	 */
+	public int searchNearest( final double[] reference, final double[] squDistance )
+	{
+		int best = -1;
+		double bestSquDistance = Double.MAX_VALUE;
+		if ( size == 0 )
+		{
+			squDistance[ 0 ] = bestSquDistance;
+			return best;
+		}
+		final long[] center = new long[ n ];
+		long firstRing = 0;
+		long maxRing = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			center[ d ] = cellCoordinate( reference[ d ], d );
+			firstRing = Math.max( firstRing, Math.max( -center[ d ], center[ d ] - ( gridSize[ d ] - 1 ) ) );
+			maxRing = Math.max( maxRing, Math.max( Math.abs( center[ d ] ), Math.abs( gridSize[ d ] - 1 - center[ d ] ) ) );
+		}
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		final long[] cell = new long[ n ];
+		double visitedCells = 0;
+		for ( long ring = firstRing; ring <= maxRing; ++ring )
+		{
+			// points in the cells of this ring and beyond are at least
+			// (ring - 1) * cellSize away.
+			final double ringDistance = ( ring - 1 ) * cellSize;
+			if ( ring > 0 && ringDistance * ringDistance >= bestSquDistance )
+				break;
+
+			final double ringCells = boxVolume( center, ring ) - boxVolume( center, ring - 1 );
+			if ( visitedCells + ringCells > size )
+			{
+				// checking all points is cheaper than visiting the cells
+				for ( int i = 0; i < size; ++i )
+				{
+					final double s = squDistance( i, reference );
+					if ( s < bestSquDistance )
+					{
+						bestSquDistance = s;
+						best = i;
+					}
+				}
+				break;
+			}
+			visitedCells += ringCells;
+
+			// the outer layer of the ring box is enumerated as 2n faces.
+			// face (d, side) contains the cells with cell[d] = center[d] +/- ring,
+			// the ranges of dimensions < d exclude the faces visited before.
+			for ( int d = 0; d < n; ++d )
+			{
+				for ( int side = -1; side <= 1; side += 2 )
+				{
+					if ( ring == 0 && side == 1 )
+						break;
+					if ( !ringFace( center, ring, d, side, min, max ) )
+						continue;
+					System.arraycopy( min, 0, cell, 0, n );
+					do
+					{
+						final int b = bucket( cell );
+						for ( int i = bucketStart[ b ]; i < bucketStart[ b + 1 ]; ++i )
+						{
+							if ( !isInCell( i, cell ) )
+								continue;
+							final double s = squDistance( i, reference );
+							if ( s < bestSquDistance )
+							{
+								bestSquDistance = s;
+								best = i;
+							}
+						}
+					}
+					while ( nextCell( cell, min, max ) );
+				}
+			}
+		}
+		squDistance[ 0 ] = bestSquDistance;
+		return best;
+	}
+
+	/**
+	 * Number of grid cells with maximum norm distance {@code <= ring} from
+	 * center.
+	 */
+	private double boxVolume( final long[] center, final long ring )
+	{
+		if ( ring < 0 )
+			return 0;
+		double volume = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			final long lo = Math.max( 0, center[ d ] - ring );
+			final long hi = Math.min( gridSize[ d ] - 1, center[ d ] + ring );
+			if ( lo > hi )
+				return 0;
+			volume *= hi - lo + 1;
+		}
+		return volume;
+	}
+
+	/**
+	 * Set min and max to the bounds of the face of the ring in dimension d on
+	 * the given side (-1 or 1), clipped to the grid. Cells on faces of
+	 * dimensions smaller than d are excluded. Returns false, if the clipped
+	 * face is empty.
+	 */
+	private boolean ringFace( final long[] center, final long ring, final int d, final int side, final long[] min, final long[] max )
+	{
+		for ( int e = 0; e < n; ++e )
+		{
+			if ( e == d )
+				min[ e ] = max[ e ] = center[ e ] + side * ring;
+			else
+			{
+				final long r = e < d ? ring - 1 : ring;
+				min[ e ] = center[ e ] - r;
+				max[ e ] = center[ e ] + r;
+			}
+			min[ e ] = Math.max( 0, min[ e ] );
+			max[ e ] = Math.min( gridSize[ e ] - 1, max[ e ] );
+			if ( min[ e ] > max[ e ] )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Advance to the next cell in the box from min to max. Returns false, if
+	 * the last cell has been reached.
+	 */
+	private boolean nextCell( final long[] cell, final long[] min, final long[] max )
+	{
+		for ( int d = 0; d < n; ++d )
+		{
+			if ( cell[ d ] < max[ d ] )
+			{
+				++cell[ d ];
+				return true;
+			}
+			cell[ d ] = min[ d ];
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if point i is in the given cell. Other cells may be hashed
+	 * into the same bucket.
+	 */
+	private boolean isInCell( final int i, final long[] cell )
+	{
+		for ( int d = 0; d < n; ++d )
+			if ( cellCoordinate( positions[ i * n + d ], d ) != cell[ d ] )
+				return false;
+		return true;
+	}
+
+	private double squDistance( final int i, final double[] reference )
+	{
+		double sum = 0;
+		final int offset = i * n;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = positions[ offset + d ] - reference[ d ];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	/**
+	 * Get the index of the point in the list (or array) of points given to
+	 * the constructor.
+	 */
+	public int getInputIndex( final int point )
+	{
+		return inputIndices[ point ];
+	}
+
+	/**
+	 * Get a point found by a search.
+	 */
+	public Point getPoint( final int point )
+	{
+		return new Point( point );
+	}
+
+	/**
+	 * Provides the position and the value of a point in the index.
+	 */
+	public final class Point implements RealLocalizable, Sampler< T >
+	{
+		private final int index;
+
+		private Point( final int index )
+		{
+			this.index = index;
+		}
+
+		/**
+		 * Get the index of the point in the list (or array) of points given
+		 * to the constructor.
+		 */
+		public int getInputIndex()
+		{
+			return inputIndices[ index ];
+		}
+
+		@Override
+		public int numDimensions()
+		{
+			return n;
+		}
+
+		@Override
+		public void localize( final float[] position )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = ( float ) positions[ index * n + d ];
+		}
+
+		@Override
+		public void localize( final double[] position )
+		{
+			System.arraycopy( positions, index * n, position, 0, n );
+		}
+
+		@Override
+		public float getFloatPosition( final int d )
+		{
+			return ( float ) positions[ index * n + d ];
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return positions[ index * n + d ];
+		}
+
+		@Override
+		public T get()
+		{
+			return values.get( index );
+		}
+
+		@Override
+		public Point copy()
+		{
+			return this;
+		}
+	}
+}
@@ -40,6 +40,7 @@ import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.converter.Converter;
+import net.imglib2.loops.ClassCopyProvider;
 import net.imglib2.view.RandomAccessibleIntervalCursor;
 import net.imglib2.view.Views;
 
@@ -63,6 +64,8 @@ import net.imglib2.view.Views;
  */
 public class IterableIntervalProjector2D< A, B > extends AbstractProjector2D
 {
+	private static final ClassCopyProvider< Runnable > loops = new ClassCopyProvider<>( ConvertingLoop.class, Runnable.class );
+
 	final protected Converter< ? super A, B > converter;
 
 	final protected RandomAccessible< A > source;
@@ -122,10 +125,12 @@ public class IterableIntervalProjector2D< A, B > extends AbstractProjector2D
 
 		if ( target.iterationOrder().equals( ii.iterationOrder() ) && !( sourceCursor instanceof RandomAccessibleIntervalCursor ) )
 		{
-			final Cursor< B > targetCursor = target.cursor();
-			while ( targetCursor.hasNext() )
+			// use a copy of the loop, specialized for cursors, converter and types
+			if ( target.size() > 0 )
 			{
-				converter.convert( sourceCursor.next(), targetCursor.next() );
+				final Cursor< B > targetCursor = target.cursor();
+				final Object key = ClassCopyProvider.classesOf( sourceCursor, targetCursor, converter, ii.firstElement(), target.firstElement() );
+				loops.newInstanceForKey( key, sourceCursor, targetCursor, converter ).run();
 			}
 		}
 		else if ( target.iterationOrder() instanceof FlatIterationOrder )
@@ -174,4 +179,32 @@ public class IterableIntervalProjector2D< A, B > extends AbstractProjector2D
 			}
 		}
 	}
+
+	/**
+	 * Loop that converts the values of a source cursor into the values of a
+	 * target cursor. This class is public because it is copied by
+	 * {@link ClassCopyProvider}, it's not intended to be used elsewhere.
+	 */
+	public static class ConvertingLoop< A, B > implements Runnable
+	{
+		private final Cursor< A > sourceCursor;
+
+		private final Cursor< B > targetCursor;
+
+		private final Converter< ? super A, B > converter;
+
+		public ConvertingLoop( final Cursor< A > sourceCursor, final Cursor< B > targetCursor, final Converter< ? super A, B > converter )
+		{
+			this.sourceCursor = sourceCursor;
+			this.targetCursor = targetCursor;
+			this.converter = converter;
+		}
+
+		@Override
+		public void run()
+		{
+			while ( targetCursor.hasNext() )
+				converter.convert( sourceCursor.next(), targetCursor.next() );
+		}
+	}
 }
@@ -40,6 +40,7 @@ import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converter;
+import net.imglib2.loops.ClassCopyProvider;
 
 /**
  * A general 2D Projector that uses two dimensions as input to create the 2D
@@ -66,6 +67,8 @@ import net.imglib2.converter.Converter;
 public class RandomAccessibleProjector2D< A, B > extends AbstractProjector2D
 {
 
+	private static final ClassCopyProvider< Runnable > loops = new ClassCopyProvider<>( ConvertingLoop.class, Runnable.class );
+
 	final protected Converter< ? super A, B > converter;
 
 	final protected RandomAccessibleInterval< B > target;
@@ -121,29 +124,72 @@ public class RandomAccessibleProjector2D< A, B > extends AbstractProjector2D
 		max[ dimY ] = target.max( dimY );
 		final FinalInterval sourceInterval = new FinalInterval( min, max );
 
-		final long cr = -target.dimension( dimX );
-
 		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
 		final RandomAccess< A > sourceRandomAccess = source.randomAccess( sourceInterval );
 
 		final long width = target.dimension( dimX );
 		final long height = target.dimension( dimY );
+		if ( width == 0 || height == 0 )
+			return;
 
 		sourceRandomAccess.setPosition( min );
 		targetRandomAccess.setPosition( min[ dimX ], dimX );
 		targetRandomAccess.setPosition( min[ dimY ], dimY );
-		for ( long y = 0; y < height; ++y )
+
+		// use a copy of the loop, specialized for random accesses, converter and types
+		final Object key = ClassCopyProvider.classesOf( sourceRandomAccess, targetRandomAccess, converter, sourceRandomAccess.get(), targetRandomAccess.get() );
+		loops.newInstanceForKey( key, sourceRandomAccess, targetRandomAccess, converter, dimX, dimY, width, height ).run();
+	}
+
+	/**
+	 * Loop that converts a plane of a source random access into a plane of a
+	 * target random access. This class is public because it is copied by
+	 * {@link ClassCopyProvider}, it's not intended to be used elsewhere.
+	 */
+	public static class ConvertingLoop< A, B > implements Runnable
+	{
+		private final RandomAccess< A > sourceRandomAccess;
+
+		private final RandomAccess< B > targetRandomAccess;
+
+		private final Converter< ? super A, B > converter;
+
+		private final int dimX;
+
+		private final int dimY;
+
+		private final long width;
+
+		private final long height;
+
+		public ConvertingLoop( final RandomAccess< A > sourceRandomAccess, final RandomAccess< B > targetRandomAccess, final Converter< ? super A, B > converter, final int dimX, final int dimY, final long width, final long height )
+		{
+			this.sourceRandomAccess = sourceRandomAccess;
+			this.targetRandomAccess = targetRandomAccess;
+			this.converter = converter;
+			this.dimX = dimX;
+			this.dimY = dimY;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public void run()
 		{
-			for ( long x = 0; x < width; ++x )
+			final long cr = -width;
+			for ( long y = 0; y < height; ++y )
 			{
-				converter.convert( sourceRandomAccess.get(), targetRandomAccess.get() );
-				sourceRandomAccess.fwd( dimX );
-				targetRandomAccess.fwd( dimX );
+				for ( long x = 0; x < width; ++x )
+				{
+					converter.convert( sourceRandomAccess.get(), targetRandomAccess.get() );
+					sourceRandomAccess.fwd( dimX );
+					targetRandomAccess.fwd( dimX );
+				}
+				sourceRandomAccess.move( cr, dimX );
+				targetRandomAccess.move( cr, dimX );
+				sourceRandomAccess.fwd( dimY );
+				targetRandomAccess.fwd( dimY );
 			}
-			sourceRandomAccess.move( cr, dimX );
-			targetRandomAccess.move( cr, dimX );
-			sourceRandomAccess.fwd( dimY );
-			targetRandomAccess.fwd( dimY );
 		}
 	}
 }
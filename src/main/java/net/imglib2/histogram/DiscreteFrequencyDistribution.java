@@ -35,6 +35,8 @@
 package net.imglib2.histogram;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -45,24 +47,55 @@ import net.imglib2.RandomAccess;
 import net.imglib2.RealPositionable;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
-import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.view.Views;
 
 /**
  * This class represents an n-dimensional set of counters. Histogram
  * implementations use these for tracking value counts.
+ * <p>
+ * If the counts are stored in an {@link ArrayImg}, which is the case if the
+ * number of bins fits into an array, they are updated by direct indexing into
+ * the underlying {@code long[]}. Otherwise a {@link RandomAccess} is used.
+ * <p>
+ * Alternatively, the counts can be stored sparsely in a hash map from bin
+ * index to count, see {@link #DiscreteFrequencyDistribution(long[], boolean)}.
+ * This allows for distributions with a huge number of bins, for example joint
+ * histograms of many channels, of which only few are non-zero.
  *
  * @author Barry DeZonia
  */
 public class DiscreteFrequencyDistribution implements Img< LongType >
 {
 
+	// -- static variables --
+
+	private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
 	// -- instance variables --
 
 	private final Img< LongType > counts;
 
 	private final RandomAccess< LongType > accessor;
 
+	/**
+	 * The counts in flat iteration order, if they are stored in a
+	 * {@code long[]}, otherwise null.
+	 */
+	private final long[] flatCounts;
+
+	/**
+	 * The counts, if they are stored sparsely, otherwise null.
+	 */
+	private final SparseCountsImg sparseCounts;
+
+	private final long[] dims;
+
 	private long totalValues;
 
 	// -- public api --
@@ -71,6 +104,18 @@ public class DiscreteFrequencyDistribution implements Img< LongType >
 	 * Construct an n-dimensional counter with the given number of bins
 	 */
 	public DiscreteFrequencyDistribution( final long[] binCounts )
+	{
+		this( binCounts, false );
+	}
+
+	/**
+	 * Construct an n-dimensional counter with the given number of bins. If
+	 * {@code sparse} is true, only bins with non-zero counts use memory. Then,
+	 * as an {@link Img}, the distribution is a read-only view, and iterating
+	 * over it visits all bins, including the empty ones. Use
+	 * {@link #forEachNonZeroBin(BinConsumer)} to visit only the counted bins.
+	 */
+	public DiscreteFrequencyDistribution( final long[] binCounts, final boolean sparse )
 	{
 		// check inputs for issues
 
@@ -81,10 +126,32 @@ public class DiscreteFrequencyDistribution implements Img< LongType >
 
 		// then build object
 
-		counts = new ArrayImgFactory<>( new LongType() ).create( binCounts );
+		long size = 1;
+		for ( int i = 0; i < binCounts.length; i++ )
+			size = ( size <= MAX_ARRAY_SIZE / binCounts[ i ] ) ? size * binCounts[ i ] : MAX_ARRAY_SIZE + 1;
+		if ( sparse )
+		{
+			flatCounts = null;
+			sparseCounts = new SparseCountsImg( binCounts );
+			counts = sparseCounts;
+		}
+		else if ( size <= MAX_ARRAY_SIZE )
+		{
+			flatCounts = new long[ ( int ) size ];
+			sparseCounts = null;
+			counts = ArrayImgs.longs( flatCounts, binCounts );
+		}
+		else
+		{
+			flatCounts = null;
+			sparseCounts = null;
+			counts = new CellImgFactory<>( new LongType() ).create( binCounts );
+		}
 
 		accessor = counts.randomAccess();
 
+		dims = binCounts.clone();
+
 		totalValues = 0;
 	}
 
@@ -96,18 +163,51 @@ public class DiscreteFrequencyDistribution implements Img< LongType >
 	{
 		counts = img;
 		accessor = counts.randomAccess();
+		flatCounts = storageArray( img );
+		sparseCounts = ( img instanceof SparseCountsImg ) ? ( SparseCountsImg ) img : null;
+		dims = new long[ img.numDimensions() ];
+		img.dimensions( dims );
 		resetCounters();
 	}
 
+	private static long[] storageArray( final Img< LongType > img )
+	{
+		if ( img instanceof ArrayImg )
+		{
+			final Object access = ( ( ArrayImg< ?, ? > ) img ).update( null );
+			if ( access instanceof LongArray )
+				return ( ( LongArray ) access ).getCurrentStorageArray();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the index of the given bin in {@link #flatCounts}.
+	 */
+	private int flatIndex( final long[] binPos )
+	{
+		long index = 0;
+		for ( int i = dims.length - 1; i >= 0; i-- )
+			index = index * dims[ i ] + binPos[ i ];
+		return ( int ) index;
+	}
+
 	/**
 	 * Resets all frequency counts to zero.
 	 */
 	public void resetCounters()
 	{
-		final Cursor< LongType > cursor = counts.cursor();
-		while ( cursor.hasNext() )
+		if ( flatCounts != null )
+			Arrays.fill( flatCounts, 0 );
+		else if ( sparseCounts != null )
+			sparseCounts.clear();
+		else
 		{
-			cursor.next().setZero();
+			final Cursor< LongType > cursor = counts.cursor();
+			while ( cursor.hasNext() )
+			{
+				cursor.next().setZero();
+			}
 		}
 		totalValues = 0;
 	}
@@ -122,6 +222,10 @@ public class DiscreteFrequencyDistribution implements Img< LongType >
 			if ( binPos[ i ] < 0 || binPos[ i ] >= dimension( i ) )
 				return 0;
 		}
+		if ( flatCounts != null )
+			return flatCounts[ flatIndex( binPos ) ];
+		if ( sparseCounts != null )
+			return sparseCounts.get( sparseCounts.flatIndex( binPos ) );
 		accessor.setPosition( binPos );
 		return accessor.get().get();
 	}
@@ -132,6 +236,20 @@ public class DiscreteFrequencyDistribution implements Img< LongType >
 	public void setFrequency( final long[] binPos, final long value )
 	{
 		if ( value < 0 ) { throw new IllegalArgumentException( "frequency count must be >= 0" ); }
+		if ( flatCounts != null )
+		{
+			final int index = flatIndex( binPos );
+			totalValues += ( value - flatCounts[ index ] );
+			flatCounts[ index ] = value;
+			return;
+		}
+		if ( sparseCounts != null )
+		{
+			final long index = sparseCounts.flatIndex( binPos );
+			totalValues += ( value - sparseCounts.get( index ) );
+			sparseCounts.add( index, value - sparseCounts.get( index ) );
+			return;
+		}
 		accessor.setPosition( binPos );
 		final long currentValue = accessor.get().get();
 		totalValues += ( value - currentValue );
@@ -153,8 +271,15 @@ public class DiscreteFrequencyDistribution implements Img< LongType >
 	 */
 	public void increment( final long[] binPos )
 	{
-		accessor.setPosition( binPos );
-		accessor.get().inc();
+		if ( flatCounts != null )
+			flatCounts[ flatIndex( binPos ) ]++;
+		else if ( sparseCounts != null )
+			sparseCounts.add( sparseCounts.flatIndex( binPos ), 1 );
+		else
+		{
+			accessor.setPosition( binPos );
+			accessor.get().inc();
+		}
 		totalValues++;
 	}
 
@@ -163,11 +288,184 @@ public class DiscreteFrequencyDistribution implements Img< LongType >
 	 */
 	public void decrement( final long[] binPos )
 	{
-		accessor.setPosition( binPos );
-		accessor.get().dec();
+		if ( flatCounts != null )
+			flatCounts[ flatIndex( binPos ) ]--;
+		else if ( sparseCounts != null )
+			sparseCounts.add( sparseCounts.flatIndex( binPos ), -1 );
+		else
+		{
+			accessor.setPosition( binPos );
+			accessor.get().dec();
+		}
 		totalValues--;
 	}
 
+	/**
+	 * Adds the given counts to the frequency counts of all bins. The counts
+	 * are given in flat iteration order of the bins.
+	 */
+	public void addFrequencies( final long[] binCounts )
+	{
+		modifyFrequencies( binCounts, 1 );
+	}
+
+	/**
+	 * Subtracts the given counts from the frequency counts of all bins. The
+	 * counts are given in flat iteration order of the bins.
+	 */
+	public void subtractFrequencies( final long[] binCounts )
+	{
+		modifyFrequencies( binCounts, -1 );
+	}
+
+	/**
+	 * Adds the frequency counts of another distribution with the same number
+	 * of bins. Only the bins of {@code other} with non-zero counts are
+	 * visited, see {@link #forEachNonZeroBin(BinConsumer)}, which makes this
+	 * efficient for sparse distributions.
+	 */
+	public void addFrequencies( final DiscreteFrequencyDistribution other )
+	{
+		modifyFrequencies( other, 1 );
+	}
+
+	/**
+	 * Subtracts the frequency counts of another distribution with the same
+	 * number of bins.
+	 *
+	 * @see #addFrequencies(DiscreteFrequencyDistribution)
+	 */
+	public void subtractFrequencies( final DiscreteFrequencyDistribution other )
+	{
+		modifyFrequencies( other, -1 );
+	}
+
+	private void modifyFrequencies( final DiscreteFrequencyDistribution other, final long sign )
+	{
+		if ( !Arrays.equals( dims, other.dims ) )
+			throw new IllegalArgumentException( "distributions must have the same number of bins" );
+		other.forEachNonZeroBin( ( binPos, count ) -> modifyFrequency( binPos, sign * count ) );
+	}
+
+	private void modifyFrequency( final long[] binPos, final long delta )
+	{
+		if ( flatCounts != null )
+			flatCounts[ flatIndex( binPos ) ] += delta;
+		else if ( sparseCounts != null )
+			sparseCounts.add( sparseCounts.flatIndex( binPos ), delta );
+		else
+		{
+			accessor.setPosition( binPos );
+			final LongType count = accessor.get();
+			count.set( count.get() + delta );
+		}
+		totalValues += delta;
+	}
+
+	/**
+	 * Returns true if the counts are stored sparsely.
+	 */
+	boolean isSparse()
+	{
+		return sparseCounts != null;
+	}
+
+	private void modifyFrequencies( final long[] binCounts, final long sign )
+	{
+		if ( binCounts.length != counts.size() )
+			throw new IllegalArgumentException( "number of counts must equal the number of bins" );
+		long sum = 0;
+		if ( flatCounts != null )
+		{
+			for ( int i = 0; i < binCounts.length; i++ )
+			{
+				flatCounts[ i ] += sign * binCounts[ i ];
+				sum += binCounts[ i ];
+			}
+			totalValues += sign * sum;
+			return;
+		}
+		if ( sparseCounts != null )
+		{
+			for ( int i = 0; i < binCounts.length; i++ )
+			{
+				if ( binCounts[ i ] != 0 )
+					sparseCounts.add( i, sign * binCounts[ i ] );
+				sum += binCounts[ i ];
+			}
+			totalValues += sign * sum;
+			return;
+		}
+		final Cursor< LongType > cursor = Views.flatIterable( counts ).cursor();
+		for ( int i = 0; i < binCounts.length; i++ )
+		{
+			final LongType count = cursor.next();
+			count.set( count.get() + sign * binCounts[ i ] );
+			sum += binCounts[ i ];
+		}
+		totalValues += sign * sum;
+	}
+
+	/**
+	 * Receives the bins visited by
+	 * {@link DiscreteFrequencyDistribution#forEachNonZeroBin(BinConsumer)}.
+	 */
+	public interface BinConsumer
+	{
+		/**
+		 * @param binPos
+		 *            the position of the bin. The array is reused for all
+		 *            bins, it must not be modified or kept.
+		 * @param count
+		 *            the frequency count of the bin.
+		 */
+		void accept( long[] binPos, long count );
+	}
+
+	/**
+	 * Calls {@code action} for every bin with a non-zero frequency count. For
+	 * sparse distributions only the counted bins are visited, instead of all
+	 * bins.
+	 */
+	public void forEachNonZeroBin( final BinConsumer action )
+	{
+		final long[] binPos = new long[ numDimensions() ];
+		if ( flatCounts != null )
+		{
+			for ( int i = 0; i < flatCounts.length; i++ )
+			{
+				if ( flatCounts[ i ] != 0 )
+				{
+					IntervalIndexer.indexToPosition( i, dims, binPos );
+					action.accept( binPos, flatCounts[ i ] );
+				}
+			}
+		}
+		else if ( sparseCounts != null )
+		{
+			sparseCounts.forEachEntry( ( index, count ) -> {
+				if ( count != 0 )
+				{
+					IntervalIndexer.indexToPosition( index, dims, binPos );
+					action.accept( binPos, count );
+				}
+			} );
+		}
+		else
+		{
+			final Cursor< LongType > cursor = counts.localizingCursor();
+			while ( cursor.hasNext() )
+			{
+				final long count = cursor.next().get();
+				if ( count != 0 )
+				{
+					cursor.localize( binPos );
+					action.accept( binPos, count );
+				}
+			}
+		}
+	}
+
 	/**
 	 * Returns the total number of values counted by this distribution.
 	 */
@@ -192,6 +490,47 @@ public class DiscreteFrequencyDistribution implements Img< LongType >
 	{
 		long commonValue = 0;
 		final List< long[] > modePositions = new ArrayList< long[] >();
+		if ( flatCounts != null )
+		{
+			for ( int i = 0; i < flatCounts.length; i++ )
+			{
+				final long val = flatCounts[ i ];
+				if ( val > commonValue )
+				{
+					commonValue = val;
+					modePositions.clear();
+				}
+				if ( val == commonValue )
+				{
+					final long[] pos = new long[ numDimensions() ];
+					IntervalIndexer.indexToPosition( i, dims, pos );
+					modePositions.add( pos );
+				}
+			}
+			return modePositions;
+		}
+		if ( sparseCounts != null )
+		{
+			// unless all bins are empty, the modes are among the counted bins
+			final long[] maxCount = { 0 };
+			sparseCounts.forEachEntry( ( index, count ) -> maxCount[ 0 ] = Math.max( maxCount[ 0 ], count ) );
+			if ( maxCount[ 0 ] > 0 )
+			{
+				final List< Long > indices = new ArrayList< Long >();
+				sparseCounts.forEachEntry( ( index, count ) -> {
+					if ( count == maxCount[ 0 ] )
+						indices.add( index );
+				} );
+				Collections.sort( indices );
+				for ( final long index : indices )
+				{
+					final long[] pos = new long[ numDimensions() ];
+					IntervalIndexer.indexToPosition( index, dims, pos );
+					modePositions.add( pos );
+				}
+				return modePositions;
+			}
+		}
 		final Cursor< LongType > cursor = localizingCursor();
 		while ( cursor.hasNext() )
 		{
@@ -34,15 +34,23 @@
 
 package net.imglib2.histogram;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongSupplier;
 
 import net.imglib2.Cursor;
 import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
 import net.imglib2.Positionable;
 import net.imglib2.RandomAccess;
 import net.imglib2.RealPositionable;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
+import net.imglib2.loops.ClassCopyProvider;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
 import net.imglib2.type.numeric.integer.LongType;
 
 /**
@@ -59,6 +67,26 @@ import net.imglib2.type.numeric.integer.LongType;
 public class Histogram1d< T > implements Img< LongType >
 {
 
+	// -- static variables --
+
+	private static final ClassCopyProvider< LongSupplier > counters = new ClassCopyProvider<>( CountingLoop.class, LongSupplier.class,
+			Histogram1d.class, BinMapper1d.class, Iterator.class, boolean.class );
+
+	private static final ClassCopyProvider< Runnable > chunkCounters = new ClassCopyProvider<>( ChunkCountingLoop.class, Runnable.class,
+			BinMapper1d.class, Cursor.class, long.class, long[].class );
+
+	/**
+	 * {@link IterableInterval}s with at least this many values are counted in
+	 * parallel.
+	 */
+	static final long PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Histograms with more bins are always counted sequentially, to bound the
+	 * memory used by the per task counts.
+	 */
+	static final long MAX_PARALLEL_BIN_COUNT = 1 << 24;
+
 	// -- instance variables --
 
 	private T firstValue;
@@ -735,33 +763,216 @@ public class Histogram1d< T > implements Img< LongType >
 		reset();
 
 		// record the first element
-		final Iterator<T> iter = data.iterator();
-		if ( iter.hasNext() )
+		firstValue = count( data, false );
+	}
+
+	private void add( final Iterable< T > data )
+	{
+		count( data, false );
+	}
+
+	private void subtract( final Iterable< T > data )
+	{
+		count( data, true );
+	}
+
+	/**
+	 * Counts the data with a copy of {@link CountingLoop}, that is specialized
+	 * for the iterator, the bin mapper and the type of the values. This keeps
+	 * the calls in the loop monomorphic, even if histograms are used for many
+	 * kinds of data. The data is iterated only once, unless it is an
+	 * {@link IterableInterval}, which may be counted from its primitive arrays
+	 * or in parallel.
+	 *
+	 * @return the first element of the data, or null if it is empty.
+	 */
+	private T count( final Iterable< T > data, final boolean subtract )
+	{
+		if ( data instanceof IterableInterval )
 		{
-			firstValue = iter.next();
-			increment( firstValue );
+			final IterableInterval< T > interval = ( IterableInterval< T > ) data;
+			if ( interval.size() == 0 )
+				return null;
+			if ( countPrimitives( data, subtract ) || countInParallel( interval, subtract ) )
+				return interval.firstElement();
 		}
+		final Iterator< T > iter = data.iterator();
+		if ( !iter.hasNext() )
+			return null;
+		// the first element gives the class of the values, count it here,
+		// such that the loop continues with the same iterator
+		final T first = iter.next();
+		final Object key = ClassCopyProvider.classesOf( iter, mapper, first );
+		if ( subtract )
+			decrement( first );
+		else
+			increment( first );
+		final long ignored = counters.newInstanceForKey( key, this, mapper, iter, subtract ).getAsLong();
+		ignoredCount += subtract ? -ignored : ignored;
+		return first;
+	}
+
+	/**
+	 * Counts {@link net.imglib2.type.numeric.integer.UnsignedByteType},
+	 * {@link net.imglib2.type.numeric.integer.UnsignedShortType} and
+	 * {@link net.imglib2.type.numeric.real.FloatType} images directly from
+	 * their primitive arrays, see {@link PrimitiveCounting}. Returns false,
+	 * without counting anything, if the data is not supported.
+	 */
+	private boolean countPrimitives( final Iterable< T > data, final boolean subtract )
+	{
+		final int binCount = ( int ) Math.min( mapper.getBinCount(), MAX_PARALLEL_BIN_COUNT + 1 );
+		if ( binCount > MAX_PARALLEL_BIN_COUNT || distrib.size() != binCount )
+			return false;
+		final long[] bins = PrimitiveCounting.count( data, mapper, binCount );
+		if ( bins == null )
+			return false;
+		addBins( bins, subtract );
+		return true;
+	}
+
+	/**
+	 * Counts the data in parallel, using the {@link TaskExecutor} returned by
+	 * {@link Parallelization#getTaskExecutor()}. Every task counts a chunk of
+	 * the data into its own {@code long[]} bins, which are added to the
+	 * distribution afterwards. Returns false, without counting anything, if
+	 * the executor is single-threaded, or the data too small, or there are too
+	 * many bins.
+	 */
+	private boolean countInParallel( final IterableInterval< T > data, final boolean subtract )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final long size = data.size();
+		final int binCount = ( int ) Math.min( mapper.getBinCount(), MAX_PARALLEL_BIN_COUNT + 1 );
+		if ( taskExecutor.getParallelism() <= 1 || size < PARALLEL_THRESHOLD || binCount > MAX_PARALLEL_BIN_COUNT || distrib.size() != binCount )
+			return false;
 
-		// record the rest of the elements
-		while ( iter.hasNext() )
+		final int numTasks = ( int ) Math.min( taskExecutor.suggestNumberOfTasks(), size / ( PARALLEL_THRESHOLD / 4 ) );
+		final List< long[] > chunks = new ArrayList<>( numTasks );
+		for ( int i = 0; i < numTasks; ++i )
 		{
-			increment ( iter.next() );
+			final long start = size * i / numTasks;
+			chunks.add( new long[] { start, size * ( i + 1 ) / numTasks - start } );
 		}
+		final Object key = ClassCopyProvider.classesOf( data.cursor(), mapper, data.firstElement() );
+		final List< long[] > results = taskExecutor.forEachApply( chunks, chunk -> {
+			// the last element counts the ignored values
+			final long[] bins = new long[ binCount + 1 ];
+			final Cursor< T > cursor = data.cursor();
+			cursor.jumpFwd( chunk[ 0 ] );
+			chunkCounters.newInstanceForKey( key, mapper.copy(), cursor, chunk[ 1 ], bins ).run();
+			return bins;
+		} );
+
+		final long[] sum = new long[ binCount + 1 ];
+		for ( final long[] bins : results )
+			for ( int i = 0; i <= binCount; ++i )
+				sum[ i ] += bins[ i ];
+		addBins( sum, subtract );
+		return true;
 	}
 
-	private void add( final Iterable< T > data )
+	/**
+	 * Adds (or subtracts) bin counts to the distribution. The last element of
+	 * the given array counts the ignored values.
+	 */
+	void addBins( final long[] bins, final boolean subtract )
 	{
-		for ( final T value : data )
+		final int binCount = bins.length - 1;
+		final long ignored = bins[ binCount ];
+		if ( subtract )
 		{
-			increment( value );
+			distrib.subtractFrequencies( Arrays.copyOf( bins, binCount ) );
+			ignoredCount -= ignored;
+		}
+		else
+		{
+			distrib.addFrequencies( Arrays.copyOf( bins, binCount ) );
+			ignoredCount += ignored;
 		}
 	}
 
-	private void subtract( final Iterable< T > data )
+	/**
+	 * The loop that counts values. Returns the number of ignored values.
+	 * <p>
+	 * Only for internal use by {@link Histogram1d}. This class is public
+	 * because it is copied by {@link ClassCopyProvider}.
+	 */
+	public static class CountingLoop< T > implements LongSupplier
 	{
-		for ( final T value : data )
+
+		private final Histogram1d< T > histogram;
+
+		private final BinMapper1d< T > mapper;
+
+		private final Iterator< T > iter;
+
+		private final boolean subtract;
+
+		public CountingLoop( final Histogram1d< T > histogram, final BinMapper1d< T > mapper, final Iterator< T > iter, final boolean subtract )
+		{
+			this.histogram = histogram;
+			this.mapper = mapper;
+			this.iter = iter;
+			this.subtract = subtract;
+		}
+
+		@Override
+		public long getAsLong()
+		{
+			long ignored = 0;
+			while ( iter.hasNext() )
+			{
+				final long bin = mapper.map( iter.next() );
+				if ( bin == Long.MIN_VALUE || bin == Long.MAX_VALUE )
+					ignored++;
+				else if ( subtract )
+					histogram.decrement( bin );
+				else
+					histogram.increment( bin );
+			}
+			return ignored;
+		}
+	}
+
+	/**
+	 * The loop that counts a chunk of values into a {@code long[]}. The last
+	 * element of the array counts the ignored values.
+	 * <p>
+	 * Only for internal use by {@link Histogram1d}. This class is public
+	 * because it is copied by {@link ClassCopyProvider}.
+	 */
+	public static class ChunkCountingLoop< T > implements Runnable
+	{
+
+		private final BinMapper1d< T > mapper;
+
+		private final Cursor< T > cursor;
+
+		private final long count;
+
+		private final long[] bins;
+
+		public ChunkCountingLoop( final BinMapper1d< T > mapper, final Cursor< T > cursor, final long count, final long[] bins )
+		{
+			this.mapper = mapper;
+			this.cursor = cursor;
+			this.count = count;
+			this.bins = bins;
+		}
+
+		@Override
+		public void run()
 		{
-			decrement( value );
+			final int ignoredIndex = bins.length - 1;
+			for ( long i = 0; i < count; i++ )
+			{
+				final long bin = mapper.map( cursor.next() );
+				if ( bin == Long.MIN_VALUE || bin == Long.MAX_VALUE )
+					bins[ ignoredIndex ]++;
+				else
+					bins[ ( int ) bin ]++;
+			}
 		}
 	}
 
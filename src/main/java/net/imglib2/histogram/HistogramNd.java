@@ -37,14 +37,20 @@ package net.imglib2.histogram;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import net.imglib2.Cursor;
 import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
 import net.imglib2.Positionable;
 import net.imglib2.RandomAccess;
 import net.imglib2.RealPositionable;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
 import net.imglib2.type.numeric.integer.LongType;
 
 // TODO - calculate lazily but should be able to count upper/lower/middle in
@@ -90,6 +96,24 @@ public class HistogramNd< T > implements Img< LongType >
 	 *            The algorithms used to map values to bins
 	 */
 	public HistogramNd( final List< BinMapper1d< T >> mappers )
+	{
+		this( mappers, false );
+	}
+
+	/**
+	 * Construct a histogram from a list of bin mapping algorithms. Use
+	 * countData() to populate it. If {@code sparse} is true, the counts are
+	 * stored in a hash map, such that only bins with non-zero counts use
+	 * memory. This makes histograms with many dimensions feasible, for example
+	 * joint intensity histograms of multi-channel images. See
+	 * {@link DiscreteFrequencyDistribution#DiscreteFrequencyDistribution(long[], boolean)}.
+	 * 
+	 * @param mappers
+	 *            The algorithms used to map values to bins
+	 * @param sparse
+	 *            Whether to store the counts sparsely
+	 */
+	public HistogramNd( final List< BinMapper1d< T >> mappers, final boolean sparse )
 	{
 		this.mappers = mappers;
 		final long[] dims = new long[ mappers.size() ];
@@ -97,7 +121,7 @@ public class HistogramNd< T > implements Img< LongType >
 		{
 			dims[ i ] = mappers.get( i ).getBinCount();
 		}
-		distrib = new DiscreteFrequencyDistribution( dims );
+		distrib = new DiscreteFrequencyDistribution( dims, sparse );
 		pos = new long[ mappers.size() ];
 		ignoredCount = 0;
 	}
@@ -187,17 +211,7 @@ public class HistogramNd< T > implements Img< LongType >
 	{
 		if ( !hasTails( dim ) )
 			return 0;
-		long sum = 0;
-		final Cursor< ? > cursor = distrib.localizingCursor();
-		final long[] binPos = new long[ distrib.numDimensions() ];
-		while ( cursor.hasNext() )
-		{
-			cursor.next();
-			cursor.localize( binPos );
-			if ( binPos[ dim ] == 0 )
-				sum += distrib.frequency( binPos );
-		}
-		return sum;
+		return sumFrequencies( binPos -> binPos[ dim ] == 0 );
 	}
 
 	/**
@@ -207,23 +221,14 @@ public class HistogramNd< T > implements Img< LongType >
 	{
 		if ( !hasTails() )
 			return 0;
-		long sum = 0;
-		final Cursor< ? > cursor = distrib.localizingCursor();
-		final long[] binPos = new long[ distrib.numDimensions() ];
-		while ( cursor.hasNext() )
-		{
-			cursor.next();
-			cursor.localize( binPos );
+		return sumFrequencies( binPos -> {
 			for ( int i = 0; i < mappers.size(); i++ )
 			{
 				if ( binPos[ i ] == 0 )
-				{
-					sum += distrib.frequency( binPos );
-					break;
-				}
+					return true;
 			}
-		}
-		return sum;
+			return false;
+		} );
 	}
 
 	/**
@@ -235,17 +240,7 @@ public class HistogramNd< T > implements Img< LongType >
 		if ( !hasTails( dim ) )
 			return 0;
 		final long dimSize = mappers.get( dim ).getBinCount();
-		long sum = 0;
-		final Cursor< ? > cursor = distrib.localizingCursor();
-		final long[] binPos = new long[ distrib.numDimensions() ];
-		while ( cursor.hasNext() )
-		{
-			cursor.next();
-			cursor.localize( binPos );
-			if ( binPos[ dim ] == dimSize - 1 )
-				sum += distrib.frequency( binPos );
-		}
-		return sum;
+		return sumFrequencies( binPos -> binPos[ dim ] == dimSize - 1 );
 	}
 
 	/**
@@ -255,23 +250,14 @@ public class HistogramNd< T > implements Img< LongType >
 	{
 		if ( !hasTails() )
 			return 0;
-		long sum = 0;
-		final Cursor< ? > cursor = distrib.localizingCursor();
-		final long[] binPos = new long[ distrib.numDimensions() ];
-		while ( cursor.hasNext() )
-		{
-			cursor.next();
-			cursor.localize( binPos );
+		return sumFrequencies( binPos -> {
 			for ( int i = 0; i < mappers.size(); i++ )
 			{
 				if ( binPos[ i ] == mappers.get( i ).getBinCount() - 1 )
-				{
-					sum += distrib.frequency( binPos );
-					break;
-				}
+					return true;
 			}
-		}
-		return sum;
+			return false;
+		} );
 	}
 
 	/**
@@ -282,22 +268,10 @@ public class HistogramNd< T > implements Img< LongType >
 	{
 		final boolean hasTails = hasTails( dim );
 		final long dimSize = mappers.get( dim ).getBinCount();
-		long sum = 0;
-		final Cursor< ? > cursor = distrib.localizingCursor();
-		final long[] binPos = new long[ distrib.numDimensions() ];
-		while ( cursor.hasNext() )
-		{
-			cursor.next();
-			cursor.localize( binPos );
-			boolean inTail = false;
-			if ( hasTails && ( binPos[ dim ] == 0 ) || ( binPos[ dim ] == dimSize - 1 ) )
-			{
-				inTail = true;
-			}
-			if ( !inTail )
-				sum += distrib.frequency( binPos );
-		}
-		return sum;
+		return sumFrequencies( binPos -> {
+			final boolean inTail = hasTails && ( binPos[ dim ] == 0 ) || ( binPos[ dim ] == dimSize - 1 );
+			return !inTail;
+		} );
 	}
 
 	/**
@@ -311,26 +285,14 @@ public class HistogramNd< T > implements Img< LongType >
 		// But this double counts some tail bins.
 		if ( !hasTails() )
 			return distributionCount();
-		long sum = 0;
-		final Cursor< ? > cursor = distrib.localizingCursor();
-		final long[] binPos = new long[ distrib.numDimensions() ];
-		while ( cursor.hasNext() )
-		{
-			cursor.next();
-			cursor.localize( binPos );
-			boolean inTail = false;
+		return sumFrequencies( binPos -> {
 			for ( int i = 0; i < binPos.length; i++ )
 			{
 				if ( ( binPos[ i ] == 0 ) || ( binPos[ i ] == mappers.get( i ).getBinCount() - 1 ) )
-				{
-					inTail = true;
-					break;
-				}
+					return false;
 			}
-			if ( !inTail )
-				sum += distrib.frequency( binPos );
-		}
-		return sum;
+			return true;
+		} );
 	}
 
 	/**
@@ -340,18 +302,7 @@ public class HistogramNd< T > implements Img< LongType >
 	 */
 	public long distributionCount( final int dim, final long dimVal )
 	{
-		long sum = 0;
-		final Cursor< ? > cursor = distrib.localizingCursor();
-		final long[] binPos = new long[ distrib.numDimensions() ];
-		while ( cursor.hasNext() )
-		{
-			cursor.next();
-			cursor.localize( binPos );
-			if ( binPos[ dim ] != dimVal )
-				continue;
-			sum += distrib.frequency( binPos );
-		}
-		return sum;
+		return sumFrequencies( binPos -> binPos[ dim ] == dimVal );
 	}
 
 	/**
@@ -1042,22 +993,161 @@ public class HistogramNd< T > implements Img< LongType >
 
 	private void add( final Iterable< List< T >> data )
 	{
-		modifyCounts( data, incrementer );
+		if ( !countInParallel( data, false ) )
+			modifyCounts( data, incrementer );
 	}
 
 	private void add( final List< Iterable< T >> data )
 	{
-		modifyCounts( data, incrementer );
+		if ( !countInParallel( data, false ) )
+			modifyCounts( data, incrementer );
 	}
 
 	private void subtract( final Iterable< List< T >> data )
 	{
-		modifyCounts( data, decrementer );
+		if ( !countInParallel( data, true ) )
+			modifyCounts( data, decrementer );
 	}
 
 	private void subtract( final List< Iterable< T >> data )
 	{
-		modifyCounts( data, decrementer );
+		if ( !countInParallel( data, true ) )
+			modifyCounts( data, decrementer );
+	}
+
+	/**
+	 * Counts the data in parallel if it is an {@link IterableInterval}, see
+	 * {@link #countInParallel(long, LongFunction, boolean)}.
+	 */
+	private boolean countInParallel( final Iterable< List< T >> data, final boolean subtract )
+	{
+		if ( !( data instanceof IterableInterval ) )
+			return false;
+		final IterableInterval< List< T >> interval = ( IterableInterval< List< T >> ) data;
+		return countInParallel( interval.size(), start -> {
+			final Cursor< List< T >> cursor = interval.cursor();
+			cursor.jumpFwd( start );
+			return cursor::next;
+		}, subtract );
+	}
+
+	/**
+	 * Counts the data in parallel if all sources are {@link IterableInterval}s,
+	 * see {@link #countInParallel(long, LongFunction, boolean)}. As in
+	 * {@link #modifyCounts(List, Counter)} the n-th values of the sources are
+	 * counted together, until the smallest source is exhausted.
+	 */
+	private boolean countInParallel( final List< Iterable< T >> data, final boolean subtract )
+	{
+		if ( data.isEmpty() )
+			return false;
+		final List< IterableInterval< T >> intervals = new ArrayList<>( data.size() );
+		long size = Long.MAX_VALUE;
+		for ( final Iterable< T > source : data )
+		{
+			if ( !( source instanceof IterableInterval ) )
+				return false;
+			final IterableInterval< T > interval = ( IterableInterval< T > ) source;
+			intervals.add( interval );
+			size = Math.min( size, interval.size() );
+		}
+		return countInParallel( size, start -> {
+			final List< Cursor< T >> cursors = new ArrayList<>( intervals.size() );
+			final List< T > vals = new ArrayList<>( intervals.size() );
+			for ( final IterableInterval< T > interval : intervals )
+			{
+				final Cursor< T > cursor = interval.cursor();
+				cursor.jumpFwd( start );
+				cursors.add( cursor );
+				vals.add( null );
+			}
+			return () -> {
+				for ( int i = 0; i < cursors.size(); i++ )
+					vals.set( i, cursors.get( i ).next() );
+				return vals;
+			};
+		}, subtract );
+	}
+
+	/**
+	 * Counts the data in parallel, using the {@link TaskExecutor} returned by
+	 * {@link Parallelization#getTaskExecutor()}. Every task counts a chunk of
+	 * the data into its own {@link DiscreteFrequencyDistribution}, dense or
+	 * sparse like the histogram, which are added to the histogram afterwards.
+	 * Returns false, without counting anything, if the executor is
+	 * single-threaded, or the data too small, or a dense histogram has too
+	 * many bins.
+	 * 
+	 * @param size
+	 *            The number of values to count
+	 * @param values
+	 *            Returns, for a start index, a supplier of the consecutive
+	 *            values from that index on
+	 */
+	private boolean countInParallel( final long size, final LongFunction< Supplier< List< T >>> values, final boolean subtract )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final boolean sparse = distrib.isSparse();
+		if ( taskExecutor.getParallelism() <= 1 || size < Histogram1d.PARALLEL_THRESHOLD || ( !sparse && distrib.size() > Histogram1d.MAX_PARALLEL_BIN_COUNT ) )
+			return false;
+
+		final int numTasks = ( int ) Math.min( taskExecutor.suggestNumberOfTasks(), size / ( Histogram1d.PARALLEL_THRESHOLD / 4 ) );
+		final List< long[] > chunks = new ArrayList<>( numTasks );
+		for ( int i = 0; i < numTasks; ++i )
+		{
+			final long start = size * i / numTasks;
+			chunks.add( new long[] { start, size * ( i + 1 ) / numTasks - start } );
+		}
+		final long[] dims = new long[ distrib.numDimensions() ];
+		distrib.dimensions( dims );
+		final List< ChunkCounts > results = taskExecutor.forEachApply( chunks, chunk -> {
+			final List< BinMapper1d< T >> mappersCopy = new ArrayList<>( mappers.size() );
+			for ( final BinMapper1d< T > mapper : mappers )
+				mappersCopy.add( mapper.copy() );
+			final ChunkCounts counts = new ChunkCounts( new DiscreteFrequencyDistribution( dims, sparse ) );
+			final long[] binPos = new long[ mappersCopy.size() ];
+			final Supplier< List< T >> next = values.apply( chunk[ 0 ] );
+			for ( long i = 0; i < chunk[ 1 ]; ++i )
+			{
+				if ( mapToBin( mappersCopy, next.get(), binPos ) )
+					counts.distrib.increment( binPos );
+				else
+					counts.ignored++;
+			}
+			return counts;
+		} );
+
+		for ( final ChunkCounts counts : results )
+		{
+			if ( subtract )
+			{
+				distrib.subtractFrequencies( counts.distrib );
+				ignoredCount -= counts.ignored;
+			}
+			else
+			{
+				distrib.addFrequencies( counts.distrib );
+				ignoredCount += counts.ignored;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The counts of one chunk of data, see
+	 * {@link #countInParallel(long, LongFunction, boolean)}.
+	 */
+	private static class ChunkCounts
+	{
+
+		private final DiscreteFrequencyDistribution distrib;
+
+		private long ignored;
+
+		private ChunkCounts( final DiscreteFrequencyDistribution distrib )
+		{
+			this.distrib = distrib;
+		}
 	}
 
 	private void modifyCounts( final Iterable< List< T >> data, final Counter counter )
@@ -1098,19 +1188,38 @@ public class HistogramNd< T > implements Img< LongType >
 		while ( hasNext );
 	}
 
+	/**
+	 * Returns the sum of the frequency counts of the bins that match the given
+	 * predicate. Only bins with non-zero counts are tested.
+	 */
+	private long sumFrequencies( final Predicate< long[] > inBin )
+	{
+		final long[] sum = { 0 };
+		distrib.forEachNonZeroBin( ( binPos, count ) -> {
+			if ( inBin.test( binPos ) )
+				sum[ 0 ] += count;
+		} );
+		return sum[ 0 ];
+	}
+
 	private void count( final List< T > values, final Counter counter )
 	{
-		map( values, pos );
-		boolean ignored = false;
-		for ( int i = 0; i < pos.length; i++ )
+		counter.count( pos, !mapToBin( mappers, values, pos ) );
+	}
+
+	/**
+	 * Maps the values to a bin position. Returns false if any of the values
+	 * is outside the bins, in which case it is ignored.
+	 */
+	private static < T > boolean mapToBin( final List< BinMapper1d< T >> mappers, final List< T > values, final long[] binPos )
+	{
+		for ( int i = 0; i < mappers.size(); i++ )
 		{
-			if ( pos[ i ] == Long.MIN_VALUE || pos[ i ] == Long.MAX_VALUE )
-			{
-				ignored = true;
-				break;
-			}
+			binPos[ i ] = mappers.get( i ).map( values.get( i ) );
+			if ( binPos[ i ] == Long.MIN_VALUE || binPos[ i ] == Long.MAX_VALUE )
+				return false;
 		}
-		counter.count( pos, ignored );
+		return true;
 	}
 
 	private interface Counter
@@ -201,6 +201,27 @@ public class Integer1dBinMapper< T extends IntegerType< T >> implements
 		return new Integer1dBinMapper< T >( minVal, bins, tailBins );
 	}
 
+	/**
+	 * Two mappers are equal if they are of the same class and map values to
+	 * the same bins.
+	 */
+	@Override
+	public boolean equals( final Object obj )
+	{
+		if ( obj == null || obj.getClass() != getClass() )
+			return false;
+		final Integer1dBinMapper< ? > other = ( Integer1dBinMapper< ? > ) obj;
+		return minVal == other.minVal && bins == other.bins && tailBins == other.tailBins;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int result = Long.hashCode( minVal );
+		result = 31 * result + Long.hashCode( bins );
+		return 31 * result + Boolean.hashCode( tailBins );
+	}
+
 	/**
 	 * This is a convenience method for creating a {@link HistogramNd} from
 	 * inputs that describe a set of integer 1-d based bin mappers. The inputs
@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.loops.LineLoopBuilder;
+import net.imglib2.loops.LineLoopBuilder.LineConsumer;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+
+/**
+ * Counts images into {@code long[]} bins by reading the primitive arrays that
+ * store the pixels, rather than calling {@link BinMapper1d#map} for every
+ * pixel.
+ * <p>
+ * For {@link UnsignedByteType} and {@link UnsignedShortType} the bin mapper is
+ * evaluated once for each of the 256 or 65536 possible values, and the
+ * resulting lookup table is used to count the raw {@code byte[]} or
+ * {@code short[]} lines. This works for any {@link BinMapper1d}. For
+ * {@link FloatType} and a {@link Real1dBinMapper}, the {@code float[]} lines
+ * are mapped with {@link Real1dBinMapper#map(double)}.
+ * <p>
+ * The images must be {@link ArrayImg}s, {@link PlanarImg}s or
+ * {@link AbstractCellImg}s, as required by {@link LineLoopBuilder}. The lines
+ * are counted in parallel chunks, using the
+ * {@link Parallelization#getTaskExecutor() current task executor}, every
+ * chunk counts into its own bins.
+ */
+final class PrimitiveCounting
+{
+
+	/**
+	 * Number of copies of the bins used by the lookup table loops. Runs of
+	 * equal values, e.g. the background of an image, would otherwise
+	 * serialize on incrementing the same bin.
+	 */
+	private static final int LUT_COPIES = 4;
+
+	private PrimitiveCounting()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * Counts the data, if it is supported.
+	 *
+	 * @return the counts of the bins, with an additional last element that
+	 *         counts the ignored values, or {@code null} if the data is not
+	 *         supported. Nothing is counted in this case.
+	 */
+	@SuppressWarnings( "unchecked" )
+	static < T > long[] count( final Iterable< T > data, final BinMapper1d< T > mapper, final int binCount )
+	{
+		if ( !( data instanceof ArrayImg || data instanceof PlanarImg || data instanceof AbstractCellImg ) )
+			return null;
+		final RandomAccessibleInterval< T > image = ( RandomAccessibleInterval< T > ) data;
+		final Object type = Util.getTypeFromInterval( image );
+		final long size = Intervals.numElements( image );
+		if ( type.getClass() == UnsignedByteType.class )
+		{
+			final int[] lut = lookupTable( ( BinMapper1d< UnsignedByteType > ) mapper, new UnsignedByteType(), 1 << 8, binCount );
+			final int stride = binCount + 1;
+			return PrimitiveCounting.< byte[] >countLines( image, binCount, LUT_COPIES, bins -> ( final byte[] a, final int offset, final int length ) -> {
+				final int end = offset + length;
+				int i = offset;
+				for ( ; i + 3 < end; i += 4 )
+				{
+					++bins[ lut[ a[ i ] & 0xff ] ];
+					++bins[ stride + lut[ a[ i + 1 ] & 0xff ] ];
+					++bins[ 2 * stride + lut[ a[ i + 2 ] & 0xff ] ];
+					++bins[ 3 * stride + lut[ a[ i + 3 ] & 0xff ] ];
+				}
+				for ( ; i < end; ++i )
+					++bins[ lut[ a[ i ] & 0xff ] ];
+			} );
+		}
+		if ( type.getClass() == UnsignedShortType.class && size >= 1 << 16 )
+		{
+			final int[] lut = lookupTable( ( BinMapper1d< UnsignedShortType > ) mapper, new UnsignedShortType(), 1 << 16, binCount );
+			final int stride = binCount + 1;
+			return PrimitiveCounting.< short[] >countLines( image, binCount, LUT_COPIES, bins -> ( final short[] a, final int offset, final int length ) -> {
+				final int end = offset + length;
+				int i = offset;
+				for ( ; i + 3 < end; i += 4 )
+				{
+					++bins[ lut[ a[ i ] & 0xffff ] ];
+					++bins[ stride + lut[ a[ i + 1 ] & 0xffff ] ];
+					++bins[ 2 * stride + lut[ a[ i + 2 ] & 0xffff ] ];
+					++bins[ 3 * stride + lut[ a[ i + 3 ] & 0xffff ] ];
+				}
+				for ( ; i < end; ++i )
+					++bins[ lut[ a[ i ] & 0xffff ] ];
+			} );
+		}
+		if ( type.getClass() == FloatType.class && mapper.getClass() == Real1dBinMapper.class )
+		{
+			final Real1dBinMapper< ? > realMapper = ( Real1dBinMapper< ? > ) mapper;
+			return PrimitiveCounting.< float[] >countLines( image, binCount, 1, bins -> ( final float[] a, final int offset, final int length ) -> {
+				for ( int i = offset; i < offset + length; ++i )
+				{
+					final long bin = realMapper.map( a[ i ] );
+					++bins[ bin == Long.MIN_VALUE || bin == Long.MAX_VALUE ? binCount : ( int ) bin ];
+				}
+			} );
+		}
+		return null;
+	}
+
+	/**
+	 * Evaluates the bin mapper for all values {@code 0 ... numValues - 1}.
+	 * Ignored values map to {@code binCount}.
+	 */
+	private static < T extends IntegerType< T > > int[] lookupTable( final BinMapper1d< T > mapper, final T value, final int numValues, final int binCount )
+	{
+		final int[] lut = new int[ numValues ];
+		for ( int i = 0; i < numValues; ++i )
+		{
+			value.setInteger( i );
+			final long bin = mapper.map( value );
+			lut[ i ] = bin == Long.MIN_VALUE || bin == Long.MAX_VALUE ? binCount : ( int ) bin;
+		}
+		return lut;
+	}
+
+	/**
+	 * Splits the image into chunks of lines, that are counted in parallel by
+	 * the counters created by the given function, and sums up their bins.
+	 * Every counter gets its own {@code copies} consecutive copies of the
+	 * {@code binCount + 1} bins.
+	 */
+	private static < A > long[] countLines( final RandomAccessibleInterval< ? > image, final int binCount, final int copies, final Function< long[], LineConsumer< A > > counters )
+	{
+		final LineLoopBuilder< LineConsumer< ? > > loop = LineLoopBuilder.setImages( image );
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final long size = Intervals.numElements( image );
+		final long numTasks = Math.min( size, taskExecutor.suggestNumberOfTasks() );
+		final List< long[] > chunks = new ArrayList<>();
+		for ( long i = 0; i < numTasks; i++ )
+			chunks.add( new long[] { size * i / numTasks, size * ( i + 1 ) / numTasks } );
+		final List< long[] > allBins = taskExecutor.forEachApply( chunks, chunk -> {
+			final long[] bins = new long[ copies * ( binCount + 1 ) ];
+			loop.forEachLine( chunk[ 0 ], chunk[ 1 ], counters.apply( bins ) );
+			return bins;
+		} );
+
+		final long[] sum = new long[ binCount + 1 ];
+		for ( final long[] bins : allBins )
+			for ( int i = 0; i < bins.length; ++i )
+				sum[ i % ( binCount + 1 ) ] += bins[ i ];
+		return sum;
+	}
+}
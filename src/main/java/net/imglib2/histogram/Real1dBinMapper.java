@@ -115,7 +115,16 @@ public class Real1dBinMapper< T extends RealType< T >> implements BinMapper1d< T
 	@Override
 	public long map( final T value )
 	{
-		final double val = value.getRealDouble();
+		return map( value.getRealDouble() );
+	}
+
+	/**
+	 * Maps a primitive value to a bin position, exactly as {@link #map(RealType)}
+	 * maps a value of type {@code T}. Returns {@link Long#MIN_VALUE} or
+	 * {@link Long#MAX_VALUE} if the value does not map to any bin.
+	 */
+	public long map( final double val )
+	{
 		long pos;
 		if ( val >= minVal && val <= maxVal )
 		{
@@ -199,6 +208,29 @@ public class Real1dBinMapper< T extends RealType< T >> implements BinMapper1d< T
 		return new Real1dBinMapper< T >( minVal, maxVal, bins, tailBins );
 	}
 
+	/**
+	 * Two mappers are equal if they are of the same class and map values to
+	 * the same bins.
+	 */
+	@Override
+	public boolean equals( final Object obj )
+	{
+		if ( obj == null || obj.getClass() != getClass() )
+			return false;
+		final Real1dBinMapper< ? > other = ( Real1dBinMapper< ? > ) obj;
+		return Double.compare( minVal, other.minVal ) == 0 && Double.compare( maxVal, other.maxVal ) == 0
+				&& bins == other.bins && tailBins == other.tailBins;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int result = Double.hashCode( minVal );
+		result = 31 * result + Double.hashCode( maxVal );
+		result = 31 * result + Long.hashCode( bins );
+		return 31 * result + Boolean.hashCode( tailBins );
+	}
+
 	/**
 	 * This is a convenience method for creating a {@link HistogramNd} from
 	 * inputs that describe a set of real 1-d based bin mappers. The inputs
@@ -0,0 +1,371 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.histogram;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.iterator.LocalizingIntervalIterator;
+import net.imglib2.loops.IntervalChunks;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.util.Intervals;
+
+/**
+ * A {@link Histogram1d} of the values in a box shaped window, that slides
+ * through a {@link RandomAccessible}. When the window moves one step along
+ * the sliding dimension, only the slab of values that leaves the window is
+ * decremented and the slab that enters the window is incremented. For a
+ * window of radius r in n dimensions, a step therefore costs O(r^(n-1))
+ * instead of the O(r^n) to count the whole window.
+ * <p>
+ * Besides the histogram, the number of values per block of bins is kept up
+ * to date. A percentile query first scans the blocks and then the bins of a
+ * single block, which costs O(sqrt(b)) for b bins. This makes median and
+ * rank filters with large windows fast for 8- and 16-bit images, where every
+ * value has its own bin, see {@link #percentileFilter}.
+ * <p>
+ * Values that the {@link BinMapper1d} does not map to a bin are not counted.
+ *
+ * @param <T>
+ *            the type of the values.
+ */
+public class SlidingWindowHistogram< T >
+{
+
+	// -- instance variables --
+
+	private final RandomAccess< T > access;
+
+	private final BinMapper1d< T > mapper;
+
+	private final Histogram1d< T > histogram;
+
+	private final long[] radius;
+
+	private final int dimension;
+
+	private final long binCount;
+
+	private final int blockShift;
+
+	private final long[] blockCounts;
+
+	private final long[] center;
+
+	private final long[] min;
+
+	private final long[] max;
+
+	private long count;
+
+	// -- constructor --
+
+	/**
+	 * Creates a window that slides along the given dimension. The window must
+	 * be placed with {@link #setPosition(long[])} before it is used.
+	 *
+	 * @param source
+	 *            the values to count. Must be defined everywhere the window
+	 *            is moved to, e.g. an extended image.
+	 * @param radius
+	 *            the radius of the window per dimension. The window spans
+	 *            {@code 2 * radius[d] + 1} values in dimension {@code d}.
+	 * @param mapper
+	 *            maps the values to bins. It is used by this window only, pass
+	 *            a {@link BinMapper1d#copy()} if it is shared.
+	 * @param dimension
+	 *            the dimension along which {@link #fwd()} moves the window.
+	 */
+	public SlidingWindowHistogram( final RandomAccessible< T > source, final long[] radius, final BinMapper1d< T > mapper, final int dimension )
+	{
+		final int n = source.numDimensions();
+		if ( radius.length != n )
+			throw new IllegalArgumentException( "radius must have one element per dimension" );
+		for ( final long r : radius )
+			if ( r < 0 )
+				throw new IllegalArgumentException( "radius must not be negative" );
+		if ( dimension < 0 || dimension >= n )
+			throw new IllegalArgumentException( "invalid sliding dimension: " + dimension );
+		this.access = source.randomAccess();
+		this.mapper = mapper;
+		this.histogram = new Histogram1d<>( mapper );
+		this.radius = radius.clone();
+		this.dimension = dimension;
+		this.binCount = mapper.getBinCount();
+		final int bits = 64 - Long.numberOfLeadingZeros( Math.max( binCount - 1, 1 ) );
+		this.blockShift = ( bits + 1 ) / 2;
+		this.blockCounts = new long[ ( int ) ( ( binCount - 1 >> blockShift ) + 1 ) ];
+		this.center = new long[ n ];
+		this.min = new long[ n ];
+		this.max = new long[ n ];
+	}
+
+	// -- public api --
+
+	/**
+	 * Centers the window at the given position and counts all its values.
+	 */
+	public void setPosition( final long[] position )
+	{
+		histogram.resetCounters();
+		Arrays.fill( blockCounts, 0 );
+		count = 0;
+		for ( int d = 0; d < center.length; ++d )
+		{
+			center[ d ] = position[ d ];
+			min[ d ] = position[ d ] - radius[ d ];
+			max[ d ] = position[ d ] + radius[ d ];
+		}
+		countBox( false );
+	}
+
+	/**
+	 * Centers the window at the given position and counts all its values.
+	 */
+	public void setPosition( final Localizable position )
+	{
+		final long[] p = new long[ center.length ];
+		position.localize( p );
+		setPosition( p );
+	}
+
+	/**
+	 * Moves the window one step forward along the sliding dimension.
+	 */
+	public void fwd()
+	{
+		final long c = center[ dimension ];
+		final long r = radius[ dimension ];
+		for ( int d = 0; d < center.length; ++d )
+		{
+			min[ d ] = center[ d ] - radius[ d ];
+			max[ d ] = center[ d ] + radius[ d ];
+		}
+		min[ dimension ] = max[ dimension ] = c - r;
+		countBox( true );
+		min[ dimension ] = max[ dimension ] = c + r + 1;
+		countBox( false );
+		center[ dimension ] = c + 1;
+	}
+
+	/**
+	 * Returns the current center of the window.
+	 */
+	public long[] getPosition()
+	{
+		return center.clone();
+	}
+
+	/**
+	 * Returns the number of values in the window, that are counted in a bin.
+	 */
+	public long count()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the histogram of the values in the window. It is updated as the
+	 * window moves and must not be modified.
+	 */
+	public Histogram1d< T > getHistogram()
+	{
+		return histogram;
+	}
+
+	/**
+	 * Returns the bin of the k-th smallest value in the window, counting from
+	 * zero.
+	 */
+	public long rankBin( final long k )
+	{
+		if ( k < 0 || k >= count )
+			throw new IndexOutOfBoundsException( "rank " + k + " is out of range [0, " + count + ")" );
+		long remaining = k;
+		int block = 0;
+		while ( remaining >= blockCounts[ block ] )
+			remaining -= blockCounts[ block++ ];
+		long bin = ( long ) block << blockShift;
+		while ( true )
+		{
+			final long frequency = histogram.frequency( bin );
+			if ( remaining < frequency )
+				return bin;
+			remaining -= frequency;
+			++bin;
+		}
+	}
+
+	/**
+	 * Returns the bin of the given percentile of the values in the window.
+	 * That is the bin of the value with rank {@code floor(p * (count() - 1))}.
+	 * For {@code p = 0.5} and an even number of values, this is the lower
+	 * median.
+	 *
+	 * @param p
+	 *            the percentile, between 0 and 1.
+	 */
+	public long percentileBin( final double p )
+	{
+		if ( !( p >= 0 && p <= 1 ) )
+			throw new IllegalArgumentException( "percentile must be between 0 and 1" );
+		if ( count == 0 )
+			throw new IllegalStateException( "the window contains no values" );
+		return rankBin( ( long ) Math.floor( p * ( count - 1 ) ) );
+	}
+
+	/**
+	 * Sets the given variable to the center value of the bin of the given
+	 * percentile, see {@link #percentileBin(double)}.
+	 */
+	public void percentile( final double p, final T value )
+	{
+		mapper.getCenterValue( percentileBin( p ), value );
+	}
+
+	/**
+	 * Applies a percentile filter, e.g. a median filter for {@code p = 0.5}.
+	 * Every pixel of the target is set to the center value of the bin of the
+	 * given percentile of the box shaped neighborhood in the source, see
+	 * {@link #percentile(double, Object)}. Pixels whose neighborhood contains
+	 * no counted values are left unchanged.
+	 * <p>
+	 * The window slides along the lines of dimension 0. The lines are
+	 * processed in parallel, using the {@link TaskExecutor} returned by
+	 * {@link Parallelization#getTaskExecutor()}.
+	 *
+	 * @param source
+	 *            the input values, e.g. an extended image.
+	 * @param target
+	 *            the output image.
+	 * @param radius
+	 *            the radius of the neighborhood per dimension.
+	 * @param mapper
+	 *            maps the values to bins. Use a mapper with one bin per
+	 *            value, like
+	 *            {@code new Integer1dBinMapper<>( 0, 256, false )} for
+	 *            {@link net.imglib2.type.numeric.integer.UnsignedByteType}, to
+	 *            compute the exact percentile.
+	 * @param p
+	 *            the percentile, between 0 and 1.
+	 */
+	public static < T > void percentileFilter( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final long[] radius, final BinMapper1d< T > mapper, final double p )
+	{
+		if ( !( p >= 0 && p <= 1 ) )
+			throw new IllegalArgumentException( "percentile must be between 0 and 1" );
+		final long[] lineMax = Intervals.maxAsLongArray( target );
+		lineMax[ 0 ] = target.min( 0 );
+		final Interval lineStarts = new FinalInterval( Intervals.minAsLongArray( target ), lineMax );
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final int numTasks = ( int ) Math.min( taskExecutor.suggestNumberOfTasks(), Intervals.numElements( lineStarts ) );
+		final List< Interval > chunks = IntervalChunks.chunkInterval( lineStarts, numTasks );
+		final long length = target.dimension( 0 );
+		taskExecutor.forEach( chunks, chunk -> {
+			final BinMapper1d< T > chunkMapper = mapper.copy();
+			final SlidingWindowHistogram< T > window = new SlidingWindowHistogram<>( source, radius, chunkMapper, 0 );
+			final RandomAccess< T > out = target.randomAccess();
+			final LocalizingIntervalIterator lines = new LocalizingIntervalIterator( chunk );
+			final long[] position = new long[ target.numDimensions() ];
+			while ( lines.hasNext() )
+			{
+				lines.fwd();
+				lines.localize( position );
+				window.setPosition( position );
+				out.setPosition( position );
+				for ( long x = 0; x < length; ++x )
+				{
+					if ( x > 0 )
+					{
+						window.fwd();
+						out.fwd( 0 );
+					}
+					if ( window.count() > 0 )
+						chunkMapper.getCenterValue( window.percentileBin( p ), out.get() );
+				}
+			}
+		} );
+	}
+
+	// -- helpers --
+
+	/**
+	 * Counts (or uncounts) all values in the box from {@link #min} to
+	 * {@link #max}.
+	 */
+	private void countBox( final boolean subtract )
+	{
+		final int n = min.length;
+		access.setPosition( min );
+		while ( true )
+		{
+			final long bin = mapper.map( access.get() );
+			if ( bin != Long.MIN_VALUE && bin != Long.MAX_VALUE )
+			{
+				final int block = ( int ) ( bin >> blockShift );
+				if ( subtract )
+				{
+					histogram.decrement( bin );
+					--blockCounts[ block ];
+					--count;
+				}
+				else
+				{
+					histogram.increment( bin );
+					++blockCounts[ block ];
+					++count;
+				}
+			}
+			int d = 0;
+			for ( ; d < n; ++d )
+			{
+				if ( access.getLongPosition( d ) < max[ d ] )
+				{
+					access.fwd( d );
+					break;
+				}
+				access.setPosition( min[ d ], d );
+			}
+			if ( d == n )
+				return;
+		}
+	}
+}
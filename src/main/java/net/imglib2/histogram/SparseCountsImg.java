@@ -0,0 +1,238 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.histogram;
+
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.FlatIterationOrder;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.AbstractImg;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.position.FunctionRandomAccessible;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.view.Views;
+
+/**
+ * Sparse storage of the counts of a {@link DiscreteFrequencyDistribution}:
+ * an open addressing hash map from the flat index of a bin to its count.
+ * Bins that were never counted use no memory.
+ * <p>
+ * As an {@link net.imglib2.img.Img} this is a read-only view: the
+ * {@link LongType}s returned by its accessors are not written back.
+ */
+class SparseCountsImg extends AbstractImg< LongType >
+{
+
+	private static final long EMPTY = -1;
+
+	private long[] keys;
+
+	private long[] values;
+
+	private int numEntries;
+
+	private final FunctionRandomAccessible< LongType > function;
+
+	SparseCountsImg( final long[] binCounts )
+	{
+		super( binCounts );
+		keys = new long[ 16 ];
+		values = new long[ 16 ];
+		Arrays.fill( keys, EMPTY );
+		numEntries = 0;
+		function = new FunctionRandomAccessible<>( binCounts.length, this::readCount, LongType::new );
+	}
+
+	// -- map --
+
+	/**
+	 * Returns the flat index of a bin.
+	 */
+	long flatIndex( final long[] binPos )
+	{
+		long index = 0;
+		for ( int i = n - 1; i >= 0; i-- )
+			index = index * dimension[ i ] + binPos[ i ];
+		return index;
+	}
+
+	private void readCount( final Localizable binPos, final LongType count )
+	{
+		long index = 0;
+		for ( int i = n - 1; i >= 0; i-- )
+			index = index * dimension[ i ] + binPos.getLongPosition( i );
+		count.set( get( index ) );
+	}
+
+	/**
+	 * Returns the count of the bin with the given flat index.
+	 */
+	long get( final long index )
+	{
+		final int slot = find( index );
+		return keys[ slot ] == EMPTY ? 0 : values[ slot ];
+	}
+
+	/**
+	 * Adds {@code delta} to the count of the bin with the given flat index.
+	 * Returns the new count.
+	 */
+	long add( final long index, final long delta )
+	{
+		int slot = find( index );
+		if ( keys[ slot ] == EMPTY )
+		{
+			if ( 2 * ( numEntries + 1 ) > keys.length )
+			{
+				grow();
+				slot = find( index );
+			}
+			keys[ slot ] = index;
+			values[ slot ] = 0;
+			numEntries++;
+		}
+		return values[ slot ] += delta;
+	}
+
+	/**
+	 * Removes all counts.
+	 */
+	void clear()
+	{
+		keys = new long[ 16 ];
+		values = new long[ 16 ];
+		Arrays.fill( keys, EMPTY );
+		numEntries = 0;
+	}
+
+	/**
+	 * Returns the number of bins that have been counted.
+	 */
+	int numEntries()
+	{
+		return numEntries;
+	}
+
+	/**
+	 * Calls {@code action} for the flat index and the count of every bin
+	 * that has been counted.
+	 */
+	void forEachEntry( final EntryConsumer action )
+	{
+		for ( int slot = 0; slot < keys.length; slot++ )
+			if ( keys[ slot ] != EMPTY )
+				action.accept( keys[ slot ], values[ slot ] );
+	}
+
+	interface EntryConsumer
+	{
+		void accept( long index, long count );
+	}
+
+	private int find( final long index )
+	{
+		final int mask = keys.length - 1;
+		long h = index * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		int slot = ( int ) h & mask;
+		while ( keys[ slot ] != EMPTY && keys[ slot ] != index )
+			slot = ( slot + 1 ) & mask;
+		return slot;
+	}
+
+	private void grow()
+	{
+		final long[] oldKeys = keys;
+		final long[] oldValues = values;
+		keys = new long[ 2 * oldKeys.length ];
+		values = new long[ 2 * oldKeys.length ];
+		Arrays.fill( keys, EMPTY );
+		for ( int i = 0; i < oldKeys.length; i++ )
+		{
+			if ( oldKeys[ i ] != EMPTY )
+			{
+				final int slot = find( oldKeys[ i ] );
+				keys[ slot ] = oldKeys[ i ];
+				values[ slot ] = oldValues[ i ];
+			}
+		}
+	}
+
+	// -- Img methods --
+
+	@Override
+	public RandomAccess< LongType > randomAccess()
+	{
+		return function.randomAccess();
+	}
+
+	@Override
+	public Cursor< LongType > cursor()
+	{
+		return Views.flatIterable( Views.interval( function, this ) ).cursor();
+	}
+
+	@Override
+	public Cursor< LongType > localizingCursor()
+	{
+		return Views.flatIterable( Views.interval( function, this ) ).localizingCursor();
+	}
+
+	@Override
+	public Object iterationOrder()
+	{
+		return new FlatIterationOrder( this );
+	}
+
+	@Override
+	public ImgFactory< LongType > factory()
+	{
+		return new ArrayImgFactory<>( new LongType() );
+	}
+
+	@Override
+	public SparseCountsImg copy()
+	{
+		final SparseCountsImg copy = new SparseCountsImg( dimension );
+		copy.keys = keys.clone();
+		copy.values = values.clone();
+		copy.numEntries = numEntries;
+		return copy;
+	}
+
+}
@@ -0,0 +1,370 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.histogram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.imglib2.Dirty;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.ModificationCount;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.RealStatistics;
+import net.imglib2.view.Views;
+
+/**
+ * Memoizes {@link RealStatistics} and {@link Histogram1d}s of images, such
+ * that repeated requests, e.g. for the display range of an image, don't
+ * iterate the image again.
+ * <p>
+ * The results are cached per image and, for {@link AbstractCellImg}s, per
+ * cell. If the storage of a cell (or of an {@link ArrayImg}) implements
+ * {@link ModificationCount}, modifications are detected: The cache records
+ * the modification count when it counts the cell, and counts the cell again
+ * if the modification count changed in the meantime. The {@link Dirty} flags
+ * of the storage are not touched. Modifications that bypass the storage
+ * (e.g. of the primitive arrays), and modifications of other images have to
+ * be announced with
+ * {@link #invalidate(Object)} or {@link #invalidate(Object, Interval)}.
+ * Only the invalidated cells are counted again.
+ * <p>
+ * The images are the keys of a {@link WeakHashMap}, and hence compared by
+ * {@link Object#equals(Object)}, which is identity for the images of ImgLib2.
+ * Histograms are cached per {@link BinMapper1d}, compared by
+ * {@link Object#equals(Object)}, such that new but equal mappers, e.g. a new
+ * {@link Real1dBinMapper} with the same range and bin count, share the cached
+ * counts. The counts of every bin are stored for every cell. At most
+ * {@link #MAX_HISTOGRAMS} histograms are cached per image, the least recently
+ * used are discarded. The cache is thread safe.
+ */
+public class StatisticsCache
+{
+
+	// -- constants --
+
+	/**
+	 * The maximum number of histograms, i.e. of different mappers, cached per
+	 * image.
+	 */
+	public static final int MAX_HISTOGRAMS = 16;
+
+	// -- instance variables --
+
+	private final Map< Object, Entry > entries = new WeakHashMap<>();
+
+	// -- public api --
+
+	/**
+	 * Returns the statistics of all values of the image.
+	 */
+	public synchronized < T extends RealType< T > > RealStatistics getStatistics( final RandomAccessibleInterval< T > image )
+	{
+		final Entry entry = validEntry( image );
+		final RealStatistics result = new RealStatistics();
+		for ( int r = 0; r < entry.regions.size(); ++r )
+		{
+			if ( entry.statistics[ r ] == null )
+			{
+				final RealStatistics statistics = new RealStatistics();
+				statistics.addAll( entry.regions.get( r ).values( image ) );
+				entry.statistics[ r ] = statistics;
+			}
+			result.add( entry.statistics[ r ] );
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the histogram of all values of the image. The histogram is a new
+	 * {@link Histogram1d} with a copy of the given mapper, that may be
+	 * modified by the caller. Its {@link Histogram1d#firstDataValue()} is
+	 * null.
+	 */
+	public synchronized < T > Histogram1d< T > getHistogram( final RandomAccessibleInterval< T > image, final BinMapper1d< T > mapper )
+	{
+		final Entry entry = validEntry( image );
+		HistogramEntry histogram = entry.histograms.get( mapper );
+		if ( histogram == null )
+		{
+			histogram = new HistogramEntry( entry.regions.size(), mapper.getBinCount() );
+			// the key is a copy, such that it is not modified by the caller
+			entry.histograms.put( mapper.copy(), histogram );
+		}
+		for ( int r = 0; r < entry.regions.size(); ++r )
+		{
+			if ( histogram.regionBins[ r ] == null )
+			{
+				final Histogram1d< T > regionHistogram = new Histogram1d<>( entry.regions.get( r ).values( image ), mapper.copy() );
+				histogram.addRegion( r, regionHistogram.toLongArray(), regionHistogram.ignoredCount() );
+			}
+		}
+		final Histogram1d< T > result = new Histogram1d<>( mapper.copy() );
+		result.addBins( histogram.total, false );
+		return result;
+	}
+
+	/**
+	 * Discards all results for the given image.
+	 */
+	public synchronized void invalidate( final Object image )
+	{
+		entries.remove( image );
+	}
+
+	/**
+	 * Discards the results for the cells of the given image, that intersect
+	 * the given interval. Only these cells are counted again, when results
+	 * are requested.
+	 */
+	public synchronized void invalidate( final Object image, final Interval interval )
+	{
+		final Entry entry = entries.get( image );
+		if ( entry == null )
+			return;
+		for ( int r = 0; r < entry.regions.size(); ++r )
+			if ( !Intervals.isEmpty( Intervals.intersect( entry.regions.get( r ).interval, interval ) ) )
+				entry.invalidate( r );
+	}
+
+	/**
+	 * Discards all results.
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+	}
+
+	// -- helpers --
+
+	/**
+	 * Returns the entry of an image, after invalidating the regions whose
+	 * storage was modified.
+	 */
+	private Entry validEntry( final RandomAccessibleInterval< ? > image )
+	{
+		Entry entry = entries.get( image );
+		if ( entry == null )
+		{
+			entry = new Entry( regions( image ) );
+			entries.put( image, entry );
+		}
+		for ( int r = 0; r < entry.regions.size(); ++r )
+		{
+			final Region region = entry.regions.get( r );
+			final long modificationCount = region.modificationCount();
+			if ( modificationCount != region.countedModificationCount )
+			{
+				// record the count before counting, such that concurrent
+				// modifications are detected next time
+				region.countedModificationCount = modificationCount;
+				entry.invalidate( r );
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Splits an image into the regions, for which results are cached.
+	 */
+	private static List< Region > regions( final RandomAccessibleInterval< ? > image )
+	{
+		final List< Region > regions = new ArrayList< Region >();
+		if ( image instanceof AbstractCellImg )
+		{
+			final AbstractCellImg< ?, ?, ?, ? > cellImg = ( AbstractCellImg< ?, ?, ?, ? > ) image;
+			final int n = image.numDimensions();
+			for ( final Cell< ? > cell : cellImg.getCells() )
+			{
+				final long[] min = new long[ n ];
+				final long[] max = new long[ n ];
+				cell.min( min );
+				for ( int d = 0; d < n; ++d )
+					max[ d ] = min[ d ] + cell.dimension( d ) - 1;
+				regions.add( new Region( new FinalInterval( min, max ), cell.getData(), false ) );
+			}
+		}
+		else
+		{
+			final Object access = image instanceof ArrayImg ? ( ( ArrayImg< ?, ? > ) image ).update( null ) : null;
+			regions.add( new Region( new FinalInterval( image ), access, true ) );
+		}
+		return regions;
+	}
+
+	/**
+	 * A part of an image, for which results are cached.
+	 */
+	private static final class Region
+	{
+		final Interval interval;
+
+		/**
+		 * The storage of the region, to check whether it was modified.
+		 */
+		final Object access;
+
+		final boolean wholeImage;
+
+		/**
+		 * The {@link #modificationCount()} of the storage, when the cached
+		 * results were computed.
+		 */
+		long countedModificationCount;
+
+		Region( final Interval interval, final Object access, final boolean wholeImage )
+		{
+			this.interval = interval;
+			this.access = access;
+			this.wholeImage = wholeImage;
+			this.countedModificationCount = modificationCount();
+		}
+
+		/**
+		 * Returns the modification count of the storage, or 0 if the storage
+		 * does not count modifications.
+		 */
+		long modificationCount()
+		{
+			return access instanceof ModificationCount ? ( ( ModificationCount ) access ).getModificationCount() : 0;
+		}
+
+		@SuppressWarnings( "unchecked" )
+		< T > Iterable< T > values( final RandomAccessibleInterval< T > image )
+		{
+			if ( wholeImage && image instanceof IterableInterval )
+				return ( IterableInterval< T > ) image;
+			return Views.flatIterable( Views.interval( image, interval ) );
+		}
+	}
+
+	/**
+	 * Cached results of an image.
+	 */
+	private static final class Entry
+	{
+		final List< Region > regions;
+
+		/**
+		 * Statistics per region, null if not computed yet.
+		 */
+		final RealStatistics[] statistics;
+
+		/**
+		 * Histograms per mapper, in access order, see {@link #MAX_HISTOGRAMS}.
+		 */
+		final Map< BinMapper1d< ? >, HistogramEntry > histograms = new LinkedHashMap< BinMapper1d< ? >, HistogramEntry >( 16, 0.75f, true )
+		{
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< BinMapper1d< ? >, HistogramEntry > eldest )
+			{
+				return size() > MAX_HISTOGRAMS;
+			}
+		};
+
+		Entry( final List< Region > regions )
+		{
+			this.regions = regions;
+			this.statistics = new RealStatistics[ regions.size() ];
+		}
+
+		void invalidate( final int region )
+		{
+			statistics[ region ] = null;
+			for ( final HistogramEntry histogram : histograms.values() )
+				histogram.removeRegion( region );
+		}
+	}
+
+	/**
+	 * Cached bins of a histogram. The last element of the bins counts the
+	 * ignored values.
+	 */
+	private static final class HistogramEntry
+	{
+		/**
+		 * Bins per region, null if not counted yet.
+		 */
+		final long[][] regionBins;
+
+		/**
+		 * Sum of the bins of all counted regions.
+		 */
+		final long[] total;
+
+		HistogramEntry( final int numRegions, final long binCount )
+		{
+			if ( binCount >= Integer.MAX_VALUE )
+				throw new IllegalArgumentException( "too many bins" );
+			this.regionBins = new long[ numRegions ][];
+			this.total = new long[ ( int ) binCount + 1 ];
+		}
+
+		/**
+		 * Stores the bins of a region, and adds them to the total.
+		 */
+		void addRegion( final int region, final long[] bins, final long ignored )
+		{
+			final long[] stored = Arrays.copyOf( bins, total.length );
+			stored[ total.length - 1 ] = ignored;
+			for ( int i = 0; i < stored.length; ++i )
+				total[ i ] += stored[ i ];
+			regionBins[ region ] = stored;
+		}
+
+		void removeRegion( final int region )
+		{
+			final long[] bins = regionBins[ region ];
+			if ( bins == null )
+				return;
+			for ( int i = 0; i < bins.length; ++i )
+				total[ i ] -= bins[ i ];
+			regionBins[ region ] = null;
+		}
+	}
+}
@@ -35,15 +35,24 @@
 package net.imglib2.img.basictypeaccess.array;
 
 import net.imglib2.Dirty;
+import net.imglib2.ModificationCount;
 
 /**
  *
  * @author Stephan Saalfeld
  */
-public class DirtyFloatArray extends AbstractFloatArray< DirtyFloatArray > implements Dirty
+public class DirtyFloatArray extends AbstractFloatArray< DirtyFloatArray > implements Dirty, ModificationCount
 {
 	protected boolean dirty = false;
 
+	protected long modificationCount = 0;
+
+	/**
+	 * Whether {@link #modificationCount} was read since the last counted
+	 * modification.
+	 */
+	protected boolean modificationCountRead = false;
+
 	public DirtyFloatArray( final int numEntities )
 	{
 		super( numEntities );
@@ -58,6 +67,7 @@ public class DirtyFloatArray extends AbstractFloatArray< DirtyFloatArray > imple
 	public void setValue( final int index, final float value )
 	{
 		dirty = true;
+		countModification();
 		data[ index ] = value;
 	}
 
@@ -77,5 +87,22 @@ public class DirtyFloatArray extends AbstractFloatArray< DirtyFloatArray > imple
 	public void setDirty()
 	{
 		dirty = true;
+		countModification();
+	}
+
+	@Override
+	public long getModificationCount()
+	{
+		modificationCountRead = true;
+		return modificationCount;
+	}
+
+	protected void countModification()
+	{
+		if ( modificationCountRead )
+		{
+			modificationCountRead = false;
+			++modificationCount;
+		}
 	}
 }
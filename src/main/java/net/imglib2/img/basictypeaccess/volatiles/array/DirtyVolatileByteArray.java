@@ -34,6 +34,7 @@
 package net.imglib2.img.basictypeaccess.volatiles.array;
 
 import net.imglib2.Dirty;
+import net.imglib2.ModificationCount;
 import net.imglib2.img.basictypeaccess.array.ByteArray;
 import net.imglib2.img.basictypeaccess.volatiles.VolatileByteAccess;
 
@@ -44,10 +45,18 @@ import net.imglib2.img.basictypeaccess.volatiles.VolatileByteAccess;
  * @author Stephan Saalfeld
  * @author Tobias Pietzsch
  */
-public class DirtyVolatileByteArray extends AbstractVolatileByteArray< DirtyVolatileByteArray > implements VolatileByteAccess, Dirty
+public class DirtyVolatileByteArray extends AbstractVolatileByteArray< DirtyVolatileByteArray > implements VolatileByteAccess, Dirty, ModificationCount
 {
 	protected boolean dirty = false;
 
+	protected long modificationCount = 0;
+
+	/**
+	 * Whether {@link #modificationCount} was read since the last counted
+	 * modification.
+	 */
+	protected boolean modificationCountRead = false;
+
 	public DirtyVolatileByteArray( final int numEntities, final boolean isValid )
 	{
 		super( numEntities, isValid );
@@ -62,6 +71,7 @@ public class DirtyVolatileByteArray extends AbstractVolatileByteArray< DirtyVola
 	public void setValue( final int index, final byte value )
 	{
 		dirty = true;
+		countModification();
 		data[ index ] = value;
 	}
 
@@ -81,5 +91,22 @@ public class DirtyVolatileByteArray extends AbstractVolatileByteArray< DirtyVola
 	public void setDirty()
 	{
 		dirty = true;
+		countModification();
+	}
+
+	@Override
+	public long getModificationCount()
+	{
+		modificationCountRead = true;
+		return modificationCount;
+	}
+
+	protected void countModification()
+	{
+		if ( modificationCountRead )
+		{
+			modificationCountRead = false;
+			++modificationCount;
+		}
 	}
 }
@@ -34,12 +34,16 @@
 
 package net.imglib2.img.cell;
 
+import java.util.Spliterator;
+
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.img.AbstractNativeImg;
 import net.imglib2.img.Img;
+import net.imglib2.stream.CursorSpliterator;
 import net.imglib2.type.NativeType;
 import net.imglib2.util.Fraction;
+import net.imglib2.util.Intervals;
 
 /**
  * Abstract superclass for {@link Img} types that divide their underlying data
@@ -104,6 +108,30 @@ public abstract class AbstractCellImg<
 		return new CellRandomAccess<>( this );
 	}
 
+	/**
+	 * Returns a {@link Spliterator} that preferably splits at cell
+	 * boundaries.
+	 */
+	@Override
+	public Spliterator< T > spliterator()
+	{
+		final long numCells = Intervals.numElements( grid.getGridDimensions() );
+		return new CursorSpliterator<>( cursor(), size(), index -> {
+			// find the last cell that starts at or before index
+			long lo = 0;
+			long hi = numCells - 1;
+			while ( lo < hi )
+			{
+				final long mid = ( lo + hi + 1 ) >>> 1;
+				if ( grid.getCellFirstElementIndex( mid ) <= index )
+					lo = mid;
+				else
+					hi = mid - 1;
+			}
+			return grid.getCellFirstElementIndex( lo );
+		} );
+	}
+
 	@Override
 	public CellIterationOrder iterationOrder()
 	{
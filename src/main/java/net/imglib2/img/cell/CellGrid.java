@@ -37,6 +37,7 @@ import java.util.Arrays;
 
 import net.imglib2.Positionable;
 import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
 
 /**
@@ -266,6 +267,37 @@ public class CellGrid
 		IntervalIndexer.indexToPosition( index, numCells, cellGridPosition );
 	}
 
+	/**
+	 * From the flattened index of a cell in the grid, compute the index of
+	 * the first pixel of the cell in cell iteration order. (Cells are
+	 * iterated in flat order of the grid, and the pixels of each cell in flat
+	 * order within the cell.)
+	 *
+	 * @param index
+	 *            flattened grid coordinates of the cell. If this equals the
+	 *            number of cells, the number of pixels is returned.
+	 * @return number of pixels in all cells that precede the cell.
+	 */
+	public long getCellFirstElementIndex( final long index )
+	{
+		if ( index >= Intervals.numElements( numCells ) )
+			return Intervals.numElements( dimensions );
+		final long[] cellGridPosition = new long[ n ];
+		IntervalIndexer.indexToPosition( index, numCells, cellGridPosition );
+		long first = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			// pixels in the cells that differ from the given cell first in dimension d
+			long pixels = cellGridPosition[ d ] * cellDimensions[ d ];
+			for ( int e = 0; e < d; ++e )
+				pixels *= dimensions[ e ];
+			for ( int e = d + 1; e < n; ++e )
+				pixels *= getCellDimension( e, cellGridPosition[ e ] );
+			first += pixels;
+		}
+		return first;
+	}
+
 	/**
 	 * Get the grid position of the cell containing the element at {@code position}.
 	 *
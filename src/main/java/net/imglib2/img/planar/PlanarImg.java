@@ -41,6 +41,7 @@ import net.imglib2.img.AbstractNativeImg;
 import net.imglib2.img.NativeImg;
 import net.imglib2.img.basictypeaccess.PlanarAccess;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.stream.CursorSpliterator;
 import net.imglib2.type.NativeType;
 import net.imglib2.util.Fraction;
 import net.imglib2.util.Intervals;
@@ -48,6 +49,7 @@ import net.imglib2.view.iteration.SubIntervalIterable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
 
 /**
  * A {@link NativeImg} that stores data in an list of primitive arrays, one per
@@ -238,6 +240,17 @@ public class PlanarImg< T extends NativeType< T >, A extends ArrayDataAccess< A
 		return new PlanarRandomAccess< T >( this );
 	}
 
+	/**
+	 * Returns a {@link Spliterator} that preferably splits at plane
+	 * boundaries.
+	 */
+	@Override
+	public Spliterator< T > spliterator()
+	{
+		final long planeSize = size() / numSlices;
+		return new CursorSpliterator<>( cursor(), size(), index -> index - index % planeSize );
+	}
+
 	@Override
 	public FlatIterationOrder iterationOrder()
 	{
@@ -0,0 +1,171 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.interpolation.neighborsearch;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import net.imglib2.Cursor;
+import net.imglib2.FlatKDTree;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.loops.IntervalChunks;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnFlatKDTree;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnFlatKDTree;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Renders nearest neighbor and inverse distance weighting interpolations of
+ * the points in a {@link FlatKDTree} into images.
+ * <p>
+ * The result is the same as rasterizing a
+ * {@link NearestNeighborSearchInterpolator} or
+ * {@link InverseDistanceWeightingInterpolator}, but faster: the pixels are
+ * visited in flat iteration order, and the neighbors found for a pixel bound
+ * the search for the next pixel. The target image is split into blocks that
+ * are processed in parallel, using the {@link TaskExecutor} returned by
+ * {@link Parallelization#getTaskExecutor()}.
+ */
+public final class NeighborSearchRasterizer
+{
+	private NeighborSearchRasterizer()
+	{
+		// prevent instantiation
+	}
+
+	/**
+	 * Set every pixel of {@code target} to the value of the nearest point in
+	 * {@code tree}. The coordinates of a pixel are its integer position.
+	 */
+	public static < T extends Type< T > > void nearestNeighbor( final FlatKDTree< T > tree, final RandomAccessibleInterval< T > target )
+	{
+		checkArguments( tree, target );
+		final int n = tree.numDimensions();
+		forEachBlock( target, block -> {
+			final NearestNeighborSearchOnFlatKDTree< T > search = new NearestNeighborSearchOnFlatKDTree<>( tree );
+			final double[] position = new double[ n ];
+			final Cursor< T > cursor = Views.flatIterable( Views.interval( target, block ) ).localizingCursor();
+			int nearest = -1;
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				cursor.localize( position );
+				search.search( position, nearest );
+				nearest = search.getIndex();
+				cursor.get().set( tree.getValue( nearest ) );
+			}
+		} );
+	}
+
+	/**
+	 * Set every pixel of {@code target} to the inverse distance weighted mean
+	 * of the values of the {@code k} nearest points in {@code tree}, as
+	 * computed by {@link InverseDistanceWeightingInterpolator}. The
+	 * coordinates of a pixel are its integer position.
+	 *
+	 * @param p
+	 *            power applied to the distance, higher values result in
+	 *            'sharper' results, 0 results in a non-weighted mean of the
+	 *            <em>k</em> nearest neighbors.
+	 */
+	public static < T extends RealType< T >, R extends RealType< R > > void inverseDistanceWeighting( final FlatKDTree< T > tree, final int k, final double p, final RandomAccessibleInterval< R > target )
+	{
+		checkArguments( tree, target );
+		final int n = tree.numDimensions();
+		final double p2 = p / 2.0;
+		forEachBlock( target, block -> {
+			final KNearestNeighborSearchOnFlatKDTree< T > search = new KNearestNeighborSearchOnFlatKDTree<>( tree, k );
+			final double[] position = new double[ n ];
+			final int[] previous = new int[ k ];
+			final Cursor< R > cursor = Views.flatIterable( Views.interval( target, block ) ).localizingCursor();
+			boolean hasPrevious = false;
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				cursor.localize( position );
+
+				// the k neighbors of the previous pixel bound the search
+				double bound = Double.MAX_VALUE;
+				if ( hasPrevious )
+				{
+					bound = 0;
+					for ( int i = 0; i < k; ++i )
+						bound = Math.max( bound, tree.squDistance( previous[ i ], position ) );
+				}
+				search.search( position, bound );
+				hasPrevious = true;
+				for ( int i = 0; i < k; ++i )
+				{
+					previous[ i ] = search.getIndex( i );
+					hasPrevious &= previous[ i ] >= 0;
+				}
+
+				if ( k == 1 || search.getSquareDistance( 0 ) / search.getSquareDistance( 1 ) < InverseDistanceWeightingInterpolator.minThreshold )
+					cursor.get().setReal( tree.getValue( previous[ 0 ] ).getRealDouble() );
+				else
+				{
+					double sumIntensity = 0;
+					double sumWeights = 0;
+					for ( int i = 0; i < k && previous[ i ] >= 0; ++i )
+					{
+						final double weight = 1.0 / Math.pow( search.getSquareDistance( i ), p2 );
+						sumWeights += weight;
+						sumIntensity += tree.getValue( previous[ i ] ).getRealDouble() * weight;
+					}
+					cursor.get().setReal( sumIntensity / sumWeights );
+				}
+			}
+		} );
+	}
+
+	private static void checkArguments( final FlatKDTree< ? > tree, final Interval target )
+	{
+		if ( tree.size() == 0 )
+			throw new IllegalArgumentException( "NeighborSearchRasterizer: tree is empty." );
+		if ( tree.numDimensions() != target.numDimensions() )
+			throw new IllegalArgumentException( "NeighborSearchRasterizer: tree and target must have the same number of dimensions." );
+	}
+
+	private static void forEachBlock( final Interval target, final Consumer< Interval > action )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< Interval > blocks = IntervalChunks.chunkInterval( target, taskExecutor.suggestNumberOfTasks() );
+		taskExecutor.forEach( blocks, action );
+	}
+}
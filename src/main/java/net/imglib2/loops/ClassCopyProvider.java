@@ -34,6 +34,8 @@
 package net.imglib2.loops;
 
 import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
@@ -44,6 +46,15 @@ import java.util.stream.Stream;
  * The copies of the class have individual copies of the byte code.
  * The JIT compiler optimizes the class copies individually,
  * which can increase performance.
+ * <p>
+ * A typical use is a generic algorithm with a hot loop, that calls methods of
+ * interfaces like {@link net.imglib2.Cursor} or
+ * {@link net.imglib2.converter.Converter}. If the algorithm is used with many
+ * different implementations of these interfaces, the call sites in the loop
+ * become megamorphic, and performance drops drastically. Moving the loop into
+ * a separate class, and using {@link #newInstanceForClassesOf(Object...)} to
+ * get a copy of this class per combination of implementations, keeps the call
+ * sites monomorphic.
  *
  * @author Matthias Arzt
  */
@@ -134,4 +145,39 @@ public class ClassCopyProvider< T >
 			throw new RuntimeException( e );
 		}
 	}
+
+	/**
+	 * Returns an instance of a copy of the original class, that is specialized
+	 * for the classes of the given parameters. Instances created for
+	 * parameters of the same classes share their byte code.
+	 * <p>
+	 * This is equivalent to
+	 * {@code newInstanceForKey( classesOf( parameters ), parameters )}.
+	 *
+	 * @param parameters
+	 *            Parameters that are passed to the constructor.
+	 * @see #newInstanceForKey(Object, Object...)
+	 */
+	public T newInstanceForClassesOf( final Object... parameters )
+	{
+		return newInstanceForKey( classesOf( parameters ), parameters );
+	}
+
+	/**
+	 * Returns the list of the classes of the given objects, which is suitable
+	 * as a key for {@link #newInstanceForKey(Object, Object...)}. The entry for
+	 * {@code null} is {@code null}.
+	 * <p>
+	 * A key for a hot loop over pixels should also contain the class of the
+	 * pixel type, for example
+	 * {@code classesOf( cursor, converter, cursor.get() )}, because the same
+	 * cursor class is used for many pixel types.
+	 */
+	public static List< Class< ? > > classesOf( final Object... objects )
+	{
+		final Class< ? >[] classes = new Class< ? >[ objects.length ];
+		for ( int i = 0; i < objects.length; i++ )
+			classes[ i ] = objects[ i ] == null ? null : objects[ i ].getClass();
+		return Arrays.asList( classes );
+	}
 }
@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.loops;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.util.Intervals;
+
+/**
+ * {@link IntervalChunks} splits an interval into smaller intervals, that can
+ * be processed in parallel.
+ */
+public final class IntervalChunks
+{
+
+	private IntervalChunks()
+	{
+		// prevent from instantiation.
+	}
+
+	/**
+	 * Splits the given interval into approximately the given number of
+	 * chunks. The interval is split along the outermost dimension first, such
+	 * that the chunks are contiguous in flat iteration order. Only if the
+	 * outermost dimension is too small, the next inner dimension is split as
+	 * well. The returned chunks cover the interval, do not overlap, and are
+	 * sorted in flat iteration order.
+	 *
+	 * @param interval
+	 *            Interval to be split.
+	 * @param numberOfChunks
+	 *            Suggested number of chunks. The actual number of chunks is
+	 *            smaller if the interval is too small, and might be slightly
+	 *            larger if the outermost dimension doesn't divide the
+	 *            number of chunks.
+	 */
+	public static List< Interval > chunkInterval( final Interval interval, final int numberOfChunks )
+	{
+		if ( Intervals.isEmpty( interval ) )
+			return Collections.emptyList();
+		final List< Interval > chunks = new ArrayList<>();
+		chunk( Intervals.minAsLongArray( interval ), Intervals.maxAsLongArray( interval ), interval.numDimensions() - 1, numberOfChunks, chunks );
+		return chunks;
+	}
+
+	private static void chunk( final long[] min, final long[] max, final int d, final long numberOfChunks, final List< Interval > chunks )
+	{
+		if ( numberOfChunks <= 1 || d < 0 )
+		{
+			chunks.add( new FinalInterval( min, max ) );
+			return;
+		}
+		final long size = max[ d ] - min[ d ] + 1;
+		if ( size == 1 )
+		{
+			chunk( min, max, d - 1, numberOfChunks, chunks );
+			return;
+		}
+		final long pieces = Math.min( size, numberOfChunks );
+		final long subChunks = ( numberOfChunks + pieces - 1 ) / pieces;
+		final long start = min[ d ];
+		for ( long i = 0; i < pieces; i++ )
+		{
+			final long[] chunkMin = min.clone();
+			final long[] chunkMax = max.clone();
+			chunkMin[ d ] = start + split( size, i, pieces );
+			chunkMax[ d ] = start + split( size, i + 1, pieces ) - 1;
+			chunk( chunkMin, chunkMax, d - 1, subChunks, chunks );
+		}
+	}
+
+	private static long split( final long size, final long i, final long pieces )
+	{
+		// NB: size * i / pieces, without overflow for large sizes
+		return ( size / pieces ) * i + ( size % pieces ) * i / pieces;
+	}
+}
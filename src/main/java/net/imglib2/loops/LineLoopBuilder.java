@@ -0,0 +1,383 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.loops;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+
+/**
+ * {@link LineLoopBuilder} provides loops over images, that pass whole lines
+ * of pixels as primitive arrays to the action. For example, this is a loop
+ * that calculates the sum of two float images:
+ *
+ * <pre>
+ * {@code
+ * RandomAccessibleInterval<FloatType> imageA = ...
+ * RandomAccessibleInterval<FloatType> imageB = ...
+ * RandomAccessibleInterval<FloatType> sum = ...
+ *
+ * LineLoopBuilder.setImages( imageA, imageB, sum ).forEachLine(
+ *     ( float[] a, int oa, float[] b, int ob, float[] s, int os, int length ) -> {
+ *         for ( int i = 0; i < length; i++ )
+ *             s[ os + i ] = a[ oa + i ] + b[ ob + i ];
+ *     }
+ * );
+ * }
+ * </pre>
+ *
+ * In contrast to {@link LoopBuilder}, the inner loop over the pixels is part
+ * of the action and works on primitive arrays. It is therefore not slowed
+ * down by calls to {@link net.imglib2.type.Type} methods, and can be
+ * vectorized by the just-in-time compiler.
+ * <p>
+ * A line is a range of pixels, that is contiguous in flat iteration order,
+ * and stored contiguously in the primitive arrays of all images. The lines
+ * are as long as the containers allow: A loop over {@link ArrayImg}s gets a
+ * single line, a loop over {@link PlanarImg}s gets one line per plane, and a
+ * loop over {@link AbstractCellImg}s with equal cell grids gets one line per
+ * cell. Mixing containers results in shorter lines.
+ * <p>
+ * The images must be {@link ArrayImg}s, {@link PlanarImg}s or
+ * {@link AbstractCellImg}s with equal dimensions, that store their pixels in
+ * primitive arrays, one array element per pixel. The arrays are passed as
+ * they are stored, the storage array of an
+ * {@link net.imglib2.type.numeric.integer.UnsignedByteType} image for
+ * example is a {@code byte[]}. The array types of the action's parameters
+ * must match the storage of the images, otherwise a
+ * {@link ClassCastException} is thrown.
+ *
+ * @see LoopBuilder
+ */
+public class LineLoopBuilder< T >
+{
+
+	private final long[] dimensions;
+
+	private final RandomAccessibleInterval< ? >[] images;
+
+	private boolean multiThreaded = false;
+
+	private LineLoopBuilder( final RandomAccessibleInterval< ? >... images )
+	{
+		this.images = images;
+		this.dimensions = Intervals.dimensionsAsLongArray( images[ 0 ] );
+		for ( final RandomAccessibleInterval< ? > image : images )
+		{
+			if ( !Arrays.equals( dimensions, Intervals.dimensionsAsLongArray( image ) ) )
+				throw new IllegalArgumentException( "Dimensions do not fit." );
+			checkImage( image );
+		}
+	}
+
+	private static void checkImage( final RandomAccessibleInterval< ? > image )
+	{
+		if ( !( image instanceof ArrayImg || image instanceof PlanarImg || image instanceof AbstractCellImg ) )
+			throw new IllegalArgumentException( "LineLoopBuilder: only ArrayImg, PlanarImg and CellImg are supported." );
+		final Object type = Util.getTypeFromInterval( image );
+		final Fraction entitiesPerPixel = ( ( NativeType< ? > ) type ).getEntitiesPerPixel();
+		if ( entitiesPerPixel.getNumerator() != 1 || entitiesPerPixel.getDenominator() != 1 )
+			throw new IllegalArgumentException( "LineLoopBuilder: only pixel types with one primitive value per pixel are supported." );
+	}
+
+	public static LineLoopBuilder< LineConsumer< ? > > setImages( final RandomAccessibleInterval< ? > a )
+	{
+		return new LineLoopBuilder<>( a );
+	}
+
+	public static LineLoopBuilder< BiLineConsumer< ?, ? > > setImages( final RandomAccessibleInterval< ? > a, final RandomAccessibleInterval< ? > b )
+	{
+		return new LineLoopBuilder<>( a, b );
+	}
+
+	public static LineLoopBuilder< TriLineConsumer< ?, ?, ? > > setImages( final RandomAccessibleInterval< ? > a, final RandomAccessibleInterval< ? > b, final RandomAccessibleInterval< ? > c )
+	{
+		return new LineLoopBuilder<>( a, b, c );
+	}
+
+	/**
+	 * Allows the loop to be executed in parallel. The lines are distributed
+	 * to the {@link TaskExecutor} returned by
+	 * {@link Parallelization#getTaskExecutor()}. The action must therefore be
+	 * thread safe.
+	 */
+	public LineLoopBuilder< T > multiThreaded()
+	{
+		this.multiThreaded = true;
+		return this;
+	}
+
+	public void forEachLine( final T action )
+	{
+		Objects.requireNonNull( action );
+		final long size = Intervals.numElements( dimensions );
+		if ( size == 0 )
+			return;
+		if ( multiThreaded )
+		{
+			final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+			final long numTasks = Math.min( size, taskExecutor.suggestNumberOfTasks() );
+			final List< Interval > chunks = new ArrayList<>();
+			for ( long i = 0; i < numTasks; i++ )
+				chunks.add( new FinalInterval( new long[] { size * i / numTasks }, new long[] { size * ( i + 1 ) / numTasks - 1 } ) );
+			taskExecutor.forEach( chunks, chunk -> forEachLine( chunk.min( 0 ), chunk.max( 0 ) + 1, action ) );
+		}
+		else
+			forEachLine( 0, size, action );
+	}
+
+	/**
+	 * Executes the action for the lines of the pixels with flat indices
+	 * {@code from} (inclusive) to {@code to} (exclusive), on the calling
+	 * thread. This allows to split a loop into tasks that compute their own
+	 * results, e.g. to sum them up afterwards.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void forEachLine( final long from, final long to, final T action )
+	{
+		Objects.requireNonNull( action );
+		if ( from < 0 || to > Intervals.numElements( dimensions ) )
+			throw new IndexOutOfBoundsException( "Range [" + from + ", " + to + ") is out of bounds." );
+		final LineAccess[] accesses = new LineAccess[ images.length ];
+		for ( int i = 0; i < images.length; i++ )
+			accesses[ i ] = createLineAccess( images[ i ] );
+		final long[] position = new long[ dimensions.length ];
+		long index = from;
+		while ( index < to )
+		{
+			IntervalIndexer.indexToPosition( index, dimensions, position );
+			long length = to - index;
+			for ( final LineAccess access : accesses )
+				length = Math.min( length, access.setPosition( position ) );
+			final int n = ( int ) length;
+			switch ( accesses.length )
+			{
+			case 1:
+				( ( LineConsumer< Object > ) action ).accept( accesses[ 0 ].array, accesses[ 0 ].offset, n );
+				break;
+			case 2:
+				( ( BiLineConsumer< Object, Object > ) action ).accept( accesses[ 0 ].array, accesses[ 0 ].offset, accesses[ 1 ].array, accesses[ 1 ].offset, n );
+				break;
+			default:
+				( ( TriLineConsumer< Object, Object, Object > ) action ).accept( accesses[ 0 ].array, accesses[ 0 ].offset, accesses[ 1 ].array, accesses[ 1 ].offset, accesses[ 2 ].array, accesses[ 2 ].offset, n );
+			}
+			index += n;
+		}
+	}
+
+	private static LineAccess createLineAccess( final RandomAccessibleInterval< ? > image )
+	{
+		if ( image instanceof ArrayImg )
+			return new ArrayLineAccess( ( ArrayImg< ?, ? > ) image );
+		if ( image instanceof PlanarImg )
+			return new PlanarLineAccess( ( PlanarImg< ?, ? > ) image );
+		return new CellLineAccess( ( AbstractCellImg< ?, ?, ?, ? > ) image );
+	}
+
+	private static Object storageArray( final Object access )
+	{
+		return ( ( ArrayDataAccess< ? > ) access ).getCurrentStorageArray();
+	}
+
+	/**
+	 * Finds the primitive array and offset, that store the pixel at a given
+	 * position of an image.
+	 */
+	private static abstract class LineAccess
+	{
+		Object array;
+
+		int offset;
+
+		/**
+		 * Sets {@link #array} and {@link #offset} to the storage of the pixel
+		 * at the given position.
+		 *
+		 * @return the number of pixels starting at the given position, that
+		 *         are stored contiguously in {@link #array}, in flat iteration
+		 *         order of the image.
+		 */
+		abstract long setPosition( long[] position );
+	}
+
+	private static class ArrayLineAccess extends LineAccess
+	{
+		private final long[] dimensions;
+
+		private final long size;
+
+		ArrayLineAccess( final ArrayImg< ?, ? > image )
+		{
+			this.dimensions = Intervals.dimensionsAsLongArray( image );
+			this.size = image.size();
+			this.array = storageArray( image.update( null ) );
+		}
+
+		@Override
+		long setPosition( final long[] position )
+		{
+			final long index = IntervalIndexer.positionToIndex( position, dimensions );
+			offset = ( int ) index;
+			return size - index;
+		}
+	}
+
+	private static class PlanarLineAccess extends LineAccess
+	{
+		private final PlanarImg< ?, ? > image;
+
+		private final long[] dimensions;
+
+		private final long planeSize;
+
+		PlanarLineAccess( final PlanarImg< ?, ? > image )
+		{
+			this.image = image;
+			this.dimensions = Intervals.dimensionsAsLongArray( image );
+			this.planeSize = image.size() / image.numSlices();
+		}
+
+		@Override
+		long setPosition( final long[] position )
+		{
+			final int n = dimensions.length;
+			long indexInPlane = position[ 0 ];
+			if ( n > 1 )
+				indexInPlane += position[ 1 ] * dimensions[ 0 ];
+			int plane = 0;
+			for ( int d = n - 1; d >= 2; --d )
+				plane = plane * ( int ) dimensions[ d ] + ( int ) position[ d ];
+			array = storageArray( image.getPlane( plane ) );
+			offset = ( int ) indexInPlane;
+			return planeSize - indexInPlane;
+		}
+	}
+
+	private static class CellLineAccess extends LineAccess
+	{
+		private final long[] dimensions;
+
+		private final int[] cellDimensions;
+
+		private final RandomAccess< ? extends Cell< ? > > cells;
+
+		private final long[] cellPosition;
+
+		CellLineAccess( final AbstractCellImg< ?, ?, ?, ? > image )
+		{
+			this.dimensions = Intervals.dimensionsAsLongArray( image );
+			this.cellDimensions = new int[ dimensions.length ];
+			image.getCellGrid().cellDimensions( cellDimensions );
+			this.cells = image.getCells().randomAccess();
+			this.cellPosition = new long[ dimensions.length ];
+		}
+
+		@Override
+		long setPosition( final long[] position )
+		{
+			final int n = dimensions.length;
+			for ( int d = 0; d < n; ++d )
+				cellPosition[ d ] = position[ d ] / cellDimensions[ d ];
+			cells.setPosition( cellPosition );
+			final Cell< ? > cell = cells.get();
+			array = storageArray( cell.getData() );
+			offset = cell.globalPositionToIndex( position );
+
+			// The cell is contiguous in flat iteration order of the image,
+			// along the leading dimensions that it covers completely, and
+			// the first dimension that it doesn't cover completely.
+			int k = 0;
+			while ( k < n - 1 && cell.dimension( k ) == dimensions[ k ] )
+				++k;
+			long covered = 1;
+			long indexInCovered = 0;
+			for ( int d = k - 1; d >= 0; --d )
+			{
+				indexInCovered = indexInCovered * dimensions[ d ] + position[ d ];
+				covered *= dimensions[ d ];
+			}
+			return ( cell.min( k ) + cell.dimension( k ) - position[ k ] ) * covered - indexInCovered;
+		}
+	}
+
+	/**
+	 * Action for a loop over one image.
+	 */
+	public interface LineConsumer< A >
+	{
+		/**
+		 * @param a
+		 *            primitive array that stores the line of the image.
+		 * @param offsetA
+		 *            index of the first pixel of the line in {@code a}.
+		 * @param length
+		 *            number of pixels in the line.
+		 */
+		void accept( A a, int offsetA, int length );
+	}
+
+	/**
+	 * Action for a loop over two images.
+	 */
+	public interface BiLineConsumer< A, B >
+	{
+		void accept( A a, int offsetA, B b, int offsetB, int length );
+	}
+
+	/**
+	 * Action for a loop over three images.
+	 */
+	public interface TriLineConsumer< A, B, C >
+	{
+		void accept( A a, int offsetA, B b, int offsetB, C c, int offsetC, int length );
+	}
+}
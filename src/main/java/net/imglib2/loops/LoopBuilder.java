@@ -48,6 +48,8 @@ import net.imglib2.Positionable;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Sampler;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
 import net.imglib2.util.Intervals;
 
 /**
@@ -72,6 +74,17 @@ import net.imglib2.util.Intervals;
  * The {@link RandomAccessibleInterval}s {@code imageA}, {@code imageB} and
  * {@code sum} must have equal dimensions, but the bounds of there
  * {@link Intervals} can differ.
+ * <p>
+ * The loop can be executed in parallel, by calling {@link #multiThreaded()}.
+ * The threads are provided by {@link Parallelization#getTaskExecutor()}:
+ *
+ * <pre>
+ * {@code
+ * Parallelization.runMultiThreaded( () -> {
+ *     LoopBuilder.setImages( imageA, imageB, sum ).multiThreaded().forEachPixel( ... );
+ * } );
+ * }
+ * </pre>
  *
  * @author Matthias Arzt
  */
@@ -82,6 +95,8 @@ public class LoopBuilder< T >
 
 	private final RandomAccessibleInterval< ? >[] images;
 
+	private boolean multiThreaded = false;
+
 	private LoopBuilder( final RandomAccessibleInterval< ? >... images )
 	{
 		this.images = images;
@@ -112,18 +127,47 @@ public class LoopBuilder< T >
 		return new LoopBuilder<>( a, b, c );
 	}
 
+	/**
+	 * Allows the loop to be executed in parallel. The loop is split into
+	 * chunks that are executed by the {@link TaskExecutor} returned by
+	 * {@link Parallelization#getTaskExecutor()}. The action must therefore be
+	 * thread safe.
+	 */
+	public LoopBuilder< T > multiThreaded()
+	{
+		this.multiThreaded = true;
+		return this;
+	}
+
 	public void forEachPixel( final T action )
 	{
 		Objects.requireNonNull( action );
-		final List< RandomAccess< ? > > samplers = Stream.of( images ).map( this::initRandomAccess ).collect( Collectors.toList() );
+		final Interval interval = new FinalInterval( Intervals.dimensionsAsLongArray( dimensions ) );
+		if ( multiThreaded )
+		{
+			final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+			final List< Interval > chunks = IntervalChunks.chunkInterval( interval, taskExecutor.suggestNumberOfTasks() );
+			taskExecutor.forEach( chunks, chunk -> forEachPixel( chunk, action ) );
+		}
+		else
+			forEachPixel( interval, action );
+	}
+
+	private void forEachPixel( final Interval chunk, final T action )
+	{
+		final long[] offset = Intervals.minAsLongArray( chunk );
+		final List< RandomAccess< ? > > samplers = Stream.of( images ).map( image -> initRandomAccess( image, offset ) ).collect( Collectors.toList() );
 		final Positionable synced = SyncedPositionables.create( samplers );
-		LoopUtils.createIntervalLoop( synced, dimensions, RunnableFactory.bindActionToSamplers( action, samplers ) ).run();
+		LoopUtils.createIntervalLoop( synced, chunk, RunnableFactory.bindActionToSamplers( action, samplers ) ).run();
 	}
 
-	private RandomAccess< ? > initRandomAccess( final RandomAccessibleInterval< ? > image )
+	private RandomAccess< ? > initRandomAccess( final RandomAccessibleInterval< ? > image, final long[] offset )
 	{
 		final RandomAccess< ? > ra = image.randomAccess();
-		ra.setPosition( Intervals.minAsLongArray( image ) );
+		final long[] position = Intervals.minAsLongArray( image );
+		for ( int d = 0; d < position.length; d++ )
+			position[ d ] += offset[ d ];
+		ra.setPosition( position );
 		return ra;
 	}
 
@@ -182,7 +226,8 @@ public class LoopBuilder< T >
 			for ( final ClassCopyProvider< Runnable > factory : factories )
 				if ( factory.matches( arguments ) )
 				{
-					final List< Class< ? extends Object > > key = Stream.of( arguments ).map( Object::getClass ).collect( Collectors.toList() );
+					// the pixel types are part of the key, as many pixel types share the same sampler class
+					final List< Object > key = Arrays.asList( ClassCopyProvider.classesOf( arguments ), ClassCopyProvider.classesOf( samplers.stream().map( Sampler::get ).toArray() ) );
 					return factory.newInstanceForKey( key, arguments );
 				}
 			throw new IllegalArgumentException();
@@ -0,0 +1,475 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.neighborsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.FlatKDTree;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+
+/**
+ * All k-nearest neighbors: find the k nearest neighbors in a reference tree
+ * for every point of a query tree, or for every point of a tree among the
+ * other points of the same tree.
+ * <p>
+ * Instead of searching the reference tree once for every query point, both
+ * trees are traversed simultaneously (dual-tree algorithm): pairs of query and
+ * reference subtrees are pruned, if the distance between their bounding boxes
+ * exceeds the k-th nearest neighbor distance of all query points in the
+ * query subtree found so far. Nearby query points share most of the traversal
+ * this way.
+ * <p>
+ * The results are written into primitive arrays: for query point i (in the
+ * order of the list or array of points the query tree was constructed from)
+ * the j-th nearest neighbor is at {@code i * k + j}. Neighbors are given by
+ * their index in the list or array of points the reference tree was
+ * constructed from, see {@link FlatKDTree#getInputIndex(int)}. They are sorted
+ * by increasing distance. If the reference tree has less than k points, the
+ * remaining neighbors are -1, with squared distance {@link Double#MAX_VALUE}.
+ * <p>
+ * Subtrees of the query tree are processed in parallel, using the
+ * {@link TaskExecutor} returned by {@link Parallelization#getTaskExecutor()}.
+ */
+public final class AllKNearestNeighborSearch
+{
+	/**
+	 * Pairs of subtrees with at most this many points are compared
+	 * exhaustively.
+	 */
+	private static final int LEAF_SIZE = 16;
+
+	private AllKNearestNeighborSearch()
+	{
+		// prevent instantiation
+	}
+
+	/**
+	 * Find the k nearest neighbors in {@code references} of every point in
+	 * {@code queries}.
+	 *
+	 * @param queries
+	 *            tree of query points.
+	 * @param references
+	 *            tree to search.
+	 * @param k
+	 *            number of neighbors.
+	 * @param indices
+	 *            output, the indices of the k nearest neighbors of query point
+	 *            i are at {@code i * k}, ..., {@code i * k + k - 1}.
+	 * @param squDistances
+	 *            output, the corresponding squared distances. May be
+	 *            {@code null}.
+	 */
+	public static void search( final FlatKDTree< ? > queries, final FlatKDTree< ? > references, final int k, final int[] indices, final double[] squDistances )
+	{
+		search( queries, references, k, false, indices, squDistances );
+	}
+
+	/**
+	 * Find the k nearest neighbors of every point in {@code tree} among the
+	 * other points of the tree. A point is not its own neighbor, but other
+	 * points at the same position are.
+	 *
+	 * @param tree
+	 *            tree of points.
+	 * @param k
+	 *            number of neighbors.
+	 * @param indices
+	 *            output, the indices of the k nearest neighbors of point i
+	 *            are at {@code i * k}, ..., {@code i * k + k - 1}.
+	 * @param squDistances
+	 *            output, the corresponding squared distances. May be
+	 *            {@code null}.
+	 */
+	public static void search( final FlatKDTree< ? > tree, final int k, final int[] indices, final double[] squDistances )
+	{
+		search( tree, tree, k, true, indices, squDistances );
+	}
+
+	private static void search( final FlatKDTree< ? > queries, final FlatKDTree< ? > references, final int k, final boolean excludeSelf, final int[] indices, final double[] squDistances )
+	{
+		if ( queries.numDimensions() != references.numDimensions() )
+			throw new IllegalArgumentException( "AllKNearestNeighborSearch: trees must have the same number of dimensions." );
+		if ( k < 1 )
+			throw new IllegalArgumentException( "AllKNearestNeighborSearch: k must be positive." );
+		final int numQueries = ( int ) queries.size();
+		final long length = ( long ) numQueries * k;
+		if ( length > Integer.MAX_VALUE - 8 )
+			throw new IllegalArgumentException( "AllKNearestNeighborSearch: too many results." );
+		if ( indices.length < length || ( squDistances != null && squDistances.length < length ) )
+			throw new IllegalArgumentException( "AllKNearestNeighborSearch: output arrays are too small." );
+
+		// results in query tree order, neighbors as reference tree nodes
+		final int[] nodes = new int[ ( int ) length ];
+		final double[] distances = new double[ ( int ) length ];
+		Arrays.fill( nodes, -1 );
+		Arrays.fill( distances, Double.MAX_VALUE );
+
+		if ( numQueries > 0 && references.size() > 0 )
+		{
+			final Bounds queryBounds = new Bounds( queries );
+			final Bounds referenceBounds = ( references == queries ) ? queryBounds : new Bounds( references );
+			final double[] subtreeBounds = new double[ numQueries ];
+			Arrays.fill( subtreeBounds, Double.MAX_VALUE );
+
+			// Split the query tree into the nodes above some depth, and the
+			// subtrees below. These are processed independently.
+			final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+			final int numTasks = taskExecutor.suggestNumberOfTasks();
+			final List< Integer > sets = new ArrayList<>();
+			if ( numTasks <= 1 )
+				sets.add( whole( 0 ) );
+			else
+			{
+				int depth = 0;
+				while ( ( 1 << depth ) < 4 * numTasks && depth < 20 )
+					++depth;
+				final int firstSubtree = ( 1 << depth ) - 1;
+				for ( int node = 0; node < Math.min( firstSubtree, numQueries ); ++node )
+					sets.add( point( node ) );
+				for ( int node = firstSubtree; node < Math.min( 2 * firstSubtree + 1, numQueries ); ++node )
+					sets.add( whole( node ) );
+			}
+			taskExecutor.forEach( sets, set -> new Traversal( queryBounds, referenceBounds, k, excludeSelf, nodes, distances, subtreeBounds ).traverse( set, whole( 0 ) ) );
+		}
+
+		for ( int node = 0; node < numQueries; ++node )
+		{
+			final int o = queries.getInputIndex( node ) * k;
+			for ( int j = 0; j < k; ++j )
+			{
+				final int neighbor = nodes[ node * k + j ];
+				indices[ o + j ] = ( neighbor < 0 ) ? -1 : references.getInputIndex( neighbor );
+				if ( squDistances != null )
+					squDistances[ o + j ] = distances[ node * k + j ];
+			}
+		}
+	}
+
+	/*
+	 * A set of points in a tree is either the single point of a node, or all
+	 * points in the subtree rooted at a node. It is encoded as an int, with
+	 * the lowest bit set for subtrees.
+	 */
+
+	private static int point( final int node )
+	{
+		return node << 1;
+	}
+
+	private static int whole( final int node )
+	{
+		return ( node << 1 ) | 1;
+	}
+
+	private static int nodeOf( final int set )
+	{
+		return set >>> 1;
+	}
+
+	private static boolean isSubtree( final int set )
+	{
+		return ( set & 1 ) != 0;
+	}
+
+	/**
+	 * Positions, subtree sizes and subtree bounding boxes of a tree.
+	 */
+	private static final class Bounds
+	{
+		final int n;
+
+		final int size;
+
+		final double[] positions;
+
+		final int[] subtreeSizes;
+
+		final double[] min;
+
+		final double[] max;
+
+		/**
+		 * length of the diagonal of the bounding box of each subtree.
+		 */
+		final double[] diameters;
+
+		Bounds( final FlatKDTree< ? > tree )
+		{
+			n = tree.numDimensions();
+			size = ( int ) tree.size();
+			positions = tree.getPositions();
+			subtreeSizes = new int[ size ];
+			min = new double[ size * n ];
+			max = new double[ size * n ];
+			System.arraycopy( positions, 0, min, 0, size * n );
+			System.arraycopy( positions, 0, max, 0, size * n );
+			for ( int node = size - 1; node >= 0; --node )
+			{
+				subtreeSizes[ node ] = 1;
+				for ( long child = 2L * node + 1; child <= 2L * node + 2 && child < size; ++child )
+				{
+					final int c = ( int ) child;
+					subtreeSizes[ node ] += subtreeSizes[ c ];
+					for ( int d = 0; d < n; ++d )
+					{
+						min[ node * n + d ] = Math.min( min[ node * n + d ], min[ c * n + d ] );
+						max[ node * n + d ] = Math.max( max[ node * n + d ], max[ c * n + d ] );
+					}
+				}
+			}
+			diameters = new double[ size ];
+			for ( int node = 0; node < size; ++node )
+			{
+				double sum = 0;
+				for ( int d = 0; d < n; ++d )
+				{
+					final double diff = max[ node * n + d ] - min[ node * n + d ];
+					sum += diff * diff;
+				}
+				diameters[ node ] = Math.sqrt( sum );
+			}
+		}
+
+		int size( final int set )
+		{
+			return isSubtree( set ) ? subtreeSizes[ nodeOf( set ) ] : 1;
+		}
+
+		/**
+		 * Write the nodes of the given set into {@code nodes}, and return
+		 * their number.
+		 */
+		int collect( final int set, final int[] nodes )
+		{
+			final int node = nodeOf( set );
+			if ( !isSubtree( set ) )
+			{
+				nodes[ 0 ] = node;
+				return 1;
+			}
+			int count = 0;
+			for ( long first = node, width = 1; first < size; first = 2 * first + 1, width *= 2 )
+				for ( long i = first; i < Math.min( first + width, size ); ++i )
+					nodes[ count++ ] = ( int ) i;
+			return count;
+		}
+	}
+
+	/**
+	 * Recursive dual-tree traversal of a part of the query tree.
+	 */
+	private static final class Traversal
+	{
+		private final Bounds queries;
+
+		private final Bounds references;
+
+		private final int n;
+
+		private final int k;
+
+		private final boolean excludeSelf;
+
+		private final int[] nodes;
+
+		private final double[] distances;
+
+		/**
+		 * For every query node, an upper bound of the squared k-th nearest
+		 * neighbor distance of all points in its subtree.
+		 */
+		private final double[] subtreeBounds;
+
+		private final int[] queryNodes = new int[ LEAF_SIZE ];
+
+		private final int[] referenceNodes = new int[ LEAF_SIZE ];
+
+		Traversal( final Bounds queries, final Bounds references, final int k, final boolean excludeSelf, final int[] nodes, final double[] distances, final double[] subtreeBounds )
+		{
+			this.queries = queries;
+			this.references = references;
+			this.n = queries.n;
+			this.k = k;
+			this.excludeSelf = excludeSelf;
+			this.nodes = nodes;
+			this.distances = distances;
+			this.subtreeBounds = subtreeBounds;
+		}
+
+		void traverse( final int querySet, final int referenceSet )
+		{
+			if ( minSquDistance( querySet, referenceSet ) > bound( querySet ) )
+				return;
+
+			final int querySize = queries.size( querySet );
+			final int referenceSize = references.size( referenceSet );
+			if ( querySize <= LEAF_SIZE && referenceSize <= LEAF_SIZE )
+			{
+				compare( querySet, referenceSet );
+				return;
+			}
+
+			if ( querySize >= referenceSize || referenceSize == 1 )
+			{
+				// split the query set
+				final int node = nodeOf( querySet );
+				traverse( point( node ), referenceSet );
+				final long left = 2L * node + 1;
+				if ( left < queries.size )
+					traverse( whole( ( int ) left ), referenceSet );
+				if ( left + 1 < queries.size )
+					traverse( whole( ( int ) left + 1 ), referenceSet );
+				updateBound( node );
+			}
+			else
+			{
+				// split the reference set, visit closer parts first
+				final int node = nodeOf( referenceSet );
+				final long left = 2L * node + 1;
+				traverse( querySet, point( node ) );
+				if ( left + 1 < references.size )
+				{
+					final int leftSet = whole( ( int ) left );
+					final int rightSet = whole( ( int ) left + 1 );
+					if ( minSquDistance( querySet, leftSet ) <= minSquDistance( querySet, rightSet ) )
+					{
+						traverse( querySet, leftSet );
+						traverse( querySet, rightSet );
+					}
+					else
+					{
+						traverse( querySet, rightSet );
+						traverse( querySet, leftSet );
+					}
+				}
+				else if ( left < references.size )
+					traverse( querySet, whole( ( int ) left ) );
+			}
+		}
+
+		/**
+		 * Compare all pairs of points in the given sets.
+		 */
+		private void compare( final int querySet, final int referenceSet )
+		{
+			final int numQueryNodes = queries.collect( querySet, queryNodes );
+			final int numReferenceNodes = references.collect( referenceSet, referenceNodes );
+			for ( int i = 0; i < numQueryNodes; ++i )
+			{
+				final int q = queryNodes[ i ];
+				if ( numReferenceNodes > 1 && minSquDistance( point( q ), referenceSet ) > distances[ q * k + k - 1 ] )
+					continue;
+				for ( int j = 0; j < numReferenceNodes; ++j )
+				{
+					final int r = referenceNodes[ j ];
+					if ( excludeSelf && q == r )
+						continue;
+					double squDistance = 0;
+					for ( int d = 0; d < n; ++d )
+					{
+						final double diff = queries.positions[ q * n + d ] - references.positions[ r * n + d ];
+						squDistance += diff * diff;
+					}
+					if ( squDistance < distances[ q * k + k - 1 ] )
+						insert( q, r, squDistance );
+				}
+			}
+			// update bounds bottom-up
+			if ( isSubtree( querySet ) )
+				for ( int i = numQueryNodes - 1; i >= 0; --i )
+					updateBound( queryNodes[ i ] );
+		}
+
+		private void insert( final int q, final int r, final double squDistance )
+		{
+			final int o = q * k;
+			int i = k - 1;
+			for ( ; i > 0 && squDistance < distances[ o + i - 1 ]; --i )
+			{
+				distances[ o + i ] = distances[ o + i - 1 ];
+				nodes[ o + i ] = nodes[ o + i - 1 ];
+			}
+			distances[ o + i ] = squDistance;
+			nodes[ o + i ] = r;
+		}
+
+		private double bound( final int querySet )
+		{
+			final int node = nodeOf( querySet );
+			return isSubtree( querySet ) ? subtreeBounds[ node ] : distances[ node * k + k - 1 ];
+		}
+
+		/**
+		 * The k-th nearest neighbor distance of any point in the subtree is
+		 * bounded by the maximum of the bounds of the node and its children,
+		 * and by the k-th nearest neighbor distance of the node plus the
+		 * diameter of the subtree.
+		 */
+		private void updateBound( final int node )
+		{
+			final double squDistance = distances[ node * k + k - 1 ];
+			double bound = squDistance;
+			final long left = 2L * node + 1;
+			if ( left < queries.size )
+				bound = Math.max( bound, subtreeBounds[ ( int ) left ] );
+			if ( left + 1 < queries.size )
+				bound = Math.max( bound, subtreeBounds[ ( int ) left + 1 ] );
+			final double distance = Math.sqrt( squDistance ) + queries.diameters[ node ];
+			subtreeBounds[ node ] = Math.min( bound, distance * distance );
+		}
+
+		private double minSquDistance( final int querySet, final int referenceSet )
+		{
+			final double[] queryMin = isSubtree( querySet ) ? queries.min : queries.positions;
+			final double[] queryMax = isSubtree( querySet ) ? queries.max : queries.positions;
+			final double[] referenceMin = isSubtree( referenceSet ) ? references.min : references.positions;
+			final double[] referenceMax = isSubtree( referenceSet ) ? references.max : references.positions;
+			final int q = nodeOf( querySet ) * n;
+			final int r = nodeOf( referenceSet ) * n;
+			double sum = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				final double gap = Math.max( referenceMin[ r + d ] - queryMax[ q + d ], queryMin[ q + d ] - referenceMax[ r + d ] );
+				if ( gap > 0 )
+					sum += gap * gap;
+			}
+			return sum;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.neighborsearch;
+
+import net.imglib2.KDTree;
+import net.imglib2.KDTreeNode;
+import net.imglib2.RealLocalizable;
+
+/**
+ * Approximate {@link KNearestNeighborSearch} on kd-trees.
+ * <p>
+ * The search is exact up to a factor {@code 1 + epsilon}: the distance to the
+ * i-th returned point is at most {@code 1 + epsilon} times the distance to
+ * the true i-th nearest neighbor. Additionally, the number of nodes that are
+ * visited can be limited. When the limit is reached, the best points found so
+ * far are returned, without any guarantee. If less than k nodes have been
+ * visited, the remaining neighbors are {@code null} with distance
+ * {@link Double#MAX_VALUE}.
+ * <p>
+ * With {@code epsilon = 0} and no limit, the search is exact.
+ *
+ * @see ApproximateNearestNeighborSearchOnKDTree
+ */
+public class ApproximateKNearestNeighborSearchOnKDTree< T > extends KNearestNeighborSearchOnKDTree< T >
+{
+	protected final double epsilon;
+
+	protected final int maxVisitedNodes;
+
+	/**
+	 * (1 + epsilon)^2, the factor by which squared distances to the
+	 * splitting planes are scaled.
+	 */
+	private final double squFactor;
+
+	protected int visitedNodes;
+
+	/**
+	 * @param tree
+	 *            the tree to search.
+	 * @param k
+	 *            number of neighbors to search.
+	 * @param epsilon
+	 *            the allowed relative error of the distances to the found
+	 *            points, must be non-negative.
+	 * @param maxVisitedNodes
+	 *            maximum number of nodes to visit per search, use
+	 *            {@link Integer#MAX_VALUE} for no limit.
+	 */
+	public ApproximateKNearestNeighborSearchOnKDTree( final KDTree< T > tree, final int k, final double epsilon, final int maxVisitedNodes )
+	{
+		super( tree, k );
+		if ( epsilon < 0 )
+			throw new IllegalArgumentException( "epsilon must be non-negative." );
+		if ( maxVisitedNodes < 1 )
+			throw new IllegalArgumentException( "maxVisitedNodes must be positive." );
+		this.epsilon = epsilon;
+		this.maxVisitedNodes = maxVisitedNodes;
+		this.squFactor = ( 1 + epsilon ) * ( 1 + epsilon );
+	}
+
+	@Override
+	public void search( final RealLocalizable reference )
+	{
+		visitedNodes = 0;
+		for ( int i = 0; i < k; ++i )
+			bestPoints[ i ] = null;
+		super.search( reference );
+	}
+
+	@Override
+	protected void searchNode( final KDTreeNode< T > current )
+	{
+		if ( visitedNodes >= maxVisitedNodes )
+			return;
+		++visitedNodes;
+
+		// consider the current node
+		final double squDistance = current.squDistanceTo( pos );
+		if ( squDistance < bestSquDistances[ k - 1 ] )
+		{
+			int i = k - 1;
+			for ( int j = i - 1; i > 0 && squDistance < bestSquDistances[ j ]; --i, --j )
+			{
+				bestSquDistances[ i ] = bestSquDistances[ j ];
+				bestPoints[ i ] = bestPoints[ j ];
+			}
+			bestSquDistances[ i ] = squDistance;
+			bestPoints[ i ] = current;
+		}
+
+		final double axisDiff = pos[ current.getSplitDimension() ] - current.getSplitCoordinate();
+		final double axisSquDistance = axisDiff * axisDiff;
+		final boolean leftIsNearBranch = axisDiff < 0;
+
+		// search the near branch
+		final KDTreeNode< T > nearChild = leftIsNearBranch ? current.left : current.right;
+		final KDTreeNode< T > awayChild = leftIsNearBranch ? current.right : current.left;
+		if ( nearChild != null )
+			searchNode( nearChild );
+
+		// search the away branch - only if it may contain a point, that is
+		// closer by more than the factor 1 + epsilon
+		if ( ( axisSquDistance * squFactor <= bestSquDistances[ k - 1 ] ) && ( awayChild != null ) )
+			searchNode( awayChild );
+	}
+
+	/**
+	 * Get the number of nodes visited by the last search.
+	 */
+	public int getVisitedNodes()
+	{
+		return visitedNodes;
+	}
+
+	@Override
+	public ApproximateKNearestNeighborSearchOnKDTree< T > copy()
+	{
+		final ApproximateKNearestNeighborSearchOnKDTree< T > copy = new ApproximateKNearestNeighborSearchOnKDTree< T >( tree, k, epsilon, maxVisitedNodes );
+		System.arraycopy( pos, 0, copy.pos, 0, pos.length );
+		for ( int i = 0; i < k; ++i )
+		{
+			copy.bestPoints[ i ] = bestPoints[ i ];
+			copy.bestSquDistances[ i ] = bestSquDistances[ i ];
+		}
+		copy.visitedNodes = visitedNodes;
+		return copy;
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.neighborsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.FlatKDTree;
+import net.imglib2.IterableRealInterval;
+import net.imglib2.RealCursor;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.util.Util;
+
+/**
+ * Nearest neighbor search for many reference coordinates at once. The results
+ * are written into primitive arrays: for every query the index of the nearest
+ * point (as given by {@link FlatKDTree#getInputIndex(int)}, that is the index
+ * in the list or array of points the tree was constructed from) and the
+ * squared distance.
+ * <p>
+ * The queries are processed in parallel, using the {@link TaskExecutor}
+ * returned by {@link Parallelization#getTaskExecutor()}. Optionally the
+ * queries are processed in spatially sorted order (Z-order), such that
+ * consecutive searches visit the same parts of the tree. Additionally the
+ * result of the previous query is used as initial guess, see
+ * {@link NearestNeighborSearchOnFlatKDTree#search(double[], int)}. This pays
+ * off if the queries are not already sorted, and there are many of them.
+ */
+public final class BatchNearestNeighborSearch
+{
+	private BatchNearestNeighborSearch()
+	{
+		// prevent instantiation
+	}
+
+	/**
+	 * Find the nearest neighbors of the given reference coordinates.
+	 *
+	 * @param tree
+	 *            tree to search.
+	 * @param queries
+	 *            reference coordinates, the coordinates of query i are stored
+	 *            at indices i * n, ..., i * n + n - 1.
+	 * @param indices
+	 *            output, the index of the nearest point for every query, or
+	 *            -1 if the tree is empty.
+	 * @param squDistances
+	 *            output, the squared distance to the nearest point for every
+	 *            query. May be {@code null}.
+	 * @param spatiallySorted
+	 *            whether the queries are processed in spatially sorted order.
+	 */
+	public static void search( final FlatKDTree< ? > tree, final double[] queries, final int[] indices, final double[] squDistances, final boolean spatiallySorted )
+	{
+		final int n = tree.numDimensions();
+		if ( queries.length % n != 0 )
+			throw new IllegalArgumentException( "BatchNearestNeighborSearch: length of the coordinate array must be a multiple of the number of dimensions." );
+		final int numQueries = queries.length / n;
+		if ( indices.length < numQueries || ( squDistances != null && squDistances.length < numQueries ) )
+			throw new IllegalArgumentException( "BatchNearestNeighborSearch: output arrays are too small." );
+		final int[] order = spatiallySorted ? spatialOrder( queries, n ) : null;
+
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final int numTasks = Math.max( 1, Math.min( numQueries, taskExecutor.suggestNumberOfTasks() ) );
+		final List< int[] > chunks = new ArrayList<>( numTasks );
+		for ( int i = 0; i < numTasks; ++i )
+			chunks.add( new int[] { ( int ) ( ( long ) numQueries * i / numTasks ), ( int ) ( ( long ) numQueries * ( i + 1 ) / numTasks ) } );
+		taskExecutor.forEach( chunks, chunk -> {
+			final NearestNeighborSearchOnFlatKDTree< ? > search = new NearestNeighborSearchOnFlatKDTree<>( tree );
+			final double[] query = new double[ n ];
+			int guess = -1;
+			for ( int i = chunk[ 0 ]; i < chunk[ 1 ]; ++i )
+			{
+				final int q = ( order == null ) ? i : order[ i ];
+				System.arraycopy( queries, q * n, query, 0, n );
+				search.search( query, guess );
+				guess = search.getIndex();
+				indices[ q ] = ( guess < 0 ) ? -1 : tree.getInputIndex( guess );
+				if ( squDistances != null )
+					squDistances[ q ] = search.getSquareDistance();
+			}
+		} );
+	}
+
+	/**
+	 * Find the nearest neighbors of the given reference coordinates.
+	 *
+	 * @param queries
+	 *            reference coordinates, {@code queries[i]} are the coordinates
+	 *            of query i.
+	 * @see #search(FlatKDTree, double[], int[], double[], boolean)
+	 */
+	public static void search( final FlatKDTree< ? > tree, final double[][] queries, final int[] indices, final double[] squDistances, final boolean spatiallySorted )
+	{
+		final int n = tree.numDimensions();
+		final double[] flat = new double[ queries.length * n ];
+		for ( int i = 0; i < queries.length; ++i )
+			System.arraycopy( queries[ i ], 0, flat, i * n, n );
+		search( tree, flat, indices, squDistances, spatiallySorted );
+	}
+
+	/**
+	 * Find the nearest neighbors of the positions of the given
+	 * {@link IterableRealInterval}, for example a
+	 * {@link net.imglib2.RealPointSampleList}. The results are in iteration
+	 * order.
+	 *
+	 * @see #search(FlatKDTree, double[], int[], double[], boolean)
+	 */
+	public static void search( final FlatKDTree< ? > tree, final IterableRealInterval< ? > queries, final int[] indices, final double[] squDistances, final boolean spatiallySorted )
+	{
+		final int n = tree.numDimensions();
+		final double[] flat = new double[ ( int ) queries.size() * n ];
+		final double[] position = new double[ n ];
+		final RealCursor< ? > cursor = queries.localizingCursor();
+		for ( int i = 0; cursor.hasNext(); i += n )
+		{
+			cursor.fwd();
+			cursor.localize( position );
+			System.arraycopy( position, 0, flat, i, n );
+		}
+		search( tree, flat, indices, squDistances, spatiallySorted );
+	}
+
+	/**
+	 * Sort the given points along a Z-order curve.
+	 *
+	 * @param points
+	 *            coordinates of the points, the coordinates of point i are
+	 *            stored at indices i * n, ..., i * n + n - 1.
+	 * @return the indices of the points, sorted.
+	 */
+	static int[] spatialOrder( final double[] points, final int n )
+	{
+		final int size = points.length / n;
+		final int[] order = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			order[ i ] = i;
+
+		// Z-order codes with up to 52 bits are represented exactly as double
+		final int bits = Math.min( 52 / n, 31 );
+		if ( bits == 0 || size < 2 )
+			return order;
+
+		final double[] min = new double[ n ];
+		final double[] scale = new double[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			double lo = Double.POSITIVE_INFINITY;
+			double hi = Double.NEGATIVE_INFINITY;
+			for ( int i = d; i < points.length; i += n )
+			{
+				lo = Math.min( lo, points[ i ] );
+				hi = Math.max( hi, points[ i ] );
+			}
+			min[ d ] = lo;
+			scale[ d ] = hi > lo ? ( ( 1L << bits ) - 1 ) / ( hi - lo ) : 0;
+		}
+
+		final double[] codes = new double[ size ];
+		final long[] quantized = new long[ n ];
+		for ( int i = 0; i < size; ++i )
+		{
+			for ( int d = 0; d < n; ++d )
+				quantized[ d ] = ( long ) ( ( points[ i * n + d ] - min[ d ] ) * scale[ d ] );
+			long code = 0;
+			for ( int b = bits - 1; b >= 0; --b )
+				for ( int d = 0; d < n; ++d )
+					code = ( code << 1 ) | ( ( quantized[ d ] >>> b ) & 1 );
+			codes[ i ] = code;
+		}
+		Util.quicksort( codes, order, 0, size - 1 );
+		return order;
+	}
+}
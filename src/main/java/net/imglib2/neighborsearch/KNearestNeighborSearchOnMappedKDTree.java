@@ -0,0 +1,239 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.neighborsearch;
+
+import java.util.Arrays;
+
+import net.imglib2.FlatKDTree;
+import net.imglib2.MappedKDTree;
+import net.imglib2.RealLocalizable;
+import net.imglib2.Sampler;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Implementation of {@link KNearestNeighborSearch} search for
+ * {@link MappedKDTree}.
+ */
+public class KNearestNeighborSearchOnMappedKDTree< T extends RealType< T > > implements KNearestNeighborSearch< T >
+{
+	protected final MappedKDTree< T > tree;
+
+	protected final int n;
+
+	protected final int size;
+
+	protected final double[] pos;
+
+	protected final int k;
+
+	protected final int[] bestIndices;
+
+	protected final double[] bestSquDistances;
+
+	public KNearestNeighborSearchOnMappedKDTree( final MappedKDTree< T > tree, final int k )
+	{
+		this.tree = tree;
+		this.n = tree.numDimensions();
+		this.size = ( int ) tree.size();
+		this.pos = new double[ n ];
+		this.k = k;
+		this.bestIndices = new int[ k ];
+		this.bestSquDistances = new double[ k ];
+		Arrays.fill( bestIndices, -1 );
+		Arrays.fill( bestSquDistances, Double.MAX_VALUE );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public int getK()
+	{
+		return k;
+	}
+
+	@Override
+	public void search( final RealLocalizable reference )
+	{
+		reference.localize( pos );
+		search( pos );
+	}
+
+	/**
+	 * Perform k-nearest-neighbor search for a reference coordinate given as
+	 * {@code double[]}.
+	 */
+	public void search( final double[] reference )
+	{
+		if ( reference != pos )
+			System.arraycopy( reference, 0, pos, 0, n );
+		Arrays.fill( bestIndices, -1 );
+		Arrays.fill( bestSquDistances, Double.MAX_VALUE );
+		if ( size > 0 )
+			searchNode( 0, 0 );
+	}
+
+	/**
+	 * Perform k-nearest-neighbor search for a reference coordinate given as
+	 * {@code double[]}, considering only nodes with squared distance at most
+	 * {@code maxSquDistance}. A good bound (for example derived from the
+	 * neighbors of a nearby reference coordinate) makes the search faster. If
+	 * less than k nodes are within the bound, the remaining neighbors are -1,
+	 * with squared distance {@code Math.nextUp( maxSquDistance )}.
+	 *
+	 * @param reference
+	 *            the reference coordinate.
+	 * @param maxSquDistance
+	 *            bound of the squared distance of the neighbors.
+	 */
+	public void search( final double[] reference, final double maxSquDistance )
+	{
+		if ( reference != pos )
+			System.arraycopy( reference, 0, pos, 0, n );
+		Arrays.fill( bestIndices, -1 );
+		Arrays.fill( bestSquDistances, Math.min( Math.nextUp( maxSquDistance ), Double.MAX_VALUE ) );
+		if ( size > 0 )
+			searchNode( 0, 0 );
+	}
+
+	protected void searchNode( final int current, final int d )
+	{
+		// consider the current node
+		final double squDistance = tree.squDistance( current, pos );
+		if ( squDistance < bestSquDistances[ k - 1 ] )
+		{
+			int i = k - 1;
+			for ( int j = i - 1; i > 0 && squDistance < bestSquDistances[ j ]; --i, --j )
+			{
+				bestSquDistances[ i ] = bestSquDistances[ j ];
+				bestIndices[ i ] = bestIndices[ j ];
+			}
+			bestSquDistances[ i ] = squDistance;
+			bestIndices[ i ] = current;
+		}
+
+		final double axisDiff = pos[ d ] - tree.getDoublePosition( current, d );
+		final double axisSquDistance = axisDiff * axisDiff;
+		final boolean leftIsNearBranch = axisDiff < 0;
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+
+		// search the near branch
+		final int left = FlatKDTree.leftChild( current );
+		final int right = left + 1;
+		final int nearChild = leftIsNearBranch ? left : right;
+		final int awayChild = leftIsNearBranch ? right : left;
+		if ( nearChild < size )
+			searchNode( nearChild, dChild );
+
+		// search the away branch - maybe
+		if ( ( axisSquDistance <= bestSquDistances[ k - 1 ] ) && ( awayChild < size ) )
+			searchNode( awayChild, dChild );
+	}
+
+	/**
+	 * Get the index of the <em>i</em><sup>th</sup> nearest neighbor in the
+	 * tree, or -1 if the tree has less than i + 1 nodes.
+	 *
+	 * @see MappedKDTree#getNode(int)
+	 * @see MappedKDTree#getInputIndex(int)
+	 */
+	public int getIndex( final int i )
+	{
+		return bestIndices[ i ];
+	}
+
+	@Override
+	public Sampler< T > getSampler( final int i )
+	{
+		return tree.getNode( bestIndices[ i ] );
+	}
+
+	@Override
+	public RealLocalizable getPosition( final int i )
+	{
+		return tree.getNode( bestIndices[ i ] );
+	}
+
+	@Override
+	public double getSquareDistance( final int i )
+	{
+		return bestSquDistances[ i ];
+	}
+
+	@Override
+	public double getDistance( final int i )
+	{
+		return Math.sqrt( bestSquDistances[ i ] );
+	}
+
+	/* NearestNeighborSearch */
+
+	@Override
+	public RealLocalizable getPosition()
+	{
+		return getPosition( 0 );
+	}
+
+	@Override
+	public Sampler< T > getSampler()
+	{
+		return getSampler( 0 );
+	}
+
+	@Override
+	public double getSquareDistance()
+	{
+		return getSquareDistance( 0 );
+	}
+
+	@Override
+	public double getDistance()
+	{
+		return getDistance( 0 );
+	}
+
+	@Override
+	public KNearestNeighborSearchOnMappedKDTree< T > copy()
+	{
+		final KNearestNeighborSearchOnMappedKDTree< T > copy = new KNearestNeighborSearchOnMappedKDTree< T >( tree, k );
+		System.arraycopy( pos, 0, copy.pos, 0, pos.length );
+		System.arraycopy( bestIndices, 0, copy.bestIndices, 0, k );
+		System.arraycopy( bestSquDistances, 0, copy.bestSquDistances, 0, k );
+		return copy;
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.neighborsearch;
+
+import net.imglib2.FlatKDTree;
+import net.imglib2.RealLocalizable;
+import net.imglib2.Sampler;
+
+/**
+ * Implementation of {@link NearestNeighborSearch} search for
+ * {@link FlatKDTree}.
+ */
+public class NearestNeighborSearchOnFlatKDTree< T > implements NearestNeighborSearch< T >
+{
+	protected final FlatKDTree< T > tree;
+
+	protected final int n;
+
+	protected final int size;
+
+	protected final double[] positions;
+
+	protected final double[] pos;
+
+	protected int bestIndex;
+
+	protected double bestSquDistance;
+
+	public NearestNeighborSearchOnFlatKDTree( final FlatKDTree< T > tree )
+	{
+		this.tree = tree;
+		this.n = tree.numDimensions();
+		this.size = ( int ) tree.size();
+		this.positions = tree.getPositions();
+		this.pos = new double[ n ];
+		this.bestIndex = -1;
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public void search( final RealLocalizable p )
+	{
+		p.localize( pos );
+		search( pos );
+	}
+
+	/**
+	 * Perform nearest-neighbor search for a reference coordinate given as
+	 * {@code double[]}.
+	 */
+	public void search( final double[] p )
+	{
+		search( p, -1 );
+	}
+
+	/**
+	 * Perform nearest-neighbor search for a reference coordinate given as
+	 * {@code double[]}, starting with a guess for the nearest neighbor. The
+	 * distance to the guess bounds the search, a good guess (for example the
+	 * nearest neighbor of a nearby reference coordinate) therefore makes the
+	 * search faster. The result is the same as without a guess, except that
+	 * the guess is kept, if other nodes are at the same distance.
+	 *
+	 * @param p
+	 *            the reference coordinate.
+	 * @param guess
+	 *            index of a node in the tree, or -1 if there is no guess.
+	 */
+	public void search( final double[] p, final int guess )
+	{
+		if ( p != pos )
+			System.arraycopy( p, 0, pos, 0, n );
+		if ( guess >= 0 && guess < size )
+		{
+			bestIndex = guess;
+			bestSquDistance = tree.squDistance( guess, pos );
+		}
+		else
+		{
+			bestIndex = -1;
+			bestSquDistance = Double.MAX_VALUE;
+		}
+		if ( size > 0 )
+			searchNode( 0, 0 );
+	}
+
+	protected void searchNode( final int current, final int d )
+	{
+		// consider the current node
+		final int offset = current * n;
+		double distance = 0;
+		for ( int i = 0; i < n; ++i )
+		{
+			final double diff = positions[ offset + i ] - pos[ i ];
+			distance += diff * diff;
+		}
+		if ( distance < bestSquDistance )
+		{
+			bestSquDistance = distance;
+			bestIndex = current;
+		}
+
+		final double axisDiff = pos[ d ] - positions[ offset + d ];
+		final double axisSquDistance = axisDiff * axisDiff;
+		final boolean leftIsNearBranch = axisDiff < 0;
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+
+		// search the near branch
+		final int left = FlatKDTree.leftChild( current );
+		final int right = left + 1;
+		final int nearChild = leftIsNearBranch ? left : right;
+		final int awayChild = leftIsNearBranch ? right : left;
+		if ( nearChild < size )
+			searchNode( nearChild, dChild );
+
+		// search the away branch - maybe
+		if ( ( axisSquDistance <= bestSquDistance ) && ( awayChild < size ) )
+			searchNode( awayChild, dChild );
+	}
+
+	/**
+	 * Get the index of the nearest neighbor in the tree.
+	 *
+	 * @see FlatKDTree#getNode(int)
+	 * @see FlatKDTree#getInputIndex(int)
+	 */
+	public int getIndex()
+	{
+		return bestIndex;
+	}
+
+	@Override
+	public Sampler< T > getSampler()
+	{
+		return tree.getNode( bestIndex );
+	}
+
+	@Override
+	public RealLocalizable getPosition()
+	{
+		return tree.getNode( bestIndex );
+	}
+
+	@Override
+	public double getSquareDistance()
+	{
+		return bestSquDistance;
+	}
+
+	@Override
+	public double getDistance()
+	{
+		return Math.sqrt( bestSquDistance );
+	}
+
+	@Override
+	public NearestNeighborSearchOnFlatKDTree< T > copy()
+	{
+		final NearestNeighborSearchOnFlatKDTree< T > copy = new NearestNeighborSearchOnFlatKDTree< T >( tree );
+		System.arraycopy( pos, 0, copy.pos, 0, pos.length );
+		copy.bestIndex = bestIndex;
+		copy.bestSquDistance = bestSquDistance;
+		return copy;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.neighborsearch;
+
+import net.imglib2.MappedKDTree;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Implementation of {@link NearestNeighborSearch} search for
+ * {@link MappedKDTree}.
+ */
+public class NearestNeighborSearchOnMappedKDTree< T extends RealType< T > > extends KNearestNeighborSearchOnMappedKDTree< T >
+{
+	public NearestNeighborSearchOnMappedKDTree( final MappedKDTree< T > tree )
+	{
+		super( tree, 1 );
+	}
+
+	/**
+	 * Get the index of the nearest neighbor in the tree, or -1 if the tree is
+	 * empty.
+	 *
+	 * @see MappedKDTree#getNode(int)
+	 * @see MappedKDTree#getInputIndex(int)
+	 */
+	public int getIndex()
+	{
+		return getIndex( 0 );
+	}
+
+	@Override
+	public NearestNeighborSearchOnMappedKDTree< T > copy()
+	{
+		final NearestNeighborSearchOnMappedKDTree< T > copy = new NearestNeighborSearchOnMappedKDTree< T >( tree );
+		System.arraycopy( pos, 0, copy.pos, 0, n );
+		copy.bestIndices[ 0 ] = bestIndices[ 0 ];
+		copy.bestSquDistances[ 0 ] = bestSquDistances[ 0 ];
+		return copy;
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.neighborsearch;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.Sampler;
+import net.imglib2.UniformGridIndex;
+
+/**
+ * Implementation of {@link NearestNeighborSearch} search for
+ * {@link UniformGridIndex}.
+ */
+public class NearestNeighborSearchOnUniformGrid< T > implements NearestNeighborSearch< T >
+{
+	protected final UniformGridIndex< T > grid;
+
+	protected final int n;
+
+	protected final double[] pos;
+
+	protected final double[] squDistance;
+
+	protected int bestPoint;
+
+	public NearestNeighborSearchOnUniformGrid( final UniformGridIndex< T > grid )
+	{
+		this.grid = grid;
+		this.n = grid.numDimensions();
+		this.pos = new double[ n ];
+		this.squDistance = new double[ 1 ];
+		this.bestPoint = -1;
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public void search( final RealLocalizable reference )
+	{
+		reference.localize( pos );
+		bestPoint = grid.searchNearest( pos, squDistance );
+	}
+
+	/**
+	 * Get the index of the nearest neighbor in the list (or array) of points
+	 * given to the constructor of the {@link UniformGridIndex}, or -1 if the
+	 * index is empty.
+	 */
+	public int getIndex()
+	{
+		return bestPoint < 0 ? -1 : grid.getInputIndex( bestPoint );
+	}
+
+	@Override
+	public Sampler< T > getSampler()
+	{
+		return grid.getPoint( bestPoint );
+	}
+
+	@Override
+	public RealLocalizable getPosition()
+	{
+		return grid.getPoint( bestPoint );
+	}
+
+	@Override
+	public double getSquareDistance()
+	{
+		return squDistance[ 0 ];
+	}
+
+	@Override
+	public double getDistance()
+	{
+		return Math.sqrt( squDistance[ 0 ] );
+	}
+
+	@Override
+	public NearestNeighborSearchOnUniformGrid< T > copy()
+	{
+		final NearestNeighborSearchOnUniformGrid< T > copy = new NearestNeighborSearchOnUniformGrid<>( grid );
+		System.arraycopy( pos, 0, copy.pos, 0, n );
+		copy.squDistance[ 0 ] = squDistance[ 0 ];
+		copy.bestPoint = bestPoint;
+		return copy;
+	}
+}
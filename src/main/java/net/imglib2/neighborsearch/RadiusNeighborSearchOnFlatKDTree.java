@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.neighborsearch;
+
+import java.util.Arrays;
+
+import net.imglib2.FlatKDTree;
+import net.imglib2.RealLocalizable;
+import net.imglib2.Sampler;
+import net.imglib2.util.Util;
+
+/**
+ * Implementation of {@link RadiusNeighborSearch} search for
+ * {@link FlatKDTree}.
+ * <p>
+ * The results are stored in primitive arrays, that are reused by subsequent
+ * searches.
+ */
+public class RadiusNeighborSearchOnFlatKDTree< T > implements RadiusNeighborSearch< T >
+{
+	protected final FlatKDTree< T > tree;
+
+	protected final int n;
+
+	protected final int size;
+
+	protected final double[] positions;
+
+	protected final double[] pos;
+
+	protected int numNeighbors;
+
+	protected int[] resultIndices;
+
+	protected double[] resultSquDistances;
+
+	public RadiusNeighborSearchOnFlatKDTree( final FlatKDTree< T > tree )
+	{
+		this.tree = tree;
+		this.n = tree.numDimensions();
+		this.size = ( int ) tree.size();
+		this.positions = tree.getPositions();
+		this.pos = new double[ n ];
+		this.resultIndices = new int[ 16 ];
+		this.resultSquDistances = new double[ 16 ];
+	}
+
+	@Override
+	public void search( final RealLocalizable reference, final double radius, final boolean sortResults )
+	{
+		reference.localize( pos );
+		search( pos, radius, sortResults );
+	}
+
+	/**
+	 * Perform neighbor search within a radius about a reference coordinate
+	 * given as {@code double[]}.
+	 *
+	 * @see #search(RealLocalizable, double, boolean)
+	 */
+	public void search( final double[] reference, final double radius, final boolean sortResults )
+	{
+		assert radius >= 0;
+		if ( reference != pos )
+			System.arraycopy( reference, 0, pos, 0, n );
+		numNeighbors = 0;
+		if ( size > 0 )
+			searchNode( 0, 0, radius * radius );
+		if ( sortResults && numNeighbors > 1 )
+			Util.quicksort( resultSquDistances, resultIndices, 0, numNeighbors - 1 );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	protected void searchNode( final int current, final int d, final double squRadius )
+	{
+		// consider the current node
+		final int offset = current * n;
+		double squDistance = 0;
+		for ( int i = 0; i < n; ++i )
+		{
+			final double diff = positions[ offset + i ] - pos[ i ];
+			squDistance += diff * diff;
+		}
+		if ( squDistance <= squRadius )
+			addResult( current, squDistance );
+
+		final double axisDiff = pos[ d ] - positions[ offset + d ];
+		final double axisSquDistance = axisDiff * axisDiff;
+		final boolean leftIsNearBranch = axisDiff < 0;
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+
+		// search the near branch
+		final int left = FlatKDTree.leftChild( current );
+		final int right = left + 1;
+		final int nearChild = leftIsNearBranch ? left : right;
+		final int awayChild = leftIsNearBranch ? right : left;
+		if ( nearChild < size )
+			searchNode( nearChild, dChild, squRadius );
+
+		// search the away branch - maybe
+		if ( ( axisSquDistance <= squRadius ) && ( awayChild < size ) )
+			searchNode( awayChild, dChild, squRadius );
+	}
+
+	private void addResult( final int index, final double squDistance )
+	{
+		if ( numNeighbors == resultIndices.length )
+		{
+			final int capacity = 2 * numNeighbors;
+			resultIndices = Arrays.copyOf( resultIndices, capacity );
+			resultSquDistances = Arrays.copyOf( resultSquDistances, capacity );
+		}
+		resultIndices[ numNeighbors ] = index;
+		resultSquDistances[ numNeighbors ] = squDistance;
+		++numNeighbors;
+	}
+
+	@Override
+	public int numNeighbors()
+	{
+		return numNeighbors;
+	}
+
+	/**
+	 * Get the index of the <em>i</em><sup>th</sup> neighbor in the tree.
+	 *
+	 * @see FlatKDTree#getNode(int)
+	 * @see FlatKDTree#getInputIndex(int)
+	 */
+	public int getIndex( final int i )
+	{
+		return resultIndices[ i ];
+	}
+
+	@Override
+	public Sampler< T > getSampler( final int i )
+	{
+		return tree.getNode( resultIndices[ i ] );
+	}
+
+	@Override
+	public RealLocalizable getPosition( final int i )
+	{
+		return tree.getNode( resultIndices[ i ] );
+	}
+
+	@Override
+	public double getSquareDistance( final int i )
+	{
+		return resultSquDistances[ i ];
+	}
+
+	@Override
+	public double getDistance( final int i )
+	{
+		return Math.sqrt( resultSquDistances[ i ] );
+	}
+}
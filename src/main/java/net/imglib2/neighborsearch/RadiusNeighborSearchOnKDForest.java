@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.neighborsearch;
+
+import java.util.Arrays;
+
+import net.imglib2.KDForest;
+import net.imglib2.RealLocalizable;
+import net.imglib2.Sampler;
+import net.imglib2.util.Sort;
+
+/**
+ * Implementation of {@link RadiusNeighborSearch} search for
+ * {@link KDForest}. Sorting is stable, like in
+ * {@link RadiusNeighborSearchOnKDTree}: neighbors at equal distance keep the
+ * order in which they were found.
+ */
+public class RadiusNeighborSearchOnKDForest< T > implements RadiusNeighborSearch< T >
+{
+	protected final KDForest< T > forest;
+
+	protected final int n;
+
+	protected final double[] pos;
+
+	protected int numNeighbors;
+
+	protected long[] resultPoints;
+
+	protected double[] resultSquDistances;
+
+	private int[] order;
+
+	private long[] sortedPoints;
+
+	private final KDForest.PointConsumer collector = this::addResult;
+
+	public RadiusNeighborSearchOnKDForest( final KDForest< T > forest )
+	{
+		this.forest = forest;
+		this.n = forest.numDimensions();
+		this.pos = new double[ n ];
+		this.resultPoints = new long[ 16 ];
+		this.resultSquDistances = new double[ 16 ];
+		this.order = new int[ 16 ];
+		this.sortedPoints = new long[ 16 ];
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public void search( final RealLocalizable reference, final double radius, final boolean sortResults )
+	{
+		assert radius >= 0;
+		reference.localize( pos );
+		numNeighbors = 0;
+		forest.searchRadius( pos, radius, collector );
+		if ( sortResults && numNeighbors > 1 )
+			sortResults();
+	}
+
+	private void addResult( final long point, final double squDistance )
+	{
+		if ( numNeighbors == resultPoints.length )
+		{
+			final int capacity = 2 * numNeighbors;
+			resultPoints = Arrays.copyOf( resultPoints, capacity );
+			resultSquDistances = Arrays.copyOf( resultSquDistances, capacity );
+			order = new int[ capacity ];
+			sortedPoints = new long[ capacity ];
+		}
+		resultPoints[ numNeighbors ] = point;
+		resultSquDistances[ numNeighbors ] = squDistance;
+		++numNeighbors;
+	}
+
+	private void sortResults()
+	{
+		for ( int i = 0; i < numNeighbors; ++i )
+			order[ i ] = i;
+		Sort.coSort( resultSquDistances, order, 0, numNeighbors );
+		for ( int i = 0; i < numNeighbors; ++i )
+			sortedPoints[ i ] = resultPoints[ order[ i ] ];
+		final long[] tmp = resultPoints;
+		resultPoints = sortedPoints;
+		sortedPoints = tmp;
+	}
+
+	@Override
+	public int numNeighbors()
+	{
+		return numNeighbors;
+	}
+
+	@Override
+	public Sampler< T > getSampler( final int i )
+	{
+		return forest.getPoint( resultPoints[ i ] );
+	}
+
+	@Override
+	public RealLocalizable getPosition( final int i )
+	{
+		return forest.getPoint( resultPoints[ i ] );
+	}
+
+	@Override
+	public double getSquareDistance( final int i )
+	{
+		return resultSquDistances[ i ];
+	}
+
+	@Override
+	public double getDistance( final int i )
+	{
+		return Math.sqrt( resultSquDistances[ i ] );
+	}
+}
@@ -35,17 +35,26 @@
 package net.imglib2.neighborsearch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.function.ObjDoubleConsumer;
 
 import net.imglib2.KDTree;
 import net.imglib2.KDTreeNode;
 import net.imglib2.RealLocalizable;
 import net.imglib2.Sampler;
+import net.imglib2.util.Sort;
 import net.imglib2.util.ValuePair;
 
 /**
  * Implementation of {@link RadiusNeighborSearch} search for kd-trees.
+ * <p>
+ * The results are stored in parallel arrays of nodes and squared distances,
+ * that are reused by subsequent searches. Sorting is stable, neighbors at
+ * equal distance keep the order in which they were found. Use
+ * {@link #forEachNeighbor(RealLocalizable, double, ObjDoubleConsumer)} to
+ * process the neighbors without storing them.
  * 
  * @author Tobias Pietzsch
  */
@@ -57,14 +66,58 @@ public class RadiusNeighborSearchOnKDTree< T > implements RadiusNeighborSearch<
 
 	protected final double[] pos;
 
+	protected int numNeighbors;
+
+	protected KDTreeNode< T >[] resultNodes;
+
+	protected double[] resultSquDistances;
+
+	/**
+	 * The results of the last search, as pairs of node and squared distance.
+	 * This list is only used if it was requested with
+	 * {@link #RadiusNeighborSearchOnKDTree(KDTree, boolean)}, otherwise it is
+	 * null. It then replaces {@link #resultNodes} and
+	 * {@link #resultSquDistances}, like in previous versions: search clears
+	 * it, {@link #searchNode(KDTreeNode, double)} adds to it, and the results
+	 * are read from it.
+	 *
+	 * @deprecated The results are stored in {@link #resultNodes} and
+	 *             {@link #resultSquDistances}. This list will be removed in
+	 *             a future version.
+	 */
+	@Deprecated
 	protected ArrayList< ValuePair< KDTreeNode< T >, Double > > resultPoints;
 
+	private int[] order;
+
+	private KDTreeNode< T >[] sortedNodes;
+
 	public RadiusNeighborSearchOnKDTree( final KDTree< T > tree )
+	{
+		this( tree, false );
+	}
+
+	/**
+	 * Constructor for subclasses that still use {@link #resultPoints}.
+	 *
+	 * @param useResultPoints
+	 *            whether the results are stored in {@link #resultPoints}.
+	 *
+	 * @deprecated Use {@link #resultNodes} and {@link #resultSquDistances},
+	 *             and {@link #RadiusNeighborSearchOnKDTree(KDTree)}.
+	 */
+	@Deprecated
+	@SuppressWarnings( "unchecked" )
+	protected RadiusNeighborSearchOnKDTree( final KDTree< T > tree, final boolean useResultPoints )
 	{
 		this.tree = tree;
 		this.n = tree.numDimensions();
 		this.pos = new double[ n ];
-		this.resultPoints = new ArrayList< ValuePair< KDTreeNode< T >, Double > >();
+		this.resultNodes = new KDTreeNode[ 16 ];
+		this.resultSquDistances = new double[ 16 ];
+		this.order = new int[ 16 ];
+		this.sortedNodes = new KDTreeNode[ 16 ];
+		this.resultPoints = useResultPoints ? new ArrayList<>() : null;
 	}
 
 	@Override
@@ -72,21 +125,44 @@ public class RadiusNeighborSearchOnKDTree< T > implements RadiusNeighborSearch<
 	{
 		assert radius >= 0;
 		reference.localize( pos );
-		resultPoints.clear();
+		Arrays.fill( resultNodes, 0, numNeighbors, null );
+		Arrays.fill( sortedNodes, 0, numNeighbors, null );
+		numNeighbors = 0;
+		if ( resultPoints != null )
+			resultPoints.clear();
 		searchNode( tree.getRoot(), radius * radius );
 		if ( sortResults )
 		{
-			Collections.sort( resultPoints, new Comparator< ValuePair< KDTreeNode< T >, Double > >()
-			{
-				@Override
-				public int compare( final ValuePair< KDTreeNode< T >, Double > o1, final ValuePair< KDTreeNode< T >, Double > o2 )
-				{
-					return Double.compare( o1.b, o2.b );
-				}
-			} );
+			if ( resultPoints != null )
+				Collections.sort( resultPoints, Comparator.comparingDouble( pair -> pair.getB() ) );
+			else if ( numNeighbors > 1 )
+				sortResults();
 		}
 	}
 
+	/**
+	 * Perform neighbor search within a radius about a reference coordinate,
+	 * and pass each neighbor with its squared distance to {@code action}, in
+	 * arbitrary order. The neighbors are not stored, the results of the
+	 * previous {@link #search(RealLocalizable, double, boolean)} remain
+	 * available.
+	 *
+	 * @param reference
+	 *            the reference coordinate.
+	 * @param radius
+	 *            the radius about the reference coordinate that should be
+	 *            searched for neighbors.
+	 * @param action
+	 *            called with every node within radius and its squared
+	 *            distance to the reference.
+	 */
+	public void forEachNeighbor( final RealLocalizable reference, final double radius, final ObjDoubleConsumer< ? super KDTreeNode< T > > action )
+	{
+		assert radius >= 0;
+		reference.localize( pos );
+		forEachNode( tree.getRoot(), pos, radius * radius, action );
+	}
+
 	@Override
 	public int numDimensions()
 	{
@@ -98,9 +174,7 @@ public class RadiusNeighborSearchOnKDTree< T > implements RadiusNeighborSearch<
 		// consider the current node
 		final double squDistance = current.squDistanceTo( pos );
 		if ( squDistance <= squRadius )
-		{
-			resultPoints.add( new ValuePair< KDTreeNode< T >, Double >( current, squDistance ) );
-		}
+			addResult( current, squDistance );
 
 		final double axisDiff = pos[ current.getSplitDimension() ] - current.getSplitCoordinate();
 		final double axisSquDistance = axisDiff * axisDiff;
@@ -117,33 +191,89 @@ public class RadiusNeighborSearchOnKDTree< T > implements RadiusNeighborSearch<
 			searchNode( awayChild, squRadius );
 	}
 
+	private void forEachNode( final KDTreeNode< T > current, final double[] position, final double squRadius, final ObjDoubleConsumer< ? super KDTreeNode< T > > action )
+	{
+		final double squDistance = current.squDistanceTo( position );
+		if ( squDistance <= squRadius )
+			action.accept( current, squDistance );
+
+		final double axisDiff = position[ current.getSplitDimension() ] - current.getSplitCoordinate();
+		final boolean leftIsNearBranch = axisDiff < 0;
+		final KDTreeNode< T > nearChild = leftIsNearBranch ? current.left : current.right;
+		final KDTreeNode< T > awayChild = leftIsNearBranch ? current.right : current.left;
+		if ( nearChild != null )
+			forEachNode( nearChild, position, squRadius, action );
+		if ( ( axisDiff * axisDiff <= squRadius ) && ( awayChild != null ) )
+			forEachNode( awayChild, position, squRadius, action );
+	}
+
+	private void addResult( final KDTreeNode< T > node, final double squDistance )
+	{
+		if ( resultPoints != null )
+		{
+			resultPoints.add( new ValuePair<>( node, squDistance ) );
+			return;
+		}
+		if ( numNeighbors == resultNodes.length )
+		{
+			final int capacity = 2 * numNeighbors;
+			resultNodes = Arrays.copyOf( resultNodes, capacity );
+			resultSquDistances = Arrays.copyOf( resultSquDistances, capacity );
+			order = new int[ capacity ];
+			sortedNodes = Arrays.copyOf( sortedNodes, capacity );
+		}
+		resultNodes[ numNeighbors ] = node;
+		resultSquDistances[ numNeighbors ] = squDistance;
+		++numNeighbors;
+	}
+
+	private void sortResults()
+	{
+		for ( int i = 0; i < numNeighbors; ++i )
+			order[ i ] = i;
+		Sort.coSort( resultSquDistances, order, 0, numNeighbors );
+		for ( int i = 0; i < numNeighbors; ++i )
+			sortedNodes[ i ] = resultNodes[ order[ i ] ];
+		final KDTreeNode< T >[] tmp = resultNodes;
+		resultNodes = sortedNodes;
+		sortedNodes = tmp;
+	}
+
 	@Override
 	public int numNeighbors()
 	{
-		return resultPoints.size();
+		if ( resultPoints != null )
+			return resultPoints.size();
+		return numNeighbors;
 	}
 
 	@Override
 	public Sampler< T > getSampler( final int i )
 	{
-		return resultPoints.get( i ).a;
+		if ( resultPoints != null )
+			return resultPoints.get( i ).getA();
+		return resultNodes[ i ];
 	}
 
 	@Override
 	public RealLocalizable getPosition( final int i )
 	{
-		return resultPoints.get( i ).a;
+		if ( resultPoints != null )
+			return resultPoints.get( i ).getA();
+		return resultNodes[ i ];
 	}
 
 	@Override
 	public double getSquareDistance( final int i )
 	{
-		return resultPoints.get( i ).b;
+		if ( resultPoints != null )
+			return resultPoints.get( i ).getB();
+		return resultSquDistances[ i ];
 	}
 
 	@Override
 	public double getDistance( final int i )
 	{
-		return Math.sqrt( resultPoints.get( i ).b );
+		return Math.sqrt( getSquareDistance( i ) );
 	}
 }
@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link TaskExecutor} that distributes the tasks to the threads of an
+ * {@link ExecutorService}.
+ * <p>
+ * Every task is executed with this {@link TaskExecutor} set as the
+ * {@link Parallelization#getTaskExecutor() current task executor}, such that
+ * nested parallel algorithms share the same threads. If the
+ * {@link ExecutorService} is a {@link ForkJoinPool}, nested calls to
+ * {@link #runAll(List)} are executed by work stealing and do not block worker
+ * threads.
+ */
+class DefaultTaskExecutor implements TaskExecutor
+{
+
+	private final ExecutorService executorService;
+
+	private final boolean shutdownOnClose;
+
+	private final int parallelism;
+
+	DefaultTaskExecutor( final ExecutorService executorService, final boolean shutdownOnClose )
+	{
+		this.executorService = executorService;
+		this.shutdownOnClose = shutdownOnClose;
+		this.parallelism = parallelismOf( executorService );
+	}
+
+	private static int parallelismOf( final ExecutorService executorService )
+	{
+		if ( executorService instanceof ForkJoinPool )
+			return ( ( ForkJoinPool ) executorService ).getParallelism();
+		if ( executorService instanceof ThreadPoolExecutor )
+			return Math.max( 1, ( ( ThreadPoolExecutor ) executorService ).getMaximumPoolSize() );
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	@Override
+	public int suggestNumberOfTasks()
+	{
+		return ( parallelism == 1 ) ? 1 : ( int ) Math.min( Integer.MAX_VALUE, 4L * parallelism );
+	}
+
+	@Override
+	public void runAll( final List< Runnable > tasks )
+	{
+		if ( tasks.isEmpty() )
+			return;
+		if ( tasks.size() == 1 )
+		{
+			Parallelization.runWithExecutor( this, tasks.get( 0 ) );
+			return;
+		}
+		if ( executorService instanceof ForkJoinPool )
+			runAllForkJoin( ( ForkJoinPool ) executorService, tasks );
+		else
+			runAllFutures( tasks );
+	}
+
+	private void runAllForkJoin( final ForkJoinPool pool, final List< Runnable > tasks )
+	{
+		final List< ForkJoinTask< ? > > forkJoinTasks = new ArrayList<>( tasks.size() );
+		for ( final Runnable task : tasks )
+			forkJoinTasks.add( ForkJoinTask.adapt( () -> Parallelization.runWithExecutor( this, task ) ) );
+		if ( ForkJoinTask.getPool() == pool )
+			ForkJoinTask.invokeAll( forkJoinTasks );
+		else
+			pool.invoke( ForkJoinTask.adapt( () -> ForkJoinTask.invokeAll( forkJoinTasks ) ) );
+	}
+
+	private void runAllFutures( final List< Runnable > tasks )
+	{
+		final List< Callable< Object > > callables = new ArrayList<>( tasks.size() );
+		for ( final Runnable task : tasks )
+			callables.add( () -> {
+				Parallelization.runWithExecutor( this, task );
+				return null;
+			} );
+		try
+		{
+			final List< Future< Object > > futures = executorService.invokeAll( callables );
+			for ( final Future< Object > future : futures )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
+		}
+	}
+
+	@Override
+	public < T > void forEach( final List< ? extends T > parameters, final Consumer< ? super T > task )
+	{
+		final List< Runnable > tasks = new ArrayList<>( parameters.size() );
+		for ( final T parameter : parameters )
+			tasks.add( () -> task.accept( parameter ) );
+		runAll( tasks );
+	}
+
+	@Override
+	public < T, R > List< R > forEachApply( final List< ? extends T > parameters, final Function< ? super T, ? extends R > task )
+	{
+		final List< R > results = new ArrayList<>( parameters.size() );
+		final List< Runnable > tasks = new ArrayList<>( parameters.size() );
+		for ( int i = 0; i < parameters.size(); i++ )
+		{
+			results.add( null );
+			final int index = i;
+			final T parameter = parameters.get( i );
+			tasks.add( () -> results.set( index, task.apply( parameter ) ) );
+		}
+		runAll( tasks );
+		return results;
+	}
+
+	@Override
+	public ExecutorService getExecutorService()
+	{
+		return executorService;
+	}
+
+	@Override
+	public void close()
+	{
+		if ( shutdownOnClose )
+			executorService.shutdown();
+	}
+}
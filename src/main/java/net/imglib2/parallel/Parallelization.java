@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.parallel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * This class allows to configure an algorithm for parallelization.
+ * <p>
+ * The algorithm needs to use the {@link TaskExecutor} returned by
+ * {@link Parallelization#getTaskExecutor()} to implement the parallelization.
+ * Alternatively it can use the {@link ExecutorService} given by
+ * {@code getTaskExecutor().getExecutorService()}. But {@link TaskExecutor} is
+ * simpler to use and better suited for image processing algorithms.
+ * <p>
+ * The algorithm can be executed single-threaded or multi-threaded, without
+ * changing the algorithm itself:
+ *
+ * <pre>
+ * {@code
+ * // single-threaded call, e.g. inside an already parallel batch job
+ * Parallelization.runSingleThreaded( () -> myAlgorithm( image ) );
+ *
+ * // multi-threaded call, using all available processors
+ * Parallelization.runMultiThreaded( () -> myAlgorithm( image ) );
+ *
+ * // multi-threaded call, using 8 threads
+ * Parallelization.runWithNumThreads( 8, () -> myAlgorithm( image ) );
+ * }
+ * </pre>
+ *
+ * The {@link TaskExecutor} is stored thread-locally. The initial setting of
+ * every thread is single-threaded execution. Tasks that are executed by a
+ * multi-threaded {@link TaskExecutor} see that {@link TaskExecutor} as their
+ * current setting, such that nested parallel algorithms share the same
+ * threads.
+ */
+public final class Parallelization
+{
+
+	private Parallelization()
+	{
+		// prevent from instantiation
+	}
+
+	private static final ThreadLocal< TaskExecutor > executor = ThreadLocal.withInitial( TaskExecutors::singleThreaded );
+
+	/**
+	 * Returns the {@link TaskExecutor} that was set for this thread.
+	 */
+	public static TaskExecutor getTaskExecutor()
+	{
+		return executor.get();
+	}
+
+	/**
+	 * To run an algorithm single-threaded use:
+	 * <p>
+	 * {@code Parallelization.runSingleThreaded( () -> myAlgorithm( input ) );}
+	 */
+	public static void runSingleThreaded( final Runnable action )
+	{
+		runWithExecutor( TaskExecutors.singleThreaded(), action );
+	}
+
+	/**
+	 * To run an algorithm single-threaded use:
+	 * <p>
+	 * {@code output = Parallelization.runSingleThreaded( () -> myAlgorithm( input ) );}
+	 */
+	public static < R > R runSingleThreaded( final Callable< R > action )
+	{
+		return runWithExecutor( TaskExecutors.singleThreaded(), action );
+	}
+
+	/**
+	 * To run an algorithm multi-threaded, using all available processors, use:
+	 * <p>
+	 * {@code Parallelization.runMultiThreaded( () -> myAlgorithm( input ) );}
+	 */
+	public static void runMultiThreaded( final Runnable action )
+	{
+		runWithExecutor( TaskExecutors.multiThreaded(), action );
+	}
+
+	/**
+	 * To run an algorithm multi-threaded, using all available processors, use:
+	 * <p>
+	 * {@code output = Parallelization.runMultiThreaded( () -> myAlgorithm( input ) );}
+	 */
+	public static < R > R runMultiThreaded( final Callable< R > action )
+	{
+		return runWithExecutor( TaskExecutors.multiThreaded(), action );
+	}
+
+	/**
+	 * To run an algorithm with a given number of threads use:
+	 * <p>
+	 * {@code Parallelization.runWithNumThreads( numThreads, () -> myAlgorithm( input ) );}
+	 */
+	public static void runWithNumThreads( final int numThreads, final Runnable action )
+	{
+		try (final TaskExecutor taskExecutor = TaskExecutors.numThreads( numThreads ))
+		{
+			runWithExecutor( taskExecutor, action );
+		}
+	}
+
+	/**
+	 * To run an algorithm with a given number of threads use:
+	 * <p>
+	 * {@code output = Parallelization.runWithNumThreads( numThreads, () -> myAlgorithm( input ) );}
+	 */
+	public static < R > R runWithNumThreads( final int numThreads, final Callable< R > action )
+	{
+		try (final TaskExecutor taskExecutor = TaskExecutors.numThreads( numThreads ))
+		{
+			return runWithExecutor( taskExecutor, action );
+		}
+	}
+
+	/**
+	 * Executes the given {@link Runnable} with the given
+	 * {@link ExecutorService}, and waits for the execution to finish.
+	 */
+	public static void runWithExecutor( final ExecutorService executorService, final Runnable action )
+	{
+		runWithExecutor( TaskExecutors.forExecutorService( executorService ), action );
+	}
+
+	/**
+	 * Executes the given {@link Callable} with the given
+	 * {@link ExecutorService}, waits for the execution to finish and returns
+	 * the result.
+	 */
+	public static < R > R runWithExecutor( final ExecutorService executorService, final Callable< R > action )
+	{
+		return runWithExecutor( TaskExecutors.forExecutorService( executorService ), action );
+	}
+
+	/**
+	 * Executes the given {@link Runnable} with the given {@link TaskExecutor},
+	 * and waits for the execution to finish.
+	 */
+	public static void runWithExecutor( final TaskExecutor taskExecutor, final Runnable action )
+	{
+		try (final Frame frame = setExecutorRequiresReset( taskExecutor ))
+		{
+			action.run();
+		}
+	}
+
+	/**
+	 * Executes the given {@link Callable} with the given {@link TaskExecutor},
+	 * waits for the execution to finish and returns the result.
+	 */
+	public static < R > R runWithExecutor( final TaskExecutor taskExecutor, final Callable< R > action )
+	{
+		try (final Frame frame = setExecutorRequiresReset( taskExecutor ))
+		{
+			return action.call();
+		}
+		catch ( final RuntimeException e )
+		{
+			throw e;
+		}
+		catch ( final Exception e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	/**
+	 * This method sets the {@link TaskExecutor} for the current thread. It
+	 * returns a {@link Frame}, that must be closed to restore the previous
+	 * setting. Best use it with try-with-resources:
+	 *
+	 * <pre>
+	 * {@code
+	 * try ( Parallelization.Frame frame = Parallelization.setExecutorRequiresReset( taskExecutor ) )
+	 * {
+	 *     myAlgorithm( image );
+	 * }
+	 * }
+	 * </pre>
+	 */
+	public static Frame setExecutorRequiresReset( final TaskExecutor taskExecutor )
+	{
+		final TaskExecutor old = executor.get();
+		executor.set( taskExecutor );
+		return () -> executor.set( old );
+	}
+
+	/**
+	 * Restores the {@link TaskExecutor} that was set before a call to
+	 * {@link #setExecutorRequiresReset(TaskExecutor)}.
+	 */
+	public interface Frame extends AutoCloseable
+	{
+		@Override
+		void close(); // NB: Throws no exception
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.parallel;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Factory methods for {@link TaskExecutor}s.
+ *
+ * @see Parallelization
+ */
+public final class TaskExecutors
+{
+
+	private TaskExecutors()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * Returns a {@link TaskExecutor} that executes all tasks sequentially on
+	 * the calling thread.
+	 */
+	public static TaskExecutor singleThreaded()
+	{
+		return SequentialTaskExecutor.getInstance();
+	}
+
+	/**
+	 * Returns a {@link TaskExecutor} that uses all available processors. The
+	 * tasks are executed by the common {@link ForkJoinPool}.
+	 */
+	public static TaskExecutor multiThreaded()
+	{
+		return forExecutorService( ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Returns a {@link TaskExecutor} that uses the given number of threads.
+	 * The threads are released when {@link TaskExecutor#close()} is called.
+	 */
+	public static TaskExecutor numThreads( final int numThreads )
+	{
+		if ( numThreads < 1 )
+			throw new IllegalArgumentException( "Number of threads must be at least one." );
+		if ( numThreads == 1 )
+			return singleThreaded();
+		return new DefaultTaskExecutor( new ForkJoinPool( numThreads ), true );
+	}
+
+	/**
+	 * Returns a {@link TaskExecutor} that distributes the tasks to the threads
+	 * of the given {@link ExecutorService}. The {@link ExecutorService} is not
+	 * shut down, when {@link TaskExecutor#close()} is called.
+	 * <p>
+	 * Using a {@link ForkJoinPool} is recommended. Other executor services
+	 * block a thread for every nested call to
+	 * {@link TaskExecutor#runAll(java.util.List)}, which might deadlock a
+	 * fixed size thread pool.
+	 */
+	public static TaskExecutor forExecutorService( final ExecutorService executorService )
+	{
+		return new DefaultTaskExecutor( executorService, false );
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.stream;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.LongUnaryOperator;
+
+import net.imglib2.IterableRealInterval;
+import net.imglib2.RealCursor;
+
+/**
+ * A {@link Spliterator} over the elements of an {@link IterableRealInterval},
+ * backed by a {@link RealCursor}. It covers a range of indices in the
+ * iteration order of the cursor. Splitting copies the cursor and moves it
+ * forward with {@link RealCursor#jumpFwd(long)}.
+ * <p>
+ * Containers can provide natural split points, for example the start of
+ * planes or cells, such that every part of a split covers whole planes or
+ * cells if possible.
+ * <p>
+ * Note that, as for the cursor, the elements passed to the action might be
+ * reused proxy objects (for example for {@link net.imglib2.type.NativeType}s).
+ * They are only valid within the action and must be copied if they are to be
+ * kept.
+ *
+ * @see IterableRealInterval#stream()
+ * @see IterableRealInterval#parallelStream()
+ */
+public class CursorSpliterator< T > implements Spliterator< T >
+{
+
+	/**
+	 * Cursor, moved such that it points to the element before {@code index}.
+	 */
+	private final RealCursor< T > cursor;
+
+	/**
+	 * Index of the next element.
+	 */
+	private long index;
+
+	/**
+	 * Index after the last element.
+	 */
+	private final long end;
+
+	private final LongUnaryOperator floorBoundary;
+
+	/**
+	 * Create a {@link CursorSpliterator} that is split in the middle of its
+	 * range of indices.
+	 *
+	 * @param cursor
+	 *            a cursor in its reset state.
+	 * @param size
+	 *            the number of elements of the cursor.
+	 */
+	public CursorSpliterator( final RealCursor< T > cursor, final long size )
+	{
+		this( cursor, size, null );
+	}
+
+	/**
+	 * Create a {@link CursorSpliterator} that is preferably split at natural
+	 * boundaries of the container.
+	 *
+	 * @param cursor
+	 *            a cursor in its reset state.
+	 * @param size
+	 *            the number of elements of the cursor.
+	 * @param floorBoundary
+	 *            returns for a given index, the largest natural split point
+	 *            that is smaller or equal to the index. May be null if the
+	 *            container has no natural split points.
+	 */
+	public CursorSpliterator( final RealCursor< T > cursor, final long size, final LongUnaryOperator floorBoundary )
+	{
+		this( cursor, 0, size, floorBoundary );
+	}
+
+	private CursorSpliterator( final RealCursor< T > cursor, final long index, final long end, final LongUnaryOperator floorBoundary )
+	{
+		this.cursor = cursor;
+		this.index = index;
+		this.end = end;
+		this.floorBoundary = floorBoundary;
+	}
+
+	@Override
+	public boolean tryAdvance( final Consumer< ? super T > action )
+	{
+		if ( index >= end )
+			return false;
+		cursor.fwd();
+		++index;
+		action.accept( cursor.get() );
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining( final Consumer< ? super T > action )
+	{
+		final RealCursor< T > c = cursor;
+		for ( long i = index; i < end; ++i )
+		{
+			c.fwd();
+			action.accept( c.get() );
+		}
+		index = end;
+	}
+
+	@Override
+	public CursorSpliterator< T > trySplit()
+	{
+		if ( end - index < 2 )
+			return null;
+		final long split = splitIndex();
+		if ( split <= index || split >= end )
+			return null;
+		final CursorSpliterator< T > prefix = new CursorSpliterator<>( cursor.copyCursor(), index, split, floorBoundary );
+		cursor.jumpFwd( split - index );
+		index = split;
+		return prefix;
+	}
+
+	/**
+	 * Returns the natural boundary closest to the middle of the range, if it
+	 * is within the middle half of the range. Returns the middle of the range
+	 * otherwise.
+	 */
+	private long splitIndex()
+	{
+		final long length = end - index;
+		final long middle = index + length / 2;
+		if ( floorBoundary != null )
+		{
+			final long quarter = length / 4;
+			final long lower = floorBoundary.applyAsLong( middle );
+			final long upper = smallestBoundary( middle + 1, end - quarter );
+			final boolean lowerOk = lower >= index + quarter && lower > index;
+			final boolean upperOk = upper >= 0;
+			if ( lowerOk && ( !upperOk || middle - lower <= upper - middle ) )
+				return lower;
+			if ( upperOk )
+				return upper;
+		}
+		return middle;
+	}
+
+	/**
+	 * Returns the smallest natural boundary in {@code [from, to]}, or -1 if
+	 * there is none. This is a binary search, as {@link #floorBoundary} is
+	 * non-decreasing.
+	 */
+	private long smallestBoundary( final long from, final long to )
+	{
+		if ( from > to || floorBoundary.applyAsLong( to ) < from )
+			return -1;
+		long lo = from;
+		long hi = to;
+		while ( lo < hi )
+		{
+			final long mid = lo + ( hi - lo ) / 2;
+			if ( floorBoundary.applyAsLong( mid ) >= from )
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return lo;
+	}
+
+	@Override
+	public long estimateSize()
+	{
+		return end - index;
+	}
+
+	@Override
+	public int characteristics()
+	{
+		return ORDERED | SIZED | SUBSIZED;
+	}
+}
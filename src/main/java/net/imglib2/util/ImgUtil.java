@@ -34,9 +34,25 @@
 
 package net.imglib2.util;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
 import net.imglib2.type.BooleanType;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.Type;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 
@@ -288,4 +304,236 @@ public class ImgUtil
 			dest[ this_offset ] = t.get();
 		}
 	}
+
+	/**
+	 * Copy the pixel values of one image into another image. The images must
+	 * have equal dimensions, but their minima may differ: the pixel at
+	 * {@code source.min() + x} is copied to {@code destination.min() + x}.
+	 * <p>
+	 * If both images are {@link ArrayImg}s, {@link PlanarImg}s or
+	 * {@link CellImg}s with the same layout and pixel type, the underlying
+	 * primitive arrays are copied block-wise using
+	 * {@link System#arraycopy(Object, int, Object, int, int)}. Otherwise the
+	 * pixels are copied one by one using {@link Type#set(Type)}.
+	 * <p>
+	 * The copy is split into tasks that are executed by the
+	 * {@link TaskExecutor} of the current thread. Use for example
+	 * {@code Parallelization.runMultiThreaded( () -> ImgUtil.copy( source, destination ) )}
+	 * to use all available processors.
+	 *
+	 * @param source
+	 *            the image to copy from
+	 * @param destination
+	 *            the image to copy to
+	 *
+	 * @see Parallelization
+	 */
+	public static < T extends Type< T > > void copy( final RandomAccessibleInterval< T > source, final RandomAccessibleInterval< T > destination )
+	{
+		if ( !Intervals.equalDimensions( source, destination ) )
+			throw new IllegalArgumentException( "Dimensions do not fit." );
+		if ( Intervals.isEmpty( source ) )
+			return;
+		final List< Object > sourceArrays = compatibleStorageArrays( source, destination );
+		if ( sourceArrays != null )
+			copyArrays( sourceArrays, storageArrays( destination ) );
+		else
+			LoopBuilder.setImages( source, destination ).multiThreaded().forEachPixel( ( s, d ) -> d.set( s ) );
+	}
+
+	/**
+	 * Set all pixels of an image to the given value.
+	 * <p>
+	 * If the image is an {@link ArrayImg}, {@link PlanarImg} or
+	 * {@link CellImg}, and the pixel type occupies a whole number of
+	 * primitive entities, the underlying primitive arrays are filled
+	 * block-wise. Otherwise the pixels are set one by one using
+	 * {@link Type#set(Type)}.
+	 * <p>
+	 * The work is split into tasks that are executed by the
+	 * {@link TaskExecutor} of the current thread.
+	 *
+	 * @param image
+	 *            the image to fill
+	 * @param value
+	 *            the value that is assigned to every pixel
+	 *
+	 * @see Parallelization
+	 */
+	public static < T extends Type< T > > void fill( final RandomAccessibleInterval< T > image, final T value )
+	{
+		if ( Intervals.isEmpty( image ) )
+			return;
+		final List< Object > arrays = storageArrays( image );
+		final int entitiesPerPixel = wholeEntitiesPerPixel( Util.getTypeFromInterval( image ) );
+		if ( arrays != null && entitiesPerPixel > 0 )
+		{
+			// NB: set the first pixel through the type, then replicate its
+			// primitive representation over all storage arrays.
+			( ( Img< T > ) image ).firstElement().set( value );
+			final Object pattern = Array.newInstance( arrays.get( 0 ).getClass().getComponentType(), entitiesPerPixel );
+			System.arraycopy( arrays.get( 0 ), 0, pattern, 0, entitiesPerPixel );
+			fillArrays( arrays, pattern );
+		}
+		else
+			LoopBuilder.setImages( image ).multiThreaded().forEachPixel( p -> p.set( value ) );
+	}
+
+	/**
+	 * Minimal number of primitive entities that is copied or filled by one
+	 * task.
+	 */
+	private static final int MIN_BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * Returns the storage arrays of source, if source and destination are
+	 * images of the same kind, with the same layout and pixel type, such that
+	 * copying the storage arrays copies the pixels. Returns null otherwise.
+	 */
+	private static List< Object > compatibleStorageArrays( final RandomAccessibleInterval< ? > source, final RandomAccessibleInterval< ? > destination )
+	{
+		if ( source.getClass() != destination.getClass() )
+			return null;
+		if ( source instanceof CellImg && !( ( CellImg< ?, ? > ) source ).getCellGrid().equals( ( ( CellImg< ?, ? > ) destination ).getCellGrid() ) )
+			return null;
+		final Object sourceType = Util.getTypeFromInterval( source );
+		final Object destinationType = Util.getTypeFromInterval( destination );
+		if ( sourceType.getClass() != destinationType.getClass() || !( sourceType instanceof NativeType ) )
+			return null;
+		final List< Object > sourceArrays = storageArrays( source );
+		final List< Object > destinationArrays = storageArrays( destination );
+		if ( sourceArrays == null || destinationArrays == null || sourceArrays.size() != destinationArrays.size() )
+			return null;
+		for ( int i = 0; i < sourceArrays.size(); i++ )
+		{
+			final Object s = sourceArrays.get( i );
+			final Object d = destinationArrays.get( i );
+			if ( s.getClass() != d.getClass() || Array.getLength( s ) != Array.getLength( d ) )
+				return null;
+		}
+		return sourceArrays;
+	}
+
+	/**
+	 * Returns the primitive arrays that store the pixels of an
+	 * {@link ArrayImg}, {@link PlanarImg} or {@link CellImg}, in flat
+	 * iteration order of the planes and cells. Returns null if the image is of
+	 * a different kind, or if its data is not stored in primitive arrays.
+	 */
+	private static List< Object > storageArrays( final RandomAccessibleInterval< ? > image )
+	{
+		if ( image instanceof ArrayImg )
+			return asStorageArrays( Collections.singletonList( ( ( ArrayImg< ?, ? > ) image ).update( null ) ) );
+		if ( image instanceof PlanarImg )
+		{
+			final PlanarImg< ?, ? > planarImg = ( PlanarImg< ?, ? > ) image;
+			final List< Object > planes = new ArrayList<>( planarImg.numSlices() );
+			for ( int i = 0; i < planarImg.numSlices(); i++ )
+				planes.add( planarImg.getPlane( i ) );
+			return asStorageArrays( planes );
+		}
+		if ( image instanceof CellImg )
+		{
+			final List< Object > cells = new ArrayList<>();
+			for ( final Cell< ? > cell : ( ( CellImg< ?, ? > ) image ).getCells() )
+				cells.add( cell.getData() );
+			return asStorageArrays( cells );
+		}
+		return null;
+	}
+
+	private static List< Object > asStorageArrays( final List< Object > accesses )
+	{
+		final List< Object > arrays = new ArrayList<>( accesses.size() );
+		for ( final Object access : accesses )
+		{
+			if ( !( access instanceof ArrayDataAccess ) )
+				return null;
+			final Object array = ( ( ArrayDataAccess< ? > ) access ).getCurrentStorageArray();
+			if ( array == null || !array.getClass().isArray() )
+				return null;
+			arrays.add( array );
+		}
+		return arrays;
+	}
+
+	/**
+	 * Returns the number of primitive entities per pixel, or 0 if the type is
+	 * not a {@link NativeType} or several pixels share one entity.
+	 */
+	private static int wholeEntitiesPerPixel( final Object type )
+	{
+		if ( !( type instanceof NativeType ) )
+			return 0;
+		final Fraction fraction = ( ( NativeType< ? > ) type ).getEntitiesPerPixel();
+		if ( fraction.getDenominator() != 1 || fraction.getNumerator() < 1 || fraction.getNumerator() > Integer.MAX_VALUE )
+			return 0;
+		return ( int ) fraction.getNumerator();
+	}
+
+	private static void copyArrays( final List< Object > sources, final List< Object > destinations )
+	{
+		final List< Runnable > tasks = new ArrayList<>();
+		final int blockSize = blockSize( sources, 1 );
+		for ( int i = 0; i < sources.size(); i++ )
+		{
+			final Object source = sources.get( i );
+			final Object destination = destinations.get( i );
+			final int length = Array.getLength( source );
+			for ( int from = 0; from < length; from += blockSize )
+			{
+				final int offset = from;
+				final int size = Math.min( blockSize, length - from );
+				tasks.add( () -> System.arraycopy( source, offset, destination, offset, size ) );
+			}
+		}
+		Parallelization.getTaskExecutor().runAll( tasks );
+	}
+
+	private static void fillArrays( final List< Object > arrays, final Object pattern )
+	{
+		final List< Runnable > tasks = new ArrayList<>();
+		final int patternLength = Array.getLength( pattern );
+		final int blockSize = blockSize( arrays, patternLength );
+		for ( final Object array : arrays )
+		{
+			final int length = Array.getLength( array );
+			for ( int from = 0; from < length; from += blockSize )
+			{
+				final int offset = from;
+				final int size = Math.min( blockSize, length - from );
+				tasks.add( () -> fillRange( array, offset, size, pattern, patternLength ) );
+			}
+		}
+		Parallelization.getTaskExecutor().runAll( tasks );
+	}
+
+	/**
+	 * Repeat the pattern over the given range of the array. The range is
+	 * filled by copying the pattern once, and then doubling the filled part
+	 * using {@link System#arraycopy(Object, int, Object, int, int)}.
+	 */
+	private static void fillRange( final Object array, final int offset, final int size, final Object pattern, final int patternLength )
+	{
+		System.arraycopy( pattern, 0, array, offset, Math.min( patternLength, size ) );
+		for ( int filled = patternLength; filled < size; filled += filled )
+			System.arraycopy( array, offset, array, offset + filled, Math.min( filled, size - filled ) );
+	}
+
+	/**
+	 * Returns the number of array elements to be processed by one task. The
+	 * block size is a multiple of alignment, and is chosen such that the
+	 * number of tasks roughly matches
+	 * {@link TaskExecutor#suggestNumberOfTasks()}.
+	 */
+	private static int blockSize( final List< Object > arrays, final int alignment )
+	{
+		long total = 0;
+		for ( final Object array : arrays )
+			total += Array.getLength( array );
+		final int numTasks = Parallelization.getTaskExecutor().suggestNumberOfTasks();
+		final long size = Math.max( MIN_BLOCK_SIZE, ( total + numTasks - 1 ) / numTasks );
+		final long aligned = ( ( size + alignment - 1 ) / alignment ) * alignment;
+		return ( int ) Math.min( aligned, ( Integer.MAX_VALUE / alignment ) * alignment );
+	}
 }
@@ -36,9 +36,15 @@ package net.imglib2.util;
 
 import static net.imglib2.util.Partition.partitionSubList;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Random;
+
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
 
 /**
  * TODO
@@ -307,22 +313,47 @@ public class KthElement
 	 */
 	public static void kthElement( int i, int j, final int k, final double[] values )
 	{
-		while ( true )
+		// introselect: median of three pivots, until the subarray fails to
+		// shrink fast enough, then median of medians pivots
+		int budget = 2 * ( 32 - Integer.numberOfLeadingZeros( j - i + 1 ) );
+		while ( j - i >= 2 )
 		{
-			final int pivotpos = partitionSubList( i, j, values );
-			if ( pivotpos > k )
-			{
-				// partition lower half
-				j = pivotpos - 1;
-			}
-			else if ( pivotpos < k )
+			final int pivotIndex = budget-- > 0 ? medianOfThree( i, ( i + j ) >>> 1, j, values ) : medianOfMedians( i, j, values );
+			final double pivot = values[ pivotIndex ];
+
+			// three way partition: [i, lt) < pivot, [lt, gt] == pivot, (gt, j] > pivot
+			int lt = i;
+			int gt = j;
+			int m = i;
+			while ( m <= gt )
 			{
-				// partition upper half
-				i = pivotpos + 1;
+				final double v = values[ m ];
+				if ( v < pivot )
+				{
+					values[ m++ ] = values[ lt ];
+					values[ lt++ ] = v;
+				}
+				else if ( v > pivot )
+				{
+					values[ m ] = values[ gt ];
+					values[ gt-- ] = v;
+				}
+				else
+					++m;
 			}
+			if ( k < lt )
+				j = lt - 1;
+			else if ( k > gt )
+				i = gt + 1;
 			else
 				return;
 		}
+		if ( j > i && values[ i ] > values[ j ] )
+		{
+			final double tmp = values[ i ];
+			values[ i ] = values[ j ];
+			values[ j ] = tmp;
+		}
 	}
 
 	/**
@@ -870,4 +901,242 @@ public class KthElement
 				return;
 		}
 	}
+
+	/**
+	 * Big arrays with at most this many elements are not partitioned in
+	 * parallel.
+	 */
+	private static final long PARALLEL_THRESHOLD = 1 << 20;
+
+	/**
+	 * Number of random samples, that are taken by
+	 * {@link #selectValue(long, double[][])} to narrow down the range of the
+	 * k-th smallest value.
+	 */
+	private static final int SAMPLE_SIZE = 1 << 14;
+
+	/**
+	 * Partition an array of {@code values} in parallel, such that the k-th
+	 * smallest value is at position {@code k}, elements before the k-th are
+	 * smaller or equal and elements after the k-th are larger or equal. The
+	 * {@link net.imglib2.parallel.TaskExecutor} returned by
+	 * {@link Parallelization#getTaskExecutor()} is used.
+	 *
+	 * @param k
+	 *            index for k-th smallest value. {@code 0 <= k < values.length}.
+	 * @param values
+	 *            array
+	 */
+	public static void parallelKthElement( final int k, final double[] values )
+	{
+		if ( values.length <= PARALLEL_THRESHOLD || Parallelization.getTaskExecutor().getParallelism() <= 1 )
+			kthElement( k, values );
+		else
+			parallelKthElement( k, new double[][] { values } );
+	}
+
+	/**
+	 * Partition a big array of {@code values} in parallel, such that the k-th
+	 * smallest value is at position {@code k}, elements before the k-th are
+	 * smaller or equal and elements after the k-th are larger or equal. The
+	 * big array is the concatenation of the given arrays, and may therefore
+	 * have more than {@link Integer#MAX_VALUE} elements, see
+	 * {@link Partition#parallelPartitionSubList(long, long, double[][], double, boolean)}.
+	 * <p>
+	 * The k-th smallest value is found without modifying the array: The
+	 * elements in the range of the k-th smallest value of a random sample are
+	 * copied, in parallel, and searched recursively. Then the array is
+	 * partitioned twice in parallel, at the elements smaller than the k-th
+	 * smallest value, and at the elements that are equal to it.
+	 *
+	 * @param k
+	 *            index for k-th smallest value. {@code 0 <= k < n}, for the
+	 *            total number {@code n} of elements.
+	 * @param values
+	 *            big array
+	 */
+	public static void parallelKthElement( final long k, final double[][] values )
+	{
+		final long n = length( values );
+		if ( k < 0 || k >= n )
+			throw new IndexOutOfBoundsException( "k = " + k + " is out of range [0, " + n + ")" );
+		final double value = selectValue( k, values );
+		final long lower = Partition.parallelPartitionSubList( 0, n - 1, values, value, false );
+		Partition.parallelPartitionSubList( lower, n - 1, values, value, true );
+	}
+
+	/**
+	 * Returns the k-th smallest value of a big array, without modifying it.
+	 */
+	private static double selectValue( final long k, final double[][] values )
+	{
+		final long n = length( values );
+		if ( n <= PARALLEL_THRESHOLD )
+		{
+			final double[] copy = new double[ ( int ) n ];
+			int offset = 0;
+			for ( final double[] array : values )
+			{
+				System.arraycopy( array, 0, copy, offset, array.length );
+				offset += array.length;
+			}
+			kthElement( ( int ) k, copy );
+			return copy[ ( int ) k ];
+		}
+
+		final long[] starts = new long[ values.length ];
+		for ( int a = 1; a < values.length; ++a )
+			starts[ a ] = starts[ a - 1 ] + values[ a - 1 ].length;
+		final Random random = new Random( n );
+		final double[] sample = new double[ SAMPLE_SIZE ];
+		for ( int s = 0; s < SAMPLE_SIZE; ++s )
+		{
+			final long index = ( long ) ( random.nextDouble() * n );
+			int a = Arrays.binarySearch( starts, index );
+			if ( a < 0 )
+				a = -a - 2;
+			// skip empty arrays
+			while ( index - starts[ a ] >= values[ a ].length )
+				++a;
+			sample[ s ] = values[ a ][ ( int ) ( index - starts[ a ] ) ];
+		}
+		Arrays.sort( sample );
+		final int p = ( int ) Math.min( SAMPLE_SIZE - 1, ( double ) k / n * SAMPLE_SIZE );
+		final int margin = 4 * ( int ) Math.sqrt( SAMPLE_SIZE );
+		final double lo = sample[ Math.max( 0, p - margin ) ];
+		final double hi = sample[ Math.min( SAMPLE_SIZE - 1, p + margin ) ];
+		final Double result = selectValue( k, values, n, lo, hi );
+		// if the range [lo, hi] contains all values, split at a single value
+		return result != null ? result : selectValue( k, values, n, sample[ p ], sample[ p ] );
+	}
+
+	/**
+	 * Returns the k-th smallest value of a big array, using the elements
+	 * smaller than {@code lo}, in {@code [lo, hi]}, or larger than {@code hi},
+	 * whichever contain the k-th smallest. Returns null if {@code lo < hi}
+	 * and all elements are in {@code [lo, hi]}.
+	 */
+	private static Double selectValue( final long k, final double[][] values, final long n, final double lo, final double hi )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< Partition.Block > blocks = Partition.blocks( values, 0, n - 1, taskExecutor.suggestNumberOfTasks() );
+		final List< long[] > counts = taskExecutor.forEachApply( blocks, block -> {
+			long smaller = 0;
+			long larger = 0;
+			for ( int i = block.from; i < block.to; ++i )
+			{
+				final double v = block.array[ i ];
+				if ( v < lo )
+					++smaller;
+				else if ( v > hi )
+					++larger;
+			}
+			return new long[] { smaller, larger };
+		} );
+		long smaller = 0;
+		long larger = 0;
+		for ( final long[] c : counts )
+		{
+			smaller += c[ 0 ];
+			larger += c[ 1 ];
+		}
+
+		// the part of the elements that contains the k-th smallest
+		final int part;
+		final long kInPart;
+		if ( k < smaller )
+		{
+			part = 0;
+			kInPart = k;
+		}
+		else if ( k < n - larger )
+		{
+			if ( lo == hi )
+				return lo;
+			if ( smaller == 0 && larger == 0 )
+				return null;
+			part = 1;
+			kInPart = k - smaller;
+		}
+		else
+		{
+			part = 2;
+			kInPart = k - ( n - larger );
+		}
+		// copy the elements of the part, into arrays of the exact size
+		// counted per block
+		final List< Integer > blockIndices = new ArrayList<>();
+		for ( int b = 0; b < blocks.size(); ++b )
+			blockIndices.add( b );
+		final List< double[] > copies = taskExecutor.forEachApply( blockIndices, b -> {
+			final Partition.Block block = blocks.get( b );
+			final long[] c = counts.get( b );
+			final long size = part == 0 ? c[ 0 ] : part == 2 ? c[ 1 ] : block.to - block.from - c[ 0 ] - c[ 1 ];
+			final double[] copy = new double[ ( int ) size ];
+			int j = 0;
+			for ( int i = block.from; i < block.to; ++i )
+			{
+				final double v = block.array[ i ];
+				final int vPart = v < lo ? 0 : v > hi ? 2 : 1;
+				if ( vPart == part )
+					copy[ j++ ] = v;
+			}
+			return copy;
+		} );
+		return selectValue( kInPart, copies.toArray( new double[ 0 ][] ) );
+	}
+
+	private static long length( final double[][] values )
+	{
+		long n = 0;
+		for ( final double[] array : values )
+			n += array.length;
+		return n;
+	}
+
+	/**
+	 * Returns the index of the median of the elements at the given indices.
+	 */
+	private static int medianOfThree( final int a, final int b, final int c, final double[] values )
+	{
+		final double va = values[ a ];
+		final double vb = values[ b ];
+		final double vc = values[ c ];
+		if ( va < vb )
+			return vb < vc ? b : va < vc ? c : a;
+		return va < vc ? a : vb < vc ? c : b;
+	}
+
+	/**
+	 * Moves the medians of groups of five elements to the front of the
+	 * subarray {@code [i,j]}, and returns the index of their median. This is a
+	 * pivot that splits off at least 30% of the elements at both sides.
+	 */
+	private static int medianOfMedians( final int i, final int j, final double[] values )
+	{
+		int numMedians = 0;
+		for ( int g = i; g <= j; g += 5 )
+		{
+			final int end = Math.min( g + 4, j );
+			// insertion sort of the group
+			for ( int a = g + 1; a <= end; ++a )
+			{
+				final double v = values[ a ];
+				int b = a - 1;
+				while ( b >= g && values[ b ] > v )
+				{
+					values[ b + 1 ] = values[ b ];
+					--b;
+				}
+				values[ b + 1 ] = v;
+			}
+			final int median = ( g + end ) >>> 1;
+			final double tmp = values[ median ];
+			values[ median ] = values[ i + numMedians ];
+			values[ i + numMedians++ ] = tmp;
+		}
+		final int mid = i + ( numMedians - 1 ) / 2;
+		kthElement( i, i + numMedians - 1, mid, values );
+		return mid;
+	}
 }
@@ -34,10 +34,14 @@
 
 package net.imglib2.util;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.ListIterator;
 
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+
 /**
  * TODO
  *
@@ -1175,4 +1179,196 @@ public class Partition
 		}
 		return;
 	}
+
+	/**
+	 * {@link #parallelPartitionSubList(long, long, double[][], double, boolean)}
+	 * splits its range into blocks of at least this size.
+	 */
+	private static final int MIN_BLOCK_SIZE = 1 << 14;
+
+	/**
+	 * Partition a subarray of {@code values} in parallel, using the
+	 * {@link TaskExecutor} returned by {@link Parallelization#getTaskExecutor()}.
+	 *
+	 * The elements {@code [i,j]} are reordered, such that all elements smaller
+	 * than the pivot (or smaller or equal, if {@code orEqual} is set) come
+	 * before all other elements. The index of the first other element is
+	 * returned. In contrast to {@link #partitionSubList(int, int, double[])},
+	 * the pivot is a value, that need not be contained in the array.
+	 *
+	 * @param i
+	 *            index of first element of subarray
+	 * @param j
+	 *            index of last element of subarray
+	 * @param values
+	 *            array
+	 * @param pivot
+	 *            pivot value
+	 * @param orEqual
+	 *            whether elements equal to the pivot go to the lower part
+	 * @return index of first element of the upper part, {@code j + 1} if all
+	 *         elements belong to the lower part
+	 */
+	public static int parallelPartitionSubList( final int i, final int j, final double[] values, final double pivot, final boolean orEqual )
+	{
+		return ( int ) parallelPartitionSubList( i, j, new double[][] { values }, pivot, orEqual );
+	}
+
+	/**
+	 * Partition a subarray of a big array of {@code values} in parallel. The
+	 * big array is the concatenation of the given arrays, and may therefore
+	 * have more than {@link Integer#MAX_VALUE} elements. Element {@code i} of
+	 * the big array is the element {@code i - (sum of the lengths of the
+	 * preceding arrays)} of the array that contains it.
+	 *
+	 * @see #parallelPartitionSubList(int, int, double[], double, boolean)
+	 */
+	public static long parallelPartitionSubList( final long i, final long j, final double[][] values, final double pivot, final boolean orEqual )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< Block > blocks = blocks( values, i, j, taskExecutor.suggestNumberOfTasks() );
+
+		// partition every block, the lower part of a block is [start, start + count)
+		final List< Integer > lowerCounts = taskExecutor.forEachApply( blocks, block -> block.partition( pivot, orEqual ) );
+		long split = i;
+		for ( final int count : lowerCounts )
+			split += count;
+
+		// upper elements in [i, split) are swapped with lower elements in (split, j]
+		final List< Block > misplacedUpper = new ArrayList<>();
+		final List< Block > misplacedLower = new ArrayList<>();
+		for ( int b = 0; b < blocks.size(); ++b )
+		{
+			final Block block = blocks.get( b );
+			final long lowerEnd = block.start + lowerCounts.get( b );
+			final long end = block.start + block.to - block.from;
+			if ( lowerEnd < Math.min( end, split ) )
+				misplacedUpper.add( block.subBlock( lowerEnd, Math.min( end, split ) ) );
+			if ( lowerEnd > split )
+				misplacedLower.add( block.subBlock( Math.max( block.start, split ), lowerEnd ) );
+		}
+		final long numMisplaced = misplacedUpper.stream().mapToLong( Block::size ).sum();
+		if ( numMisplaced == 0 )
+			return split;
+		final int numTasks = ( int ) Math.max( 1, Math.min( taskExecutor.suggestNumberOfTasks(), numMisplaced / MIN_BLOCK_SIZE ) );
+		final List< long[] > chunks = new ArrayList<>();
+		for ( int t = 0; t < numTasks; ++t )
+			chunks.add( new long[] { numMisplaced * t / numTasks, numMisplaced * ( t + 1 ) / numTasks } );
+		taskExecutor.forEach( chunks, chunk -> swap( misplacedUpper, misplacedLower, chunk[ 0 ], chunk[ 1 ] ) );
+		return split;
+	}
+
+	/**
+	 * Splits the elements {@code [i,j]} of a big array into blocks, that are
+	 * contained in one of its arrays.
+	 */
+	static List< Block > blocks( final double[][] values, final long i, final long j, final int numTasks )
+	{
+		final long blockSize = Math.max( MIN_BLOCK_SIZE, ( j - i + numTasks ) / numTasks );
+		final List< Block > blocks = new ArrayList<>();
+		long arrayStart = 0;
+		for ( final double[] array : values )
+		{
+			final long from = Math.max( arrayStart, i );
+			final long to = Math.min( arrayStart + array.length, j + 1 );
+			for ( long start = from; start < to; start += blockSize )
+				blocks.add( new Block( array, ( int ) ( start - arrayStart ), ( int ) ( Math.min( to, start + blockSize ) - arrayStart ), start ) );
+			arrayStart += array.length;
+		}
+		return blocks;
+	}
+
+	/**
+	 * Swaps the elements {@code [from, to)} of the concatenation of the blocks
+	 * in {@code a} with the elements {@code [from, to)} of the concatenation of
+	 * the blocks in {@code b}.
+	 */
+	private static void swap( final List< Block > a, final List< Block > b, final long from, final long to )
+	{
+		int blockA = 0;
+		long startA = 0;
+		while ( startA + a.get( blockA ).size() <= from )
+			startA += a.get( blockA++ ).size();
+		int blockB = 0;
+		long startB = 0;
+		while ( startB + b.get( blockB ).size() <= from )
+			startB += b.get( blockB++ ).size();
+		long position = from;
+		while ( position < to )
+		{
+			final Block ba = a.get( blockA );
+			final Block bb = b.get( blockB );
+			final int offsetA = ba.from + ( int ) ( position - startA );
+			final int offsetB = bb.from + ( int ) ( position - startB );
+			final int length = ( int ) Math.min( to - position, Math.min( ba.to - offsetA, bb.to - offsetB ) );
+			for ( int k = 0; k < length; ++k )
+			{
+				final double tmp = ba.array[ offsetA + k ];
+				ba.array[ offsetA + k ] = bb.array[ offsetB + k ];
+				bb.array[ offsetB + k ] = tmp;
+			}
+			position += length;
+			if ( offsetA + length == ba.to )
+				startA += a.get( blockA++ ).size();
+			if ( offsetB + length == bb.to )
+				startB += b.get( blockB++ ).size();
+		}
+	}
+
+	/**
+	 * The elements {@code [from, to)} of an array, that are the elements
+	 * {@code [start, start + to - from)} of a big array.
+	 */
+	static final class Block
+	{
+		final double[] array;
+
+		final int from;
+
+		final int to;
+
+		final long start;
+
+		Block( final double[] array, final int from, final int to, final long start )
+		{
+			this.array = array;
+			this.from = from;
+			this.to = to;
+			this.start = start;
+		}
+
+		long size()
+		{
+			return to - from;
+		}
+
+		/**
+		 * Returns the elements {@code [start, end)} of the big array, that
+		 * must be contained in this block.
+		 */
+		Block subBlock( final long start, final long end )
+		{
+			final int offset = from + ( int ) ( start - this.start );
+			return new Block( array, offset, offset + ( int ) ( end - start ), start );
+		}
+
+		/**
+		 * Moves the elements smaller than (or equal to) the pivot to the
+		 * front of the block, and returns their number.
+		 */
+		int partition( final double pivot, final boolean orEqual )
+		{
+			int lower = from;
+			for ( int k = from; k < to; ++k )
+			{
+				final double value = array[ k ];
+				if ( value < pivot || ( orEqual && value == pivot ) )
+				{
+					array[ k ] = array[ lower ];
+					array[ lower++ ] = value;
+				}
+			}
+			return lower - from;
+		}
+	}
 }
@@ -0,0 +1,433 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * A streaming sketch of a distribution of doubles, that answers quantile
+ * queries approximately, using little memory. Sketches of parts of the data
+ * can be merged into a sketch of all the data.
+ * <p>
+ * This is a KLL sketch (Karnin, Lang, Liberty: "Optimal Quantile
+ * Approximation in Streams", 2016). The values are kept in a hierarchy of
+ * buffers. A full buffer is sorted, and every other value is promoted to the
+ * next level, where it represents twice as many values. The rank error of a
+ * quantile query is about {@code 1.7 / k} of the number of values, for the
+ * accuracy parameter {@code k}. The sketch stores about {@code 3 * k}
+ * doubles, independent of the number of values. As long as fewer than
+ * {@code k} values were added, the sketch is exact.
+ * <p>
+ * In contrast to {@link Util#percentile(double[], double)}, the values don't
+ * need to be copied into a {@code double[]}, see
+ * {@link #of(IterableInterval)} to sketch an image in parallel.
+ * <p>
+ * {@code NaN} values are ignored. This class is not thread safe.
+ */
+public class QuantileSketch
+{
+	/**
+	 * Default accuracy parameter, for a rank error of about 1%.
+	 */
+	public static final int DEFAULT_K = 200;
+
+	/**
+	 * Minimal capacity of a buffer.
+	 */
+	private static final int MIN_CAPACITY = 8;
+
+	/**
+	 * {@link IterableInterval}s with at least this many values are sketched
+	 * in parallel.
+	 */
+	private static final long PARALLEL_THRESHOLD = 1 << 16;
+
+	private final int k;
+
+	private double[][] levels;
+
+	private int[] sizes;
+
+	private long count;
+
+	private double min = Double.POSITIVE_INFINITY;
+
+	private double max = Double.NEGATIVE_INFINITY;
+
+	private long random = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * Sorted values and their cumulative weights, computed on demand by
+	 * {@link #quantile(double)} and {@link #rank(double)}.
+	 */
+	private double[] sortedValues;
+
+	private long[] cumulativeWeights;
+
+	/**
+	 * Creates an empty sketch with accuracy parameter {@link #DEFAULT_K}.
+	 */
+	public QuantileSketch()
+	{
+		this( DEFAULT_K );
+	}
+
+	/**
+	 * Creates an empty sketch.
+	 *
+	 * @param k
+	 *            accuracy parameter, the rank error is about {@code 1.7 / k}.
+	 */
+	public QuantileSketch( final int k )
+	{
+		if ( k < MIN_CAPACITY )
+			throw new IllegalArgumentException( "k must be at least " + MIN_CAPACITY );
+		this.k = k;
+		this.levels = new double[][] { new double[ k ] };
+		this.sizes = new int[ 1 ];
+	}
+
+	/**
+	 * Creates a sketch of all values of the given data, with accuracy
+	 * parameter {@link #DEFAULT_K}.
+	 */
+	public static < T extends RealType< T > > QuantileSketch of( final IterableInterval< T > data )
+	{
+		return of( data, DEFAULT_K );
+	}
+
+	/**
+	 * Creates a sketch of all values of the given data. Large data is split
+	 * into chunks, that are sketched in parallel, using the
+	 * {@link TaskExecutor} returned by {@link Parallelization#getTaskExecutor()},
+	 * and the sketches are merged.
+	 *
+	 * @param k
+	 *            accuracy parameter, the rank error is about {@code 1.7 / k}.
+	 */
+	public static < T extends RealType< T > > QuantileSketch of( final IterableInterval< T > data, final int k )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final long size = data.size();
+		final int numTasks = ( int ) Math.max( 1, Math.min( taskExecutor.suggestNumberOfTasks(), size / PARALLEL_THRESHOLD ) );
+		final List< long[] > chunks = new ArrayList<>( numTasks );
+		for ( int i = 0; i < numTasks; ++i )
+		{
+			final long start = size * i / numTasks;
+			chunks.add( new long[] { start, size * ( i + 1 ) / numTasks - start } );
+		}
+		final List< QuantileSketch > sketches = taskExecutor.forEachApply( chunks, chunk -> {
+			final QuantileSketch sketch = new QuantileSketch( k );
+			final Cursor< T > cursor = data.cursor();
+			cursor.jumpFwd( chunk[ 0 ] );
+			for ( long i = 0; i < chunk[ 1 ]; ++i )
+				sketch.add( cursor.next().getRealDouble() );
+			return sketch;
+		} );
+		final QuantileSketch result = sketches.get( 0 );
+		for ( int i = 1; i < sketches.size(); ++i )
+			result.merge( sketches.get( i ) );
+		return result;
+	}
+
+	/**
+	 * Adds a value to the sketch. {@code NaN} is ignored.
+	 */
+	public void add( final double value )
+	{
+		if ( Double.isNaN( value ) )
+			return;
+		++count;
+		if ( value < min )
+			min = value;
+		if ( value > max )
+			max = value;
+		append( 0, value );
+		if ( sizes[ 0 ] >= capacity( 0 ) )
+			compress();
+		sortedValues = null;
+	}
+
+	/**
+	 * Adds all values of the given data to the sketch.
+	 */
+	public void addAll( final Iterable< ? extends RealType< ? > > data )
+	{
+		for ( final RealType< ? > value : data )
+			add( value.getRealDouble() );
+	}
+
+	/**
+	 * Adds all values sketched by another sketch to this sketch. The other
+	 * sketch is not modified.
+	 */
+	public void merge( final QuantileSketch other )
+	{
+		if ( other.count == 0 )
+			return;
+		count += other.count;
+		min = Math.min( min, other.min );
+		max = Math.max( max, other.max );
+		for ( int h = 0; h < other.levels.length; ++h )
+			for ( int i = 0; i < other.sizes[ h ]; ++i )
+				append( h, other.levels[ h ][ i ] );
+		compress();
+		sortedValues = null;
+	}
+
+	/**
+	 * Returns the number of values added to the sketch.
+	 */
+	public long size()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the smallest value added to the sketch, or
+	 * {@link Double#POSITIVE_INFINITY} if the sketch is empty.
+	 */
+	public double min()
+	{
+		return min;
+	}
+
+	/**
+	 * Returns the largest value added to the sketch, or
+	 * {@link Double#NEGATIVE_INFINITY} if the sketch is empty.
+	 */
+	public double max()
+	{
+		return max;
+	}
+
+	/**
+	 * Returns the number of values that the sketch retains.
+	 */
+	public int retainedSize()
+	{
+		int size = 0;
+		for ( final int s : sizes )
+			size += s;
+		return size;
+	}
+
+	/**
+	 * Returns (approximately) the value at the given quantile. This is the
+	 * value with rank {@code round(q * (size() - 1))} in the sorted values,
+	 * which is the value that {@link Util#percentile(double[], double)}
+	 * returns.
+	 *
+	 * @param q
+	 *            the quantile, between 0 and 1.
+	 */
+	public double quantile( final double q )
+	{
+		if ( !( q >= 0 && q <= 1 ) )
+			throw new IllegalArgumentException( "quantile must be between 0 and 1" );
+		if ( count == 0 )
+			throw new IllegalStateException( "the sketch is empty" );
+		if ( q == 0 )
+			return min;
+		if ( q == 1 )
+			return max;
+		sort();
+		final long rank = Math.round( ( count - 1 ) * q );
+		int i = Arrays.binarySearch( cumulativeWeights, rank + 1 );
+		if ( i < 0 )
+			i = -i - 1;
+		return sortedValues[ Math.min( i, sortedValues.length - 1 ) ];
+	}
+
+	/**
+	 * Returns (approximately) the values at the given quantiles, see
+	 * {@link #quantile(double)}.
+	 */
+	public double[] quantiles( final double... q )
+	{
+		final double[] result = new double[ q.length ];
+		for ( int i = 0; i < q.length; ++i )
+			result[ i ] = quantile( q[ i ] );
+		return result;
+	}
+
+	/**
+	 * Returns (approximately) the number of values, that are less than or
+	 * equal to the given value.
+	 */
+	public long rank( final double value )
+	{
+		if ( count == 0 || value < min )
+			return 0;
+		if ( value >= max )
+			return count;
+		sort();
+		// find the first value that is greater than the given value
+		int lo = 0;
+		int hi = sortedValues.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( sortedValues[ mid ] <= value )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		final int i = lo;
+		return i == 0 ? 0 : cumulativeWeights[ i - 1 ];
+	}
+
+	// -- helpers --
+
+	/**
+	 * Capacity of a level, that decreases geometrically from the top level
+	 * with capacity {@code k}.
+	 */
+	private int capacity( final int level )
+	{
+		final int depth = levels.length - 1 - level;
+		return Math.max( MIN_CAPACITY, ( int ) Math.ceil( k * Math.pow( 2.0 / 3.0, depth ) ) );
+	}
+
+	private void append( final int level, final double value )
+	{
+		if ( level >= levels.length )
+		{
+			levels = Arrays.copyOf( levels, level + 1 );
+			sizes = Arrays.copyOf( sizes, level + 1 );
+			for ( int h = 0; h <= level; ++h )
+				if ( levels[ h ] == null )
+					levels[ h ] = new double[ MIN_CAPACITY ];
+		}
+		double[] buffer = levels[ level ];
+		if ( sizes[ level ] == buffer.length )
+			levels[ level ] = buffer = Arrays.copyOf( buffer, 2 * buffer.length );
+		buffer[ sizes[ level ]++ ] = value;
+	}
+
+	/**
+	 * Compacts all levels that exceed their capacity.
+	 */
+	private void compress()
+	{
+		boolean compacted = true;
+		while ( compacted )
+		{
+			compacted = false;
+			for ( int h = 0; h < levels.length; ++h )
+			{
+				if ( sizes[ h ] >= capacity( h ) )
+				{
+					compact( h );
+					compacted = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sorts a level and promotes every other value, starting at a random
+	 * offset, to the next level. If the number of values is odd, the largest
+	 * value stays.
+	 */
+	private void compact( final int level )
+	{
+		final double[] buffer = levels[ level ];
+		final int size = sizes[ level ];
+		Arrays.sort( buffer, 0, size );
+		final int pairs = size / 2;
+		final int offset = nextBit();
+		for ( int i = 0; i < pairs; ++i )
+			append( level + 1, buffer[ 2 * i + offset ] );
+		if ( size % 2 == 1 )
+		{
+			// levels[ level ] was not reallocated by append( level + 1, ... )
+			buffer[ 0 ] = buffer[ size - 1 ];
+			sizes[ level ] = 1;
+		}
+		else
+			sizes[ level ] = 0;
+	}
+
+	private int nextBit()
+	{
+		// xorshift64
+		random ^= random << 13;
+		random ^= random >>> 7;
+		random ^= random << 17;
+		return ( int ) ( random >>> 63 );
+	}
+
+	/**
+	 * Computes {@link #sortedValues} and {@link #cumulativeWeights}, if they
+	 * are not up to date. The values of level {@code h} have weight
+	 * {@code 2^h}. The levels are sorted and merged.
+	 */
+	private void sort()
+	{
+		if ( sortedValues != null )
+			return;
+		final int numLevels = levels.length;
+		final double[][] sorted = new double[ numLevels ][];
+		for ( int h = 0; h < numLevels; ++h )
+		{
+			sorted[ h ] = Arrays.copyOf( levels[ h ], sizes[ h ] );
+			Arrays.sort( sorted[ h ] );
+		}
+		final int n = retainedSize();
+		final int[] heads = new int[ numLevels ];
+		sortedValues = new double[ n ];
+		cumulativeWeights = new long[ n ];
+		long cumulative = 0;
+		for ( int i = 0; i < n; ++i )
+		{
+			int next = -1;
+			for ( int h = 0; h < numLevels; ++h )
+				if ( heads[ h ] < sorted[ h ].length && ( next < 0 || sorted[ h ][ heads[ h ] ] < sorted[ next ][ heads[ next ] ] ) )
+					next = h;
+			sortedValues[ i ] = sorted[ next ][ heads[ next ]++ ];
+			cumulative += 1L << next;
+			cumulativeWeights[ i ] = cumulative;
+		}
+	}
+}
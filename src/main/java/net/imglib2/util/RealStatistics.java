@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Computes the count, sum, mean, variance, minimum and maximum of a stream of
+ * doubles in one pass. The sum, and hence the mean, is accumulated in a
+ * {@link RealSum}, the variance is updated with Welford's method. Both are numerically
+ * stable, also for a very large number of values.
+ * <p>
+ * Statistics of parts of the values can be merged, see
+ * {@link #add(RealStatistics)}. {@link #of(IterableInterval)} uses this to
+ * compute the statistics of an image in parallel.
+ * <p>
+ * {@code NaN} values are counted separately (see {@link #getNaNCount()}) and
+ * are otherwise ignored. This class is not thread safe.
+ */
+public class RealStatistics
+{
+	/**
+	 * {@link IterableInterval}s with at least this many values are processed
+	 * in parallel.
+	 */
+	private static final long PARALLEL_THRESHOLD = 1 << 16;
+
+	private final RealSum sum = new RealSum();
+
+	private long count;
+
+	private long nanCount;
+
+	/**
+	 * Running mean of Welford's method, used to update {@link #m2}.
+	 */
+	private double mean;
+
+	/**
+	 * Sum of the squared differences from the mean.
+	 */
+	private double m2;
+
+	private double min = Double.POSITIVE_INFINITY;
+
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Computes the statistics of all values of the given data. Large data is
+	 * split into chunks, that are processed in parallel, using the
+	 * {@link TaskExecutor} returned by {@link Parallelization#getTaskExecutor()},
+	 * and the results are merged.
+	 */
+	public static < T extends RealType< T > > RealStatistics of( final IterableInterval< T > data )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final long size = data.size();
+		final int numTasks = ( int ) Math.max( 1, Math.min( taskExecutor.suggestNumberOfTasks(), size / PARALLEL_THRESHOLD ) );
+		final List< long[] > chunks = new ArrayList<>( numTasks );
+		for ( int i = 0; i < numTasks; ++i )
+		{
+			final long start = size * i / numTasks;
+			chunks.add( new long[] { start, size * ( i + 1 ) / numTasks - start } );
+		}
+		final List< RealStatistics > results = taskExecutor.forEachApply( chunks, chunk -> {
+			final RealStatistics statistics = new RealStatistics();
+			final Cursor< T > cursor = data.cursor();
+			cursor.jumpFwd( chunk[ 0 ] );
+			for ( long i = 0; i < chunk[ 1 ]; ++i )
+				statistics.add( cursor.next().getRealDouble() );
+			return statistics;
+		} );
+		final RealStatistics result = results.get( 0 );
+		for ( int i = 1; i < results.size(); ++i )
+			result.add( results.get( i ) );
+		return result;
+	}
+
+	/**
+	 * Adds a value.
+	 */
+	public void add( final double value )
+	{
+		if ( Double.isNaN( value ) )
+		{
+			++nanCount;
+			return;
+		}
+		sum.add( value );
+		++count;
+		final double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * ( value - mean );
+		if ( value < min )
+			min = value;
+		if ( value > max )
+			max = value;
+	}
+
+	/**
+	 * Adds all values of the given data.
+	 */
+	public void addAll( final Iterable< ? extends RealType< ? > > data )
+	{
+		for ( final RealType< ? > value : data )
+			add( value.getRealDouble() );
+	}
+
+	/**
+	 * Adds all values of other statistics. The other statistics are not
+	 * modified.
+	 */
+	public void add( final RealStatistics other )
+	{
+		nanCount += other.nanCount;
+		if ( other.count == 0 )
+			return;
+		sum.add( other.sum );
+		final long n = count + other.count;
+		final double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * ( ( double ) count * other.count / n );
+		count = n;
+		min = Math.min( min, other.min );
+		max = Math.max( max, other.max );
+	}
+
+	/**
+	 * Returns the number of values, not counting {@code NaN}s.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the number of {@code NaN} values.
+	 */
+	public long getNaNCount()
+	{
+		return nanCount;
+	}
+
+	/**
+	 * Returns the sum of the values.
+	 */
+	public double getSum()
+	{
+		return sum.getSum();
+	}
+
+	/**
+	 * Returns the mean of the values, or {@code NaN} if there are no values.
+	 * This is the {@link RealSum} of the values divided by their number, which
+	 * is more accurate than the running mean of Welford's method.
+	 */
+	public double getMean()
+	{
+		return count == 0 ? Double.NaN : sum.getSum() / count;
+	}
+
+	/**
+	 * Returns the sample variance of the values, that is the sum of the
+	 * squared differences from the mean divided by {@code count - 1}. Returns
+	 * {@code NaN} if there are less than two values.
+	 */
+	public double getVariance()
+	{
+		return count < 2 ? Double.NaN : m2 / ( count - 1 );
+	}
+
+	/**
+	 * Returns the population variance of the values, that is the sum of the
+	 * squared differences from the mean divided by {@code count}. Returns
+	 * {@code NaN} if there are no values.
+	 */
+	public double getPopulationVariance()
+	{
+		return count == 0 ? Double.NaN : m2 / count;
+	}
+
+	/**
+	 * Returns the square root of the sample variance, see
+	 * {@link #getVariance()}.
+	 */
+	public double getStandardDeviation()
+	{
+		return Math.sqrt( getVariance() );
+	}
+
+	/**
+	 * Returns the smallest value, or {@link Double#POSITIVE_INFINITY} if there
+	 * are no values.
+	 */
+	public double getMin()
+	{
+		return min;
+	}
+
+	/**
+	 * Returns the largest value, or {@link Double#NEGATIVE_INFINITY} if there
+	 * are no values.
+	 */
+	public double getMax()
+	{
+		return max;
+	}
+}
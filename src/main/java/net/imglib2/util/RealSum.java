@@ -34,6 +34,8 @@
 
 package net.imglib2.util;
 
+import java.util.Arrays;
+
 /**
  * {@link RealSum} implements a method to reduce numerical instabilities when
  * summing up a very large number of double precision numbers. Numerical
@@ -134,4 +136,44 @@ public class RealSum
 			expand( s );
 		}
 	}
+
+	/**
+	 * Add all elements summed up by another {@link RealSum}. The intermediate
+	 * sums of the other {@link RealSum} are added like the intermediate sums
+	 * of this {@link RealSum}, such that the result is as accurate as if all
+	 * elements had been added to this {@link RealSum}. This allows to sum up
+	 * parts of a large number of elements in parallel.
+	 * 
+	 * @param other
+	 *            the {@link RealSum} to be added, it is not modified
+	 */
+	final public void add( final RealSum other )
+	{
+		for ( int level = 0; level < other.sums.length; ++level )
+		{
+			if ( !other.flags[ level ] )
+				continue;
+			if ( level >= sums.length )
+			{
+				sums = Arrays.copyOf( sums, level + 1 );
+				flags = Arrays.copyOf( flags, level + 1 );
+			}
+			int i = level;
+			double s = other.sums[ level ];
+			while ( i < flags.length && flags[ i ] )
+			{
+				flags[ i ] = false;
+				s += sums[ i ];
+				sums[ i ] = 0.0;
+				++i;
+			}
+			if ( i < flags.length )
+			{
+				flags[ i ] = true;
+				sums[ i ] = s;
+			}
+			else
+				expand( s );
+		}
+	}
 }
@@ -0,0 +1,609 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+
+/**
+ * Sorting of primitive arrays.
+ * <ul>
+ * <li>{@code radixSort} sorts {@code int[]}, {@code long[]}, {@code float[]}
+ * and {@code double[]} with a least significant digit radix sort, that makes
+ * one pass over the data per byte of the keys. Passes, in which all keys
+ * have the same byte, are skipped.</li>
+ * <li>{@code coSort} sorts keys and applies the same permutation to an
+ * {@code int[]}, e.g. the indices of the keys. This sort is stable.</li>
+ * <li>{@code parallelSort} sorts chunks of a {@code double[]} or
+ * {@code long[]} in parallel and merges them in parallel, using the
+ * {@link TaskExecutor} returned by {@link Parallelization#getTaskExecutor()}.
+ * </li>
+ * </ul>
+ * Floating point values are sorted in the order of
+ * {@link Double#compare(double, double)}, like {@link Arrays#sort(double[])}
+ * does: {@code -0.0} before {@code 0.0}, and {@code NaN} last. Radix sort
+ * replaces all {@code NaN}s by the canonical {@code NaN}.
+ */
+public final class Sort
+{
+	/**
+	 * Ranges with fewer elements are sorted by {@link Arrays#sort} instead of
+	 * radix sort.
+	 */
+	private static final int RADIX_THRESHOLD = 1 << 8;
+
+	/**
+	 * Ranges with fewer elements are co-sorted by insertion sort instead of
+	 * radix sort.
+	 */
+	private static final int INSERTION_THRESHOLD = 1 << 6;
+
+	/**
+	 * Minimal number of elements per task of {@code parallelSort}.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	private Sort()
+	{
+		// prevent from instantiation
+	}
+
+	// -- radix sort --
+
+	public static void radixSort( final int[] values )
+	{
+		radixSort( values, 0, values.length );
+	}
+
+	/**
+	 * Sorts the elements {@code [from, to)} of {@code values}.
+	 */
+	public static void radixSort( final int[] values, final int from, final int to )
+	{
+		if ( to - from < RADIX_THRESHOLD )
+		{
+			Arrays.sort( values, from, to );
+			return;
+		}
+		final int[] keys = new int[ to - from ];
+		for ( int i = 0; i < keys.length; ++i )
+			keys[ i ] = values[ from + i ] ^ Integer.MIN_VALUE;
+		sortUnsigned( keys, null );
+		for ( int i = 0; i < keys.length; ++i )
+			values[ from + i ] = keys[ i ] ^ Integer.MIN_VALUE;
+	}
+
+	public static void radixSort( final long[] values )
+	{
+		radixSort( values, 0, values.length );
+	}
+
+	/**
+	 * Sorts the elements {@code [from, to)} of {@code values}.
+	 */
+	public static void radixSort( final long[] values, final int from, final int to )
+	{
+		if ( to - from < RADIX_THRESHOLD )
+		{
+			Arrays.sort( values, from, to );
+			return;
+		}
+		final long[] keys = new long[ to - from ];
+		for ( int i = 0; i < keys.length; ++i )
+			keys[ i ] = values[ from + i ] ^ Long.MIN_VALUE;
+		sortUnsigned( keys, null );
+		for ( int i = 0; i < keys.length; ++i )
+			values[ from + i ] = keys[ i ] ^ Long.MIN_VALUE;
+	}
+
+	public static void radixSort( final float[] values )
+	{
+		radixSort( values, 0, values.length );
+	}
+
+	/**
+	 * Sorts the elements {@code [from, to)} of {@code values}.
+	 */
+	public static void radixSort( final float[] values, final int from, final int to )
+	{
+		if ( to - from < RADIX_THRESHOLD )
+		{
+			Arrays.sort( values, from, to );
+			return;
+		}
+		final int[] keys = new int[ to - from ];
+		for ( int i = 0; i < keys.length; ++i )
+			keys[ i ] = key( values[ from + i ] );
+		sortUnsigned( keys, null );
+		for ( int i = 0; i < keys.length; ++i )
+			values[ from + i ] = floatValue( keys[ i ] );
+	}
+
+	public static void radixSort( final double[] values )
+	{
+		radixSort( values, 0, values.length );
+	}
+
+	/**
+	 * Sorts the elements {@code [from, to)} of {@code values}.
+	 */
+	public static void radixSort( final double[] values, final int from, final int to )
+	{
+		if ( to - from < RADIX_THRESHOLD )
+		{
+			Arrays.sort( values, from, to );
+			return;
+		}
+		final long[] keys = new long[ to - from ];
+		for ( int i = 0; i < keys.length; ++i )
+			keys[ i ] = key( values[ from + i ] );
+		sortUnsigned( keys, null );
+		for ( int i = 0; i < keys.length; ++i )
+			values[ from + i ] = doubleValue( keys[ i ] );
+	}
+
+	// -- co-sort --
+
+	/**
+	 * Sorts the elements {@code [from, to)} of {@code keys}, and reorders the
+	 * elements {@code [from, to)} of {@code values} in the same way. The sort
+	 * is stable, elements with equal keys keep their order.
+	 */
+	public static void coSort( final double[] keys, final int[] values, final int from, final int to )
+	{
+		if ( to - from < INSERTION_THRESHOLD )
+		{
+			for ( int i = from + 1; i < to; ++i )
+			{
+				final double key = keys[ i ];
+				final int value = values[ i ];
+				int j = i - 1;
+				while ( j >= from && Double.compare( keys[ j ], key ) > 0 )
+				{
+					keys[ j + 1 ] = keys[ j ];
+					values[ j + 1 ] = values[ j ];
+					--j;
+				}
+				keys[ j + 1 ] = key;
+				values[ j + 1 ] = value;
+			}
+			return;
+		}
+		final long[] sortKeys = new long[ to - from ];
+		final int[] sortValues = Arrays.copyOfRange( values, from, to );
+		for ( int i = 0; i < sortKeys.length; ++i )
+			sortKeys[ i ] = key( keys[ from + i ] );
+		sortUnsigned( sortKeys, sortValues );
+		for ( int i = 0; i < sortKeys.length; ++i )
+			keys[ from + i ] = doubleValue( sortKeys[ i ] );
+		System.arraycopy( sortValues, 0, values, from, sortValues.length );
+	}
+
+	/**
+	 * Sorts {@code keys}, and reorders {@code values} in the same way.
+	 *
+	 * @see #coSort(double[], int[], int, int)
+	 */
+	public static void coSort( final double[] keys, final int[] values )
+	{
+		coSort( keys, values, 0, keys.length );
+	}
+
+	/**
+	 * Sorts the elements {@code [from, to)} of {@code keys}, and reorders the
+	 * elements {@code [from, to)} of {@code values} in the same way. The sort
+	 * is stable, elements with equal keys keep their order.
+	 */
+	public static void coSort( final long[] keys, final int[] values, final int from, final int to )
+	{
+		if ( to - from < INSERTION_THRESHOLD )
+		{
+			for ( int i = from + 1; i < to; ++i )
+			{
+				final long key = keys[ i ];
+				final int value = values[ i ];
+				int j = i - 1;
+				while ( j >= from && keys[ j ] > key )
+				{
+					keys[ j + 1 ] = keys[ j ];
+					values[ j + 1 ] = values[ j ];
+					--j;
+				}
+				keys[ j + 1 ] = key;
+				values[ j + 1 ] = value;
+			}
+			return;
+		}
+		final long[] sortKeys = new long[ to - from ];
+		final int[] sortValues = Arrays.copyOfRange( values, from, to );
+		for ( int i = 0; i < sortKeys.length; ++i )
+			sortKeys[ i ] = keys[ from + i ] ^ Long.MIN_VALUE;
+		sortUnsigned( sortKeys, sortValues );
+		for ( int i = 0; i < sortKeys.length; ++i )
+			keys[ from + i ] = sortKeys[ i ] ^ Long.MIN_VALUE;
+		System.arraycopy( sortValues, 0, values, from, sortValues.length );
+	}
+
+	/**
+	 * Sorts {@code keys}, and reorders {@code values} in the same way.
+	 *
+	 * @see #coSort(long[], int[], int, int)
+	 */
+	public static void coSort( final long[] keys, final int[] values )
+	{
+		coSort( keys, values, 0, keys.length );
+	}
+
+	/**
+	 * Returns the permutation that sorts {@code keys}, without modifying
+	 * them. That is, {@code keys[ p[ 0 ] ] <= keys[ p[ 1 ] ] <= ...} for the
+	 * returned {@code p}.
+	 */
+	public static int[] sortingPermutation( final double[] keys )
+	{
+		final int[] permutation = new int[ keys.length ];
+		for ( int i = 0; i < permutation.length; ++i )
+			permutation[ i ] = i;
+		coSort( keys.clone(), permutation );
+		return permutation;
+	}
+
+	// -- parallel merge sort --
+
+	/**
+	 * Sorts {@code values} in parallel. Chunks are sorted with
+	 * {@link Arrays#sort(double[], int, int)}, and then merged pairwise. Every
+	 * merge is split into parts of equal size, that are merged in parallel.
+	 */
+	public static void parallelSort( final double[] values )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< int[] > runs = sortedRuns( values.length, taskExecutor );
+		if ( runs.size() < 2 )
+		{
+			Arrays.sort( values );
+			return;
+		}
+		taskExecutor.forEach( runs, run -> Arrays.sort( values, run[ 0 ], run[ 1 ] ) );
+		double[] source = values;
+		double[] target = new double[ values.length ];
+		List< int[] > currentRuns = runs;
+		while ( currentRuns.size() > 1 )
+		{
+			final double[] src = source;
+			final double[] dst = target;
+			final List< int[] > merges = merges( currentRuns );
+			taskExecutor.forEach( mergeParts( merges, values.length, taskExecutor ), part -> {
+				final int from = part[ 0 ];
+				final int mid = part[ 1 ];
+				final int to = part[ 2 ];
+				final int i0 = coRank( src, from, mid, to, part[ 3 ] );
+				final int i1 = coRank( src, from, mid, to, part[ 4 ] );
+				merge( src, i0, i1, mid + part[ 3 ] - ( i0 - from ), mid + part[ 4 ] - ( i1 - from ), dst, from + part[ 3 ] );
+			} );
+			currentRuns = mergedRuns( merges );
+			source = dst;
+			target = src;
+		}
+		if ( source != values )
+			System.arraycopy( source, 0, values, 0, values.length );
+	}
+
+	/**
+	 * Sorts {@code values} in parallel.
+	 *
+	 * @see #parallelSort(double[])
+	 */
+	public static void parallelSort( final long[] values )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< int[] > runs = sortedRuns( values.length, taskExecutor );
+		if ( runs.size() < 2 )
+		{
+			Arrays.sort( values );
+			return;
+		}
+		taskExecutor.forEach( runs, run -> Arrays.sort( values, run[ 0 ], run[ 1 ] ) );
+		long[] source = values;
+		long[] target = new long[ values.length ];
+		List< int[] > currentRuns = runs;
+		while ( currentRuns.size() > 1 )
+		{
+			final long[] src = source;
+			final long[] dst = target;
+			final List< int[] > merges = merges( currentRuns );
+			taskExecutor.forEach( mergeParts( merges, values.length, taskExecutor ), part -> {
+				final int from = part[ 0 ];
+				final int mid = part[ 1 ];
+				final int to = part[ 2 ];
+				final int i0 = coRank( src, from, mid, to, part[ 3 ] );
+				final int i1 = coRank( src, from, mid, to, part[ 4 ] );
+				merge( src, i0, i1, mid + part[ 3 ] - ( i0 - from ), mid + part[ 4 ] - ( i1 - from ), dst, from + part[ 3 ] );
+			} );
+			currentRuns = mergedRuns( merges );
+			source = dst;
+			target = src;
+		}
+		if ( source != values )
+			System.arraycopy( source, 0, values, 0, values.length );
+	}
+
+	// -- helpers --
+
+	/**
+	 * Maps a float to an int, such that the unsigned order of the ints is the
+	 * order of {@link Float#compare(float, float)}.
+	 */
+	private static int key( final float value )
+	{
+		final int bits = Float.floatToIntBits( value );
+		return bits ^ ( ( bits >> 31 ) | Integer.MIN_VALUE );
+	}
+
+	private static float floatValue( final int key )
+	{
+		return Float.intBitsToFloat( key ^ ( ( ~key >> 31 ) | Integer.MIN_VALUE ) );
+	}
+
+	/**
+	 * Maps a double to a long, such that the unsigned order of the longs is
+	 * the order of {@link Double#compare(double, double)}.
+	 */
+	private static long key( final double value )
+	{
+		final long bits = Double.doubleToLongBits( value );
+		return bits ^ ( ( bits >> 63 ) | Long.MIN_VALUE );
+	}
+
+	private static double doubleValue( final long key )
+	{
+		return Double.longBitsToDouble( key ^ ( ( ~key >> 63 ) | Long.MIN_VALUE ) );
+	}
+
+	/**
+	 * Sorts keys by their unsigned value, and reorders the values in the same
+	 * way, if they are not null.
+	 */
+	private static void sortUnsigned( final int[] keys, final int[] values )
+	{
+		final int n = keys.length;
+		final int[][] counts = new int[ 4 ][ 256 ];
+		for ( final int key : keys )
+			for ( int digit = 0; digit < 4; ++digit )
+				++counts[ digit ][ ( key >>> ( 8 * digit ) ) & 0xff ];
+		int[] src = keys;
+		int[] dst = new int[ n ];
+		int[] srcValues = values;
+		int[] dstValues = values == null ? null : new int[ n ];
+		for ( int digit = 0; digit < 4; ++digit )
+		{
+			final int shift = 8 * digit;
+			final int[] offsets = counts[ digit ];
+			if ( offsets[ ( src[ 0 ] >>> shift ) & 0xff ] == n )
+				continue;
+			toOffsets( offsets );
+			for ( int i = 0; i < n; ++i )
+			{
+				final int index = offsets[ ( src[ i ] >>> shift ) & 0xff ]++;
+				dst[ index ] = src[ i ];
+				if ( srcValues != null )
+					dstValues[ index ] = srcValues[ i ];
+			}
+			final int[] tmp = src;
+			src = dst;
+			dst = tmp;
+			final int[] tmpValues = srcValues;
+			srcValues = dstValues;
+			dstValues = tmpValues;
+		}
+		if ( src != keys )
+		{
+			System.arraycopy( src, 0, keys, 0, n );
+			if ( values != null )
+				System.arraycopy( srcValues, 0, values, 0, n );
+		}
+	}
+
+	/**
+	 * Sorts keys by their unsigned value, and reorders the values in the same
+	 * way, if they are not null.
+	 */
+	private static void sortUnsigned( final long[] keys, final int[] values )
+	{
+		final int n = keys.length;
+		final int[][] counts = new int[ 8 ][ 256 ];
+		for ( final long key : keys )
+			for ( int digit = 0; digit < 8; ++digit )
+				++counts[ digit ][ ( int ) ( key >>> ( 8 * digit ) ) & 0xff ];
+		long[] src = keys;
+		long[] dst = new long[ n ];
+		int[] srcValues = values;
+		int[] dstValues = values == null ? null : new int[ n ];
+		for ( int digit = 0; digit < 8; ++digit )
+		{
+			final int shift = 8 * digit;
+			final int[] offsets = counts[ digit ];
+			if ( offsets[ ( int ) ( src[ 0 ] >>> shift ) & 0xff ] == n )
+				continue;
+			toOffsets( offsets );
+			for ( int i = 0; i < n; ++i )
+			{
+				final int index = offsets[ ( int ) ( src[ i ] >>> shift ) & 0xff ]++;
+				dst[ index ] = src[ i ];
+				if ( srcValues != null )
+					dstValues[ index ] = srcValues[ i ];
+			}
+			final long[] tmp = src;
+			src = dst;
+			dst = tmp;
+			final int[] tmpValues = srcValues;
+			srcValues = dstValues;
+			dstValues = tmpValues;
+		}
+		if ( src != keys )
+		{
+			System.arraycopy( src, 0, keys, 0, n );
+			if ( values != null )
+				System.arraycopy( srcValues, 0, values, 0, n );
+		}
+	}
+
+	/**
+	 * Replaces counts by the exclusive prefix sums.
+	 */
+	private static void toOffsets( final int[] counts )
+	{
+		int sum = 0;
+		for ( int i = 0; i < counts.length; ++i )
+		{
+			final int count = counts[ i ];
+			counts[ i ] = sum;
+			sum += count;
+		}
+	}
+
+	/**
+	 * Splits {@code [0, n)} into one run per task.
+	 */
+	private static List< int[] > sortedRuns( final int n, final TaskExecutor taskExecutor )
+	{
+		final int numRuns = Math.max( 1, Math.min( taskExecutor.suggestNumberOfTasks(), n / PARALLEL_THRESHOLD ) );
+		final List< int[] > runs = new ArrayList<>( numRuns );
+		for ( int i = 0; i < numRuns; ++i )
+			runs.add( new int[] { ( int ) ( ( long ) n * i / numRuns ), ( int ) ( ( long ) n * ( i + 1 ) / numRuns ) } );
+		return runs;
+	}
+
+	/**
+	 * Pairs up consecutive runs as {@code {from, mid, to}}. An odd last run
+	 * is "merged" with an empty run.
+	 */
+	private static List< int[] > merges( final List< int[] > runs )
+	{
+		final List< int[] > merges = new ArrayList<>();
+		for ( int r = 0; r < runs.size(); r += 2 )
+		{
+			final int[] a = runs.get( r );
+			final int to = r + 1 < runs.size() ? runs.get( r + 1 )[ 1 ] : a[ 1 ];
+			merges.add( new int[] { a[ 0 ], a[ 1 ], to } );
+		}
+		return merges;
+	}
+
+	private static List< int[] > mergedRuns( final List< int[] > merges )
+	{
+		final List< int[] > runs = new ArrayList<>();
+		for ( final int[] merge : merges )
+			runs.add( new int[] { merge[ 0 ], merge[ 2 ] } );
+		return runs;
+	}
+
+	/**
+	 * Splits the merges into parts {@code {from, mid, to, start, end}}, where
+	 * {@code [start, end)} is a range of the merged output, relative to
+	 * {@code from}.
+	 */
+	private static List< int[] > mergeParts( final List< int[] > merges, final int n, final TaskExecutor taskExecutor )
+	{
+		final int partSize = Math.max( PARALLEL_THRESHOLD, n / taskExecutor.suggestNumberOfTasks() + 1 );
+		final List< int[] > parts = new ArrayList<>();
+		for ( final int[] merge : merges )
+		{
+			final int length = merge[ 2 ] - merge[ 0 ];
+			for ( int start = 0; start < length; start += partSize )
+				parts.add( new int[] { merge[ 0 ], merge[ 1 ], merge[ 2 ], start, Math.min( length, start + partSize ) } );
+		}
+		return parts;
+	}
+
+	/**
+	 * Returns the index {@code i} in {@code [from, mid)}, such that the first
+	 * {@code s} elements of the stable merge of {@code [from, mid)} and
+	 * {@code [mid, to)} are {@code [from, i)} and {@code [mid, mid + s - (i - from))}.
+	 */
+	private static int coRank( final double[] values, final int from, final int mid, final int to, final int s )
+	{
+		int lo = Math.max( 0, s - ( to - mid ) );
+		int hi = Math.min( s, mid - from );
+		while ( lo < hi )
+		{
+			final int i = ( lo + hi ) >>> 1;
+			if ( Double.compare( values[ from + i ], values[ mid + s - i - 1 ] ) <= 0 )
+				lo = i + 1;
+			else
+				hi = i;
+		}
+		return from + lo;
+	}
+
+	private static int coRank( final long[] values, final int from, final int mid, final int to, final int s )
+	{
+		int lo = Math.max( 0, s - ( to - mid ) );
+		int hi = Math.min( s, mid - from );
+		while ( lo < hi )
+		{
+			final int i = ( lo + hi ) >>> 1;
+			if ( values[ from + i ] <= values[ mid + s - i - 1 ] )
+				lo = i + 1;
+			else
+				hi = i;
+		}
+		return from + lo;
+	}
+
+	/**
+	 * Merges {@code src[a0, a1)} and {@code src[b0, b1)} into {@code dst},
+	 * starting at {@code d}.
+	 */
+	private static void merge( final double[] src, int a0, final int a1, int b0, final int b1, final double[] dst, int d )
+	{
+		while ( a0 < a1 && b0 < b1 )
+			dst[ d++ ] = Double.compare( src[ a0 ], src[ b0 ] ) <= 0 ? src[ a0++ ] : src[ b0++ ];
+		System.arraycopy( src, a0, dst, d, a1 - a0 );
+		System.arraycopy( src, b0, dst, d + a1 - a0, b1 - b0 );
+	}
+
+	private static void merge( final long[] src, int a0, final int a1, int b0, final int b1, final long[] dst, int d )
+	{
+		while ( a0 < a1 && b0 < b1 )
+			dst[ d++ ] = src[ a0 ] <= src[ b0 ] ? src[ a0++ ] : src[ b0++ ];
+		System.arraycopy( src, a0, dst, d, a1 - a0 );
+		System.arraycopy( src, b0, dst, d + a1 - a0, b1 - b0 );
+	}
+}
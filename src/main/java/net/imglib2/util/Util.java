@@ -162,7 +162,7 @@ public class Util
 		final int length = temp.length;
 		final int pos = Math.min( length - 1, Math.max( 0, ( int ) Math.round( ( length - 1 ) * percentile ) ) );
 
-		KthElement.kthElement( pos, temp );
+		KthElement.parallelKthElement( pos, temp );
 
 		return temp[ pos ];
 	}
@@ -316,30 +316,9 @@ public class Util
 
 	public static void quicksort( final long[] data, final int left, final int right )
 	{
-		if ( data == null || data.length < 2 )
+		if ( data == null || left >= right )
 			return;
-		int i = left, j = right;
-		final long x = data[ ( left + right ) / 2 ];
-		do
-		{
-			while ( data[ i ] < x )
-				i++;
-			while ( x < data[ j ] )
-				j--;
-			if ( i <= j )
-			{
-				final long temp = data[ i ];
-				data[ i ] = data[ j ];
-				data[ j ] = temp;
-				i++;
-				j--;
-			}
-		}
-		while ( i <= j );
-		if ( left < j )
-			quicksort( data, left, j );
-		if ( i < right )
-			quicksort( data, i, right );
+		Sort.radixSort( data, left, right + 1 );
 	}
 
 	public static void quicksort( final double[] data )
@@ -349,30 +328,9 @@ public class Util
 
 	public static void quicksort( final double[] data, final int left, final int right )
 	{
-		if ( data == null || data.length < 2 )
+		if ( data == null || left >= right )
 			return;
-		int i = left, j = right;
-		final double x = data[ ( left + right ) / 2 ];
-		do
-		{
-			while ( data[ i ] < x )
-				i++;
-			while ( x < data[ j ] )
-				j--;
-			if ( i <= j )
-			{
-				final double temp = data[ i ];
-				data[ i ] = data[ j ];
-				data[ j ] = temp;
-				i++;
-				j--;
-			}
-		}
-		while ( i <= j );
-		if ( left < j )
-			quicksort( data, left, j );
-		if ( i < right )
-			quicksort( data, i, right );
+		Sort.radixSort( data, left, right + 1 );
 	}
 
 	public static void quicksort( final float[] data )
@@ -382,63 +340,16 @@ public class Util
 
 	public static void quicksort( final float[] data, final int left, final int right )
 	{
-		if ( data == null || data.length < 2 )
+		if ( data == null || left >= right )
 			return;
-		int i = left, j = right;
-		final float x = data[ ( left + right ) / 2 ];
-		do
-		{
-			while ( data[ i ] < x )
-				i++;
-			while ( x < data[ j ] )
-				j--;
-			if ( i <= j )
-			{
-				final float temp = data[ i ];
-				data[ i ] = data[ j ];
-				data[ j ] = temp;
-				i++;
-				j--;
-			}
-		}
-		while ( i <= j );
-		if ( left < j )
-			quicksort( data, left, j );
-		if ( i < right )
-			quicksort( data, i, right );
+		Sort.radixSort( data, left, right + 1 );
 	}
 
 	public static void quicksort( final double[] data, final int[] sortAlso, final int left, final int right )
 	{
-		if ( data == null || data.length < 2 )
+		if ( data == null || left >= right )
 			return;
-		int i = left, j = right;
-		final double x = data[ ( left + right ) / 2 ];
-		do
-		{
-			while ( data[ i ] < x )
-				i++;
-			while ( x < data[ j ] )
-				j--;
-			if ( i <= j )
-			{
-				final double temp = data[ i ];
-				data[ i ] = data[ j ];
-				data[ j ] = temp;
-
-				final int temp2 = sortAlso[ i ];
-				sortAlso[ i ] = sortAlso[ j ];
-				sortAlso[ j ] = temp2;
-
-				i++;
-				j--;
-			}
-		}
-		while ( i <= j );
-		if ( left < j )
-			quicksort( data, sortAlso, left, j );
-		if ( i < right )
-			quicksort( data, sortAlso, i, right );
+		Sort.coSort( data, sortAlso, left, right + 1 );
 	}
 
 	public static double gLog( final double z, final double c )
@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.histogram;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.LongType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link DiscreteFrequencyDistribution} with counts stored in a
+ * {@code long[]} and in a cell image.
+ */
+public class DiscreteFrequencyDistributionTest
+{
+
+	@Test
+	public void testArrayAndImgBackedAgree()
+	{
+		final long[] binCounts = { 7, 5, 3 };
+		final DiscreteFrequencyDistribution array = new DiscreteFrequencyDistribution( binCounts );
+		final DiscreteFrequencyDistribution cells = new DiscreteFrequencyDistribution( new CellImgFactory<>( new LongType(), 2 ).create( binCounts ) );
+
+		final Random random = new Random( 42 );
+		final long[] pos = new long[ 3 ];
+		for ( int i = 0; i < 1000; i++ )
+		{
+			for ( int d = 0; d < 3; d++ )
+				pos[ d ] = random.nextInt( ( int ) binCounts[ d ] );
+			if ( i % 5 == 4 )
+			{
+				array.decrement( pos );
+				cells.decrement( pos );
+			}
+			else
+			{
+				array.increment( pos );
+				cells.increment( pos );
+			}
+		}
+		pos[ 0 ] = 6;
+		pos[ 1 ] = 4;
+		pos[ 2 ] = 2;
+		array.setFrequency( pos, 1000 );
+		cells.setFrequency( pos, 1000 );
+
+		final long[] added = new long[ 7 * 5 * 3 ];
+		for ( int i = 0; i < added.length; i++ )
+			added[ i ] = i;
+		array.addFrequencies( added );
+		cells.addFrequencies( added );
+
+		assertEquals( cells.totalValues(), array.totalValues() );
+		final Cursor< LongType > cursor = cells.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.localize( pos );
+			assertEquals( cursor.get().get(), array.frequency( pos ) );
+		}
+		final List< long[] > modes = array.modePositions();
+		assertEquals( 1, modes.size() );
+		assertArrayEquals( new long[] { 6, 4, 2 }, modes.get( 0 ) );
+		assertEquals( array.modeCount(), cells.modeCount() );
+
+		final DiscreteFrequencyDistribution sparse = new DiscreteFrequencyDistribution( binCounts, true );
+		sparse.addFrequencies( array );
+		sparse.addFrequencies( cells );
+		sparse.subtractFrequencies( array );
+		assertEquals( cells.totalValues(), sparse.totalValues() );
+		cursor.reset();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.localize( pos );
+			assertEquals( cursor.get().get(), sparse.frequency( pos ) );
+		}
+
+		array.resetCounters();
+		assertEquals( 0, array.totalValues() );
+		assertEquals( 0, array.frequency( pos ) );
+	}
+}
@@ -34,12 +34,22 @@
 
 package net.imglib2.histogram;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.parallel.Parallelization;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
 
 import org.junit.Test;
 
@@ -104,6 +114,112 @@ public class Histogram1dTest
 		assertEquals( 0, hist.upperTailCount() );
 	}
 
+	@Test
+	public void testSinglePassIterable()
+	{
+		final List< UnsignedByteType > values = new ArrayList<>();
+		for ( int i = 0; i < 100; ++i )
+			values.add( new UnsignedByteType( i % 10 ) );
+		final Integer1dBinMapper< UnsignedByteType > mapper = new Integer1dBinMapper<>( 0, 8, false );
+
+		final Histogram1d< UnsignedByteType > histogram = new Histogram1d<>( singlePass( values ), mapper );
+		assertEquals( 0, histogram.firstDataValue().get() );
+		assertEquals( 80, histogram.distributionCount() );
+		assertEquals( 20, histogram.ignoredCount() );
+		for ( int bin = 0; bin < 8; ++bin )
+			assertEquals( 10, histogram.frequency( bin ) );
+
+		histogram.addData( singlePass( values ) );
+		assertEquals( 20, histogram.frequency( 3 ) );
+		assertEquals( 40, histogram.ignoredCount() );
+		histogram.subtractData( singlePass( values.subList( 0, 10 ) ) );
+		assertEquals( 19, histogram.frequency( 3 ) );
+		assertEquals( 38, histogram.ignoredCount() );
+	}
+
+	/**
+	 * Returns an {@link Iterable}, that can be iterated only once.
+	 */
+	private static < T > Iterable< T > singlePass( final List< T > values )
+	{
+		final boolean[] iterated = { false };
+		return () -> {
+			if ( iterated[ 0 ] )
+				throw new IllegalStateException( "iterated twice" );
+			iterated[ 0 ] = true;
+			return values.iterator();
+		};
+	}
+
+	@Test
+	public void testParallelCounting()
+	{
+		final Random random = new Random( 42 );
+		final Img< UnsignedShortType > shorts = ArrayImgs.unsignedShorts( 300, 200, 5 );
+		shorts.forEach( t -> t.set( random.nextInt( 1000 ) ) );
+		final Img< FloatType > floats = ArrayImgs.floats( 300, 200, 5 );
+		floats.forEach( t -> t.set( ( float ) random.nextGaussian() ) );
+
+		assertSameCounts( shorts, new Integer1dBinMapper< UnsignedShortType >( 100, 800, true ) );
+		assertSameCounts( shorts, new Integer1dBinMapper< UnsignedShortType >( 100, 800, false ) );
+		assertSameCounts( floats, new Real1dBinMapper< FloatType >( -2, 2, 77, true ) );
+	}
+
+	@Test
+	public void testPrimitiveCounting()
+	{
+		final Random random = new Random( 42 );
+		final Img< UnsignedByteType > bytes = ArrayImgs.unsignedBytes( 300, 200, 5 );
+		bytes.forEach( t -> t.set( random.nextInt( 256 ) ) );
+		final Img< UnsignedShortType > shorts = new CellImgFactory<>( new UnsignedShortType(), 64 ).create( 300, 200, 5 );
+		shorts.forEach( t -> t.set( random.nextInt( 1 << 16 ) ) );
+		final Img< FloatType > floats = PlanarImgs.floats( 300, 200, 5 );
+		floats.forEach( t -> t.set( ( float ) random.nextGaussian() ) );
+		floats.firstElement().set( Float.NaN );
+
+		assertSameAsGenericCounts( bytes, new Integer1dBinMapper< UnsignedByteType >( 0, 256, false ) );
+		assertSameAsGenericCounts( bytes, new Integer1dBinMapper< UnsignedByteType >( 10, 100, true ) );
+		assertSameAsGenericCounts( bytes, new Real1dBinMapper< UnsignedByteType >( 10, 200, 7, false ) );
+		assertSameAsGenericCounts( shorts, new Integer1dBinMapper< UnsignedShortType >( 1000, 50000, true ) );
+		assertSameAsGenericCounts( shorts, new Integer1dBinMapper< UnsignedShortType >( 1000, 50000, false ) );
+		assertSameAsGenericCounts( floats, new Real1dBinMapper< FloatType >( -2, 2, 77, true ) );
+		assertSameAsGenericCounts( floats, new Real1dBinMapper< FloatType >( -2, 2, 77, false ) );
+	}
+
+	private static < T > void assertSameAsGenericCounts( final Img< T > data, final BinMapper1d< T > mapper )
+	{
+		final Histogram1d< T > expected = new Histogram1d<>( Views.flatIterable( data ), mapper );
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			final Histogram1d< T > actual = Parallelization.runWithNumThreads( numThreads, () -> new Histogram1d<>( data, mapper ) );
+			assertEquals( expected.totalCount(), actual.totalCount() );
+			assertEquals( expected.ignoredCount(), actual.ignoredCount() );
+			assertArrayEquals( expected.toLongArray(), actual.toLongArray() );
+			actual.subtractData( data );
+			assertEquals( 0, actual.totalCount() );
+		}
+	}
+
+	private static < T > void assertSameCounts( final Img< T > data, final BinMapper1d< T > mapper )
+	{
+		final Histogram1d< T > expected = new Histogram1d<>( data, mapper );
+		final Histogram1d< T > actual = Parallelization.runWithNumThreads( 4, () -> new Histogram1d<>( data, mapper ) );
+		assertEquals( expected.totalCount(), actual.totalCount() );
+		assertEquals( expected.ignoredCount(), actual.ignoredCount() );
+		assertEquals( expected.distributionCount(), actual.distributionCount() );
+		assertArrayEquals( expected.toLongArray(), actual.toLongArray() );
+
+		Parallelization.runWithNumThreads( 4, () -> actual.addData( data ) );
+		expected.addData( data );
+		assertArrayEquals( expected.toLongArray(), actual.toLongArray() );
+		assertEquals( expected.totalCount(), actual.totalCount() );
+
+		Parallelization.runWithNumThreads( 4, () -> actual.subtractData( data ) );
+		expected.subtractData( data );
+		assertArrayEquals( expected.toLongArray(), actual.toLongArray() );
+		assertEquals( expected.totalCount(), actual.totalCount() );
+	}
+
 	private List< UnsignedByteType > getData1()
 	{
 		final List< UnsignedByteType > data = new ArrayList< UnsignedByteType >();
@@ -40,10 +40,14 @@ import static org.junit.Assert.assertNotNull;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import net.imglib2.Cursor;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.list.ListImg;
+import net.imglib2.parallel.Parallelization;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.integer.IntType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
@@ -292,6 +296,110 @@ public class HistogramNdTest
 		assertEquals( 20000, hist.distributionCount() );
 	}
 
+	@Test
+	public void testSparse()
+	{
+		// 256^4 bins, that would not fit into memory densely
+		final List< BinMapper1d< UnsignedByteType >> mappers = new ArrayList< BinMapper1d< UnsignedByteType >>();
+		for ( int i = 0; i < 4; i++ )
+			mappers.add( new Integer1dBinMapper< UnsignedByteType >( 0, 256, true ) );
+		final HistogramNd< UnsignedByteType > sparse = new HistogramNd< UnsignedByteType >( mappers, true );
+
+		final List< List< UnsignedByteType >> data = new ArrayList< List< UnsignedByteType >>();
+		for ( int i = 0; i < 1000; i++ )
+		{
+			final List< UnsignedByteType > tuple = new ArrayList< UnsignedByteType >();
+			for ( int c = 0; c < 4; c++ )
+				tuple.add( new UnsignedByteType( ( ( i >> ( 3 * c ) ) & 7 ) * 32 + c ) );
+			data.add( tuple );
+		}
+		data.add( data.get( 0 ) );
+		sparse.countData( data );
+
+		assertEquals( 256L * 256 * 256 * 256, sparse.getBinCount() );
+		assertEquals( 1001, sparse.totalCount() );
+		assertEquals( 2, sparse.frequency( data.get( 0 ) ) );
+		assertEquals( 1, sparse.dfd().modePositions().size() );
+		assertEquals( 2, sparse.dfd().modeCount() );
+
+		// the tail and value counts agree with a dense histogram of the
+		// first two channels
+		final HistogramNd< UnsignedByteType > sparse2 = new HistogramNd< UnsignedByteType >( mappers.subList( 0, 2 ), true );
+		final HistogramNd< UnsignedByteType > dense2 = new HistogramNd< UnsignedByteType >( mappers.subList( 0, 2 ), false );
+		for ( final List< UnsignedByteType > tuple : data )
+		{
+			sparse2.increment( tuple.subList( 0, 2 ) );
+			dense2.increment( tuple.subList( 0, 2 ) );
+		}
+		assertEquals( dense2.lowerTailCount(), sparse2.lowerTailCount() );
+		assertEquals( dense2.lowerTailCount( 1 ), sparse2.lowerTailCount( 1 ) );
+		assertEquals( dense2.upperTailCount(), sparse2.upperTailCount() );
+		assertEquals( dense2.upperTailCount( 0 ), sparse2.upperTailCount( 0 ) );
+		assertEquals( dense2.valueCount(), sparse2.valueCount() );
+		assertEquals( dense2.valueCount( 0 ), sparse2.valueCount( 0 ) );
+		assertEquals( dense2.distributionCount( 1, 33 ), sparse2.distributionCount( 1, 33 ) );
+		assertEquals( dense2.dfd().modePositions().size(), sparse2.dfd().modePositions().size() );
+
+		sparse.resetCounters();
+		assertEquals( 0, sparse.totalCount() );
+		assertEquals( 0, sparse.frequency( data.get( 0 ) ) );
+	}
+
+	@Test
+	public void testParallelCounting()
+	{
+		final Random random = new Random( 42 );
+		final List< Img< UnsignedByteType >> channels = new ArrayList<>();
+		for ( int c = 0; c < 3; c++ )
+		{
+			final Img< UnsignedByteType > channel = ArrayImgs.unsignedBytes( 300, 300 );
+			channel.forEach( t -> t.set( random.nextInt( 256 ) ) );
+			channels.add( channel );
+		}
+		final List< List< UnsignedByteType >> tuples = new ArrayList<>();
+		final List< Cursor< UnsignedByteType >> cursors = new ArrayList<>();
+		for ( final Img< UnsignedByteType > channel : channels )
+			cursors.add( channel.cursor() );
+		while ( cursors.get( 0 ).hasNext() )
+		{
+			final List< UnsignedByteType > tuple = new ArrayList<>();
+			for ( final Cursor< UnsignedByteType > cursor : cursors )
+				tuple.add( cursor.next().copy() );
+			tuples.add( tuple );
+		}
+		final ListImg< List< UnsignedByteType >> tupleImg = new ListImg<>( tuples, 300, 300 );
+		final List< Iterable< UnsignedByteType >> channelData = new ArrayList<>( channels );
+
+		for ( final boolean sparse : new boolean[] { false, true } )
+		{
+			// values of 200 and above are ignored
+			final List< BinMapper1d< UnsignedByteType >> mappers = new ArrayList<>();
+			for ( int c = 0; c < 3; c++ )
+				mappers.add( new Integer1dBinMapper< UnsignedByteType >( 0, 200, false ) );
+			final HistogramNd< UnsignedByteType > expected = new HistogramNd<>( mappers, sparse );
+			expected.countData( channelData );
+			assertEquals( tuples.size(), expected.totalCount() );
+
+			final HistogramNd< UnsignedByteType > actual = new HistogramNd<>( mappers, sparse );
+			Parallelization.runWithNumThreads( 4, () -> actual.countData( channelData ) );
+			assertSameCounts( expected, actual );
+			Parallelization.runWithNumThreads( 4, () -> actual.addData( tupleImg ) );
+			Parallelization.runWithNumThreads( 4, () -> actual.subtractData( channelData ) );
+			assertSameCounts( expected, actual );
+			Parallelization.runWithNumThreads( 4, () -> actual.subtractData( tupleImg ) );
+			assertEquals( 0, actual.totalCount() );
+			assertEquals( 0, actual.dfd().totalValues() );
+		}
+	}
+
+	private static < T > void assertSameCounts( final HistogramNd< T > expected, final HistogramNd< T > actual )
+	{
+		assertEquals( expected.totalCount(), actual.totalCount() );
+		assertEquals( expected.ignoredCount(), actual.ignoredCount() );
+		assertEquals( expected.dfd().totalValues(), actual.dfd().totalValues() );
+		expected.dfd().forEachNonZeroBin( ( binPos, count ) -> assertEquals( count, actual.dfd().frequency( binPos ) ) );
+	}
+
 	private List< UnsignedByteType > getData1()
 	{
 		final List< UnsignedByteType > data = new ArrayList< UnsignedByteType >();
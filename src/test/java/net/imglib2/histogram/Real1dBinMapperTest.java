@@ -300,4 +300,15 @@ public class Real1dBinMapperTest
 		pos = binMapper.map( tmp );
 		assertEquals( 0, pos );
 	}
+
+	@Test
+	public void testEquals()
+	{
+		final Real1dBinMapper< FloatType > binMapper = new Real1dBinMapper<>( 0, 100, 100, false );
+		assertEquals( binMapper, binMapper.copy() );
+		assertEquals( binMapper.hashCode(), binMapper.copy().hashCode() );
+		assertFalse( binMapper.equals( new Real1dBinMapper<>( 0, 100, 100, true ) ) );
+		assertFalse( binMapper.equals( new Real1dBinMapper<>( 0, 99, 100, false ) ) );
+		assertFalse( binMapper.equals( new Integer1dBinMapper<>( 0, 100, false ) ) );
+	}
 }
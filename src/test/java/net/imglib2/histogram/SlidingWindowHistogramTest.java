@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.histogram;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SlidingWindowHistogram}.
+ */
+public class SlidingWindowHistogramTest
+{
+
+	@Test
+	public void testSliding()
+	{
+		final Img< UnsignedShortType > image = ArrayImgs.unsignedShorts( 20, 15, 10 );
+		final Random random = new Random( 42 );
+		image.forEach( t -> t.set( random.nextInt( 1 << 16 ) ) );
+		final RandomAccessible< UnsignedShortType > source = Views.extendMirrorSingle( image );
+		final long[] radius = { 2, 3, 1 };
+		final Integer1dBinMapper< UnsignedShortType > mapper = new Integer1dBinMapper<>( 0, 1 << 16, false );
+
+		for ( int d = 0; d < 3; ++d )
+		{
+			final SlidingWindowHistogram< UnsignedShortType > window = new SlidingWindowHistogram<>( source, radius, mapper, d );
+			final long[] position = { 3, 4, 5 };
+			window.setPosition( position );
+			for ( int step = 0; step < 12; ++step )
+			{
+				final Histogram1d< UnsignedShortType > expected = new Histogram1d<>( Views.flatIterable( Views.interval( source, box( position, radius ) ) ), mapper );
+				assertArrayEquals( position, window.getPosition() );
+				assertEquals( expected.totalCount(), window.count() );
+				assertArrayEquals( expected.toLongArray(), window.getHistogram().toLongArray() );
+
+				final long[] sorted = sortedValues( expected );
+				for ( final long k : new long[] { 0, 7, sorted.length / 2, sorted.length - 1 } )
+					assertEquals( sorted[ ( int ) k ], window.rankBin( k ) );
+				assertEquals( sorted[ ( sorted.length - 1 ) / 2 ], window.percentileBin( 0.5 ) );
+
+				window.fwd();
+				position[ d ]++;
+			}
+		}
+	}
+
+	@Test
+	public void testMedianFilter()
+	{
+		final Img< UnsignedByteType > image = ArrayImgs.unsignedBytes( 30, 20, 4 );
+		final Random random = new Random( 7 );
+		image.forEach( t -> t.set( random.nextInt( 256 ) ) );
+		final RandomAccessible< UnsignedByteType > source = Views.extendBorder( image );
+		final long[] radius = { 3, 2, 1 };
+		final Integer1dBinMapper< UnsignedByteType > mapper = new Integer1dBinMapper<>( 0, 256, false );
+
+		final Img< UnsignedByteType > actual = ArrayImgs.unsignedBytes( 30, 20, 4 );
+		Parallelization.runWithNumThreads( 4, () -> SlidingWindowHistogram.percentileFilter( source, actual, radius, mapper, 0.5 ) );
+
+		final Cursor< UnsignedByteType > cursor = actual.localizingCursor();
+		final long[] position = new long[ 3 ];
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.localize( position );
+			final int[] values = Views.interval( source, box( position, radius ) ).stream().mapToInt( UnsignedByteType::get ).sorted().toArray();
+			assertEquals( values[ ( values.length - 1 ) / 2 ], cursor.get().get() );
+		}
+	}
+
+	@Test
+	public void testPercentileWithRealBins()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( new float[] { 0.15f, 0.95f, 0.55f, 0.35f, 5f, 0.75f }, 6 );
+		final Real1dBinMapper< FloatType > mapper = new Real1dBinMapper<>( 0, 1, 10, false );
+		final SlidingWindowHistogram< FloatType > window = new SlidingWindowHistogram<>( Views.extendZero( image ), new long[] { 2 }, mapper, 0 );
+		window.setPosition( new long[] { 2 } );
+		// 5f is outside of the bins and ignored
+		assertEquals( 4, window.count() );
+		assertEquals( 1, window.percentileBin( 0 ) );
+		assertEquals( 9, window.percentileBin( 1 ) );
+		final FloatType value = new FloatType();
+		window.percentile( 0.5, value );
+		assertEquals( 0.35, value.get(), 1e-6 );
+		window.fwd();
+		assertEquals( 4, window.count() );
+		assertEquals( 3, window.percentileBin( 0 ) );
+	}
+
+	private static FinalInterval box( final long[] center, final long[] radius )
+	{
+		final long[] min = new long[ center.length ];
+		final long[] max = new long[ center.length ];
+		for ( int d = 0; d < center.length; ++d )
+		{
+			min[ d ] = center[ d ] - radius[ d ];
+			max[ d ] = center[ d ] + radius[ d ];
+		}
+		return new FinalInterval( min, max );
+	}
+
+	private static long[] sortedValues( final Histogram1d< ? > histogram )
+	{
+		final long[] bins = histogram.toLongArray();
+		final long[] values = new long[ ( int ) histogram.totalCount() ];
+		int i = 0;
+		for ( int bin = 0; bin < bins.length; ++bin )
+			for ( long j = 0; j < bins[ bin ]; ++j )
+				values[ i++ ] = bin;
+		assertEquals( values.length, i );
+		Arrays.sort( values );
+		return values;
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.histogram;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.DirtyByteArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.RealStatistics;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link StatisticsCache}.
+ */
+public class StatisticsCacheTest
+{
+
+	private final Integer1dBinMapper< UnsignedByteType > mapper = new Integer1dBinMapper<>( 10, 200, true );
+
+	@Test
+	public void testDirtyCells()
+	{
+		final CellGrid grid = new CellGrid( new long[] { 40, 30, 20 }, new int[] { 16, 16, 16 } );
+		@SuppressWarnings( "unchecked" )
+		final Cell< DirtyByteArray >[] cells = new Cell[ ( int ) Intervals.numElements( grid.getGridDimensions() ) ];
+		for ( int i = 0; i < cells.length; ++i )
+		{
+			final long[] min = new long[ 3 ];
+			final int[] dims = new int[ 3 ];
+			grid.getCellDimensions( i, min, dims );
+			cells[ i ] = new Cell<>( dims, min, new DirtyByteArray( dims[ 0 ] * dims[ 1 ] * dims[ 2 ] ) );
+		}
+		final LazyCellImg< UnsignedByteType, DirtyByteArray > image = new LazyCellImg<>( grid, new UnsignedByteType(), index -> cells[ ( int ) index ] );
+		final Random random = new Random( 1 );
+		image.forEach( t -> t.set( random.nextInt( 256 ) ) );
+
+		final StatisticsCache cache = new StatisticsCache();
+		assertSameResults( cache, image );
+		// the dirty flags are left alone, e.g. for writing cells back to disk
+		assertTrue( cells[ 0 ].getData().isDirty() );
+
+		// modifications that bypass the dirty flag are not detected
+		final byte[] data = cells[ 0 ].getData().getCurrentStorageArray();
+		data[ 0 ] = ( byte ) ( data[ 0 ] + 1 );
+		assertEquals( cache.getHistogram( image, mapper ).totalCount(), new Histogram1d<>( image, mapper ).totalCount() );
+		assertTrue( cache.getStatistics( image ).getSum() != sum( image ) );
+
+		// modifications through the image set the dirty flag of the cell
+		final RandomAccess< UnsignedByteType > access = image.randomAccess();
+		access.setPosition( new long[] { 1, 2, 3 } );
+		access.get().set( 17 );
+		assertSameResults( cache, image );
+
+		// setting the dirty flag counts as a modification
+		final long count = cells[ 1 ].getData().getModificationCount();
+		cells[ 1 ].getData().setDirty();
+		assertTrue( cells[ 1 ].getData().getModificationCount() != count );
+		assertSameResults( cache, image );
+	}
+
+	@Test
+	public void testInvalidate()
+	{
+		final Img< UnsignedByteType > image = ArrayImgs.unsignedBytes( 50, 40 );
+		final Random random = new Random( 2 );
+		image.forEach( t -> t.set( random.nextInt( 256 ) ) );
+		final StatisticsCache cache = new StatisticsCache();
+		assertSameResults( cache, image );
+
+		image.firstElement().set( 255 - image.firstElement().get() );
+		assertTrue( cache.getStatistics( image ).getSum() != sum( image ) );
+		cache.invalidate( image, new FinalInterval( new long[] { 0, 0 }, new long[] { 3, 3 } ) );
+		assertSameResults( cache, image );
+
+		image.firstElement().set( 255 - image.firstElement().get() );
+		cache.invalidate( image );
+		assertSameResults( cache, image );
+	}
+
+	@Test
+	public void testEqualMappers()
+	{
+		final Img< UnsignedByteType > image = ArrayImgs.unsignedBytes( 50, 40 );
+		final StatisticsCache cache = new StatisticsCache();
+		assertEquals( 2000, cache.getHistogram( image, new Integer1dBinMapper<>( 0, 256, false ) ).frequency( 0 ) );
+
+		// the modification is not announced, so equal mappers get the cached counts
+		image.firstElement().set( 1 );
+		assertEquals( 2000, cache.getHistogram( image, new Integer1dBinMapper<>( 0, 256, false ) ).frequency( 0 ) );
+
+		// the least recently used histograms are discarded
+		for ( int i = 1; i <= StatisticsCache.MAX_HISTOGRAMS; ++i )
+			cache.getHistogram( image, new Integer1dBinMapper<>( 0, 256 + i, false ) );
+		assertEquals( 1999, cache.getHistogram( image, new Integer1dBinMapper<>( 0, 256, false ) ).frequency( 0 ) );
+	}
+
+	private void assertSameResults( final StatisticsCache cache, final RandomAccessibleInterval< UnsignedByteType > image )
+	{
+		final Histogram1d< UnsignedByteType > expected = new Histogram1d<>( Views.flatIterable( image ), mapper );
+		for ( int i = 0; i < 2; ++i )
+		{
+			final Histogram1d< UnsignedByteType > actual = cache.getHistogram( image, mapper );
+			assertArrayEquals( expected.toLongArray(), actual.toLongArray() );
+			assertEquals( expected.ignoredCount(), actual.ignoredCount() );
+			assertEquals( expected.totalCount(), actual.totalCount() );
+
+			final RealStatistics statistics = cache.getStatistics( image );
+			assertEquals( sum( image ), statistics.getSum(), 0 );
+			assertEquals( Views.iterable( image ).size(), statistics.getCount() );
+		}
+	}
+
+	private static double sum( final RandomAccessibleInterval< UnsignedByteType > image )
+	{
+		double sum = 0;
+		for ( final UnsignedByteType t : Views.flatIterable( image ) )
+			sum += t.get();
+		return sum;
+	}
+}
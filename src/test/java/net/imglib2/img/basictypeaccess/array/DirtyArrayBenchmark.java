@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.basictypeaccess.array;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+/**
+ * Measures the cost of counting modifications in {@link DirtyByteArray},
+ * compared to a {@link ByteArray} and to a dirty array, that only sets the
+ * dirty flag, as {@link DirtyByteArray} did before.
+ */
+@State( Scope.Benchmark )
+public class DirtyArrayBenchmark
+{
+
+	private final Img< UnsignedByteType > plain = ArrayImgs.unsignedBytes( 1000, 1000 );
+
+	private final Img< UnsignedByteType > dirty = ArrayImgs.unsignedBytes( new DirtyByteArray( 1000 * 1000 ), 1000, 1000 );
+
+	private final Img< UnsignedByteType > legacyDirty = ArrayImgs.unsignedBytes( new LegacyDirtyByteArray( 1000 * 1000 ), 1000, 1000 );
+
+	@Benchmark
+	public void fillByteArray()
+	{
+		fill( plain );
+	}
+
+	@Benchmark
+	public void fillDirtyByteArray()
+	{
+		fill( dirty );
+	}
+
+	@Benchmark
+	public void fillLegacyDirtyByteArray()
+	{
+		fill( legacyDirty );
+	}
+
+	private static void fill( final Img< UnsignedByteType > image )
+	{
+		int i = 0;
+		for ( final UnsignedByteType t : image )
+			t.set( ++i & 0xff );
+	}
+
+	/**
+	 * {@link DirtyByteArray} without the modification count.
+	 */
+	private static class LegacyDirtyByteArray extends AbstractByteArray< LegacyDirtyByteArray >
+	{
+
+		private boolean dirty = false;
+
+		public LegacyDirtyByteArray( final int numEntities )
+		{
+			super( numEntities );
+		}
+
+		@Override
+		public void setValue( final int index, final byte value )
+		{
+			dirty = true;
+			data[ index ] = value;
+		}
+
+		@Override
+		public LegacyDirtyByteArray createArray( final int numEntities )
+		{
+			return new LegacyDirtyByteArray( numEntities );
+		}
+
+		public boolean isDirty()
+		{
+			return dirty;
+		}
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		// fork for every benchmark, such that the profile of the calls to
+		// setValue is not polluted by the other array classes
+		final Options opt = new OptionsBuilder()
+				.include( DirtyArrayBenchmark.class.getSimpleName() )
+				.forks( 1 )
+				.warmupIterations( 4 )
+				.measurementIterations( 8 )
+				.warmupTime( TimeValue.milliseconds( 500 ) )
+				.measurementTime( TimeValue.milliseconds( 500 ) )
+				.build();
+		new Runner( opt ).run();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.interpolation.neighborsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.FlatKDTree;
+import net.imglib2.RealPoint;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnFlatKDTree;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnFlatKDTree;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link NeighborSearchRasterizer} by comparison to the interpolators.
+ */
+public class NeighborSearchRasterizerTest
+{
+	private final FlatKDTree< DoubleType > tree;
+
+	public NeighborSearchRasterizerTest()
+	{
+		final Random rnd = new Random( 42 );
+		final List< RealPoint > positions = new ArrayList<>();
+		final List< DoubleType > values = new ArrayList<>();
+		for ( int i = 0; i < 200; ++i )
+		{
+			positions.add( new RealPoint( rnd.nextDouble() * 60 - 5, rnd.nextDouble() * 40 - 5 ) );
+			values.add( new DoubleType( rnd.nextDouble() ) );
+		}
+		tree = new FlatKDTree<>( values, positions );
+	}
+
+	@Test
+	public void testNearestNeighbor()
+	{
+		final Img< DoubleType > img = ArrayImgs.doubles( 50, 30 );
+		Parallelization.runWithNumThreads( 4, () -> NeighborSearchRasterizer.nearestNeighbor( tree, img ) );
+		final NearestNeighborSearchInterpolator< DoubleType > interpolator = new NearestNeighborSearchInterpolator<>( new NearestNeighborSearchOnFlatKDTree<>( tree ) );
+		final Cursor< DoubleType > cursor = img.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			interpolator.setPosition( cursor );
+			assertEquals( interpolator.get().get(), cursor.get().get(), 0 );
+		}
+	}
+
+	@Test
+	public void testInverseDistanceWeighting()
+	{
+		final Img< DoubleType > img = ArrayImgs.doubles( 50, 30 );
+		Parallelization.runWithNumThreads( 4, () -> NeighborSearchRasterizer.inverseDistanceWeighting( tree, 5, 2, img ) );
+		final InverseDistanceWeightingInterpolator< DoubleType > interpolator = new InverseDistanceWeightingInterpolator<>( new KNearestNeighborSearchOnFlatKDTree<>( tree, 5 ), 2 );
+		final Cursor< DoubleType > cursor = img.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			interpolator.setPosition( cursor );
+			assertEquals( interpolator.get().get(), cursor.get().get(), 1e-12 );
+		}
+	}
+}
@@ -36,6 +36,7 @@ package net.imglib2.loops;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
+import java.util.Arrays;
 import java.util.function.IntSupplier;
 
 import org.junit.Test;
@@ -72,6 +73,24 @@ public class ClassCopyProviderTest
 		assertNotEquals( a.getClass(), b.getClass() );
 	}
 
+	@Test
+	public void testNewInstanceForClassesOf()
+	{
+		final ClassCopyProvider< IntSupplier > provider = new ClassCopyProvider<>( MyRunnable.class, IntSupplier.class );
+		final IntSupplier a = provider.newInstanceForClassesOf( 42 );
+		final IntSupplier b = provider.newInstanceForClassesOf( 42 );
+		final IntSupplier c = provider.newInstanceForKey( "key", 42 );
+		assertEquals( 12, a.getAsInt() );
+		assertEquals( a.getClass(), b.getClass() );
+		assertNotEquals( a.getClass(), c.getClass() );
+	}
+
+	@Test
+	public void testClassesOf()
+	{
+		assertEquals( Arrays.asList( Integer.class, null, String.class ), ClassCopyProvider.classesOf( 42, null, "A" ) );
+	}
+
 	public static class MyRunnable implements IntSupplier
 	{
 
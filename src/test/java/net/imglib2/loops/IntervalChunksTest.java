@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.loops;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.util.Intervals;
+
+public class IntervalChunksTest
+{
+
+	@Test
+	public void testChunksCoverInterval()
+	{
+		final Interval interval = Intervals.createMinMax( -2, 3, 0, 7, 11, 5 );
+		final List< Interval > chunks = IntervalChunks.chunkInterval( interval, 16 );
+		long size = 0;
+		long previousMax = interval.min( 2 ) - 1;
+		for ( final Interval chunk : chunks )
+		{
+			size += Intervals.numElements( chunk );
+			assertEquals( interval.min( 0 ), chunk.min( 0 ) );
+			assertEquals( interval.max( 0 ), chunk.max( 0 ) );
+			if ( chunk.min( 1 ) == interval.min( 1 ) )
+			{
+				assertEquals( previousMax + 1, chunk.min( 2 ) );
+				previousMax = chunk.max( 2 );
+			}
+		}
+		assertEquals( Intervals.numElements( interval ), size );
+		assertEquals( interval.max( 2 ), previousMax );
+		assertTrue( chunks.size() >= 16 );
+	}
+
+	@Test
+	public void testSmallInterval()
+	{
+		final Interval interval = new FinalInterval( 3, 1 );
+		assertEquals( 3, IntervalChunks.chunkInterval( interval, 100 ).size() );
+		assertEquals( 1, IntervalChunks.chunkInterval( interval, 1 ).size() );
+		assertEquals( 0, IntervalChunks.chunkInterval( new FinalInterval( 0, 5 ), 4 ).size() );
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.loops;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class LineLoopBuilderTest
+{
+
+	private final long[] dimensions = { 7, 5, 4 };
+
+	@Test
+	public void testSumOfMixedContainers()
+	{
+		final Img< FloatType > a = randomize( ArrayImgs.floats( dimensions ), 1 );
+		final Img< FloatType > b = randomize( PlanarImgs.floats( dimensions ), 2 );
+		final Img< FloatType > sum = new CellImgFactory<>( new FloatType(), 3, 5, 2 ).create( dimensions );
+		LineLoopBuilder.setImages( a, b, sum ).forEachLine(
+				( float[] x, int ox, float[] y, int oy, float[] s, int os, int length ) -> {
+					for ( int i = 0; i < length; i++ )
+						s[ os + i ] = x[ ox + i ] + y[ oy + i ];
+				} );
+		assertSum( a, b, sum );
+	}
+
+	@Test
+	public void testMultiThreaded()
+	{
+		final Img< FloatType > a = randomize( new CellImgFactory<>( new FloatType(), 2, 3, 4 ).create( dimensions ), 1 );
+		final Img< FloatType > b = randomize( new CellImgFactory<>( new FloatType(), 7, 2, 1 ).create( dimensions ), 2 );
+		final Img< FloatType > sum = ArrayImgs.floats( dimensions );
+		Parallelization.runWithNumThreads( 4, () -> LineLoopBuilder.setImages( a, b, sum ).multiThreaded().forEachLine(
+				( float[] x, int ox, float[] y, int oy, float[] s, int os, int length ) -> {
+					for ( int i = 0; i < length; i++ )
+						s[ os + i ] = x[ ox + i ] + y[ oy + i ];
+				} ) );
+		assertSum( a, b, sum );
+	}
+
+	@Test
+	public void testLineLengths()
+	{
+		final AtomicLong lines = new AtomicLong();
+		final AtomicLong pixels = new AtomicLong();
+		LineLoopBuilder.setImages( PlanarImgs.floats( dimensions ) ).forEachLine( ( float[] x, int ox, int length ) -> {
+			assertEquals( 35, length );
+			lines.incrementAndGet();
+			pixels.addAndGet( length );
+		} );
+		assertEquals( 4, lines.get() );
+		assertEquals( 140, pixels.get() );
+	}
+
+	@Test
+	public void testRange()
+	{
+		final AtomicLong lines = new AtomicLong();
+		final AtomicLong pixels = new AtomicLong();
+		LineLoopBuilder.setImages( PlanarImgs.floats( dimensions ) ).forEachLine( 30, 110, ( float[] x, int ox, int length ) -> {
+			lines.incrementAndGet();
+			pixels.addAndGet( length );
+		} );
+		assertEquals( 4, lines.get() );
+		assertEquals( 80, pixels.get() );
+	}
+
+	@Test
+	public void testUnsignedBytesAsRawArray()
+	{
+		final Img< UnsignedByteType > image = ArrayImgs.unsignedBytes( 3, 2 );
+		LineLoopBuilder.setImages( image ).forEachLine( ( byte[] x, int ox, int length ) -> {
+			for ( int i = 0; i < length; i++ )
+				x[ ox + i ] = ( byte ) 200;
+		} );
+		for ( final UnsignedByteType pixel : image )
+			assertEquals( 200, pixel.get() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testDimensionsMismatch()
+	{
+		LineLoopBuilder.setImages( ArrayImgs.floats( 2, 3 ), ArrayImgs.floats( 3, 2 ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testUnsupportedImage()
+	{
+		LineLoopBuilder.setImages( Views.translate( ArrayImgs.floats( 2, 3 ), 1, 1 ) );
+	}
+
+	private static Img< FloatType > randomize( final Img< FloatType > image, final int seed )
+	{
+		final Random random = new Random( seed );
+		image.forEach( pixel -> pixel.setReal( random.nextFloat() ) );
+		return image;
+	}
+
+	private static void assertSum( final RandomAccessibleInterval< FloatType > a, final RandomAccessibleInterval< FloatType > b, final RandomAccessibleInterval< FloatType > sum )
+	{
+		final Cursor< FloatType > ca = Views.flatIterable( a ).cursor();
+		final Cursor< FloatType > cb = Views.flatIterable( b ).cursor();
+		final Cursor< FloatType > cs = Views.flatIterable( sum ).cursor();
+		while ( cs.hasNext() )
+			assertEquals( ca.next().get() + cb.next().get(), cs.next().get(), 0 );
+	}
+}
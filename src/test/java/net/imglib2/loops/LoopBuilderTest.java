@@ -43,6 +43,7 @@ import net.imglib2.Cursor;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.parallel.Parallelization;
 import net.imglib2.type.numeric.integer.IntType;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
@@ -66,6 +67,20 @@ public class LoopBuilderTest
 		assertSum( sum );
 	}
 
+	@Test
+	public void testLoopBuilderMultiThreaded()
+	{
+		final RandomAccessibleInterval< IntType > sum = ArrayImgs.ints(
+				Intervals.dimensionsAsLongArray( imageA ) );
+		Parallelization.runMultiThreaded( () -> {
+			LoopBuilder.setImages( imageA, imageB, sum ).multiThreaded().forEachPixel(
+					( a, b, s ) -> {
+						s.set( a.get() + b.get() );
+					} );
+		} );
+		assertSum( sum );
+	}
+
 	private RandomAccessibleInterval< IntType > randomImage( final int randomSeed )
 	{
 		final Img< IntType > result = ArrayImgs.ints( 3, 2, 5 );
@@ -0,0 +1,340 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.nearestneighbor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.FlatKDTree;
+import net.imglib2.RealPoint;
+import net.imglib2.RealPointSampleList;
+import net.imglib2.neighborsearch.AllKNearestNeighborSearch;
+import net.imglib2.neighborsearch.BatchNearestNeighborSearch;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnFlatKDTree;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnFlatKDTree;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnFlatKDTree;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.type.numeric.integer.IntType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link FlatKDTree} and its searches by comparison to exhaustive
+ * search.
+ */
+public class FlatKDTreeTest
+{
+	private static List< RealPoint > randomPoints( final int numPoints, final int numDimensions, final Random rnd )
+	{
+		final List< RealPoint > points = new ArrayList<>();
+		for ( int i = 0; i < numPoints; ++i )
+		{
+			final double[] p = new double[ numDimensions ];
+			for ( int d = 0; d < numDimensions; ++d )
+				p[ d ] = rnd.nextInt( 100 ) * 0.25; // duplicate coordinates on purpose
+			points.add( new RealPoint( p ) );
+		}
+		return points;
+	}
+
+	private static double[] sortedSquDistances( final List< RealPoint > points, final RealPoint t )
+	{
+		final double[] distances = new double[ points.size() ];
+		for ( int i = 0; i < points.size(); ++i )
+			distances[ i ] = squDistance( points.get( i ), t );
+		Arrays.sort( distances );
+		return distances;
+	}
+
+	private static double squDistance( final RealPoint a, final RealPoint b )
+	{
+		double sum = 0;
+		for ( int d = 0; d < a.numDimensions(); ++d )
+		{
+			final double diff = a.getDoublePosition( d ) - b.getDoublePosition( d );
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	@Test
+	public void testTreeStructure()
+	{
+		for ( final int numPoints : new int[] { 1, 2, 3, 4, 7, 8, 100, 1000 } )
+		{
+			final List< RealPoint > points = randomPoints( numPoints, 3, new Random( numPoints ) );
+			final FlatKDTree< RealPoint > tree = new FlatKDTree<>( points, points );
+			assertEquals( numPoints, tree.size() );
+			for ( int node = 0; node < numPoints; ++node )
+			{
+				assertSame( points.get( tree.getInputIndex( node ) ), tree.getValue( node ) );
+				checkSubtree( tree, FlatKDTree.leftChild( node ), tree.getSplitDimension( node ), tree.getDoublePosition( node, tree.getSplitDimension( node ) ), true );
+				checkSubtree( tree, FlatKDTree.rightChild( node ), tree.getSplitDimension( node ), tree.getDoublePosition( node, tree.getSplitDimension( node ) ), false );
+			}
+		}
+	}
+
+	private static void checkSubtree( final FlatKDTree< ? > tree, final int node, final int d, final double split, final boolean left )
+	{
+		if ( node >= tree.size() )
+			return;
+		final double x = tree.getDoublePosition( node, d );
+		assertTrue( left ? x <= split : x >= split );
+		checkSubtree( tree, FlatKDTree.leftChild( node ), d, split, left );
+		checkSubtree( tree, FlatKDTree.rightChild( node ), d, split, left );
+	}
+
+	@Test( timeout = 20000 )
+	public void testDuplicatePoints()
+	{
+		// identical points, and coplanar points with many repeated
+		// coordinates, must not make the construction quadratic
+		final int numPoints = 200000;
+		final Random rnd = new Random( 3 );
+		final double[] identical = new double[ 3 * numPoints ];
+		final double[] coplanar = new double[ 3 * numPoints ];
+		final List< Integer > values = new ArrayList<>();
+		for ( int i = 0; i < numPoints; ++i )
+		{
+			identical[ 3 * i ] = identical[ 3 * i + 1 ] = identical[ 3 * i + 2 ] = 1.5;
+			coplanar[ 3 * i ] = rnd.nextInt( 20 );
+			coplanar[ 3 * i + 1 ] = rnd.nextInt( 20 );
+			coplanar[ 3 * i + 2 ] = 7;
+			values.add( i );
+		}
+		for ( final double[] positions : new double[][] { identical, coplanar } )
+		{
+			final FlatKDTree< Integer > tree = new FlatKDTree<>( 3, positions, values );
+			assertEquals( numPoints, tree.size() );
+			for ( int node = 0; node < 1000; ++node )
+			{
+				final int d = tree.getSplitDimension( node );
+				checkSubtree( tree, FlatKDTree.leftChild( node ), d, tree.getDoublePosition( node, d ), true );
+				checkSubtree( tree, FlatKDTree.rightChild( node ), d, tree.getDoublePosition( node, d ), false );
+			}
+			final NearestNeighborSearchOnFlatKDTree< Integer > nn = new NearestNeighborSearchOnFlatKDTree<>( tree );
+			final RealPoint query = new RealPoint( 3.25, 4.5, 1.5 );
+			nn.search( query );
+			double expected = Double.MAX_VALUE;
+			for ( int i = 0; i < numPoints; ++i )
+			{
+				double sum = 0;
+				for ( int d = 0; d < 3; ++d )
+				{
+					final double diff = positions[ 3 * i + d ] - query.getDoublePosition( d );
+					sum += diff * diff;
+				}
+				expected = Math.min( expected, sum );
+			}
+			assertEquals( expected, nn.getSquareDistance(), 0 );
+		}
+	}
+
+	@Test
+	public void testSearches()
+	{
+		final Random rnd = new Random( 42 );
+		final List< RealPoint > points = randomPoints( 1000, 3, rnd );
+		final FlatKDTree< RealPoint > tree = new FlatKDTree<>( points, points );
+		final NearestNeighborSearchOnFlatKDTree< RealPoint > nn = new NearestNeighborSearchOnFlatKDTree<>( tree );
+		final KNearestNeighborSearchOnFlatKDTree< RealPoint > knn = new KNearestNeighborSearchOnFlatKDTree<>( tree, 5 );
+		final RadiusNeighborSearchOnFlatKDTree< RealPoint > radius = new RadiusNeighborSearchOnFlatKDTree<>( tree );
+		for ( final RealPoint t : randomPoints( 200, 3, rnd ) )
+		{
+			final double[] expected = sortedSquDistances( points, t );
+
+			nn.search( t );
+			assertEquals( expected[ 0 ], nn.getSquareDistance(), 0 );
+			assertEquals( expected[ 0 ], squDistance( nn.getSampler().get(), t ), 0 );
+
+			knn.search( t );
+			for ( int i = 0; i < 5; ++i )
+			{
+				assertEquals( expected[ i ], knn.getSquareDistance( i ), 0 );
+				assertEquals( expected[ i ], squDistance( knn.getSampler( i ).get(), t ), 0 );
+			}
+
+			radius.search( t, 3, true );
+			int count = 0;
+			while ( count < expected.length && expected[ count ] <= 9 )
+				++count;
+			assertEquals( count, radius.numNeighbors() );
+			for ( int i = 0; i < count; ++i )
+			{
+				assertEquals( expected[ i ], radius.getSquareDistance( i ), 0 );
+				assertEquals( expected[ i ], squDistance( new RealPoint( radius.getPosition( i ) ), t ), 0 );
+			}
+		}
+	}
+
+	@Test
+	public void testIterableRealInterval()
+	{
+		final RealPointSampleList< IntType > list = new RealPointSampleList<>( 2 );
+		for ( int i = 0; i < 10; ++i )
+			list.add( new RealPoint( i, 10 - i ), new IntType( i ) );
+		final FlatKDTree< IntType > tree = new FlatKDTree<>( list );
+		assertEquals( 10, tree.size() );
+		assertEquals( 0, tree.realMin( 0 ), 0 );
+		assertEquals( 10, tree.realMax( 1 ), 0 );
+
+		int sum = 0;
+		for ( final IntType value : tree )
+			sum += value.get();
+		assertEquals( 45, sum );
+
+		final NearestNeighborSearchOnFlatKDTree< IntType > nn = new NearestNeighborSearchOnFlatKDTree<>( tree );
+		nn.search( new RealPoint( 3.2, 6.9 ) );
+		assertEquals( 3, nn.getSampler().get().get() );
+		assertEquals( 3, nn.getPosition().getDoublePosition( 0 ), 0 );
+	}
+
+	@Test
+	public void testPrimitiveConstruction()
+	{
+		final double[][] positions = { { 0, 0 }, { 1, 0 }, { 0, 1 }, { 5, 5 } };
+		final FlatKDTree< Integer > tree = FlatKDTree.withIndexValues( positions );
+		final NearestNeighborSearchOnFlatKDTree< Integer > nn = new NearestNeighborSearchOnFlatKDTree<>( tree );
+		nn.search( new double[] { 4, 4.5 } );
+		assertEquals( 3, nn.getSampler().get().intValue() );
+		nn.search( new double[] { 0.9, 0.2 } );
+		assertEquals( 1, nn.getSampler().get().intValue() );
+		for ( int node = 0; node < 4; ++node )
+			assertEquals( tree.getInputIndex( node ), tree.getValue( node ).intValue() );
+
+		final FlatKDTree< String > named = new FlatKDTree<>( 2, new double[] { 0, 0, 1, 0, 0, 1, 5, 5 }, Arrays.asList( "a", "b", "c", "d" ) );
+		final NearestNeighborSearchOnFlatKDTree< String > nn2 = new NearestNeighborSearchOnFlatKDTree<>( named );
+		nn2.search( new double[] { 0.1, 0.8 } );
+		assertEquals( "c", nn2.getSampler().get() );
+	}
+
+	@Test
+	public void testParallelConstruction()
+	{
+		final Random rnd = new Random( 42 );
+		final double[][] positions = new double[ 100000 ][ 3 ];
+		for ( final double[] p : positions )
+			for ( int d = 0; d < 3; ++d )
+				p[ d ] = rnd.nextDouble();
+		final FlatKDTree< Integer > expected = FlatKDTree.withIndexValues( positions );
+		final FlatKDTree< Integer > actual = Parallelization.runWithNumThreads( 4, () -> FlatKDTree.withIndexValues( positions ) );
+		for ( int node = 0; node < positions.length; ++node )
+			assertEquals( expected.getInputIndex( node ), actual.getInputIndex( node ) );
+	}
+
+	@Test
+	public void testBatchSearch()
+	{
+		final Random rnd = new Random( 42 );
+		final List< RealPoint > points = randomPoints( 1000, 3, rnd );
+		final FlatKDTree< RealPoint > tree = new FlatKDTree<>( points, points );
+		final List< RealPoint > queries = randomPoints( 500, 3, rnd );
+		final double[][] queryArray = new double[ queries.size() ][ 3 ];
+		for ( int i = 0; i < queries.size(); ++i )
+			queries.get( i ).localize( queryArray[ i ] );
+
+		for ( final boolean sorted : new boolean[] { false, true } )
+		{
+			final int[] indices = new int[ queries.size() ];
+			final double[] squDistances = new double[ queries.size() ];
+			Parallelization.runWithNumThreads( 4, () -> BatchNearestNeighborSearch.search( tree, queryArray, indices, squDistances, sorted ) );
+			for ( int i = 0; i < queries.size(); ++i )
+			{
+				final double expected = sortedSquDistances( points, queries.get( i ) )[ 0 ];
+				assertEquals( expected, squDistances[ i ], 0 );
+				assertEquals( expected, squDistance( points.get( indices[ i ] ), queries.get( i ) ), 0 );
+			}
+		}
+	}
+
+	@Test
+	public void testAllKNearestNeighborSearch()
+	{
+		final Random rnd = new Random( 42 );
+		final int k = 5;
+		final List< RealPoint > points = randomPoints( 2000, 3, rnd );
+		final FlatKDTree< RealPoint > tree = new FlatKDTree<>( points, points );
+		final List< RealPoint > queries = randomPoints( 300, 3, rnd );
+		final FlatKDTree< RealPoint > queryTree = new FlatKDTree<>( queries, queries );
+		final FlatKDTree< RealPoint > small = new FlatKDTree<>( points.subList( 0, 3 ), points.subList( 0, 3 ) );
+
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			// queries against points
+			final int[] indices = new int[ queries.size() * k ];
+			final double[] squDistances = new double[ queries.size() * k ];
+			Parallelization.runWithNumThreads( numThreads, () -> AllKNearestNeighborSearch.search( queryTree, tree, k, indices, squDistances ) );
+			for ( int i = 0; i < queries.size(); ++i )
+			{
+				final double[] expected = sortedSquDistances( points, queries.get( i ) );
+				for ( int j = 0; j < k; ++j )
+				{
+					assertEquals( expected[ j ], squDistances[ i * k + j ], 0 );
+					assertEquals( expected[ j ], squDistance( points.get( indices[ i * k + j ] ), queries.get( i ) ), 0 );
+				}
+			}
+
+			// points against themselves
+			final int[] selfIndices = new int[ points.size() * k ];
+			final double[] selfSquDistances = new double[ points.size() * k ];
+			Parallelization.runWithNumThreads( numThreads, () -> AllKNearestNeighborSearch.search( tree, k, selfIndices, selfSquDistances ) );
+			for ( int i = 0; i < points.size(); ++i )
+			{
+				// the nearest point is the point itself
+				final double[] expected = sortedSquDistances( points, points.get( i ) );
+				for ( int j = 0; j < k; ++j )
+				{
+					assertTrue( selfIndices[ i * k + j ] != i );
+					assertEquals( expected[ j + 1 ], selfSquDistances[ i * k + j ], 0 );
+				}
+			}
+
+			// less than k points
+			final int[] fewIndices = new int[ queries.size() * k ];
+			Parallelization.runWithNumThreads( numThreads, () -> AllKNearestNeighborSearch.search( queryTree, small, k, fewIndices, null ) );
+			for ( int i = 0; i < queries.size(); ++i )
+			{
+				assertTrue( fewIndices[ i * k + 2 ] >= 0 );
+				assertEquals( -1, fewIndices[ i * k + 3 ] );
+			}
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.nearestneighbor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.imglib2.KDForest;
+import net.imglib2.RealPoint;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDForest;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnKDForest;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDForest;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link KDForest} and its searches by comparison to exhaustive search.
+ */
+public class KDForestTest
+{
+	@Test
+	public void testInsertRemoveSearch()
+	{
+		final Random rnd = new Random( 42 );
+		final KDForest< String > forest = new KDForest<>( 2 );
+		final Map< Integer, double[] > expected = new HashMap<>();
+		final List< Integer > ids = new ArrayList<>();
+		final NearestNeighborSearchOnKDForest< String > nn = new NearestNeighborSearchOnKDForest<>( forest );
+		final KNearestNeighborSearchOnKDForest< String > knn = new KNearestNeighborSearchOnKDForest<>( forest, 3 );
+		final RadiusNeighborSearchOnKDForest< String > radius = new RadiusNeighborSearchOnKDForest<>( forest );
+
+		for ( int step = 0; step < 3000; ++step )
+		{
+			if ( ids.isEmpty() || rnd.nextDouble() < ( step < 2000 ? 0.7 : 0.2 ) )
+			{
+				final double[] p = { rnd.nextDouble(), rnd.nextDouble() };
+				final int id = forest.insert( p, "p" + Arrays.toString( p ) );
+				expected.put( id, p );
+				ids.add( id );
+			}
+			else
+			{
+				final int id = ids.remove( rnd.nextInt( ids.size() ) );
+				assertTrue( forest.remove( id ) );
+				assertFalse( forest.remove( id ) );
+				expected.remove( id );
+			}
+			assertEquals( expected.size(), forest.size() );
+
+			if ( step % 50 == 0 )
+			{
+				final RealPoint t = new RealPoint( rnd.nextDouble(), rnd.nextDouble() );
+				final double[] distances = sortedSquDistances( expected, t );
+
+				nn.search( t );
+				assertEquals( distances[ 0 ], nn.getSquareDistance(), 0 );
+				final KDForest< String >.Point point = ( KDForest< String >.Point ) nn.getSampler();
+				assertTrue( forest.contains( point.getId() ) );
+				assertEquals( "p" + Arrays.toString( expected.get( point.getId() ) ), point.get() );
+
+				knn.search( t );
+				for ( int i = 0; i < Math.min( 3, distances.length ); ++i )
+					assertEquals( distances[ i ], knn.getSquareDistance( i ), 0 );
+
+				radius.search( t, 0.2, true );
+				int count = 0;
+				while ( count < distances.length && distances[ count ] <= 0.04 )
+					++count;
+				assertEquals( count, radius.numNeighbors() );
+				for ( int i = 0; i < count; ++i )
+					assertEquals( distances[ i ], radius.getSquareDistance( i ), 0 );
+			}
+		}
+	}
+
+	@Test
+	public void testRemoveAbsent()
+	{
+		final KDForest< String > forest = new KDForest<>( 2 );
+		assertFalse( forest.remove( 0 ) );
+		assertFalse( forest.remove( -1 ) );
+		final int id = forest.insert( new double[] { 1, 2 }, "a" );
+		assertFalse( forest.remove( id + 1 ) );
+		assertFalse( forest.remove( Integer.MAX_VALUE ) );
+		assertEquals( 1, forest.size() );
+		assertTrue( forest.contains( id ) );
+		assertTrue( forest.remove( id ) );
+		assertFalse( forest.remove( id ) );
+		assertFalse( forest.contains( id ) );
+		assertEquals( 0, forest.size() );
+	}
+
+	@Test
+	public void testRemoveAll()
+	{
+		final Random rnd = new Random( 7 );
+		final KDForest< Integer > forest = new KDForest<>( 2 );
+		final NearestNeighborSearchOnKDForest< Integer > nn = new NearestNeighborSearchOnKDForest<>( forest );
+		final KNearestNeighborSearchOnKDForest< Integer > knn = new KNearestNeighborSearchOnKDForest<>( forest, 3 );
+		final RadiusNeighborSearchOnKDForest< Integer > radius = new RadiusNeighborSearchOnKDForest<>( forest );
+		final RealPoint t = new RealPoint( 0.5, 0.5 );
+		for ( int round = 0; round < 2; ++round )
+		{
+			final List< Integer > ids = new ArrayList<>();
+			for ( int i = 0; i < 1000; ++i )
+				ids.add( forest.insert( new double[] { rnd.nextDouble(), rnd.nextDouble() }, i ) );
+			for ( final int id : ids )
+				assertTrue( forest.remove( id ) );
+			assertEquals( 0, forest.size() );
+
+			nn.search( t );
+			assertNull( nn.getSampler() );
+			knn.search( t );
+			for ( int i = 0; i < 3; ++i )
+				assertNull( knn.getSampler( i ) );
+			radius.search( t, 10, true );
+			assertEquals( 0, radius.numNeighbors() );
+		}
+
+		// the forest is usable after removing everything
+		final int id = forest.insert( new double[] { 0.25, 0.5 }, 42 );
+		nn.search( t );
+		assertEquals( 42, nn.getSampler().get().intValue() );
+		assertEquals( id, ( ( KDForest< Integer >.Point ) nn.getSampler() ).getId() );
+		assertEquals( 0.0625, nn.getSquareDistance(), 0 );
+	}
+
+	@Test
+	public void testRebuilds()
+	{
+		// integer coordinates, such that many neighbors have equal distances
+		final Random rnd = new Random( 3 );
+		final KDForest< Integer > forest = new KDForest<>( 2 );
+		final Map< Integer, double[] > expected = new HashMap<>();
+		final List< Integer > ids = new ArrayList<>();
+		final KNearestNeighborSearchOnKDForest< Integer > knn = new KNearestNeighborSearchOnKDForest<>( forest, 5 );
+		final RadiusNeighborSearchOnKDForest< Integer > radius = new RadiusNeighborSearchOnKDForest<>( forest );
+
+		// grow through several levels, shrink until all trees are merged,
+		// and grow again
+		final int[] phases = { 1500, -1200, 2000 };
+		for ( final int phase : phases )
+		{
+			for ( int step = 0; step < Math.abs( phase ); ++step )
+			{
+				if ( phase > 0 )
+				{
+					final double[] p = { rnd.nextInt( 50 ), rnd.nextInt( 50 ) };
+					final int id = forest.insert( p, ids.size() );
+					expected.put( id, p );
+					ids.add( id );
+				}
+				else
+				{
+					final int id = ids.remove( rnd.nextInt( ids.size() ) );
+					assertTrue( forest.remove( id ) );
+					expected.remove( id );
+				}
+				assertEquals( expected.size(), forest.size() );
+				if ( step % 7 == 0 )
+					assertSearchResults( forest, expected, knn, radius, new RealPoint( rnd.nextInt( 50 ), rnd.nextInt( 50 ) ) );
+			}
+		}
+	}
+
+	private static void assertSearchResults( final KDForest< Integer > forest, final Map< Integer, double[] > expected, final KNearestNeighborSearchOnKDForest< Integer > knn, final RadiusNeighborSearchOnKDForest< Integer > radius, final RealPoint t )
+	{
+		final double[] distances = sortedSquDistances( expected, t );
+
+		knn.search( t );
+		for ( int i = 0; i < Math.min( 5, distances.length ); ++i )
+		{
+			assertEquals( distances[ i ], knn.getSquareDistance( i ), 0 );
+			final int id = ( ( KDForest< Integer >.Point ) knn.getSampler( i ) ).getId();
+			assertEquals( distances[ i ], squDistance( expected.get( id ), t ), 0 );
+		}
+
+		// unsorted results are exactly the points within the radius
+		radius.search( t, 4, false );
+		int count = 0;
+		while ( count < distances.length && distances[ count ] <= 16 )
+			++count;
+		assertEquals( count, radius.numNeighbors() );
+		final List< Integer > found = new ArrayList<>();
+		for ( int i = 0; i < count; ++i )
+		{
+			final int id = ( ( KDForest< Integer >.Point ) radius.getSampler( i ) ).getId();
+			assertTrue( expected.containsKey( id ) );
+			assertEquals( squDistance( expected.get( id ), t ), radius.getSquareDistance( i ), 0 );
+			found.add( id );
+		}
+		assertEquals( count, new HashSet<>( found ).size() );
+
+		// sorted results keep the order of equal distances
+		final List< Integer > stable = new ArrayList<>( found );
+		Collections.sort( stable, Comparator.comparing( id -> squDistance( expected.get( id ), t ) ) );
+		radius.search( t, 4, true );
+		for ( int i = 0; i < count; ++i )
+		{
+			assertEquals( distances[ i ], radius.getSquareDistance( i ), 0 );
+			assertEquals( stable.get( i ).intValue(), ( ( KDForest< Integer >.Point ) radius.getSampler( i ) ).getId() );
+		}
+	}
+
+	private static double squDistance( final double[] p, final RealPoint t )
+	{
+		final double dx = p[ 0 ] - t.getDoublePosition( 0 );
+		final double dy = p[ 1 ] - t.getDoublePosition( 1 );
+		return dx * dx + dy * dy;
+	}
+
+	private static double[] sortedSquDistances( final Map< Integer, double[] > points, final RealPoint t )
+	{
+		final double[] distances = new double[ points.size() ];
+		int i = 0;
+		for ( final double[] p : points.values() )
+		{
+			final double dx = p[ 0 ] - t.getDoublePosition( 0 );
+			final double dy = p[ 1 ] - t.getDoublePosition( 1 );
+			distances[ i++ ] = dx * dx + dy * dy;
+		}
+		Arrays.sort( distances );
+		return distances;
+	}
+}
@@ -34,18 +34,25 @@
 
 package net.imglib2.nearestneighbor;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Random;
 
 import net.imglib2.KDTree;
+import net.imglib2.KDTreeNode;
 import net.imglib2.RealPoint;
+import net.imglib2.neighborsearch.ApproximateKNearestNeighborSearchOnKDTree;
+import net.imglib2.neighborsearch.ApproximateNearestNeighborSearchOnKDTree;
 import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
 import net.imglib2.neighborsearch.NearestNeighborSearchOnKDTree;
 import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
+import net.imglib2.parallel.Parallelization;
 import net.imglib2.util.ValuePair;
 
 import org.junit.Test;
@@ -436,6 +443,162 @@ public class KDTreeTest
 		assertTrue( testRadiusNeighbor( 3, 1000, 100, -5, 5 ) );
 	}
 
+	@Test
+	public void testApproximateSearch()
+	{
+		final Random rnd = new Random( 42 );
+		final ArrayList< RealPoint > points = new ArrayList< RealPoint >();
+		for ( int i = 0; i < 2000; ++i )
+			points.add( new RealPoint( rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() ) );
+		final KDTree< RealPoint > tree = new KDTree< RealPoint >( points, points );
+		final NearestNeighborSearchOnKDTree< RealPoint > exact = new NearestNeighborSearchOnKDTree< RealPoint >( tree );
+		final KNearestNeighborSearchOnKDTree< RealPoint > exactK = new KNearestNeighborSearchOnKDTree< RealPoint >( tree, 4 );
+		final ApproximateNearestNeighborSearchOnKDTree< RealPoint > noError = new ApproximateNearestNeighborSearchOnKDTree< RealPoint >( tree, 0, Integer.MAX_VALUE );
+		final ApproximateNearestNeighborSearchOnKDTree< RealPoint > approximate = new ApproximateNearestNeighborSearchOnKDTree< RealPoint >( tree, 0.5, Integer.MAX_VALUE );
+		final ApproximateKNearestNeighborSearchOnKDTree< RealPoint > approximateK = new ApproximateKNearestNeighborSearchOnKDTree< RealPoint >( tree, 4, 0.5, Integer.MAX_VALUE );
+		final ApproximateNearestNeighborSearchOnKDTree< RealPoint > limited = new ApproximateNearestNeighborSearchOnKDTree< RealPoint >( tree, 0, 10 );
+		int exactVisits = 0;
+		int approximateVisits = 0;
+		for ( int i = 0; i < 100; ++i )
+		{
+			final RealPoint t = new RealPoint( rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() );
+			exact.search( t );
+			noError.search( t );
+			approximate.search( t );
+			assertEquals( exact.getSquareDistance(), noError.getSquareDistance(), 0 );
+			assertTrue( approximate.getDistance() <= 1.5 * exact.getDistance() );
+			exactVisits += noError.getVisitedNodes();
+			approximateVisits += approximate.getVisitedNodes();
+
+			exactK.search( t );
+			approximateK.search( t );
+			for ( int j = 0; j < 4; ++j )
+				assertTrue( approximateK.getDistance( j ) <= 1.5 * exactK.getDistance( j ) );
+
+			limited.search( t );
+			assertTrue( limited.getVisitedNodes() <= 10 );
+			assertTrue( limited.getDistance() >= exact.getDistance() );
+		}
+		assertTrue( approximateVisits < exactVisits );
+	}
+
+	@Test
+	public void testRadiusNeighborCallback()
+	{
+		final Random rnd = new Random( 42 );
+		final ArrayList< RealPoint > points = new ArrayList< RealPoint >();
+		for ( int i = 0; i < 1000; ++i )
+			points.add( new RealPoint( rnd.nextDouble(), rnd.nextDouble() ) );
+		final RadiusNeighborSearchOnKDTree< RealPoint > search = new RadiusNeighborSearchOnKDTree< RealPoint >( new KDTree< RealPoint >( points, points ) );
+		final RealPoint reference = new RealPoint( 0.5, 0.5 );
+		search.search( reference, 0.1, true );
+		final double[] sum = new double[ 2 ];
+		search.forEachNeighbor( reference, 0.1, ( node, squDistance ) -> {
+			sum[ 0 ] += 1;
+			sum[ 1 ] += squDistance;
+		} );
+		assertEquals( search.numNeighbors(), sum[ 0 ], 0 );
+		double expected = 0;
+		for ( int i = 0; i < search.numNeighbors(); ++i )
+		{
+			expected += search.getSquareDistance( i );
+			if ( i > 0 )
+				assertTrue( search.getSquareDistance( i - 1 ) <= search.getSquareDistance( i ) );
+		}
+		assertEquals( expected, sum[ 1 ], 1e-12 );
+	}
+
+	@Test
+	public void testRadiusNeighborStableSort()
+	{
+		// points on a grid, many neighbors have equal distances
+		final ArrayList< RealPoint > points = new ArrayList< RealPoint >();
+		for ( int x = 0; x < 30; ++x )
+			for ( int y = 0; y < 30; ++y )
+				points.add( new RealPoint( x, y ) );
+		final KDTree< RealPoint > tree = new KDTree< RealPoint >( points, points );
+		final RealPoint reference = new RealPoint( 15.0, 15.0 );
+
+		final LegacyRadiusNeighborSearch legacy = new LegacyRadiusNeighborSearch( tree );
+		final RadiusNeighborSearchOnKDTree< RealPoint > subclass = new RadiusNeighborSearchOnKDTree< RealPoint >( tree )
+		{};
+		for ( final RadiusNeighborSearchOnKDTree< RealPoint > search : Arrays.asList( new RadiusNeighborSearchOnKDTree< RealPoint >( tree ), subclass, legacy ) )
+		{
+			search.search( reference, 8, false );
+			final ArrayList< Integer > order = new ArrayList< Integer >();
+			final ArrayList< RealPoint > found = new ArrayList< RealPoint >();
+			final ArrayList< Double > squDistances = new ArrayList< Double >();
+			for ( int i = 0; i < search.numNeighbors(); ++i )
+			{
+				order.add( i );
+				found.add( search.getSampler( i ).get() );
+				squDistances.add( search.getSquareDistance( i ) );
+			}
+			// Collections.sort is stable
+			Collections.sort( order, Comparator.comparing( squDistances::get ) );
+
+			search.search( reference, 8, true );
+			assertEquals( order.size(), search.numNeighbors() );
+			for ( int i = 0; i < order.size(); ++i )
+			{
+				assertTrue( found.get( order.get( i ) ) == search.getSampler( i ).get() );
+				assertEquals( squDistances.get( order.get( i ) ), search.getSquareDistance( i ), 0 );
+			}
+		}
+
+		// the deprecated result list is used only on request
+		assertEquals( legacy.numNeighbors(), legacy.legacyResults().size() );
+		for ( int i = 0; i < legacy.numNeighbors(); ++i )
+			assertTrue( legacy.legacyResults().get( i ).getA() == legacy.getPosition( i ) );
+	}
+
+	/**
+	 * Subclass that reads the deprecated result list.
+	 */
+	private static class LegacyRadiusNeighborSearch extends RadiusNeighborSearchOnKDTree< RealPoint >
+	{
+		@SuppressWarnings( "deprecation" )
+		LegacyRadiusNeighborSearch( final KDTree< RealPoint > tree )
+		{
+			super( tree, true );
+		}
+
+		@SuppressWarnings( "deprecation" )
+		ArrayList< ValuePair< KDTreeNode< RealPoint >, Double > > legacyResults()
+		{
+			return resultPoints;
+		}
+	}
+
+	@Test
+	public void testParallelConstruction()
+	{
+		final Random rnd = new Random( 42 );
+		final ArrayList< RealPoint > points = new ArrayList< RealPoint >();
+		final ArrayList< Integer > values = new ArrayList< Integer >();
+		for ( int i = 0; i < 100000; ++i )
+		{
+			points.add( new RealPoint( rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() ) );
+			values.add( i );
+		}
+		final KDTree< Integer > expected = new KDTree< Integer >( new ArrayList< Integer >( values ), new ArrayList< RealPoint >( points ) );
+		final KDTree< Integer > actual = Parallelization.runWithNumThreads( 4, () -> new KDTree< Integer >( values, points ) );
+		assertSameTree( expected.getRoot(), actual.getRoot() );
+	}
+
+	private static void assertSameTree( final KDTreeNode< Integer > expected, final KDTreeNode< Integer > actual )
+	{
+		if ( expected == null )
+		{
+			assertNull( actual );
+			return;
+		}
+		assertEquals( expected.get(), actual.get() );
+		assertEquals( expected.getSplitDimension(), actual.getSplitDimension() );
+		assertSameTree( expected.left, actual.left );
+		assertSameTree( expected.right, actual.right );
+	}
+
 	public static void main( final String[] args )
 	{
 		for ( int i = 0; i < 5; ++i )
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.nearestneighbor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.FlatKDTree;
+import net.imglib2.MappedKDTree;
+import net.imglib2.RealPoint;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnFlatKDTree;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnMappedKDTree;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnFlatKDTree;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnMappedKDTree;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnFlatKDTree;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnMappedKDTree;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link MappedKDTree} and its searches by comparison to
+ * {@link FlatKDTree}.
+ */
+public class MappedKDTreeTest
+{
+	@Test
+	public void testWriteOpenSearch() throws IOException
+	{
+		final Random rnd = new Random( 42 );
+		final List< RealPoint > positions = new ArrayList<>();
+		final List< DoubleType > values = new ArrayList<>();
+		for ( int i = 0; i < 1001; ++i )
+		{
+			positions.add( new RealPoint( rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() ) );
+			values.add( new DoubleType( rnd.nextGaussian() ) );
+		}
+		final FlatKDTree< DoubleType > flat = new FlatKDTree<>( values, positions );
+
+		final File file = File.createTempFile( "kdtree", ".bin" );
+		file.deleteOnExit();
+		MappedKDTree.write( flat, file );
+		final MappedKDTree< DoubleType > mapped = MappedKDTree.open( file, new DoubleType() );
+
+		assertEquals( flat.numDimensions(), mapped.numDimensions() );
+		assertEquals( flat.size(), mapped.size() );
+		for ( int d = 0; d < 3; ++d )
+		{
+			assertEquals( flat.realMin( d ), mapped.realMin( d ), 0 );
+			assertEquals( flat.realMax( d ), mapped.realMax( d ), 0 );
+		}
+		for ( int node = 0; node < flat.size(); ++node )
+		{
+			assertEquals( flat.getInputIndex( node ), mapped.getInputIndex( node ) );
+			assertEquals( flat.getValue( node ).get(), mapped.getNode( node ).get().get(), 0 );
+			for ( int d = 0; d < 3; ++d )
+				assertEquals( flat.getDoublePosition( node, d ), mapped.getDoublePosition( node, d ), 0 );
+		}
+
+		final NearestNeighborSearchOnFlatKDTree< DoubleType > flatNN = new NearestNeighborSearchOnFlatKDTree<>( flat );
+		final NearestNeighborSearchOnMappedKDTree< DoubleType > mappedNN = new NearestNeighborSearchOnMappedKDTree<>( mapped );
+		final KNearestNeighborSearchOnFlatKDTree< DoubleType > flatKNN = new KNearestNeighborSearchOnFlatKDTree<>( flat, 5 );
+		final KNearestNeighborSearchOnMappedKDTree< DoubleType > mappedKNN = new KNearestNeighborSearchOnMappedKDTree<>( mapped, 5 );
+		final RadiusNeighborSearchOnFlatKDTree< DoubleType > flatRadius = new RadiusNeighborSearchOnFlatKDTree<>( flat );
+		final RadiusNeighborSearchOnMappedKDTree< DoubleType > mappedRadius = new RadiusNeighborSearchOnMappedKDTree<>( mapped );
+		for ( int q = 0; q < 100; ++q )
+		{
+			final RealPoint t = new RealPoint( rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() );
+
+			flatNN.search( t );
+			mappedNN.search( t );
+			assertEquals( flatNN.getIndex(), mappedNN.getIndex() );
+			assertEquals( flatNN.getSquareDistance(), mappedNN.getSquareDistance(), 0 );
+			assertEquals( flatNN.getSampler().get().get(), mappedNN.getSampler().get().get(), 0 );
+
+			flatKNN.search( t );
+			mappedKNN.search( t );
+			for ( int i = 0; i < 5; ++i )
+			{
+				assertEquals( flatKNN.getIndex( i ), mappedKNN.getIndex( i ) );
+				assertEquals( flatKNN.getSquareDistance( i ), mappedKNN.getSquareDistance( i ), 0 );
+			}
+
+			flatRadius.search( t, 0.1, true );
+			mappedRadius.search( t, 0.1, true );
+			assertEquals( flatRadius.numNeighbors(), mappedRadius.numNeighbors() );
+			for ( int i = 0; i < flatRadius.numNeighbors(); ++i )
+				assertEquals( flatRadius.getSquareDistance( i ), mappedRadius.getSquareDistance( i ), 0 );
+		}
+	}
+
+	@Test
+	public void testInvalidFile() throws IOException
+	{
+		final File file = File.createTempFile( "kdtree", ".bin" );
+		file.deleteOnExit();
+		try (final FileOutputStream out = new FileOutputStream( file ))
+		{
+			out.write( new byte[ 100 ] );
+		}
+		try
+		{
+			MappedKDTree.open( file, new DoubleType() );
+			fail( "Expected IOException" );
+		}
+		catch ( final IOException e )
+		{
+			// expected
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.nearestneighbor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.RealPoint;
+import net.imglib2.UniformGridIndex;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnUniformGrid;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnUniformGrid;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link UniformGridIndex} and its searches by comparison to exhaustive
+ * search.
+ */
+public class UniformGridIndexTest
+{
+	@Test
+	public void testSearch()
+	{
+		final Random rnd = new Random( 42 );
+		for ( final int n : new int[] { 1, 2, 3 } )
+		{
+			final int size = 2000;
+			final double[] positions = new double[ size * n ];
+			final List< Integer > values = new ArrayList<>();
+			for ( int i = 0; i < size; ++i )
+			{
+				for ( int d = 0; d < n; ++d )
+					positions[ i * n + d ] = rnd.nextDouble() * ( d + 1 );
+				values.add( i );
+			}
+			final double radius = 0.1;
+			final UniformGridIndex< Integer > grid = new UniformGridIndex<>( n, positions, values, radius );
+			final NearestNeighborSearchOnUniformGrid< Integer > nn = new NearestNeighborSearchOnUniformGrid<>( grid );
+			final RadiusNeighborSearchOnUniformGrid< Integer > rs = new RadiusNeighborSearchOnUniformGrid<>( grid );
+
+			for ( int q = 0; q < 200; ++q )
+			{
+				// include queries outside of the bounding box of the points
+				final double[] query = new double[ n ];
+				for ( int d = 0; d < n; ++d )
+					query[ d ] = rnd.nextDouble() * ( d + 1 ) * 1.6 - 0.3 * ( d + 1 );
+				final RealPoint t = RealPoint.wrap( query );
+
+				final double[] distances = new double[ size ];
+				for ( int i = 0; i < size; ++i )
+				{
+					double sum = 0;
+					for ( int d = 0; d < n; ++d )
+					{
+						final double diff = positions[ i * n + d ] - query[ d ];
+						sum += diff * diff;
+					}
+					distances[ i ] = sum;
+				}
+
+				nn.search( t );
+				assertEquals( distances[ nn.getIndex() ], nn.getSquareDistance(), 0 );
+				assertEquals( nn.getIndex(), nn.getSampler().get().intValue() );
+				final double[] sorted = distances.clone();
+				Arrays.sort( sorted );
+				assertEquals( sorted[ 0 ], nn.getSquareDistance(), 0 );
+
+				rs.search( t, radius, true );
+				int count = 0;
+				while ( count < size && sorted[ count ] <= radius * radius )
+					++count;
+				assertEquals( count, rs.numNeighbors() );
+				for ( int i = 0; i < count; ++i )
+				{
+					assertEquals( sorted[ i ], rs.getSquareDistance( i ), 0 );
+					assertEquals( distances[ rs.getIndex( i ) ], rs.getSquareDistance( i ), 0 );
+				}
+
+				rs.search( t, 2.5 * radius, false );
+				count = 0;
+				while ( count < size && sorted[ count ] <= 6.25 * radius * radius )
+					++count;
+				assertEquals( count, rs.numNeighbors() );
+			}
+		}
+	}
+
+	@Test
+	public void testSparsePoints()
+	{
+		// a grid with far more cells than points
+		final List< RealPoint > positions = new ArrayList<>();
+		final List< String > values = new ArrayList<>();
+		positions.add( new RealPoint( 0.0, 0.0 ) );
+		positions.add( new RealPoint( 1e6, 1e6 ) );
+		positions.add( new RealPoint( 1e6, 0.5 ) );
+		for ( final RealPoint p : positions )
+			values.add( p.toString() );
+		final UniformGridIndex< String > grid = new UniformGridIndex<>( values, positions, 1.0 );
+		final NearestNeighborSearchOnUniformGrid< String > nn = new NearestNeighborSearchOnUniformGrid<>( grid );
+		nn.search( new RealPoint( 1e6 - 2, 3.0 ) );
+		assertEquals( 2, nn.getIndex() );
+		assertEquals( positions.get( 2 ).toString(), nn.getSampler().get() );
+
+		final RadiusNeighborSearchOnUniformGrid< String > rs = new RadiusNeighborSearchOnUniformGrid<>( grid );
+		rs.search( new RealPoint( 1e6, 1e6 - 0.5 ), 1.0, true );
+		assertEquals( 1, rs.numNeighbors() );
+		assertEquals( 1, rs.getIndex( 0 ) );
+		assertTrue( rs.getDistance( 0 ) == 0.5 );
+	}
+
+	@Test( timeout = 10000 )
+	public void testClusteredPoints()
+	{
+		// two small clusters far apart, queries in the empty gap and far
+		// outside of the grid must not enumerate the empty cells
+		final List< RealPoint > positions = new ArrayList<>();
+		final List< Integer > values = new ArrayList<>();
+		positions.add( new RealPoint( 0.0, 0.0 ) );
+		positions.add( new RealPoint( 0.5, 0.5 ) );
+		positions.add( new RealPoint( 1e4, 1e4 ) );
+		positions.add( new RealPoint( 1e4 + 0.5, 1e4 ) );
+		for ( int i = 0; i < positions.size(); ++i )
+			values.add( i );
+		final UniformGridIndex< Integer > grid = new UniformGridIndex<>( values, positions, 1.0 );
+		final NearestNeighborSearchOnUniformGrid< Integer > nn = new NearestNeighborSearchOnUniformGrid<>( grid );
+
+		nn.search( new RealPoint( 5000.0, 5000.0 ) );
+		assertEquals( 1, nn.getIndex() );
+		assertEquals( 2 * 4999.5 * 4999.5, nn.getSquareDistance(), 1e-6 );
+
+		nn.search( new RealPoint( 5001.0, 5001.0 ) );
+		assertEquals( 2, nn.getIndex() );
+
+		nn.search( new RealPoint( 1e7, 1e4 ) );
+		assertEquals( 3, nn.getIndex() );
+
+		// many points in a small region, query far outside
+		final Random rnd = new Random( 1 );
+		final int size = 10000;
+		final double[] coordinates = new double[ 2 * size ];
+		final List< Integer > indices = new ArrayList<>();
+		for ( int i = 0; i < size; ++i )
+		{
+			coordinates[ 2 * i ] = rnd.nextDouble() * 100;
+			coordinates[ 2 * i + 1 ] = rnd.nextDouble() * 100;
+			indices.add( i );
+		}
+		final UniformGridIndex< Integer > dense = new UniformGridIndex<>( 2, coordinates, indices, 1.0 );
+		final NearestNeighborSearchOnUniformGrid< Integer > denseNN = new NearestNeighborSearchOnUniformGrid<>( dense );
+		final double[] query = { 1e7, 50 };
+		for ( int q = 0; q < 100; ++q )
+		{
+			denseNN.search( RealPoint.wrap( query ) );
+			double bestSquDistance = Double.MAX_VALUE;
+			for ( int i = 0; i < size; ++i )
+			{
+				final double dx = coordinates[ 2 * i ] - query[ 0 ];
+				final double dy = coordinates[ 2 * i + 1 ] - query[ 1 ];
+				bestSquDistance = Math.min( bestSquDistance, dx * dx + dy * dy );
+			}
+			assertEquals( bestSquDistance, denseNN.getSquareDistance(), 0 );
+			query[ 1 ] += 1;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class ParallelizationTest
+{
+
+	@Test
+	public void testDefaultIsSingleThreaded()
+	{
+		assertEquals( 1, Parallelization.getTaskExecutor().getParallelism() );
+		assertEquals( 1, Parallelization.getTaskExecutor().suggestNumberOfTasks() );
+	}
+
+	@Test
+	public void testRunWithExecutorResetsSetting()
+	{
+		final TaskExecutor before = Parallelization.getTaskExecutor();
+		final TaskExecutor multiThreaded = TaskExecutors.multiThreaded();
+		Parallelization.runWithExecutor( multiThreaded, () -> {
+			assertSame( multiThreaded, Parallelization.getTaskExecutor() );
+			Parallelization.runSingleThreaded( () -> assertEquals( 1, Parallelization.getTaskExecutor().getParallelism() ) );
+			assertSame( multiThreaded, Parallelization.getTaskExecutor() );
+		} );
+		assertSame( before, Parallelization.getTaskExecutor() );
+	}
+
+	@Test
+	public void testRunWithNumThreads()
+	{
+		final Set< Thread > threads = ConcurrentHashMap.newKeySet();
+		final int parallelism = Parallelization.runWithNumThreads( 2, () -> {
+			final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+			taskExecutor.forEach( Collections.nCopies( 100, 0 ), ignore -> threads.add( Thread.currentThread() ) );
+			return taskExecutor.getParallelism();
+		} );
+		assertEquals( 2, parallelism );
+		assertTrue( threads.size() <= 2 );
+	}
+
+	@Test
+	public void testTasksInheritTaskExecutor()
+	{
+		final TaskExecutor multiThreaded = TaskExecutors.multiThreaded();
+		final List< TaskExecutor > seen = Collections.synchronizedList( new ArrayList<>() );
+		Parallelization.runWithExecutor( multiThreaded, () -> {
+			Parallelization.getTaskExecutor().forEach( Arrays.asList( 1, 2, 3, 4 ), ignore -> seen.add( Parallelization.getTaskExecutor() ) );
+		} );
+		assertEquals( 4, seen.size() );
+		for ( final TaskExecutor taskExecutor : seen )
+			assertSame( multiThreaded, taskExecutor );
+	}
+
+	@Test
+	public void testForEachApplyKeepsOrder()
+	{
+		final List< Integer > input = new ArrayList<>();
+		for ( int i = 0; i < 1000; i++ )
+			input.add( i );
+		final ExecutorService executorService = Executors.newFixedThreadPool( 3 );
+		try
+		{
+			final List< Integer > output = Parallelization.runWithExecutor( executorService,
+					() -> Parallelization.getTaskExecutor().forEachApply( input, x -> 2 * x ) );
+			for ( int i = 0; i < input.size(); i++ )
+				assertEquals( 2 * i, output.get( i ).intValue() );
+		}
+		finally
+		{
+			executorService.shutdown();
+		}
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testExceptionIsRethrown()
+	{
+		Parallelization.runMultiThreaded( () -> {
+			Parallelization.getTaskExecutor().forEach( Arrays.asList( 1, 2, 3 ), x -> {
+				if ( x == 2 )
+					throw new IllegalStateException();
+			} );
+		} );
+	}
+}
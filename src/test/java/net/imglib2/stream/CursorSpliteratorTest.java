@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.LongUnaryOperator;
+
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.list.ListImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.IntType;
+
+public class CursorSpliteratorTest
+{
+
+	private final long[] dims = { 13, 17, 5 };
+
+	private final List< Img< IntType > > images = Arrays.asList(
+			new ArrayImgFactory<>( new IntType() ).create( dims ),
+			new PlanarImgFactory<>( new IntType() ).create( dims ),
+			new CellImgFactory<>( new IntType(), 4 ).create( dims ),
+			new ListImgFactory<>( new IntType() ).create( dims ) );
+
+	@Test
+	public void testParallelStreamVisitsAllElements()
+	{
+		for ( final Img< IntType > image : images )
+		{
+			final Cursor< IntType > cursor = image.cursor();
+			int i = 0;
+			while ( cursor.hasNext() )
+				cursor.next().set( i++ );
+			final long expected = ( long ) i * ( i - 1 ) / 2;
+			assertEquals( expected, image.stream().mapToLong( IntType::get ).sum() );
+			assertEquals( expected, image.parallelStream().mapToLong( IntType::get ).sum() );
+			assertEquals( image.size(), image.parallelStream().count() );
+			final int[] ordered = image.parallelStream().mapToInt( IntType::get ).toArray();
+			for ( int j = 0; j < ordered.length; j++ )
+				assertEquals( j, ordered[ j ] );
+		}
+	}
+
+	@Test
+	public void testPlanarImgSplitsAtPlanes()
+	{
+		final Spliterator< IntType > prefix = images.get( 1 ).spliterator();
+		final Spliterator< IntType > suffix = prefix.trySplit();
+		assertNotNull( suffix );
+		assertEquals( 0, suffix.estimateSize() % ( 13 * 17 ) );
+	}
+
+	@Test
+	public void testCellImgSplitsAtCells()
+	{
+		final CellImg< IntType, ? > image = ( CellImg< IntType, ? > ) images.get( 2 );
+		final CellGrid grid = image.getCellGrid();
+		final Spliterator< IntType > spliterator = image.spliterator();
+		final Spliterator< IntType > prefix = spliterator.trySplit();
+		assertNotNull( prefix );
+		boolean isCellBoundary = false;
+		for ( long i = 0; i <= 4 * 5 * 2; i++ )
+			isCellBoundary |= grid.getCellFirstElementIndex( i ) == prefix.estimateSize();
+		assertTrue( isCellBoundary );
+	}
+
+	@Test
+	public void testSplitsAtFirstBoundaryAfterMiddle()
+	{
+		// boundaries at 0, 10, 60, 90: 10 is too far below the middle, 90
+		// is too far above, 60 is the closest acceptable boundary
+		final long[] boundaries = { 0, 10, 60, 90 };
+		final LongUnaryOperator floorBoundary = i -> {
+			long floor = 0;
+			for ( final long b : boundaries )
+				if ( b <= i )
+					floor = b;
+			return floor;
+		};
+		final Img< IntType > image = new ArrayImgFactory<>( new IntType() ).create( 100 );
+		final Spliterator< IntType > spliterator = new CursorSpliterator<>( image.cursor(), 100, floorBoundary );
+		final Spliterator< IntType > prefix = spliterator.trySplit();
+		assertNotNull( prefix );
+		assertEquals( 60, prefix.estimateSize() );
+		assertEquals( 40, spliterator.estimateSize() );
+
+		// no boundary in the middle half, split in the middle
+		final Spliterator< IntType > suffix = new CursorSpliterator<>( image.cursor(), 50, floorBoundary );
+		assertEquals( 25, suffix.trySplit().estimateSize() );
+	}
+
+	@Test
+	public void testCellFirstElementIndex()
+	{
+		final CellImg< IntType, ? > image = ( CellImg< IntType, ? > ) images.get( 2 );
+		final CellGrid grid = image.getCellGrid();
+		long first = 0;
+		long cellIndex = 0;
+		for ( final Cell< ? > cell : image.getCells() )
+		{
+			assertEquals( first, grid.getCellFirstElementIndex( cellIndex++ ) );
+			first += cell.size();
+		}
+		assertEquals( image.size(), grid.getCellFirstElementIndex( cellIndex ) );
+	}
+
+	@Test
+	public void testSingleElement()
+	{
+		final Spliterator< IntType > spliterator = new ArrayImgFactory<>( new IntType() ).create( 1 ).spliterator();
+		assertNull( spliterator.trySplit() );
+		assertEquals( 1, spliterator.estimateSize() );
+	}
+}
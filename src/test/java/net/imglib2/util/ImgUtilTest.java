@@ -40,14 +40,24 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
+import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
 import net.imglib2.type.numeric.integer.IntType;
 import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
 
 import org.junit.Test;
 
@@ -367,4 +377,75 @@ public class ImgUtilTest
 		}
 	}
 
+	@Test
+	public void testCopyImages()
+	{
+		final long[] dims = { 70, 50, 30 };
+		final Img< IntType > source = new ArrayImgFactory<>( new IntType() ).create( dims );
+		final Random random = new Random( 42 );
+		source.forEach( t -> t.set( random.nextInt() ) );
+		final List< Img< IntType > > destinations = Arrays.asList(
+				new ArrayImgFactory<>( new IntType() ).create( dims ),
+				new PlanarImgFactory<>( new IntType() ).create( dims ),
+				new CellImgFactory<>( new IntType(), 16 ).create( dims ) );
+		for ( final Img< IntType > destination : destinations )
+		{
+			Parallelization.runMultiThreaded( () -> ImgUtil.copy( source, destination ) );
+			assertImageEquals( source, destination );
+			// NB: copy between images of the same kind uses the storage arrays
+			final Img< IntType > copy = destination.factory().create( dims );
+			Parallelization.runMultiThreaded( () -> ImgUtil.copy( destination, copy ) );
+			assertImageEquals( source, copy );
+		}
+	}
+
+	@Test
+	public void testCopyTranslatedImage()
+	{
+		final Img< IntType > source = new ArrayImgFactory<>( new IntType() ).create( 5, 4 );
+		final Random random = new Random( 42 );
+		source.forEach( t -> t.set( random.nextInt() ) );
+		final Img< IntType > destination = new ArrayImgFactory<>( new IntType() ).create( 5, 4 );
+		ImgUtil.copy( Views.translate( source, 3, -7 ), destination );
+		assertImageEquals( source, destination );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testCopyDimensionMismatch()
+	{
+		ImgUtil.copy( new ArrayImgFactory<>( new IntType() ).create( 5, 4 ), new ArrayImgFactory<>( new IntType() ).create( 4, 5 ) );
+	}
+
+	@Test
+	public void testFill()
+	{
+		final ComplexFloatType value = new ComplexFloatType( 3, -4 );
+		final List< Img< ComplexFloatType > > images = Arrays.asList(
+				new ArrayImgFactory<>( new ComplexFloatType() ).create( 300, 301 ),
+				new PlanarImgFactory<>( new ComplexFloatType() ).create( 30, 31, 3 ),
+				new CellImgFactory<>( new ComplexFloatType(), 7 ).create( 30, 31, 3 ) );
+		for ( final Img< ComplexFloatType > image : images )
+		{
+			Parallelization.runMultiThreaded( () -> ImgUtil.fill( image, value ) );
+			for ( final ComplexFloatType pixel : image )
+				assertEquals( value, pixel );
+		}
+	}
+
+	@Test
+	public void testFillBits()
+	{
+		final Img< BitType > image = new ArrayImgFactory<>( new BitType() ).create( 33, 17 );
+		ImgUtil.fill( Views.interval( image, image ), new BitType( true ) );
+		for ( final BitType pixel : image )
+			assertEquals( true, pixel.get() );
+	}
+
+	private static < T > void assertImageEquals( final RandomAccessibleInterval< T > expected, final RandomAccessibleInterval< T > actual )
+	{
+		final Cursor< T > e = Views.flatIterable( expected ).cursor();
+		final Cursor< T > a = Views.flatIterable( actual ).cursor();
+		while ( e.hasNext() )
+			assertEquals( e.next(), a.next() );
+	}
 }
@@ -43,6 +43,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.ListIterator;
+import java.util.Random;
+
+import net.imglib2.parallel.Parallelization;
 
 import org.junit.Test;
 
@@ -635,4 +638,93 @@ public class KthElementTest
 		for ( int p = 0; p < permutation.length; ++p )
 			assertTrue( values.get( p ).equals( origvalues.get( permutation[ p ] ) ) );
 	}
+
+	@Test
+	public void testSortedAndConstantDouble()
+	{
+		// these inputs would take quadratic time without introselect
+		final double[] sorted = new double[ 1000000 ];
+		for ( int i = 0; i < sorted.length; ++i )
+			sorted[ i ] = i;
+		KthElement.kthElement( 700000, sorted );
+		assertKthElement( 700000, sorted );
+
+		final double[] constant = new double[ 1000000 ];
+		Arrays.fill( constant, 3 );
+		KthElement.kthElement( 123456, constant );
+		assertKthElement( 123456, constant );
+
+		final double[] organPipe = new double[ 999999 ];
+		for ( int i = 0; i < organPipe.length; ++i )
+			organPipe[ i ] = Math.min( i, organPipe.length - i );
+		KthElement.kthElement( 5, organPipe );
+		assertKthElement( 5, organPipe );
+	}
+
+	@Test
+	public void testParallelKthElement()
+	{
+		final Random random = new Random( 42 );
+		final double[] values = new double[ 3000000 ];
+		for ( int i = 0; i < values.length; ++i )
+			values[ i ] = random.nextGaussian();
+		final double[] fewValues = new double[ 3000000 ];
+		for ( int i = 0; i < fewValues.length; ++i )
+			fewValues[ i ] = random.nextInt( 3 );
+		final double[] sorted = new double[ 3000000 ];
+		for ( int i = 0; i < sorted.length; ++i )
+			sorted[ i ] = i;
+
+		for ( final double[] array : new double[][] { values, fewValues, sorted } )
+		{
+			for ( final int k : new int[] { 0, 1234567, array.length / 2, array.length - 1 } )
+			{
+				final double[] copy = array.clone();
+				Parallelization.runWithNumThreads( 4, () -> KthElement.parallelKthElement( k, copy ) );
+				assertKthElement( k, copy );
+				assertSameElements( array, copy );
+			}
+		}
+	}
+
+	@Test
+	public void testParallelKthElementBigArray()
+	{
+		// a big array of arrays with different lengths, including an empty one
+		final Random random = new Random( 7 );
+		final double[][] values = { new double[ 1500000 ], new double[ 0 ], new double[ 700001 ], new double[ 1200000 ] };
+		for ( final double[] array : values )
+			for ( int i = 0; i < array.length; ++i )
+				array[ i ] = random.nextInt( 100000 );
+		final double[] flat = new double[ 3400001 ];
+		final long k = 2000000;
+		Parallelization.runWithNumThreads( 4, () -> KthElement.parallelKthElement( k, values ) );
+		int offset = 0;
+		for ( final double[] array : values )
+		{
+			System.arraycopy( array, 0, flat, offset, array.length );
+			offset += array.length;
+		}
+		assertKthElement( ( int ) k, flat );
+	}
+
+	private static void assertKthElement( final int k, final double[] values )
+	{
+		for ( int p = 0; p < k; ++p )
+			assertTrue( values[ p ] <= values[ k ] );
+		for ( int p = k + 1; p < values.length; ++p )
+			assertTrue( values[ p ] >= values[ k ] );
+		final double[] sorted = values.clone();
+		Arrays.sort( sorted );
+		assertEquals( sorted[ k ], values[ k ], 0 );
+	}
+
+	private static void assertSameElements( final double[] expected, final double[] actual )
+	{
+		final double[] a = expected.clone();
+		final double[] b = actual.clone();
+		Arrays.sort( a );
+		Arrays.sort( b );
+		assertArrayEquals( a, b, 0 );
+	}
 }
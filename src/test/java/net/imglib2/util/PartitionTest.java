@@ -35,6 +35,7 @@
 package net.imglib2.util;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -42,6 +43,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.ListIterator;
+import java.util.Random;
+
+import net.imglib2.parallel.Parallelization;
 
 import org.junit.Test;
 
@@ -473,4 +477,32 @@ public class PartitionTest
 			assertTrue( values.get( k ).equals( origvalues.get( permutation[ k ] ) ) );
 	}
 
+	@Test
+	public void testParallelPartition()
+	{
+		final Random random = new Random( 3 );
+		final double[] values = new double[ 1000000 ];
+		for ( int i = 0; i < values.length; ++i )
+			values[ i ] = random.nextInt( 1000 );
+		for ( final boolean orEqual : new boolean[] { false, true } )
+		{
+			final double[] copy = values.clone();
+			final int i = 1000;
+			final int j = 900000;
+			final int split = Parallelization.runWithNumThreads( 4, () -> Partition.parallelPartitionSubList( i, j, copy, 500, orEqual ) );
+			for ( int p = i; p < split; ++p )
+				assertTrue( copy[ p ] < 500 || ( orEqual && copy[ p ] == 500 ) );
+			for ( int p = split; p <= j; ++p )
+				assertTrue( copy[ p ] > 500 || ( !orEqual && copy[ p ] == 500 ) );
+			for ( int p = 0; p < i; ++p )
+				assertEquals( values[ p ], copy[ p ], 0 );
+			for ( int p = j + 1; p < values.length; ++p )
+				assertEquals( values[ p ], copy[ p ], 0 );
+			final double[] expected = Arrays.copyOfRange( values, i, j + 1 );
+			final double[] actual = Arrays.copyOfRange( copy, i, j + 1 );
+			Arrays.sort( expected );
+			Arrays.sort( actual );
+			assertArrayEquals( expected, actual, 0 );
+		}
+	}
 }
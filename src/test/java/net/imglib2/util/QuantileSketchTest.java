@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link QuantileSketch}.
+ */
+public class QuantileSketchTest
+{
+
+	private static final double[] QUANTILES = { 0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999 };
+
+	@Test
+	public void testExactForFewValues()
+	{
+		final Random random = new Random( 1 );
+		final double[] values = new double[ 150 ];
+		final QuantileSketch sketch = new QuantileSketch();
+		for ( int i = 0; i < values.length; ++i )
+		{
+			values[ i ] = random.nextDouble();
+			sketch.add( values[ i ] );
+		}
+		sketch.add( Double.NaN );
+		assertEquals( values.length, sketch.size() );
+		for ( final double q : QUANTILES )
+			assertEquals( Util.percentile( values, q ), sketch.quantile( q ), 0 );
+		final double[] sorted = values.clone();
+		Arrays.sort( sorted );
+		assertEquals( 0, sketch.rank( sorted[ 0 ] - 1 ) );
+		assertEquals( 1, sketch.rank( sorted[ 0 ] ) );
+		assertEquals( 42, sketch.rank( sorted[ 41 ] ) );
+		assertEquals( values.length, sketch.rank( sorted[ values.length - 1 ] ) );
+	}
+
+	@Test
+	public void testRankError()
+	{
+		final Random random = new Random( 2 );
+		final double[] values = new double[ 1000000 ];
+		final QuantileSketch sketch = new QuantileSketch();
+		for ( int i = 0; i < values.length; ++i )
+		{
+			values[ i ] = random.nextGaussian();
+			sketch.add( values[ i ] );
+		}
+		assertTrue( sketch.retainedSize() < 4 * QuantileSketch.DEFAULT_K );
+		assertEquals( Util.min( values ), sketch.min(), 0 );
+		assertEquals( Util.max( values ), sketch.max(), 0 );
+		assertRankError( values, sketch, 0.02 );
+	}
+
+	@Test
+	public void testMerge()
+	{
+		final Random random = new Random( 3 );
+		final double[] values = new double[ 400000 ];
+		final Img< DoubleType > image = ArrayImgs.doubles( values, values.length );
+		final QuantileSketch merged = new QuantileSketch();
+		for ( int part = 0; part < 4; ++part )
+		{
+			final QuantileSketch sketch = new QuantileSketch();
+			for ( int i = part * 100000; i < ( part + 1 ) * 100000; ++i )
+			{
+				// differently distributed parts
+				values[ i ] = part + random.nextDouble() * ( part + 1 );
+				sketch.add( values[ i ] );
+			}
+			merged.merge( sketch );
+		}
+		assertEquals( values.length, merged.size() );
+		assertRankError( values, merged, 0.02 );
+
+		final QuantileSketch parallel = Parallelization.runWithNumThreads( 4, () -> QuantileSketch.of( image ) );
+		assertEquals( values.length, parallel.size() );
+		assertRankError( values, parallel, 0.02 );
+	}
+
+	private static void assertRankError( final double[] values, final QuantileSketch sketch, final double maxError )
+	{
+		final double[] sorted = values.clone();
+		Arrays.sort( sorted );
+		for ( final double q : QUANTILES )
+		{
+			final double estimate = sketch.quantile( q );
+			final int rank = Arrays.binarySearch( sorted, estimate );
+			assertTrue( rank >= 0 );
+			assertEquals( q, rank / ( double ) ( sorted.length - 1 ), maxError );
+			assertEquals( q, sketch.rank( sorted[ ( int ) Math.round( q * ( sorted.length - 1 ) ) ] ) / ( double ) sorted.length, maxError );
+		}
+		assertEquals( sorted[ 0 ], sketch.quantile( 0 ), 0 );
+		assertEquals( sorted[ sorted.length - 1 ], sketch.quantile( 1 ), 0 );
+	}
+}
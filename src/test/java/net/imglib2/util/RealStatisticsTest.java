@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link RealStatistics}.
+ */
+public class RealStatisticsTest
+{
+
+	@Test
+	public void testSmall()
+	{
+		final RealStatistics statistics = new RealStatistics();
+		assertTrue( Double.isNaN( statistics.getMean() ) );
+		for ( final double value : new double[] { 2, 4, Double.NaN, 4, 4, 5, 5, 7, 9 } )
+			statistics.add( value );
+		assertEquals( 8, statistics.getCount() );
+		assertEquals( 1, statistics.getNaNCount() );
+		assertEquals( 40, statistics.getSum(), 0 );
+		assertEquals( 5, statistics.getMean(), 0 );
+		assertEquals( 4, statistics.getPopulationVariance(), 1e-12 );
+		assertEquals( 32.0 / 7, statistics.getVariance(), 1e-12 );
+		assertEquals( 2, statistics.getMin(), 0 );
+		assertEquals( 9, statistics.getMax(), 0 );
+	}
+
+	@Test
+	public void testStability()
+	{
+		// large offset and small variance, the naive sum of squares fails here
+		final Random random = new Random( 1 );
+		final double[] values = new double[ 1000000 ];
+		for ( int i = 0; i < values.length; ++i )
+			values[ i ] = 1e9 + random.nextDouble();
+		final RealStatistics statistics = new RealStatistics();
+		for ( final double value : values )
+			statistics.add( value );
+		assertEquals( 1e9 + 0.5, statistics.getMean(), 1e-3 );
+		assertEquals( 1.0 / 12, statistics.getVariance(), 1e-3 );
+		assertEquals( referenceMean( values ), statistics.getMean(), 1e-6 );
+	}
+
+	@Test
+	public void testParallel()
+	{
+		final Random random = new Random( 2 );
+		final double[] values = new double[ 1000003 ];
+		for ( int i = 0; i < values.length; ++i )
+			values[ i ] = 100 + 10 * random.nextGaussian();
+		values[ 17 ] = Double.NaN;
+		final Img< DoubleType > image = ArrayImgs.doubles( values, values.length );
+
+		final RealStatistics expected = new RealStatistics();
+		for ( final double value : values )
+			expected.add( value );
+		final RealStatistics actual = Parallelization.runWithNumThreads( 4, () -> RealStatistics.of( image ) );
+
+		assertEquals( expected.getCount(), actual.getCount() );
+		assertEquals( 1, actual.getNaNCount() );
+		assertEquals( expected.getSum(), actual.getSum(), 1e-6 );
+		assertEquals( expected.getMean(), actual.getMean(), 1e-9 );
+		assertEquals( expected.getVariance(), actual.getVariance(), 1e-9 );
+		assertEquals( expected.getMin(), actual.getMin(), 0 );
+		assertEquals( expected.getMax(), actual.getMax(), 0 );
+		assertEquals( 10, actual.getStandardDeviation(), 0.1 );
+	}
+
+	private static double referenceMean( final double[] values )
+	{
+		final RealSum sum = new RealSum();
+		for ( final double value : values )
+			sum.add( value );
+		return sum.getSum() / values.length;
+	}
+}
@@ -137,4 +137,22 @@ public class RealSumTest
 			Assert.assertEquals( sum, stream.length, 0.0001 );
 		}
 	}
+
+	/**
+	 * Test method for {@link net.imglib2.util.RealSum#add(RealSum)}.
+	 */
+	@Test
+	public void testAddRealSum()
+	{
+		final RealSum sum = new RealSum();
+		final int[] splits = { 0, 1, 3, 1000, 12345, 500000, stream.length };
+		for ( int s = 0; s + 1 < splits.length; ++s )
+		{
+			final RealSum part = new RealSum();
+			for ( int i = splits[ s ]; i < splits[ s + 1 ]; ++i )
+				part.add( stream[ i ] );
+			sum.add( part );
+		}
+		Assert.assertEquals( sum.getSum(), referenceSum.doubleValue(), 0.0001 );
+	}
 }
@@ -0,0 +1,219 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import net.imglib2.parallel.Parallelization;
+
+/**
+ * Compares the sorting routines of {@link Sort} with the recursive
+ * quicksort, that {@link Util#quicksort(double[])} used before, and with
+ * {@link Arrays#sort(double[])}.
+ */
+@State( Scope.Benchmark )
+public class SortBenchmark
+{
+
+	private final double[] doubles = new double[ 1000000 ];
+
+	private final long[] longs = new long[ 1000000 ];
+
+	private final int[] indices = new int[ 1000000 ];
+
+	public SortBenchmark()
+	{
+		final Random random = new Random( 42 );
+		for ( int i = 0; i < doubles.length; ++i )
+		{
+			doubles[ i ] = random.nextGaussian();
+			longs[ i ] = random.nextLong();
+			indices[ i ] = i;
+		}
+	}
+
+	@Benchmark
+	public double[] legacyQuicksortDouble()
+	{
+		final double[] values = doubles.clone();
+		legacyQuicksort( values, 0, values.length - 1 );
+		return values;
+	}
+
+	@Benchmark
+	public double[] arraysSortDouble()
+	{
+		final double[] values = doubles.clone();
+		Arrays.sort( values );
+		return values;
+	}
+
+	@Benchmark
+	public double[] radixSortDouble()
+	{
+		final double[] values = doubles.clone();
+		Sort.radixSort( values );
+		return values;
+	}
+
+	@Benchmark
+	public double[] parallelSortDouble()
+	{
+		final double[] values = doubles.clone();
+		Parallelization.runMultiThreaded( () -> Sort.parallelSort( values ) );
+		return values;
+	}
+
+	@Benchmark
+	public long[] arraysSortLong()
+	{
+		final long[] values = longs.clone();
+		Arrays.sort( values );
+		return values;
+	}
+
+	@Benchmark
+	public long[] radixSortLong()
+	{
+		final long[] values = longs.clone();
+		Sort.radixSort( values );
+		return values;
+	}
+
+	@Benchmark
+	public int[] legacyQuicksortWithPermutation()
+	{
+		final double[] keys = doubles.clone();
+		final int[] permutation = indices.clone();
+		legacyQuicksort( keys, permutation, 0, keys.length - 1 );
+		return permutation;
+	}
+
+	@Benchmark
+	public int[] coSortWithPermutation()
+	{
+		final double[] keys = doubles.clone();
+		final int[] permutation = indices.clone();
+		Sort.coSort( keys, permutation );
+		return permutation;
+	}
+
+	/**
+	 * The former implementation of {@link Util#quicksort(double[], int, int)}.
+	 */
+	private static void legacyQuicksort( final double[] data, final int left, final int right )
+	{
+		int i = left, j = right;
+		final double x = data[ ( left + right ) / 2 ];
+		do
+		{
+			while ( data[ i ] < x )
+				i++;
+			while ( x < data[ j ] )
+				j--;
+			if ( i <= j )
+			{
+				final double temp = data[ i ];
+				data[ i ] = data[ j ];
+				data[ j ] = temp;
+				i++;
+				j--;
+			}
+		}
+		while ( i <= j );
+		if ( left < j )
+			legacyQuicksort( data, left, j );
+		if ( i < right )
+			legacyQuicksort( data, i, right );
+	}
+
+	/**
+	 * The former implementation of
+	 * {@link Util#quicksort(double[], int[], int, int)}.
+	 */
+	private static void legacyQuicksort( final double[] data, final int[] sortAlso, final int left, final int right )
+	{
+		int i = left, j = right;
+		final double x = data[ ( left + right ) / 2 ];
+		do
+		{
+			while ( data[ i ] < x )
+				i++;
+			while ( x < data[ j ] )
+				j--;
+			if ( i <= j )
+			{
+				final double temp = data[ i ];
+				data[ i ] = data[ j ];
+				data[ j ] = temp;
+
+				final int temp2 = sortAlso[ i ];
+				sortAlso[ i ] = sortAlso[ j ];
+				sortAlso[ j ] = temp2;
+
+				i++;
+				j--;
+			}
+		}
+		while ( i <= j );
+		if ( left < j )
+			legacyQuicksort( data, sortAlso, left, j );
+		if ( i < right )
+			legacyQuicksort( data, sortAlso, i, right );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options opt = new OptionsBuilder()
+				.include( SortBenchmark.class.getSimpleName() )
+				.forks( 0 )
+				.warmupIterations( 4 )
+				.measurementIterations( 8 )
+				.warmupTime( TimeValue.milliseconds( 500 ) )
+				.measurementTime( TimeValue.milliseconds( 500 ) )
+				.build();
+		new Runner( opt ).run();
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2018 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.parallel.Parallelization;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Sort}.
+ */
+public class SortTest
+{
+
+	private static final int[] SIZES = { 0, 1, 2, 10, 63, 64, 255, 256, 1000, 100000 };
+
+	@Test
+	public void testRadixSortInt()
+	{
+		final Random random = new Random( 1 );
+		for ( final int size : SIZES )
+		{
+			final int[] values = new int[ size ];
+			for ( int i = 0; i < size; ++i )
+				values[ i ] = i % 3 == 0 ? random.nextInt() : random.nextInt( 100 ) - 50;
+			final int[] expected = values.clone();
+			Arrays.sort( expected );
+			Sort.radixSort( values );
+			assertArrayEquals( expected, values );
+		}
+	}
+
+	@Test
+	public void testRadixSortLong()
+	{
+		final Random random = new Random( 2 );
+		for ( final int size : SIZES )
+		{
+			final long[] values = new long[ size ];
+			for ( int i = 0; i < size; ++i )
+				values[ i ] = i % 3 == 0 ? random.nextLong() : random.nextInt( 100 ) - 50;
+			final long[] expected = values.clone();
+			Arrays.sort( expected );
+			Sort.radixSort( values );
+			assertArrayEquals( expected, values );
+		}
+	}
+
+	@Test
+	public void testRadixSortFloat()
+	{
+		final Random random = new Random( 3 );
+		final float[] special = { Float.NaN, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, -0f, 0f, Float.MIN_VALUE, -Float.MAX_VALUE };
+		for ( final int size : SIZES )
+		{
+			final float[] values = new float[ size ];
+			for ( int i = 0; i < size; ++i )
+				values[ i ] = i % 10 == 0 ? special[ random.nextInt( special.length ) ] : ( float ) random.nextGaussian();
+			final float[] expected = values.clone();
+			Arrays.sort( expected );
+			Sort.radixSort( values );
+			assertArrayEquals( expected, values, 0 );
+			for ( int i = 0; i < size; ++i )
+				assertEquals( Float.floatToIntBits( expected[ i ] ), Float.floatToIntBits( values[ i ] ) );
+		}
+	}
+
+	@Test
+	public void testRadixSortDouble()
+	{
+		final Random random = new Random( 4 );
+		final double[] special = { Double.NaN, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, -0.0, 0.0, Double.MIN_VALUE, -Double.MAX_VALUE };
+		for ( final int size : SIZES )
+		{
+			final double[] values = new double[ size ];
+			for ( int i = 0; i < size; ++i )
+				values[ i ] = i % 10 == 0 ? special[ random.nextInt( special.length ) ] : random.nextGaussian();
+			final double[] expected = values.clone();
+			Arrays.sort( expected );
+			Sort.radixSort( values, 0, size );
+			for ( int i = 0; i < size; ++i )
+				assertEquals( Double.doubleToLongBits( expected[ i ] ), Double.doubleToLongBits( values[ i ] ) );
+		}
+	}
+
+	@Test
+	public void testCoSort()
+	{
+		final Random random = new Random( 5 );
+		for ( final int size : SIZES )
+		{
+			final double[] keys = new double[ size ];
+			final long[] longKeys = new long[ size ];
+			final int[] indices = new int[ size ];
+			for ( int i = 0; i < size; ++i )
+			{
+				keys[ i ] = random.nextInt( 20 ) - 10.5;
+				longKeys[ i ] = random.nextInt( 20 ) - 10;
+				indices[ i ] = i;
+			}
+			final double[] originalKeys = keys.clone();
+			final long[] originalLongKeys = longKeys.clone();
+			final int[] longIndices = indices.clone();
+			Sort.coSort( keys, indices );
+			Sort.coSort( longKeys, longIndices );
+			for ( int i = 0; i < size; ++i )
+			{
+				assertEquals( originalKeys[ indices[ i ] ], keys[ i ], 0 );
+				assertEquals( originalLongKeys[ longIndices[ i ] ], longKeys[ i ] );
+				if ( i > 0 )
+				{
+					// sorted and stable
+					assertTrue( keys[ i - 1 ] < keys[ i ] || keys[ i - 1 ] == keys[ i ] && indices[ i - 1 ] < indices[ i ] );
+					assertTrue( longKeys[ i - 1 ] < longKeys[ i ] || longKeys[ i - 1 ] == longKeys[ i ] && longIndices[ i - 1 ] < longIndices[ i ] );
+				}
+			}
+			if ( size > 0 )
+				assertArrayEquals( indices, Sort.sortingPermutation( originalKeys ) );
+		}
+	}
+
+	@Test
+	public void testParallelSort()
+	{
+		final Random random = new Random( 6 );
+		for ( final int size : new int[] { 10, 100000, 1000001 } )
+		{
+			final double[] values = new double[ size ];
+			final long[] longValues = new long[ size ];
+			for ( int i = 0; i < size; ++i )
+			{
+				values[ i ] = i % 1000 == 0 ? Double.NaN : random.nextInt( 1000 ) * 0.5 - 200;
+				longValues[ i ] = random.nextLong();
+			}
+			final double[] expected = values.clone();
+			final long[] expectedLong = longValues.clone();
+			Arrays.sort( expected );
+			Arrays.sort( expectedLong );
+			Parallelization.runWithNumThreads( 4, () -> Sort.parallelSort( values ) );
+			Parallelization.runWithNumThreads( 3, () -> Sort.parallelSort( longValues ) );
+			assertArrayEquals( expected, values, 0 );
+			assertArrayEquals( expectedLong, longValues );
+		}
+	}
+}